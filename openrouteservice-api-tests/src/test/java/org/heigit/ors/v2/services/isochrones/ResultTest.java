@@ -13,12 +13,14 @@
  */
 package org.heigit.ors.v2.services.isochrones;
 
+import io.restassured.path.json.JsonPath;
 import org.heigit.ors.services.isochrones.IsochronesErrorCodes;
 import org.heigit.ors.v2.services.common.EndPointAnnotation;
 import org.heigit.ors.v2.services.common.ServiceTest;
 import org.heigit.ors.v2.services.common.VersionAnnotation;
 import org.json.JSONArray;
 import org.json.JSONObject;
+import org.junit.Assert;
 import org.junit.Test;
 
 import static io.restassured.RestAssured.given;
@@ -130,6 +132,41 @@ public class ResultTest extends ServiceTest {
 
     }
 
+    @Test
+    public void testParallelLocationsMatchSingleLocations() {
+        // the maps of several locations are built in parallel and repeated searches are served from the cache
+        JsonPath isochrones = computeIsochrones(getParameter("locations_2"));
+        JSONArray locations = (JSONArray) getParameter("locations_2");
+
+        for (int i = 0; i < locations.length(); i++) {
+            JSONArray location = new JSONArray();
+            location.put(locations.get(i));
+            JsonPath single = computeIsochrones(location);
+
+            Assert.assertEquals(single.getList("features[0].geometry.coordinates[0]"), isochrones.getList("features[" + i + "].geometry.coordinates[0]"));
+            Assert.assertEquals(i, isochrones.getInt("features[" + i + "].properties.group_index"));
+        }
+
+        Assert.assertEquals(isochrones.getList("features"), computeIsochrones(getParameter("locations_2")).getList("features"));
+    }
+
+    private JsonPath computeIsochrones(Object locations) {
+        JSONObject body = new JSONObject();
+        body.put("locations", locations);
+        body.put("range", getParameter("ranges_1800"));
+
+        return given()
+                .header("Accept", "application/geo+json")
+                .header("Content-Type", "application/json")
+                .pathParam("profile", getParameter("carProfile"))
+                .body(body.toString())
+                .when()
+                .post(getEndPointPath() + "/{profile}/geojson")
+                .then().log().ifValidationFails()
+                .statusCode(200)
+                .extract().jsonPath();
+    }
+
     @Test
     public void testGroupIndices() {
 
@@ -13,6 +13,7 @@
  */
 package org.heigit.ors.v2.services.matrix;
 
+import io.restassured.path.json.JsonPath;
 import org.heigit.ors.v2.services.common.EndPointAnnotation;
 import org.heigit.ors.v2.services.common.ServiceTest;
 import org.heigit.ors.v2.services.common.VersionAnnotation;
@@ -20,6 +21,7 @@ import org.heigit.ors.v2.services.serviceSettings.MatrixServiceSettings;
 import org.heigit.ors.v2.services.utils.HelperFunctions;
 import org.json.JSONArray;
 import org.json.JSONObject;
+import org.junit.Assert;
 import org.junit.Test;
 
 import static io.restassured.RestAssured.given;
@@ -849,4 +851,39 @@ public class ResultTest extends ServiceTest {
                 .body("sources[1].snapped_distance", is(7.87f))
                 .statusCode(200);
     }
+
+    /**
+     * The test configuration searches the sources of a matrix in parallel batches of two sources. Every row of the
+     * matrix of all five locations has to equal the result of a request for its source alone, which is searched in a
+     * single batch.
+     */
+    @Test
+    public void testParallelBatchesMatchSingleSources() {
+        JsonPath matrix = computeMatrix(null);
+
+        for (int i = 0; i < 5; i++) {
+            JsonPath row = computeMatrix(new int[] {i});
+            Assert.assertEquals(matrix.getList("durations[" + i + "]"), row.getList("durations[0]"));
+            Assert.assertEquals(matrix.getList("distances[" + i + "]"), row.getList("distances[0]"));
+        }
+    }
+
+    private JsonPath computeMatrix(int[] sources) {
+        JSONObject body = new JSONObject();
+        body.put("locations", getParameter("locations5"));
+        body.put("metrics", getParameter("metricsAll"));
+        if (sources != null)
+            body.put("sources", new JSONArray(sources));
+
+        return given()
+                .header("Accept", "application/json")
+                .header("Content-Type", "application/json")
+                .pathParam("profile", getParameter("carProfile"))
+                .body(body.toString())
+                .when()
+                .post(getEndPointPath() + "/{profile}/json")
+                .then().log().ifValidationFails()
+                .statusCode(200)
+                .extract().jsonPath();
+    }
 }
@@ -0,0 +1,101 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library;
+ *  if not, see <https://www.gnu.org/licenses/>.
+ */
+package org.heigit.ors.v2.services.routing;
+
+import org.heigit.ors.v2.services.common.EndPointAnnotation;
+import org.heigit.ors.v2.services.common.ServiceTest;
+import org.heigit.ors.v2.services.common.VersionAnnotation;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static io.restassured.RestAssured.given;
+
+@EndPointAnnotation(name = "directions")
+@VersionAnnotation(version = "v2")
+public class ConcurrencyTest extends ServiceTest {
+    private static final int THREADS = 8;
+    private static final int REQUESTS = 96;
+
+    public ConcurrencyTest() {
+        JSONArray coordsLong = new JSONArray();
+        JSONArray coordLong1 = new JSONArray();
+        coordLong1.put(8.678613);
+        coordLong1.put(49.411721);
+        coordsLong.put(coordLong1);
+        JSONArray coordLong2 = new JSONArray();
+        coordLong2.put(8.714733);
+        coordLong2.put(49.393267);
+        coordsLong.put(coordLong2);
+        JSONArray coordLong3 = new JSONArray();
+        coordLong3.put(8.687782);
+        coordLong3.put(49.424597);
+        coordsLong.put(coordLong3);
+        addParameter("coordinatesLong", coordsLong);
+
+        addParameter("carProfile", "driving-car");
+    }
+
+    /**
+     * Fires simplified and non simplified requests for the same route on several threads at once. Every response
+     * has to match the one computed sequentially for its own setting, i.e. the geometry simplification of one request
+     * must not leak into a concurrently computed route.
+     */
+    @Test
+    public void testMixedGeometrySimplifyRequests() throws Exception {
+        final int expectedFull = getCoordinatesCount(false);
+        final int expectedSimplified = getCoordinatesCount(true);
+        Assert.assertTrue(expectedSimplified < expectedFull);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Integer>> results = new ArrayList<>(REQUESTS);
+            for (int i = 0; i < REQUESTS; i++) {
+                final boolean simplify = i % 2 == 1;
+                results.add(executor.submit(() -> getCoordinatesCount(simplify)));
+            }
+
+            for (int i = 0; i < REQUESTS; i++) {
+                int expected = i % 2 == 1 ? expectedSimplified : expectedFull;
+                Assert.assertEquals("Unexpected geometry for request " + i, expected, (int) results.get(i).get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private int getCoordinatesCount(boolean geometrySimplify) {
+        JSONObject body = new JSONObject();
+        body.put("coordinates", getParameter("coordinatesLong"));
+        body.put("geometry_simplify", geometrySimplify);
+
+        return given()
+                .header("Accept", "application/geo+json")
+                .header("Content-Type", "application/json")
+                .pathParam("profile", getParameter("carProfile"))
+                .body(body.toString())
+                .when()
+                .post(getEndPointPath() + "/{profile}/geojson")
+                .then().log().ifValidationFails()
+                .statusCode(200)
+                .extract().path("features[0].geometry.coordinates.size()");
+    }
+}
@@ -13,6 +13,7 @@
  */
 package org.heigit.ors.v2.services.routing;
 
+import io.restassured.path.json.JsonPath;
 import io.restassured.response.Response;
 import io.restassured.response.ValidatableResponse;
 import junit.framework.Assert;
@@ -783,6 +784,45 @@ public class ResultTest extends ServiceTest {
                 .statusCode(200);
     }
 
+    @Test
+    public void testViaRouteMatchesSeparateLegs() {
+        // routes through several way points are computed in one pass, every leg has to match the route of its own
+        JSONArray coordinates = (JSONArray) getParameter("coordinatesLong");
+        JsonPath route = computeRoute(coordinates);
+        List<Integer> wayPoints = route.getList("routes[0].way_points");
+        Assert.assertEquals(coordinates.length(), wayPoints.size());
+
+        for (int i = 0; i < coordinates.length() - 1; i++) {
+            JSONArray legCoordinates = new JSONArray();
+            legCoordinates.put(coordinates.get(i));
+            legCoordinates.put(coordinates.get(i + 1));
+            JsonPath leg = computeRoute(legCoordinates);
+
+            Assert.assertEquals(leg.getFloat("routes[0].segments[0].distance"), route.getFloat("routes[0].segments[" + i + "].distance"));
+            Assert.assertEquals(leg.getFloat("routes[0].segments[0].duration"), route.getFloat("routes[0].segments[" + i + "].duration"));
+            Assert.assertEquals(leg.getList("routes[0].segments[0].steps").size(), route.getList("routes[0].segments[" + i + "].steps").size());
+            Assert.assertEquals(leg.getInt("routes[0].way_points[1]"), wayPoints.get(i + 1) - wayPoints.get(i));
+        }
+    }
+
+    private JsonPath computeRoute(JSONArray coordinates) {
+        JSONObject body = new JSONObject();
+        body.put("coordinates", coordinates);
+        body.put("preference", getParameter("preference"));
+        body.put("instructions", true);
+
+        return given()
+                .header("Accept", "application/json")
+                .header("Content-Type", "application/json")
+                .pathParam("profile", getParameter("carProfile"))
+                .body(body.toString())
+                .when()
+                .post(getEndPointPath() + "/{profile}/json")
+                .then().log().ifValidationFails()
+                .statusCode(200)
+                .extract().jsonPath();
+    }
+
     @Test
     public void testEncodedPolyline() {
         JSONObject body = new JSONObject();
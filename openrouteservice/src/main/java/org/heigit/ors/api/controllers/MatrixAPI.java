@@ -24,6 +24,7 @@ import org.heigit.ors.api.errors.CommonResponseEntityExceptionHandler;
 import org.heigit.ors.api.requests.common.APIEnums;
 import org.heigit.ors.api.requests.matrix.MatrixRequest;
 import org.heigit.ors.api.requests.matrix.MatrixRequestHandler;
+import org.heigit.ors.api.responses.matrix.binary.BinaryMatrixResponse;
 import org.heigit.ors.api.responses.matrix.json.JSONMatrixResponse;
 import org.heigit.ors.exceptions.*;
 import org.heigit.ors.matrix.MatrixErrorCodes;
@@ -35,6 +36,7 @@ import org.springframework.web.bind.MissingServletRequestParameterException;
 import org.springframework.web.bind.annotation.*;
 
 import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
 
 @RestController
 @Api(value = "Matrix Service", description = "Obtain one-to-many, many-to-one and many-to-many matrices for time and distance", tags = "Matrix")
@@ -100,6 +102,30 @@ public class MatrixAPI {
         return new JSONMatrixResponse(matrixResult, originalRequest);
     }
 
+    @PostMapping(value = "/{profile}/binary", produces = {BinaryMatrixResponse.CONTENT_TYPE})
+    @ApiOperation(value = "Get a matrix calculation from the specified profile as little endian float32 tables",
+            notes = "Returns the requested matrices without metadata in a compact binary layout: the ASCII magic `ORSM`, " +
+                    "a version byte, a byte with the metrics bit mask (1 = duration, 2 = distance), two reserved bytes " +
+                    "and the source and destination counts as int32, followed by one row major float32 table per metric. " +
+                    "Values that can not be determined are NaN.",
+            httpMethod = "POST", consumes = "application/json", produces = BinaryMatrixResponse.CONTENT_TYPE)
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Standard response for successfully processed requests. Returns the binary matrix.")
+    })
+    public void getBinaryMime(
+            @ApiParam(value = "Specifies the matrix profile.", required = true, example = "driving-car") @PathVariable APIEnums.Profile profile,
+            @ApiParam(value = "The request payload", required = true) @RequestBody MatrixRequest originalRequest,
+            HttpServletResponse response) throws StatusCodeException, IOException {
+        originalRequest.setProfile(profile);
+        originalRequest.setResponseType(APIEnums.MatrixResponseType.BINARY);
+        MatrixResult matrixResult = MatrixRequestHandler.generateMatrixFromRequest(originalRequest);
+
+        BinaryMatrixResponse matrixResponse = new BinaryMatrixResponse(matrixResult, originalRequest);
+        response.setContentType(BinaryMatrixResponse.CONTENT_TYPE);
+        response.setContentLengthLong(matrixResponse.getContentLength());
+        matrixResponse.write(response.getOutputStream());
+    }
+
     @ExceptionHandler(MissingServletRequestParameterException.class)
     public ResponseEntity<Object> handleMissingParams(final MissingServletRequestParameterException e) {
         return errorHandler.handleStatusCodeException(new MissingParameterException(MatrixErrorCodes.MISSING_PARAMETER, e.getParameterName()));
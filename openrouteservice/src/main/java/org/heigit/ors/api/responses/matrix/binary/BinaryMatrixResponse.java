@@ -0,0 +1,103 @@
+/*
+ * This file is part of Openrouteservice.
+ *
+ * Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this library;
+ * if not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.heigit.ors.api.responses.matrix.binary;
+
+import org.heigit.ors.api.requests.matrix.MatrixRequest;
+import org.heigit.ors.api.responses.matrix.MatrixResponse;
+import org.heigit.ors.matrix.MatrixMetricsType;
+import org.heigit.ors.matrix.MatrixResult;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Writes a matrix in a compact binary layout for clients that process large matrices in bulk. All numbers are little
+ * endian. The 16 byte header consists of
+ * <ul>
+ *     <li>the ASCII magic {@code ORSM},</li>
+ *     <li>a format version byte (currently 1),</li>
+ *     <li>a byte holding the {@link MatrixMetricsType} bit mask of the tables that follow,</li>
+ *     <li>two reserved bytes,</li>
+ *     <li>the number of sources and the number of destinations as int32.</li>
+ * </ul>
+ * It is followed by one float32 table per metric in ascending order of the metric bit (duration, distance, weight).
+ * Each table is stored row by row with one row per source. Values are not rounded and pairs that could not be
+ * routed are written as NaN.
+ */
+public class BinaryMatrixResponse extends MatrixResponse {
+    public static final String CONTENT_TYPE = "application/octet-stream";
+    public static final byte[] MAGIC = {'O', 'R', 'S', 'M'};
+    public static final byte VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+
+    private static final int[] METRICS = {MatrixMetricsType.DURATION, MatrixMetricsType.DISTANCE, MatrixMetricsType.WEIGHT};
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    public BinaryMatrixResponse(MatrixResult result, MatrixRequest request) {
+        super(result, request);
+    }
+
+    public int getMetrics() {
+        int metrics = MatrixMetricsType.UNKNOWN;
+        for (int metric : METRICS) {
+            if (matrixResult.getTable(metric) != null)
+                metrics |= metric;
+        }
+        return metrics;
+    }
+
+    public long getContentLength() {
+        long cells = (long) matrixResult.getSources().length * matrixResult.getDestinations().length;
+        return HEADER_SIZE + Integer.bitCount(getMetrics()) * cells * Float.BYTES;
+    }
+
+    public void write(OutputStream out) throws IOException {
+        int sourceCount = matrixResult.getSources().length;
+        int destinationCount = matrixResult.getDestinations().length;
+
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(MAGIC);
+        buffer.put(VERSION);
+        buffer.put((byte) getMetrics());
+        buffer.putShort((short) 0);
+        buffer.putInt(sourceCount);
+        buffer.putInt(destinationCount);
+
+        int cells = sourceCount * destinationCount;
+        for (int metric : METRICS) {
+            float[] table = matrixResult.getTable(metric);
+            if (table == null)
+                continue;
+
+            for (int i = 0; i < cells; i++) {
+                if (buffer.remaining() < Float.BYTES)
+                    flush(buffer, out);
+                float value = table[i];
+                buffer.putFloat(value == -1 ? Float.NaN : value);
+            }
+        }
+
+        flush(buffer, out);
+        out.flush();
+    }
+
+    private static void flush(ByteBuffer buffer, OutputStream out) throws IOException {
+        out.write(buffer.array(), 0, buffer.position());
+        buffer.clear();
+    }
+}
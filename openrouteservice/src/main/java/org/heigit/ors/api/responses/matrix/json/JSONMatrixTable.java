@@ -0,0 +1,141 @@
+/*
+ * This file is part of Openrouteservice.
+ *
+ * Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this library;
+ * if not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.heigit.ors.api.responses.matrix.json;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import org.heigit.ors.util.FormatUtility;
+
+import java.io.IOException;
+
+/**
+ * A single metric table of a matrix response. The values are kept in the flat, row major {@code float[]} computed by
+ * the matrix algorithms and are written row by row straight to the output, so that large matrices do not have to be
+ * boxed into a {@code Double[][]} before being serialized.
+ */
+@JsonSerialize(using = JSONMatrixTable.Serializer.class)
+public class JSONMatrixTable {
+    private static final int DECIMALS = 2;
+
+    private final float[] table;
+    private final Double[][] values;
+    private final int rows;
+    private final int columns;
+
+    public JSONMatrixTable(float[] table, int rows, int columns) {
+        this.table = table;
+        this.values = null;
+        this.rows = rows;
+        this.columns = columns;
+    }
+
+    public JSONMatrixTable(Double[][] values) {
+        this.table = null;
+        this.values = values;
+        this.rows = values.length;
+        this.columns = values.length > 0 && values[0] != null ? values[0].length : 0;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    /**
+     * Returns the value of the given cell as it is written to the response, i.e. rounded to two decimals, or
+     * {@code null} if the destination could not be reached from the source.
+     */
+    public Double getValue(int row, int column) {
+        if (values != null)
+            return values[row][column];
+
+        float value = table[row * columns + column];
+        if (value == -1)
+            return null;
+        return FormatUtility.roundToDecimals(value, DECIMALS);
+    }
+
+    public Double[][] toArray() {
+        if (values != null)
+            return values;
+
+        Double[][] array = new Double[rows][columns];
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < columns; j++) {
+                array[i][j] = getValue(i, j);
+            }
+        }
+        return array;
+    }
+
+    public static class Serializer extends StdSerializer<JSONMatrixTable> {
+        public Serializer() {
+            super(JSONMatrixTable.class);
+        }
+
+        @Override
+        public boolean isEmpty(SerializerProvider provider, JSONMatrixTable value) {
+            return value == null || value.rows == 0;
+        }
+
+        @Override
+        public void serialize(JSONMatrixTable value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            gen.writeStartArray();
+            if (value.values != null)
+                writeValues(value.values, gen);
+            else
+                writeTable(value.table, value.rows, value.columns, gen);
+            gen.writeEndArray();
+        }
+
+        private void writeTable(float[] table, int rows, int columns, JsonGenerator gen) throws IOException {
+            for (int i = 0; i < rows; i++) {
+                gen.writeStartArray();
+                int offset = i * columns;
+                for (int j = 0; j < columns; j++) {
+                    float cell = table[offset + j];
+                    if (cell == -1)
+                        gen.writeNull();
+                    else
+                        gen.writeNumber(FormatUtility.roundToDecimals(cell, DECIMALS));
+                }
+                gen.writeEndArray();
+            }
+        }
+
+        private void writeValues(Double[][] values, JsonGenerator gen) throws IOException {
+            for (Double[] row : values) {
+                if (row == null) {
+                    gen.writeNull();
+                    continue;
+                }
+                gen.writeStartArray();
+                for (Double cell : row) {
+                    if (cell == null)
+                        gen.writeNull();
+                    else
+                        gen.writeNumber(cell);
+                }
+                gen.writeEndArray();
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the 
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1 
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library; 
+ *  if not, see <https://www.gnu.org/licenses/>.  
+ */
+package org.heigit.ors.isochrones;
+
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.storage.GraphHopperStorage;
+import org.heigit.ors.common.TravelRangeType;
+import org.heigit.ors.routing.graphhopper.extensions.AccessibilityMap;
+import org.heigit.ors.services.isochrones.IsochronesServiceSettings;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Caches the accessibility maps, i.e. the shortest path trees, of isochrone searches per graph, so that requests for
+ * the same start node, range type, maximum range and direction - e.g. with different intervals - reuse the search of
+ * an earlier request. The cached trees are shared between requests and must not be modified. The cache holds at most
+ * the given number of tree entries and evicts the least recently used trees first.
+ */
+public class AccessibilityMapCache {
+	private static final Map<GraphHopperStorage, AccessibilityMapCache> caches = Collections.synchronizedMap(new WeakHashMap<>());
+
+	private final int maximumEntries;
+	private final Map<String, AccessibilityMap> maps = new LinkedHashMap<>(16, 0.75f, true);
+	private long entries;
+
+	AccessibilityMapCache(int maximumEntries) {
+		this.maximumEntries = maximumEntries;
+	}
+
+	/**
+	 * @return the cache of the given graph or null if caching is disabled
+	 */
+	public static AccessibilityMapCache getInstance(GraphHopperStorage graph) {
+		int maximumEntries = IsochronesServiceSettings.getAccessibilityMapCacheSize();
+		if (maximumEntries <= 0)
+			return null;
+		return caches.computeIfAbsent(graph, g -> new AccessibilityMapCache(maximumEntries));
+	}
+
+	public static String createKey(FlagEncoder encoder, int node, TravelRangeType rangeType, double maximumRange, boolean reverseDirection) {
+		return encoder.toString() + ":" + node + ":" + rangeType + ":" + maximumRange + ":" + reverseDirection;
+	}
+
+	public AccessibilityMap get(String key) {
+		synchronized (maps) {
+			return maps.get(key);
+		}
+	}
+
+	public void put(String key, AccessibilityMap map) {
+		int size = map.getMap().size();
+		if (size > maximumEntries)
+			return;
+
+		synchronized (maps) {
+			AccessibilityMap prev = maps.put(key, map);
+			if (prev != null)
+				entries -= prev.getMap().size();
+			entries += size;
+
+			Iterator<AccessibilityMap> iter = maps.values().iterator();
+			while (entries > maximumEntries && iter.hasNext()) {
+				entries -= iter.next().getMap().size();
+				iter.remove();
+			}
+		}
+	}
+
+	public int size() {
+		synchronized (maps) {
+			return maps.size();
+		}
+	}
+}
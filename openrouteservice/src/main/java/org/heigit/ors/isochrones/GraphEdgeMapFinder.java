@@ -23,6 +23,7 @@ import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.storage.GraphHopperStorage;
 import com.graphhopper.storage.SPTEntry;
 import com.graphhopper.storage.index.QueryResult;
+import com.graphhopper.util.PMap;
 import com.graphhopper.util.shapes.GHPoint3D;
 import com.vividsolutions.jts.geom.Coordinate;
 import org.heigit.ors.common.TravelRangeType;
@@ -31,6 +32,7 @@ import org.heigit.ors.routing.RouteSearchContext;
 import org.heigit.ors.routing.algorithms.DijkstraCostCondition;
 import org.heigit.ors.routing.graphhopper.extensions.AccessibilityMap;
 import org.heigit.ors.routing.graphhopper.extensions.ORSEdgeFilterFactory;
+import org.heigit.ors.routing.graphhopper.extensions.util.ORSPMap;
 import org.heigit.ors.routing.graphhopper.extensions.weighting.DistanceWeighting;
 
 public class GraphEdgeMapFinder {
@@ -53,7 +55,16 @@ public class GraphEdgeMapFinder {
 
 		if (fromId == -1)
 			throw new InternalServerException(IsochronesErrorCodes.UNKNOWN, "The closest node is null.");
-	
+
+		AccessibilityMapCache cache = hasEdgeFilterParameters(searchCntx.getProperties()) ? null : AccessibilityMapCache.getInstance(graph);
+		String cacheKey = null;
+		if (cache != null) {
+			cacheKey = AccessibilityMapCache.createKey(encoder, fromId, parameters.getRangeType(), parameters.getMaximumRange(), parameters.getReverseDirection());
+			AccessibilityMap cachedMap = cache.get(cacheKey);
+			if (cachedMap != null)
+				return new AccessibilityMap(cachedMap.getMap(), cachedMap.getEdgeEntry(), snappedPosition);
+		}
+
 		Weighting weighting =  parameters.getRangeType() == TravelRangeType.TIME ?  new FastestWeighting(encoder) : new DistanceWeighting(encoder);
 
 		// IMPORTANT: It only works with TraversalMode.NODE_BASED.
@@ -63,6 +74,19 @@ public class GraphEdgeMapFinder {
 		dijkstraAlg.calcPath(fromId, Integer.MIN_VALUE);
 
 		IntObjectMap<SPTEntry> edgeMap = dijkstraAlg.getMap();
+		if (cache != null)
+			cache.put(cacheKey, new AccessibilityMap(edgeMap, dijkstraAlg.getCurrentEdge()));
        return new AccessibilityMap(edgeMap, dijkstraAlg.getCurrentEdge(), snappedPosition);
 	}
+
+	/**
+	 * @return true if the search depends on request specific edge filters, i.e. it must not be shared between requests
+	 */
+	private static boolean hasEdgeFilterParameters(PMap props) {
+		if (!(props instanceof ORSPMap))
+			return false;
+		ORSPMap params = (ORSPMap) props;
+		return params.hasObj("avoid_areas") || params.has("edgefilter_hgv") || params.has("edgefilter_wheelchair")
+				|| params.hasObj("avoid_features") || params.hasObj("avoid_borders");
+	}
 }
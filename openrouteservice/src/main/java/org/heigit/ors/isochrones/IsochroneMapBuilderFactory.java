@@ -17,6 +17,7 @@ import com.graphhopper.util.Helper;
 import org.heigit.ors.isochrones.builders.IsochroneMapBuilder;
 import org.heigit.ors.isochrones.builders.concaveballs.ConcaveBallsIsochroneMapBuilder;
 import org.heigit.ors.isochrones.builders.grid.GridBasedIsochroneMapBuilder;
+import org.heigit.ors.isochrones.builders.marchingsquares.MarchingSquaresIsochroneMapBuilder;
 import org.heigit.ors.routing.RouteSearchContext;
 
 public class IsochroneMapBuilderFactory {
@@ -33,6 +34,8 @@ public class IsochroneMapBuilderFactory {
 			isochroneBuilder = new ConcaveBallsIsochroneMapBuilder();
 		} else if ("grid".equalsIgnoreCase(method)) {
         	isochroneBuilder= new GridBasedIsochroneMapBuilder();
+		} else if ("MarchingSquares".equalsIgnoreCase(method)) {
+			isochroneBuilder = new MarchingSquaresIsochroneMapBuilder();
         } else {
 			throw new Exception("Unknown method.");
 		}
@@ -13,9 +13,10 @@
  */
 package org.heigit.ors.isochrones.builders.concaveballs;
 
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntHashSet;
 import com.carrotsearch.hppc.IntObjectMap;
 import com.carrotsearch.hppc.cursors.IntObjectCursor;
-import com.graphhopper.coll.GHIntObjectHashMap;
 import com.graphhopper.routing.util.*;
 import com.graphhopper.storage.GraphHopperStorage;
 import com.graphhopper.storage.NodeAccess;
@@ -24,6 +25,9 @@ import com.graphhopper.util.*;
 import com.graphhopper.util.shapes.GHPoint3D;
 import com.vividsolutions.jts.geom.*;
 import com.vividsolutions.jts.index.quadtree.Quadtree;
+import com.vividsolutions.jts.triangulate.IncrementalDelaunayTriangulator;
+import com.vividsolutions.jts.triangulate.quadedge.QuadEdgeSubdivision;
+import com.vividsolutions.jts.triangulate.quadedge.Vertex;
 import org.heigit.ors.common.TravelRangeType;
 import org.heigit.ors.isochrones.GraphEdgeMapFinder;
 import org.heigit.ors.isochrones.Isochrone;
@@ -39,9 +43,17 @@ import org.apache.log4j.Logger;
 import org.opensphere.geometry.algorithm.ConcaveHull;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
-import java.util.TreeSet;
+import java.util.Set;
 
+/**
+ * Builds the isochrones of all ranges from a single shortest path tree. The ranges are built in increasing order and
+ * share one set of points, one spatial index and one Delaunay triangulation: every range only adds the points of the
+ * edges entered since the previous range and of the edges which continued beyond it, and the concave hull of a range
+ * is eroded from the triangulation of all points added so far.
+ */
 public class ConcaveBallsIsochroneMapBuilder implements IsochroneMapBuilder {
 	private static final Logger LOGGER = Logger.getLogger(ConcaveBallsIsochroneMapBuilder.class.getName());
 
@@ -51,11 +63,20 @@ public class ConcaveBallsIsochroneMapBuilder implements IsochroneMapBuilder {
 	private Envelope searchEnv = new Envelope();
 	private GeometryFactory geometryFactory;
 	private PointItemVisitor visitor = null;
-	private List<Coordinate> prevIsoPoints = null;
-    private TreeSet<Coordinate> treeSet;
+	private List<Coordinate> isoPoints;
+	private Set<Coordinate> pointSet;
+	private Quadtree qtree;
+	private QuadEdgeSubdivision subdivision;
+	private IncrementalDelaunayTriangulator triangulator;
+	private int triangulatedPoints;
+	private EdgeCostIndex edgeIndex;
+	// entries of the edges which continue beyond the last built range
+	private int[] openEntries;
+	private IntHashSet deadEndEdges;
 	private RouteSearchContext searchContext;
 
 	private static final boolean BUFFERED_OUTPUT = true;
+	private static final double TRIANGULATION_MARGIN = 0.01;
 
 	public void initialize(RouteSearchContext searchContext) {
 		geometryFactory = new GeometryFactory();
@@ -113,9 +134,9 @@ public class ConcaveBallsIsochroneMapBuilder implements IsochroneMapBuilder {
 		if (edgeMap.isEmpty())
 			return isochroneMap;
 
-		treeSet = new TreeSet<>();
-
-		List<Coordinate> isoPoints = new ArrayList<>((int)(1.2*edgeMap.getMap().size()));
+		isoPoints = new ArrayList<>((int)(1.2*edgeMap.getMap().size()));
+		pointSet = new HashSet<>((int)(1.6*edgeMap.getMap().size()));
+		qtree = new Quadtree();
 
 		if (LOGGER.isDebugEnabled())
 		{
@@ -123,12 +144,17 @@ public class ConcaveBallsIsochroneMapBuilder implements IsochroneMapBuilder {
 			sw.start();
 		}
 
-		markDeadEndEdges(edgeMap);
+		deadEndEdges = findDeadEndEdges(edgeMap);
+
+		// the edges are sorted by cost once, so that every range only visits the edges which are relevant for it
+		edgeIndex = new EdgeCostIndex(edgeMap.getMap(), graph.getNodes());
+		openEntries = new int[0];
+		createTriangulation(graph.getNodeAccess(), loc);
 
 		if (LOGGER.isDebugEnabled())
 		{
 			sw.stop();
-			LOGGER.debug("Mark dead ends: " + sw.getSeconds());
+			LOGGER.debug("Mark dead ends and index edges: " + sw.getSeconds());
 		}
 
 		int nRanges = parameters.getRanges().length;
@@ -137,7 +163,7 @@ public class ConcaveBallsIsochroneMapBuilder implements IsochroneMapBuilder {
 		// only needed for reachfactor property
 		double meanMetersPerSecond = meanSpeed / 3.6;
 
-		double prevCost = 0;
+		double prevCost = Double.NEGATIVE_INFINITY;
 		for (int i = 0; i < nRanges; i++) {
 			double isoValue = parameters.getRanges()[i];
 			double isochronesDifference = parameters.getRanges()[i];
@@ -164,17 +190,17 @@ public class ConcaveBallsIsochroneMapBuilder implements IsochroneMapBuilder {
 				isochronesDifference = metersPerSecond * isochronesDifference;
 			}
 
-			GeometryCollection points = buildIsochrone(edgeMap, isoPoints, loc.x, loc.y, isoValue, prevCost, isochronesDifference, 0.85);
+			addRangePoints(edgeMap, loc.x, loc.y, isoValue, prevCost, isochronesDifference, 0.85);
 
 			if (LOGGER.isDebugEnabled()) {
 				sw.stop();
-				LOGGER.debug(i + " Find points: " + sw.getSeconds() + " " + points.getNumGeometries());
+				LOGGER.debug(i + " Find points: " + sw.getSeconds() + " " + isoPoints.size());
 
 				sw = new StopWatch();
 				sw.start();
 			}
 
-			addIsochrone(isochroneMap, points, isoValue, maxRadius, meanRadius, smoothingFactor);
+			addIsochrone(isochroneMap, isoValue, maxRadius, meanRadius, smoothingFactor);
 
 			if (LOGGER.isDebugEnabled())
 				LOGGER.debug("Build concave hull: " + sw.stop().getSeconds());
@@ -219,11 +245,21 @@ public class ConcaveBallsIsochroneMapBuilder implements IsochroneMapBuilder {
 		return maxLength;
 	}
 
-	private void addIsochrone(IsochroneMap isochroneMap, GeometryCollection points, double isoValue, double maxRadius, double meanRadius, float smoothingFactor) {
-		if (points.isEmpty())
+	private void addIsochrone(IsochroneMap isochroneMap, double isoValue, double maxRadius, double meanRadius, float smoothingFactor) {
+		if (isoPoints.isEmpty())
 			return;
 
-		ConcaveHull ch = new ConcaveHull(points, convertSmoothingFactorToDistance(smoothingFactor, maxRadius), false);
+		double threshold = convertSmoothingFactorToDistance(smoothingFactor, maxRadius);
+		ConcaveHull ch;
+		if (isoPoints.size() < 3) {
+			Geometry[] geometries = new Geometry[isoPoints.size()];
+			for (int i = 0; i < isoPoints.size(); ++i)
+				geometries[i] = geometryFactory.createPoint(isoPoints.get(i));
+			ch = new ConcaveHull(new GeometryCollection(geometries, geometryFactory), threshold, false);
+		} else {
+			triangulatePoints();
+			ch = new ConcaveHull(subdivision, geometryFactory, threshold);
+		}
 		Geometry geom = ch.getConcaveHull();
 
 		if (geom instanceof GeometryCollection) {
@@ -234,30 +270,64 @@ public class ConcaveBallsIsochroneMapBuilder implements IsochroneMapBuilder {
 
 		Polygon poly = (Polygon)geom;
 
-		copyConvexHullPoints(poly);
 		isochroneMap.addIsochrone(new Isochrone(poly, isoValue, meanRadius));
 	}
 
-	private void markDeadEndEdges(AccessibilityMap edgeMap) {
+	/**
+	 * Creates an empty Delaunay triangulation whose frame contains all points which can be added for the tree.
+	 */
+	private void createTriangulation(NodeAccess nodeAccess, Coordinate loc) {
+		Envelope env = new Envelope(loc);
+		for (int i = 0; i < edgeIndex.size(); i++) {
+			int node = edgeIndex.get(i).adjNode;
+			env.expandToInclude(nodeAccess.getLon(node), nodeAccess.getLat(node));
+		}
+		// the points are buffered around the edge geometries, which may leave the envelope of the nodes
+		env.expandBy(TRIANGULATION_MARGIN);
+
+		subdivision = new QuadEdgeSubdivision(env, 0.0);
+		triangulator = new IncrementalDelaunayTriangulator(subdivision);
+		triangulatedPoints = 0;
+	}
+
+	/**
+	 * Inserts the points which have been added since the previous range into the triangulation. The points are sorted
+	 * first, so that consecutive sites are close to each other and locating them in the triangulation is cheap.
+	 */
+	private void triangulatePoints() {
+		Coordinate[] newPoints = isoPoints.subList(triangulatedPoints, isoPoints.size()).toArray(new Coordinate[0]);
+		Arrays.sort(newPoints);
+		for (Coordinate c : newPoints)
+			triangulator.insertSite(new Vertex(c));
+		triangulatedPoints = isoPoints.size();
+	}
+
+	/**
+	 * Finds the edges of the tree which are not continued by any other edge. The entries of the map must not be
+	 * marked, since the map may be a cached tree shared with concurrent requests.
+	 */
+	private static IntHashSet findDeadEndEdges(AccessibilityMap edgeMap) {
 		IntObjectMap<SPTEntry> map = edgeMap.getMap();
-		IntObjectMap<Integer> result = new GHIntObjectHashMap<>(map.size()/20);
+		IntHashSet parentEdges = new IntHashSet(map.size());
 
 		for (IntObjectCursor<SPTEntry> entry : map) {
 			SPTEntry  edge = entry.value;
 			if (edge.originalEdge == -1)
 				continue;
 
-			result.put(edge.parent.originalEdge, 1);
+			parentEdges.add(edge.parent.originalEdge);
 		}
 
+		IntHashSet result = new IntHashSet(map.size()/20);
 		for (IntObjectCursor<SPTEntry> entry : map) {
 			SPTEntry  edge = entry.value;
 			if (edge.originalEdge == -1)
 				continue;
 
-			if (!result.containsKey(edge.originalEdge))
-				edge.edge = -2;
+			if (!parentEdges.contains(edge.originalEdge))
+				result.add(edge.originalEdge);
 		}
+		return result;
 	}
 
 	public Boolean addPoint(List<Coordinate> points, Quadtree tree, double lon, double lat, boolean checkNeighbours) {
@@ -268,23 +338,23 @@ public class ConcaveBallsIsochroneMapBuilder implements IsochroneMapBuilder {
 			if (!visitor.isNeighbourFound()) {
 				Coordinate p = new Coordinate(lon, lat);
 
-				if (!treeSet.contains(p))
+				if (!pointSet.contains(p))
 				{
 					Envelope env = new Envelope(lon - pointWidth, lon + pointWidth, lat - pointWidth, lat + pointWidth);
 					tree.insert(env, p);
 					points.add(p);
-					treeSet.add(p);
+					pointSet.add(p);
 					
 					return true;
 				}
 			}
 		} else {
 			Coordinate p = new Coordinate(lon, lat);
-			if (!treeSet.contains(p)) {
+			if (!pointSet.contains(p)) {
 				Envelope env = new Envelope(lon - pointWidth, lon + pointWidth, lat - pointWidth, lat + pointWidth);
 				tree.insert(env, p);
 				points.add(p);
-				treeSet.add(p);
+				pointSet.add(p);
 				
 				return true;
 			}
@@ -318,23 +388,20 @@ public class ConcaveBallsIsochroneMapBuilder implements IsochroneMapBuilder {
 		} 
 	}
 
-	private GeometryCollection buildIsochrone(AccessibilityMap edgeMap, List<Coordinate> points, double lon, double lat,
-			double isolineCost, double prevCost, double isochronesDifference, double detailedGeomFactor) {
+	/**
+	 * Adds the points of the range up to the given cost to the points of the previous ranges. Only the edges entered
+	 * since the previous range and the edges which continued beyond it are visited.
+	 */
+	private void addRangePoints(AccessibilityMap edgeMap, double lon, double lat, double isolineCost, double prevCost,
+			double isochronesDifference, double detailedGeomFactor) {
 		IntObjectMap<SPTEntry> map = edgeMap.getMap();
-
-		points.clear();
-		treeSet.clear();
-
-		if (prevIsoPoints != null)
-			points.addAll(prevIsoPoints);
+		List<Coordinate> points = isoPoints;
 
 		GraphHopperStorage graph = searchContext.getGraphHopper().getGraphHopperStorage();
 		NodeAccess nodeAccess = graph.getNodeAccess();
-		int maxNodeId = graph.getNodes();
 
 		DistanceCalc dcFast = new DistancePlaneProjection();
 		double bufferSize = 0.0018;
-		Quadtree qtree = new Quadtree();
 		visitor = new PointItemVisitor(lon, lat, visitorThreshold);
 		double detailedZone = isolineCost * detailedGeomFactor;
 
@@ -359,21 +426,23 @@ public class ConcaveBallsIsochroneMapBuilder implements IsochroneMapBuilder {
 		int nodeId;
 		int edgeId;
 
-		for (IntObjectCursor<SPTEntry> entry : map) {
-			SPTEntry goalEdge = entry.value;
+		// The points of the edges entered before the previous range are already known. Edges which continued beyond
+		// it (and may span more than one range) are visited again to add their part up to this range.
+		int[] newEntries = edgeIndex.getEntriesAbove(prevCost, isolineCost);
+		int[] rangeEntries = Arrays.copyOf(openEntries, openEntries.length + newEntries.length);
+		System.arraycopy(newEntries, 0, rangeEntries, openEntries.length, newEntries.length);
+		Arrays.sort(rangeEntries);
+		IntArrayList nextOpenEntries = new IntArrayList();
+
+		for (int entryIndex : rangeEntries) {
+			SPTEntry goalEdge = edgeIndex.get(entryIndex);
 			edgeId = goalEdge.originalEdge;
 			nodeId = goalEdge.adjNode;
 
-			if (edgeId == -1 || nodeId == -1 || nodeId > maxNodeId)
-				continue;
-
 			float maxCost = (float) goalEdge.weight;
 			float minCost = (float) goalEdge.parent.weight;
-
-			// ignore all edges that have been considered in the previous step. We do not want to do this for small
-			// isochrones as the edge may have more than one range on it in that case
-			if (minCost < prevCost && isochronesDifference > 1000)
-				continue;
+			if (maxCost > isolineCost)
+				nextOpenEntries.add(entryIndex);
 
 			searchWidth = defaultSearchWidth; 
 			visitorThreshold = defaultVisitorThreshold; 
@@ -387,7 +456,8 @@ public class ConcaveBallsIsochroneMapBuilder implements IsochroneMapBuilder {
 			if (isolineCost >= maxCost) {
 				// This checks for dead end edges, but we need to include those in small areas to provide realistic
 				// results
-				if (goalEdge.edge != -2 || useHighDetail) {
+				boolean deadEnd = deadEndEdges.contains(edgeId);
+				if (!deadEnd || useHighDetail) {
 					double edgeDist = iter.getDistance();
 					if (((maxCost >= detailedZone && maxCost <= isolineCost) || edgeDist > 300))
 					{
@@ -406,7 +476,7 @@ public class ConcaveBallsIsochroneMapBuilder implements IsochroneMapBuilder {
 									lat1 = pl.getLat(i);
 									lon1 = pl.getLon(i);
 
-									addBufferPoints(points, qtree, lon0, lat0, lon1, lat1, goalEdge.edge < 0 && i == size - 1, true, bufferSize);
+									addBufferPoints(points, qtree, lon0, lat0, lon1, lat1, deadEnd && i == size - 1, true, bufferSize);
 
 									lon0 = lon1;
 									lat0 = lat1;
@@ -477,26 +547,7 @@ public class ConcaveBallsIsochroneMapBuilder implements IsochroneMapBuilder {
 			}
 		}
 
-		
-		Geometry[] geometries = new Geometry[points.size()];
-
-		for (int i = 0;i < points.size();++i) {
-			Coordinate c = points.get(i);
-			geometries[i] = geometryFactory.createPoint(c);
-		}
-
-		return new GeometryCollection(geometries, geometryFactory);
-	}
 
-	private void copyConvexHullPoints(Polygon poly) {
-		LineString ring = poly.getExteriorRing();
-		if (prevIsoPoints == null)
-			prevIsoPoints = new ArrayList<>(ring.getNumPoints());
-		else
-			prevIsoPoints.clear();
-		for (int i = 0; i< ring.getNumPoints(); ++i) {
-			Point p = ring.getPointN(i);
-			prevIsoPoints.add(new Coordinate(p.getX(), p.getY()));
-		}
+		openEntries = nextOpenEntries.toArray();
 	}
 }
@@ -0,0 +1,112 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the 
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1 
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library; 
+ *  if not, see <https://www.gnu.org/licenses/>.  
+ */
+package org.heigit.ors.isochrones.builders.concaveballs;
+
+import com.carrotsearch.hppc.IntObjectMap;
+import com.carrotsearch.hppc.cursors.IntObjectCursor;
+import com.graphhopper.storage.SPTEntry;
+
+import java.util.Arrays;
+
+/**
+ * Index of the edges of a shortest path tree sorted by the cost at which they are entered, i.e. the weight of their
+ * parent entry. It allows the isochrone builder to visit only the edges which start within a cost window instead of
+ * the whole tree for every range. The edges of a window are returned in the iteration order of the tree, so that the
+ * built isochrones do not depend on the index.
+ */
+class EdgeCostIndex {
+	private final SPTEntry[] entries;
+	// cost of the parent in the upper and the position in the tree in the lower 32 bits, sorted
+	private final long[] sortedKeys;
+
+	/**
+	 * @param map       the shortest path tree
+	 * @param maxNodeId entries of nodes with larger ids (i.e. virtual nodes) are left out
+	 */
+	EdgeCostIndex(IntObjectMap<SPTEntry> map, int maxNodeId) {
+		SPTEntry[] tmpEntries = new SPTEntry[map.size()];
+		int size = 0;
+		for (IntObjectCursor<SPTEntry> entry : map) {
+			SPTEntry goalEdge = entry.value;
+			if (goalEdge.originalEdge == -1 || goalEdge.adjNode == -1 || goalEdge.adjNode > maxNodeId)
+				continue;
+			tmpEntries[size++] = goalEdge;
+		}
+		entries = Arrays.copyOf(tmpEntries, size);
+
+		sortedKeys = new long[size];
+		for (int i = 0; i < size; i++)
+			sortedKeys[i] = ((long) toSortableBits((float) entries[i].parent.weight) << 32) | i;
+		Arrays.sort(sortedKeys);
+	}
+
+	int size() {
+		return entries.length;
+	}
+
+	SPTEntry get(int index) {
+		return entries[index];
+	}
+
+	/**
+	 * @return positions of the entries whose parent cost is in [minCost, maxCost], in the iteration order of the tree
+	 */
+	int[] getEntries(double minCost, double maxCost) {
+		return collectEntries(lowerBound(minCost, false), lowerBound(maxCost, true));
+	}
+
+	/**
+	 * @return positions of the entries whose parent cost is in (minCost, maxCost], in the iteration order of the tree
+	 */
+	int[] getEntriesAbove(double minCost, double maxCost) {
+		return collectEntries(lowerBound(minCost, true), lowerBound(maxCost, true));
+	}
+
+	private int[] collectEntries(int from, int to) {
+		if (from >= to)
+			return new int[0];
+
+		int[] result = new int[to - from];
+		for (int i = from; i < to; i++)
+			result[i - from] = (int) sortedKeys[i];
+		Arrays.sort(result);
+		return result;
+	}
+
+	/**
+	 * @return position of the first sorted entry whose parent cost is not smaller (or, if inclusive, not smaller or
+	 * equal) than the given cost
+	 */
+	private int lowerBound(double cost, boolean inclusive) {
+		int low = 0;
+		int high = sortedKeys.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			double midCost = (float) entries[(int) sortedKeys[mid]].parent.weight;
+			if (midCost < cost || (inclusive && midCost == cost))
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+
+	/**
+	 * Maps a float to an int whose signed order equals the order of the floats.
+	 */
+	private static int toSortableBits(float value) {
+		int bits = Float.floatToIntBits(value);
+		return bits >= 0 ? bits : bits ^ 0x7FFFFFFF;
+	}
+}
@@ -0,0 +1,142 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the 
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1 
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library; 
+ *  if not, see <https://www.gnu.org/licenses/>.  
+ */
+package org.heigit.ors.isochrones.builders.marchingsquares;
+
+import java.util.Arrays;
+
+/**
+ * Regular lon/lat raster storing the lowest cost at which each cell can be reached. Unreached cells hold
+ * {@link Float#POSITIVE_INFINITY}. The cost of a cell is located at its centre.
+ */
+class CostGrid {
+	private final double minLon;
+	private final double minLat;
+	private final double cellWidth;
+	private final double cellHeight;
+	private final int width;
+	private final int height;
+	private float[] values;
+
+	/**
+	 * @param minLon     longitude of the western border of the grid
+	 * @param minLat     latitude of the southern border of the grid
+	 * @param cellWidth  width of a cell in degrees
+	 * @param cellHeight height of a cell in degrees
+	 * @param width      number of columns
+	 * @param height     number of rows
+	 */
+	CostGrid(double minLon, double minLat, double cellWidth, double cellHeight, int width, int height) {
+		this.minLon = minLon;
+		this.minLat = minLat;
+		this.cellWidth = cellWidth;
+		this.cellHeight = cellHeight;
+		this.width = width;
+		this.height = height;
+		values = new float[width * height];
+		Arrays.fill(values, Float.POSITIVE_INFINITY);
+	}
+
+	int getWidth() {
+		return width;
+	}
+
+	int getHeight() {
+		return height;
+	}
+
+	double getCellWidth() {
+		return cellWidth;
+	}
+
+	double getCellHeight() {
+		return cellHeight;
+	}
+
+	double getLon(double x) {
+		return minLon + (x + 0.5) * cellWidth;
+	}
+
+	double getLat(double y) {
+		return minLat + (y + 0.5) * cellHeight;
+	}
+
+	float getValue(int x, int y) {
+		return values[y * width + x];
+	}
+
+	void setValue(int x, int y, float value) {
+		values[y * width + x] = value;
+	}
+
+	/**
+	 * Lowers the cost of the cell containing the given location. Locations outside of the grid are ignored.
+	 */
+	void addPoint(double lon, double lat, float cost) {
+		int x = (int) Math.floor((lon - minLon) / cellWidth);
+		int y = (int) Math.floor((lat - minLat) / cellHeight);
+		if (x < 0 || y < 0 || x >= width || y >= height)
+			return;
+		int index = y * width + x;
+		if (cost < values[index])
+			values[index] = cost;
+	}
+
+	/**
+	 * Rasterises a line segment whose cost changes linearly from {@code cost0} at its start to {@code cost1} at its
+	 * end. The segment is sampled at least twice per cell so that no cell along it is skipped.
+	 */
+	void addSegment(double lon0, double lat0, double cost0, double lon1, double lat1, double cost1) {
+		double dx = (lon1 - lon0) / cellWidth;
+		double dy = (lat1 - lat0) / cellHeight;
+		int steps = (int) Math.ceil(2 * Math.max(Math.abs(dx), Math.abs(dy)));
+		if (steps == 0) {
+			addPoint(lon0, lat0, (float) Math.min(cost0, cost1));
+			return;
+		}
+		for (int i = 0; i <= steps; i++) {
+			double f = (double) i / steps;
+			addPoint(lon0 + f * (lon1 - lon0), lat0 + f * (lat1 - lat0), (float) (cost0 + f * (cost1 - cost0)));
+		}
+	}
+
+	/**
+	 * Extends every reached cell to the cells around it within {@code radius} cells, adding {@code costPerCell} for
+	 * each cell of distance. This closes the gaps between neighbouring roads and gives a single road a width.
+	 */
+	void spread(int radius, float costPerCell) {
+		if (radius <= 0)
+			return;
+
+		float[] result = Arrays.copyOf(values, values.length);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				float value = values[y * width + x];
+				if (value == Float.POSITIVE_INFINITY)
+					continue;
+				for (int oy = Math.max(-radius, -y); oy <= Math.min(radius, height - 1 - y); oy++) {
+					for (int ox = Math.max(-radius, -x); ox <= Math.min(radius, width - 1 - x); ox++) {
+						int sqDist = ox * ox + oy * oy;
+						if (sqDist > radius * radius)
+							continue;
+						float cost = value + (float) Math.sqrt(sqDist) * costPerCell;
+						int index = (y + oy) * width + x + ox;
+						if (cost < result[index])
+							result[index] = cost;
+					}
+				}
+			}
+		}
+		values = result;
+	}
+}
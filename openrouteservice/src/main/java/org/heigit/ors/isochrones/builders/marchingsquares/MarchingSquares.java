@@ -0,0 +1,188 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the 
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1 
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library; 
+ *  if not, see <https://www.gnu.org/licenses/>.  
+ */
+package org.heigit.ors.isochrones.builders.marchingsquares;
+
+import com.vividsolutions.jts.algorithm.CGAlgorithms;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.Polygon;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Extracts the contour polygons of a {@link CostGrid} with marching squares. The contours of all levels are traced
+ * in a single pass over the grid. Every contour segment is oriented such that the area inside of the level lies on
+ * its left, so that outer rings come out counter clockwise and holes clockwise. The cells at the border of the grid
+ * are expected to be unreached, otherwise contours touching the border are not closed and get lost.
+ */
+class MarchingSquares {
+	private final CostGrid grid;
+	private final GeometryFactory geometryFactory;
+	private final int width;
+
+	MarchingSquares(CostGrid grid, GeometryFactory geometryFactory) {
+		this.grid = grid;
+		this.geometryFactory = geometryFactory;
+		width = grid.getWidth();
+	}
+
+	/**
+	 * @param levels      costs of the contours
+	 * @param minHoleArea holes with a smaller area (in square degrees) are left out
+	 * @return the polygons enclosing the cells with a cost up to the level, for every level
+	 */
+	List<List<Polygon>> computeContours(double[] levels, double minHoleArea) {
+		int nLevels = levels.length;
+		int nEdges = 2 * width * grid.getHeight();
+		// for every level and lattice edge, the edge on which the contour segment starting on it ends
+		int[][] nextEdges = new int[nLevels][];
+		for (int l = 0; l < nLevels; l++) {
+			nextEdges[l] = new int[nEdges];
+			Arrays.fill(nextEdges[l], -1);
+		}
+
+		float[] corners = new float[4];
+		boolean[] inside = new boolean[4];
+		int[] edges = new int[4];
+
+		for (int y = 0; y < grid.getHeight() - 1; y++) {
+			for (int x = 0; x < width - 1; x++) {
+				// corners and edges in counter clockwise order starting at the lower left corner
+				corners[0] = grid.getValue(x, y);
+				corners[1] = grid.getValue(x + 1, y);
+				corners[2] = grid.getValue(x + 1, y + 1);
+				corners[3] = grid.getValue(x, y + 1);
+
+				edges[0] = horizontalEdge(x, y);
+				edges[1] = verticalEdge(x + 1, y);
+				edges[2] = horizontalEdge(x, y + 1);
+				edges[3] = verticalEdge(x, y);
+
+				for (int l = 0; l < nLevels; l++) {
+					int nInside = 0;
+					for (int k = 0; k < 4; k++) {
+						inside[k] = corners[k] <= levels[l];
+						if (inside[k])
+							nInside++;
+					}
+					if (nInside == 0 || nInside == 4)
+						continue;
+
+					boolean saddle = nInside == 2 && inside[0] == inside[2];
+					boolean centerInside = saddle && (corners[0] + corners[1] + corners[2] + corners[3]) / 4 <= levels[l];
+
+					for (int k = 0; k < 4; k++) {
+						// the contour leaves the cell where the edge goes from inside to outside
+						if (!inside[k] || inside[(k + 1) % 4])
+							continue;
+						int end;
+						if (saddle)
+							end = centerInside ? (k + 1) % 4 : (k + 3) % 4;
+						else {
+							end = (k + 1) % 4;
+							while (inside[end] || !inside[(end + 1) % 4])
+								end = (end + 1) % 4;
+						}
+						nextEdges[l][edges[k]] = edges[end];
+					}
+				}
+			}
+		}
+
+		List<List<Polygon>> result = new ArrayList<>(nLevels);
+		for (int l = 0; l < nLevels; l++)
+			result.add(buildPolygons(nextEdges[l], levels[l], minHoleArea));
+		return result;
+	}
+
+	private List<Polygon> buildPolygons(int[] nextEdges, double level, double minHoleArea) {
+		List<LinearRing> shells = new ArrayList<>();
+		List<LinearRing> holes = new ArrayList<>();
+
+		for (int start = 0; start < nextEdges.length; start++) {
+			if (nextEdges[start] == -1)
+				continue;
+
+			List<Coordinate> coords = new ArrayList<>();
+			int edge = start;
+			while (edge != -1 && nextEdges[edge] != -1) {
+				coords.add(getCrossing(edge, level));
+				int next = nextEdges[edge];
+				nextEdges[edge] = -1;
+				edge = next;
+			}
+			if (coords.size() < 3)
+				continue;
+			coords.add(new Coordinate(coords.get(0)));
+
+			Coordinate[] ring = coords.toArray(new Coordinate[0]);
+			if (CGAlgorithms.isCCW(ring))
+				shells.add(geometryFactory.createLinearRing(ring));
+			else if (Math.abs(CGAlgorithms.signedArea(ring)) >= minHoleArea)
+				holes.add(geometryFactory.createLinearRing(ring));
+		}
+
+		// every hole belongs to the smallest outer ring containing it
+		double[] shellAreas = new double[shells.size()];
+		List<List<LinearRing>> shellHoles = new ArrayList<>(shells.size());
+		for (int i = 0; i < shells.size(); i++) {
+			shellAreas[i] = Math.abs(CGAlgorithms.signedArea(shells.get(i).getCoordinates()));
+			shellHoles.add(new ArrayList<>());
+		}
+		for (LinearRing hole : holes) {
+			Coordinate p = hole.getCoordinateN(0);
+			int owner = -1;
+			for (int i = 0; i < shells.size(); i++) {
+				LinearRing shell = shells.get(i);
+				if ((owner == -1 || shellAreas[i] < shellAreas[owner]) && shell.getEnvelopeInternal().contains(p) && CGAlgorithms.isPointInRing(p, shell.getCoordinates()))
+					owner = i;
+			}
+			if (owner != -1)
+				shellHoles.get(owner).add(hole);
+		}
+
+		List<Polygon> polygons = new ArrayList<>(shells.size());
+		for (int i = 0; i < shells.size(); i++)
+			polygons.add(geometryFactory.createPolygon(shells.get(i), shellHoles.get(i).toArray(new LinearRing[0])));
+		return polygons;
+	}
+
+	private Coordinate getCrossing(int edge, double level) {
+		int vertex = edge >> 1;
+		int x = vertex % width;
+		int y = vertex / width;
+		boolean horizontal = (edge & 1) == 0;
+		int x1 = horizontal ? x + 1 : x;
+		int y1 = horizontal ? y : y + 1;
+
+		float value0 = grid.getValue(x, y);
+		float value1 = grid.getValue(x1, y1);
+		double t = 0.5;
+		if (value0 != Float.POSITIVE_INFINITY && value1 != Float.POSITIVE_INFINITY && value0 != value1)
+			t = Math.max(0, Math.min(1, (level - value0) / (value1 - value0)));
+
+		return new Coordinate(grid.getLon(x + t * (x1 - x)), grid.getLat(y + t * (y1 - y)));
+	}
+
+	private int horizontalEdge(int x, int y) {
+		return 2 * (y * width + x);
+	}
+
+	private int verticalEdge(int x, int y) {
+		return 2 * (y * width + x) + 1;
+	}
+}
@@ -0,0 +1,258 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the 
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1 
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library; 
+ *  if not, see <https://www.gnu.org/licenses/>.  
+ */
+package org.heigit.ors.isochrones.builders.marchingsquares;
+
+import com.carrotsearch.hppc.IntObjectMap;
+import com.carrotsearch.hppc.cursors.IntObjectCursor;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.storage.SPTEntry;
+import com.graphhopper.util.DistanceCalc;
+import com.graphhopper.util.DistanceCalcEarth;
+import com.graphhopper.util.DistancePlaneProjection;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.PointList;
+import com.graphhopper.util.StopWatch;
+import com.graphhopper.util.shapes.GHPoint3D;
+import com.vividsolutions.jts.algorithm.CGAlgorithms;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Polygon;
+import org.apache.log4j.Logger;
+import org.heigit.ors.common.TravelRangeType;
+import org.heigit.ors.isochrones.GraphEdgeMapFinder;
+import org.heigit.ors.isochrones.Isochrone;
+import org.heigit.ors.isochrones.IsochroneMap;
+import org.heigit.ors.isochrones.IsochroneSearchParameters;
+import org.heigit.ors.isochrones.builders.IsochroneMapBuilder;
+import org.heigit.ors.routing.RouteSearchContext;
+import org.heigit.ors.routing.graphhopper.extensions.AccessibilityMap;
+import org.heigit.ors.routing.graphhopper.extensions.flagencoders.FootFlagEncoder;
+import org.heigit.ors.routing.graphhopper.extensions.flagencoders.HikeFlagEncoder;
+import org.heigit.ors.routing.graphhopper.extensions.flagencoders.ORSAbstractFlagEncoder;
+import org.heigit.ors.routing.graphhopper.extensions.flagencoders.WheelchairFlagEncoder;
+
+import java.util.List;
+
+/**
+ * Builds isochrones by rasterising the costs of the reached edges onto a regular grid and tracing the contours of all
+ * ranges with marching squares. Unlike the concave hull of {@link
+ * org.heigit.ors.isochrones.builders.concaveballs.ConcaveBallsIsochroneMapBuilder} the effort of the contouring only
+ * depends on the size of the grid, which is limited, and not on the number of reached edges.
+ */
+public class MarchingSquaresIsochroneMapBuilder implements IsochroneMapBuilder {
+	private static final Logger LOGGER = Logger.getLogger(MarchingSquaresIsochroneMapBuilder.class.getName());
+
+	private static final int MAX_GRID_SIZE = 500;
+	private static final double MIN_CELL_SIZE = 25; // meters
+	private static final int DEFAULT_SPREAD = 2; // cells
+	// speed assumed for leaving the road network (in m/s), it limits how far a reached cell spreads for time ranges
+	private static final double OFF_NETWORK_SPEED = 1.4;
+	private static final int MIN_HOLE_CELLS = 16;
+
+	private GeometryFactory geometryFactory;
+	private RouteSearchContext searchContext;
+	private double cellSize; // meters
+
+	public void initialize(RouteSearchContext searchContext) {
+		geometryFactory = new GeometryFactory();
+		this.searchContext = searchContext;
+	}
+
+	public IsochroneMap compute(IsochroneSearchParameters parameters) throws Exception {
+		StopWatch swTotal = null;
+		StopWatch sw = null;
+		if (LOGGER.isDebugEnabled()) {
+			swTotal = new StopWatch();
+			swTotal.start();
+			sw = new StopWatch();
+			sw.start();
+		}
+
+		GraphHopperStorage graph = searchContext.getGraphHopper().getGraphHopperStorage();
+
+		double maxSpeed = searchContext.getEncoder().getMaxSpeed();
+		if (searchContext.getEncoder() instanceof FootFlagEncoder || searchContext.getEncoder() instanceof HikeFlagEncoder) {
+			// in the GH FootFlagEncoder, the maximum speed is set to 15km/h which is way too high
+			maxSpeed = 4;
+		}
+		if (searchContext.getEncoder() instanceof WheelchairFlagEncoder) {
+			maxSpeed = WheelchairFlagEncoder.MEAN_SPEED;
+		}
+		double meanSpeed = maxSpeed;
+		if (searchContext.getEncoder() instanceof ORSAbstractFlagEncoder) {
+			meanSpeed = ((ORSAbstractFlagEncoder) searchContext.getEncoder()).getMeanSpeed();
+		}
+
+		AccessibilityMap edgeMap = GraphEdgeMapFinder.findEdgeMap(searchContext, parameters);
+
+		GHPoint3D point = edgeMap.getSnappedPosition();
+		Coordinate loc = (point == null) ? parameters.getLocation() : new Coordinate(point.lon, point.lat);
+
+		IsochroneMap isochroneMap = new IsochroneMap(parameters.getTravellerId(), loc);
+		isochroneMap.setGraphDate(graph.getProperties().get("datareader.import.date"));
+
+		if (LOGGER.isDebugEnabled()) {
+			sw.stop();
+			LOGGER.debug("Find edges: " + sw.getSeconds());
+			sw = new StopWatch();
+			sw.start();
+		}
+
+		if (edgeMap.isEmpty())
+			return isochroneMap;
+
+		double maxRange = parameters.getMaximumRange();
+		int spread = parameters.getSmoothingFactor() == -1 ? DEFAULT_SPREAD : 1 + Math.round(parameters.getSmoothingFactor() / 25);
+
+		CostGrid grid = createGrid(edgeMap, loc, maxRange, spread);
+		rasterizeEdges(edgeMap, grid, maxRange);
+		float costPerCell = (float) (parameters.getRangeType() == TravelRangeType.DISTANCE ? cellSize : cellSize / OFF_NETWORK_SPEED);
+		grid.spread(spread, costPerCell);
+
+		if (LOGGER.isDebugEnabled()) {
+			sw.stop();
+			LOGGER.debug("Rasterise " + grid.getWidth() + "x" + grid.getHeight() + " grid: " + sw.getSeconds());
+			sw = new StopWatch();
+			sw.start();
+		}
+
+		double[] ranges = parameters.getRanges();
+		List<List<Polygon>> contours = new MarchingSquares(grid, geometryFactory).computeContours(ranges, MIN_HOLE_CELLS * grid.getCellWidth() * grid.getCellHeight());
+
+		// only needed for reachfactor property
+		double meanMetersPerSecond = meanSpeed / 3.6;
+
+		for (int i = 0; i < ranges.length; i++) {
+			Polygon poly = selectPolygon(contours.get(i), loc);
+			if (poly == null)
+				continue;
+
+			double meanRadius = parameters.getRangeType() == TravelRangeType.DISTANCE ? ranges[i] : meanMetersPerSecond * ranges[i];
+			isochroneMap.addIsochrone(new Isochrone(poly, ranges[i], meanRadius));
+		}
+
+		if (LOGGER.isDebugEnabled()) {
+			sw.stop();
+			LOGGER.debug("Trace contours: " + sw.getSeconds());
+			LOGGER.debug("Total time: " + swTotal.stop().getSeconds());
+		}
+
+		return isochroneMap;
+	}
+
+	/**
+	 * Creates a grid covering all nodes reached within the maximum range. Its resolution is chosen such that the larger
+	 * side has at most {@link #MAX_GRID_SIZE} cells, and it gets a border of unreached cells so that all contours are
+	 * closed.
+	 */
+	private CostGrid createGrid(AccessibilityMap edgeMap, Coordinate loc, double maxRange, int spread) {
+		NodeAccess nodeAccess = searchContext.getGraphHopper().getGraphHopperStorage().getNodeAccess();
+		int maxNodeId = searchContext.getGraphHopper().getGraphHopperStorage().getNodes();
+
+		Envelope env = new Envelope(loc);
+		for (IntObjectCursor<SPTEntry> entry : edgeMap.getMap()) {
+			SPTEntry goalEdge = entry.value;
+			if (!isValid(goalEdge, maxNodeId) || goalEdge.parent.weight > maxRange)
+				continue;
+			env.expandToInclude(nodeAccess.getLon(goalEdge.adjNode), nodeAccess.getLat(goalEdge.adjNode));
+			if (goalEdge.parent.adjNode >= 0 && goalEdge.parent.adjNode < maxNodeId)
+				env.expandToInclude(nodeAccess.getLon(goalEdge.parent.adjNode), nodeAccess.getLat(goalEdge.parent.adjNode));
+		}
+
+		double metersPerDegree = Math.toRadians(DistanceCalcEarth.R);
+		double cosLat = Math.max(0.01, Math.cos(Math.toRadians(env.centre().y)));
+		double extent = Math.max(env.getWidth() * cosLat, env.getHeight()) * metersPerDegree;
+		cellSize = Math.max(MIN_CELL_SIZE, extent / MAX_GRID_SIZE);
+
+		double cellHeight = cellSize / metersPerDegree;
+		double cellWidth = cellHeight / cosLat;
+		// edges leaving the envelope end within the spread, the remaining cells stay unreached
+		int border = spread + 2;
+		int width = (int) Math.ceil(env.getWidth() / cellWidth) + 2 * border;
+		int height = (int) Math.ceil(env.getHeight() / cellHeight) + 2 * border;
+
+		return new CostGrid(env.getMinX() - border * cellWidth, env.getMinY() - border * cellHeight, cellWidth, cellHeight, width, height);
+	}
+
+	private void rasterizeEdges(AccessibilityMap edgeMap, CostGrid grid, double maxRange) {
+		GraphHopperStorage graph = searchContext.getGraphHopper().getGraphHopperStorage();
+		int maxNodeId = graph.getNodes();
+		DistanceCalc dcFast = new DistancePlaneProjection();
+		IntObjectMap<SPTEntry> map = edgeMap.getMap();
+
+		for (IntObjectCursor<SPTEntry> entry : map) {
+			SPTEntry goalEdge = entry.value;
+			if (!isValid(goalEdge, maxNodeId))
+				continue;
+
+			double minCost = goalEdge.parent.weight;
+			double maxCost = goalEdge.weight;
+			if (minCost > maxRange)
+				continue;
+
+			EdgeIteratorState iter = graph.getEdgeIteratorState(goalEdge.originalEdge, goalEdge.adjNode);
+			// the geometry starts at the parent node, which is reached at the lower cost
+			PointList pl = iter.fetchWayGeometry(3);
+			int size = pl.getSize();
+			if (size == 0)
+				continue;
+
+			double edgeDist = iter.getDistance();
+			double costPerMeter = edgeDist > 0 ? (maxCost - minCost) / edgeDist : 0;
+			double lat0 = pl.getLat(0);
+			double lon0 = pl.getLon(0);
+			double cost0 = minCost;
+			if (size == 1)
+				grid.addPoint(lon0, lat0, (float) cost0);
+
+			for (int i = 1; i < size && cost0 <= maxRange; ++i) {
+				double lat1 = pl.getLat(i);
+				double lon1 = pl.getLon(i);
+				double cost1 = i == size - 1 ? maxCost : Math.min(maxCost, cost0 + dcFast.calcDist(lat0, lon0, lat1, lon1) * costPerMeter);
+
+				grid.addSegment(lon0, lat0, cost0, lon1, lat1, cost1);
+
+				lat0 = lat1;
+				lon0 = lon1;
+				cost0 = cost1;
+			}
+		}
+	}
+
+	/**
+	 * An isochrone consists of a single polygon, which is the one containing the start location or else the largest one.
+	 * Other polygons are areas which are only reached through roads that are too thin for the grid resolution.
+	 */
+	private Polygon selectPolygon(List<Polygon> polygons, Coordinate loc) {
+		Polygon result = null;
+		double maxArea = 0;
+		for (Polygon poly : polygons) {
+			Coordinate[] shell = poly.getExteriorRing().getCoordinates();
+			if (poly.getEnvelopeInternal().contains(loc) && CGAlgorithms.isPointInRing(loc, shell))
+				return poly;
+			double area = poly.getArea();
+			if (result == null || area > maxArea) {
+				result = poly;
+				maxArea = area;
+			}
+		}
+		return result;
+	}
+
+	private static boolean isValid(SPTEntry goalEdge, int maxNodeId) {
+		return goalEdge.originalEdge != -1 && goalEdge.adjNode != -1 && goalEdge.adjNode < maxNodeId && goalEdge.parent != null;
+	}
+}
@@ -64,6 +64,18 @@ public class LocationIndexMatch extends LocationIndexTree {
     }
 
     public List<QueryResult> findNClosest(final double queryLat, final double queryLon, final EdgeFilter edgeFilter) {
+        return findNClosestWithin(queryLat, queryLon, edgeFilter, returnAllResultsWithin);
+    }
+
+    /**
+     * Same as {@link #findNClosest(double, double, EdgeFilter)}, but the accuracy is given per call, so that a single
+     * index can be shared between concurrent requests.
+     */
+    public List<QueryResult> findNClosest(final double queryLat, final double queryLon, final EdgeFilter edgeFilter, double gpxAccuracyInMetern) {
+        return findNClosestWithin(queryLat, queryLon, edgeFilter, distCalc.calcNormalizedDist(gpxAccuracyInMetern));
+    }
+
+    private List<QueryResult> findNClosestWithin(final double queryLat, final double queryLon, final EdgeFilter edgeFilter, final double returnAllResultsWithin) {
     	 // implement a cheap priority queue via List, sublist and Collections.sort
         final List<QueryResult> queryResults = new ArrayList<>();
         GHIntHashSet set = new GHIntHashSet();
@@ -26,4 +26,11 @@ public interface MapMatcher {
 	public void setGraphHopper(GraphHopper gh);
 	
 	public RouteSegmentInfo[] match(Coordinate[] locations, boolean bothDirections);
+
+	/**
+	 * Matches the given GPS locations to positions on the road network.
+	 *
+	 * @return one position per location, null for locations which could not be matched or have been left out
+	 */
+	public Coordinate[] matchLocations(Coordinate[] locations);
 }
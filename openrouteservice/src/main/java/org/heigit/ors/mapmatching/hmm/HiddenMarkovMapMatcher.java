@@ -13,25 +13,32 @@
  */
 package org.heigit.ors.mapmatching.hmm;
 
-import com.graphhopper.GHRequest;
-import com.graphhopper.GHResponse;
+import com.carrotsearch.hppc.IntArrayList;
 import com.graphhopper.GraphHopper;
-import com.graphhopper.PathWrapper;
-import com.graphhopper.routing.EdgeIteratorStateHelper;
+import com.graphhopper.routing.QueryGraph;
 import com.graphhopper.routing.util.DefaultEdgeFilter;
 import com.graphhopper.routing.util.EdgeFilter;
 import com.graphhopper.routing.util.FlagEncoder;
-import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.ShortestWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.SPTEntry;
+import com.graphhopper.storage.index.LocationIndexTree;
 import com.graphhopper.storage.index.QueryResult;
 import com.graphhopper.util.DistanceCalc;
 import com.graphhopper.util.DistanceCalcEarth;
+import com.graphhopper.util.shapes.GHPoint3D;
 import com.vividsolutions.jts.geom.Coordinate;
 import org.heigit.ors.mapmatching.AbstractMapMatcher;
 import org.heigit.ors.mapmatching.LocationIndexMatch;
 import org.heigit.ors.mapmatching.RouteSegmentInfo;
+import org.heigit.ors.routing.algorithms.DijkstraOneToManyAlgorithm;
 import org.heigit.ors.routing.graphhopper.extensions.ORSGraphHopper;
+import org.heigit.ors.services.mapmatching.MapMatchingServiceSettings;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /*
@@ -39,55 +46,35 @@ import java.util.List;
  * 
  * http://research.microsoft.com/en-us/um/people/jckrumm/Publications%202009/map%20matching%20ACM%20GIS%20camera%20ready.pdf
  * 
+ * The trace is processed in chunks of observations. The candidates of a chunk are inserted into a query graph and the
+ * route distances between the candidates of consecutive observations are computed by a one-to-many Dijkstra per
+ * candidate, which is bounded by the distance between the observations. Only reachable candidates are connected, the
+ * resulting sparse transitions are fed into a {@link ViterbiSolver}.
+ * 
+ * The instance keeps the settings of a single request, a {@link LocationIndexMatch} can be shared between instances.
  * */
 public class HiddenMarkovMapMatcher extends AbstractMapMatcher {
+	private static final int CHUNK_SIZE = 32;
+
+	private static final double SIGMA_Z = 4.07; // sigma_z(z, x); this value is taken from a paper by Newson and Krumm
+	private static final double BETA = 2.0; // beta(z, x) in meters
+	private static final double LOG_EMISSION_NORMALIZER = Math.log(Math.sqrt(2 * Math.PI) * SIGMA_Z); // see Equation 1
+	private static final double LOG_BETA = Math.log(BETA); // see Equation 2
+	private static final double MAX_DETOUR_FACTOR = 2.0;
 
-	private DistanceCalc distCalcEarth = new DistanceCalcEarth(); // DistancePlaneProjection
+	private DistanceCalc distCalcEarth = new DistanceCalcEarth();
 	private LocationIndexMatch locationIndex;
 	private FlagEncoder encoder;
-	private List<MatchPoint> matchPoints = new ArrayList<>(2);
-	private List<Integer> roadSegments = new ArrayList<>();
-	
-	private static double sigmaZ = 4.07;// sigma_z(z, x); this value is taken from a paper by Newson and Krumm
-	private static double beta =  0.00959442; // beta(z, x)
-	private static double denom = Math.sqrt(2 * Math.PI) * sigmaZ; // see Equation 1
-	
-	private double[] distances = new double[2];
-	private double[] longitudes = new double[2];
-	private double[] latitudes = new double[2];
-
-	
-	@SuppressWarnings("serial")
-	private static class MatchPoint extends Coordinate {
-		int segmentId;
-		double distanceVal;
-		int measuredPointIndex;
-
-		MatchPoint(double lat, double lon) {
-			super(lat, lon);
-		}
+	private Graph graph;
 
-		@Override
-		public boolean equals(Object obj) {
-			if (obj == null)
-				return false;
-			if (getClass() != obj.getClass())
-				return false;
-			final MatchPoint other = (MatchPoint) obj;
-			return toString().equals(other.toString());
-		}
-
-		@Override
-		public int hashCode() {
-			return ("MatchPoint" + toString()).hashCode();
-		}
+	public HiddenMarkovMapMatcher() {
 	}
 
-	@Override
-	public void setSearchRadius(double radius) {
-		searchRadius = radius;
-		if (locationIndex != null)
-			locationIndex.setGpxAccuracy(radius);
+	public HiddenMarkovMapMatcher(GraphHopper gh, LocationIndexMatch locationIndex) {
+		graphHopper = gh;
+		encoder = gh.getEncodingManager().fetchEdgeEncoders().get(0);
+		graph = gh.getGraphHopperStorage().getBaseGraph();
+		this.locationIndex = locationIndex;
 	}
 
 	@Override
@@ -95,78 +82,29 @@ public class HiddenMarkovMapMatcher extends AbstractMapMatcher {
 		graphHopper = gh;
 
 		encoder = gh.getEncodingManager().fetchEdgeEncoders().get(0);
-		GraphHopperStorage graph = gh.getGraphHopperStorage();
-		locationIndex = new LocationIndexMatch(graph,
-				(com.graphhopper.storage.index.LocationIndexTree) gh.getLocationIndex(), (int) searchRadius);
+		graph = gh.getGraphHopperStorage().getBaseGraph();
+		locationIndex = new LocationIndexMatch(gh.getGraphHopperStorage(),
+				(LocationIndexTree) gh.getLocationIndex(), (int) searchRadius);
 	}
 
 	@Override
 	public RouteSegmentInfo[] match(Coordinate[] locations, boolean bothDirections) {
-		EdgeFilter edgeFilter = this.edgeFilter == null ? DefaultEdgeFilter.allEdges(encoder) : this.edgeFilter;
-
-		boolean bPreciseMode = false;
-		int nPoints = locations.length;
-		Coordinate[] z = locations;
-		int nZ = z.length;
-		int nR = 0;
-		matchPoints.clear();
-		roadSegments.clear();
-		
-		// Phase I: We are looking for the nearest road segments
-		MatchPoint[][] x = new MatchPoint[nZ][];
-		double searchRadius = this.searchRadius;
-		
-		for (int i = 0; i < nPoints; i++) {
-			Coordinate zt = z[i];
-			this.searchRadius = (bPreciseMode && i == 1) ? 50 : searchRadius;
-				
-			MatchPoint[] xi = findNearestPoints(zt.y, zt.x, i, edgeFilter, matchPoints, roadSegments);
-
-			if (xi == null)
-				return new RouteSegmentInfo[]{};
-
-			x[i] = xi;
-		}
-		
-		this.searchRadius = searchRadius;
-
-		nR += roadSegments.size();
-
-		if (nR == 0)
-			return new RouteSegmentInfo[] {};
-
-		double[][] transProbs = new double[nR][nR];
-		double[][] emissionProbs = new double[nR][nZ];
-		double[] startProbs = new double[nR];
-
-		RouteSegmentInfo seg1 = findRouteSegments(z, x, nR, nZ, startProbs, emissionProbs, transProbs);
+		RouteSegmentInfo seg1 = findRouteSegment(locations);
 		RouteSegmentInfo seg2 = null;
-		
+
 		if (bothDirections) {
-			startProbs = new double[nR];
+			int nZ = locations.length;
+			Coordinate[] reversed = new Coordinate[nZ];
+			for (int i = 0; i < nZ; i++)
+				reversed[i] = locations[nZ - i - 1];
 
-			for (int i = 0; i < nZ / 2; i++) {
-				Coordinate tempZ = z[i];
-				z[i] = z[nZ - i - 1];
-				z[nZ - i - 1] = tempZ;
+			seg2 = findRouteSegment(reversed);
+		}
 
-				MatchPoint[] tempX = x[i];
-				x[i] = x[nZ - i - 1];
-				x[nZ - i - 1] = tempX;
-			}
-			
-			for (int t = 0; t < nZ; t++) {
-				int nRI = x[t].length;
-				
-				for (int i = 0; i < nRI; i++) {
-					x[t][i].measuredPointIndex = t;
-				}
-			}
+		if (seg1 == null && seg2 == null)
+			return new RouteSegmentInfo[] {};
 
-			seg2 = findRouteSegments(z, x, nR, nZ, startProbs, emissionProbs, transProbs);
-		}
-		
-		if (seg1 !=  null && seg2 != null) {
+		if (seg1 != null && seg2 != null) {
 			double koef = 1.1;
 			if (seg1.getDistance() < 100)
 				koef = 1.2;
@@ -174,7 +112,7 @@ public class HiddenMarkovMapMatcher extends AbstractMapMatcher {
 				koef = 1.25;
 			// Remove unneeded loops. see example
 			// 53856-53857
-			
+
 			if (seg1.getDistance() > seg2.getDistance()) {
 				if (seg1.getDistance() > koef * seg2.getDistance())
 					seg1 = null;
@@ -183,7 +121,7 @@ public class HiddenMarkovMapMatcher extends AbstractMapMatcher {
 					seg2 = null;
 			}
 		}
-		
+
 		RouteSegmentInfo[] result = new RouteSegmentInfo[2];
 		if (seg1 != null) {
 			result[0] = seg1;
@@ -194,184 +132,165 @@ public class HiddenMarkovMapMatcher extends AbstractMapMatcher {
 		return result;
 	}
 
-	private RouteSegmentInfo findRouteSegments(Coordinate[] z, MatchPoint[][] x, int nR, int nZ, double[] startProbs, double[][] emissionProbs, double[][] transProbs) {
-		// Phase II: Compute distances, probabilities, etc.
-
-		double v;
-		double dist;
-		Coordinate z0 = z[0];
-		
-		double defaultProbability = 0.0;
-		double distThreshold = 250;
-        
-		for (int t = 0; t < nZ; t++) {
-			int nRI = x[t].length;
-			
-			for (int i = 0; i < nRI; i++) {
-				MatchPoint xi = x[t][i];
-				int ri = xi.segmentId;
-				dist = xi.distanceVal;// distCalcEarth.calcDist(zt.lat, zt.lon, xi.lat, xi.lon)
-				if (dist > distThreshold)
-					emissionProbs[ri][t] = defaultProbability;
-				else {
-					v = dist / sigmaZ;
-					emissionProbs[ri][t] = Math.exp(-0.5 * v * v) / denom;
-				}
-
-				if (startProbs[ri] == 0.0) {
-					dist = distCalcEarth.calcDist(z0.y, z0.x, xi.y, xi.x) / sigmaZ;
-					if (dist > distThreshold || xi.measuredPointIndex != 0)
-						startProbs[ri] = defaultProbability;
-					else {
-						v = dist / sigmaZ;
-						startProbs[ri] = Math.exp(-0.5 * v * v) / denom;
-					}
-				}
+	private RouteSegmentInfo findRouteSegment(Coordinate[] locations) {
+		Coordinate[] matched = matchLocations(locations);
+
+		int nPoints = 0;
+		double[] latitudes = new double[matched.length];
+		double[] longitudes = new double[matched.length];
+		for (Coordinate c : matched) {
+			if (c != null) {
+				latitudes[nPoints] = c.y;
+				longitudes[nPoints] = c.x;
+				nPoints++;
 			}
 		}
-		
-		if (z.length > distances.length)
-			distances = new double[z.length];
-		
-		for (int i = 0; i < z.length - 1 ; i++) {
-			Coordinate zt = z[i];
-			Coordinate zt1 = z[i+1];
-			distances[i] = distCalcEarth.calcDist(zt.y, zt.x, zt1.y, zt1.x);
+
+		if (nPoints < 2)
+			return null;
+
+		if (nPoints < matched.length) {
+			latitudes = Arrays.copyOf(latitudes, nPoints);
+			longitudes = Arrays.copyOf(longitudes, nPoints);
 		}
-		
-		distances[z.length - 1] = distances[0];
-		
-		double perfTime = (distances[0]/encoder.getMaxSpeed())*3600;
-		
-		for (int i = 0; i < nR; i++) {
-		    MatchPoint xi = matchPoints.get(i);
-			
-			for (int j = 0; j < nR; j++) {
-				
-				double value = defaultProbability;
-				
-				if (i != j) {
-					MatchPoint xj = matchPoints.get(j);
-				 
-					// check the order of points from 0 -> 1
-					if (xi.measuredPointIndex < xj.measuredPointIndex) {
-						//Point zt = z[xi.measuredPointIndex]
-						//Point zt1 = z[xj.measuredPointIndex]
-						double dz = distances[xi.measuredPointIndex]; // distCalcEarth.calcDist(zt.lat, zt.lon, zt1.lat, zt1.lon)
-				
-						GHRequest req = new GHRequest(xi.y, xi.x, xj.y, xj.x);
-						req.getHints().put("ch.disable", true);
-						req.getHints().put("lm.disable", true);
-						req.setAlgorithm("dijkstrabi"); 
-						
-						try {
-							GHResponse resp = graphHopper.route(req);
-						
-							if (!resp.hasErrors()) {
-								PathWrapper path = resp.getBest();
-								/*
-								double dx = resp.getDistance()
-								double dt = Math.abs(dz - dx)
-                                								
-								value = exponentialDistribution(100*beta, dt);  // Equation 2
-								*/
-								
-								double dx = path.getDistance();
-								double dt = Math.abs(dz - dx)/distances[0]; // normalize 
-
-								double time = path.getTime();
-								//(distances[0]/1000/encoder.getMaxSpeed())*60*60*1000
-                                double dt2 = Math.abs(time - perfTime)/perfTime;
-                                								
-								value = exponentialDistribution(beta, 0.2*dt + 0.8*dt2); 
-							}
-						} catch(Exception ex) {
-							// do nothing
-						}
-					}
-				}
-				
-				transProbs[i][j] = value;
+
+		return ((ORSGraphHopper) graphHopper).getRouteSegment(latitudes, longitudes, encoder.toString());
+	}
+
+	@Override
+	public Coordinate[] matchLocations(Coordinate[] locations) {
+		EdgeFilter filter = edgeFilter == null ? DefaultEdgeFilter.allEdges(encoder) : edgeFilter;
+		Weighting weighting = new ShortestWeighting(encoder);
+
+		int nZ = locations.length;
+		MatchCandidates candidates = new MatchCandidates(nZ);
+		ViterbiSolver viterbi = new ViterbiSolver(nZ);
+		double[] emissions = new double[16];
+		int lastObservation = -1;
+
+		for (int chunkStart = 0; chunkStart < nZ; chunkStart += CHUNK_SIZE) {
+			int chunkEnd = Math.min(nZ, chunkStart + CHUNK_SIZE);
+			List<QueryResult> queryResults = new ArrayList<>();
+			IntArrayList observations = new IntArrayList();
+			IntArrayList offsets = new IntArrayList();
+
+			// the last observation of the previous chunk is looked up again, its candidates are the sources of the
+			// transitions to the first observation of this chunk
+			int firstNewStep = 0;
+			if (lastObservation >= 0) {
+				observations.add(lastObservation);
+				offsets.add(0);
+				findCandidates(locations[lastObservation], filter, queryResults);
+				firstNewStep = 1;
 			}
-		}
 
-		// Phase III: Apply Viterbi algorithm to find the path through the
-		// lattice that maximizes the product of the measurement probabilities
-		// and transition probabilities
+			for (int t = chunkStart; t < chunkEnd; t++) {
+				Coordinate zt = locations[t];
 
-		int[] bestPath = ViterbiSolver.findPath(startProbs, transProbs, emissionProbs, true);
+				// observations too close to the previous one do not carry any information, see section 4.1 of the paper
+				if (lastObservation >= 0 && t < nZ - 1) {
+					Coordinate zp = locations[lastObservation];
+					if (distCalcEarth.calcDist(zp.y, zp.x, zt.y, zt.x) < 2 * SIGMA_Z)
+						continue;
+				}
 
-		ORSGraphHopper gh = (ORSGraphHopper) graphHopper;
-		
-		RouteSegmentInfo res;
+				int offset = queryResults.size();
+				findCandidates(zt, filter, queryResults);
+				if (queryResults.size() == offset)
+					continue;
 
-		if (nZ > latitudes.length) {
-		   latitudes = new double[nZ];
-		   longitudes = new double[nZ];
-		}
+				for (int i = offset; i < queryResults.size(); i++) {
+					GHPoint3D snappedPoint = queryResults.get(i).getSnappedPoint();
+					candidates.add(t, snappedPoint.getLat(), snappedPoint.getLon());
+				}
 
-		if (bestPath[0] != bestPath[1]) {
-			for (int i = 0; i < nZ; i++) {
-				MatchPoint mp = matchPoints.get(bestPath[i]);
-				latitudes[i] = mp.y;
-				longitudes[i] = mp.x;
+				observations.add(t);
+				offsets.add(offset);
+				lastObservation = t;
 			}
-		} else {
-			for (int i = 0; i < nZ; i++) {
-				latitudes[i] = z[i].y;
-				longitudes[i] = z[i].x;
+			offsets.add(queryResults.size());
+
+			if (observations.size() == firstNewStep)
+				continue;
+
+			QueryGraph queryGraph = new QueryGraph(graph);
+			queryGraph.lookup(queryResults);
+
+			for (int step = firstNewStep; step < observations.size(); step++) {
+				int observation = observations.get(step);
+				int first = offsets.get(step);
+				int count = offsets.get(step + 1) - first;
+
+				if (emissions.length < count)
+					emissions = new double[count];
+				for (int i = 0; i < count; i++) {
+					double v = queryResults.get(first + i).getQueryDistance() / SIGMA_Z;
+					emissions[i] = -LOG_EMISSION_NORMALIZER - 0.5 * v * v;
+				}
+
+				viterbi.startStep(observation, candidates.getFirst(observation), emissions, count);
+				if (step > 0)
+					addTransitions(queryGraph, weighting, locations, observations, offsets, queryResults, step, viterbi);
+				viterbi.finishStep();
 			}
 		}
 
-		res = gh.getRouteSegment(latitudes, longitudes, encoder.toString());
-		
-		return res;
+		int[] path = viterbi.getPath();
+		Coordinate[] result = new Coordinate[nZ];
+		for (int t = 0; t < nZ; t++) {
+			int candidate = path[t];
+			if (candidate >= 0)
+				result[t] = new Coordinate(candidates.getLongitude(candidate), candidates.getLatitude(candidate));
+		}
+		return result;
 	}
-	
-	static double exponentialDistribution(double beta, double x) {
-        return 1.0 / beta * Math.exp(-x / beta); 
-    }
-	
-	private MatchPoint[] findNearestPoints(double lat, double lon, int measuredPointIndex, EdgeFilter edgeFilter, List<MatchPoint> matchPoints,
-			List<Integer> roadSegments) {
-		List<QueryResult> qResults = locationIndex.findNClosest(lat, lon, edgeFilter);
-		if (qResults.isEmpty())
-			return new MatchPoint[] {};
-
-		int nMatchPoints = matchPoints.size();
-
-		for (int matchIndex = 0; matchIndex < qResults.size(); matchIndex++) {
-			QueryResult qr = qResults.get(matchIndex);
-
-			double spLat = qr.getSnappedPoint().getLat();
-			double spLon = qr.getSnappedPoint().getLon();
-			double distance = distCalcEarth.calcDist(qr.getQueryPoint().getLat(), qr.getQueryPoint().getLon(), spLat,
-					spLon);
-
-			if (distance <= searchRadius) {
-				
-				int edgeId = EdgeIteratorStateHelper.getOriginalEdge(qr.getClosestEdge());
-
-				if (!roadSegments.contains(edgeId))
-					roadSegments.add(edgeId);
-
-				MatchPoint mp = new MatchPoint(spLat, spLon);
-				mp.distanceVal = distance;
-                mp.segmentId = roadSegments.indexOf(edgeId);
-                mp.measuredPointIndex = measuredPointIndex;
-
-				matchPoints.add(mp);
+
+	/**
+	 * Computes the route distances from the candidates of the previous step to the ones of the given step and adds a
+	 * transition for every pair within the search bound.
+	 */
+	private void addTransitions(QueryGraph queryGraph, Weighting weighting, Coordinate[] locations, IntArrayList observations,
+			IntArrayList offsets, List<QueryResult> queryResults, int step, ViterbiSolver viterbi) {
+		Coordinate z0 = locations[observations.get(step - 1)];
+		Coordinate z1 = locations[observations.get(step)];
+		double linearDistance = distCalcEarth.calcDist(z0.y, z0.x, z1.y, z1.x);
+		double maxDistance = MAX_DETOUR_FACTOR * linearDistance + 2 * searchRadius;
+
+		int fromFirst = offsets.get(step - 1);
+		int fromCount = offsets.get(step) - fromFirst;
+		int toFirst = offsets.get(step);
+		int[] targets = new int[offsets.get(step + 1) - toFirst];
+		for (int j = 0; j < targets.length; j++)
+			targets[j] = queryResults.get(toFirst + j).getClosestNode();
+
+		for (int i = 0; i < fromCount; i++) {
+			int source = queryResults.get(fromFirst + i).getClosestNode();
+
+			// the algorithm counts the visited nodes over all its searches, so every candidate gets its own
+			DijkstraOneToManyAlgorithm algorithm = new DijkstraOneToManyAlgorithm(queryGraph, weighting, TraversalMode.NODE_BASED);
+			algorithm.setMaxVisitedNodes(MapMatchingServiceSettings.getMaximumVisitedNodes());
+			algorithm.setMaxWeight(maxDistance);
+			algorithm.prepare(null, targets);
+			SPTEntry[] entries = algorithm.calcPaths(source, targets);
+
+			for (int j = 0; j < targets.length; j++) {
+				double routeDistance;
+				if (targets[j] == source)
+					routeDistance = 0;
+				else if (entries[j] != null && entries[j].weight <= maxDistance)
+					routeDistance = entries[j].weight;
+				else
+					continue;
+
+				viterbi.addTransition(i, j, -LOG_BETA - Math.abs(linearDistance - routeDistance) / BETA);
 			}
 		}
-		
-		int n = matchPoints.size() - nMatchPoints;
-		
-		if (n > 0) {
-			MatchPoint[] res = new MatchPoint[n];
-			for (int k = 0; k < n; k ++)
-				res[k] = matchPoints.get(nMatchPoints + k);
-			return res;
+	}
+
+	private void findCandidates(Coordinate location, EdgeFilter filter, List<QueryResult> queryResults) {
+		for (QueryResult qr : locationIndex.findNClosest(location.y, location.x, filter, searchRadius)) {
+			if (qr.getQueryDistance() <= searchRadius)
+				queryResults.add(qr);
 		}
-		return null;
 	}
 }
@@ -0,0 +1,79 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library;
+ *  if not, see <https://www.gnu.org/licenses/>.
+ */
+package org.heigit.ors.mapmatching.hmm;
+
+import java.util.Arrays;
+
+/**
+ * Snapped positions of the match candidates of all observations of a trace. The candidates of an observation occupy
+ * a consecutive range of indices, so a candidate is referred to by a single int.
+ */
+class MatchCandidates {
+	private final int[] offsets;
+	private int lastObservation = -1;
+	private double[] latitudes;
+	private double[] longitudes;
+	private int size;
+
+	MatchCandidates(int observations) {
+		offsets = new int[observations];
+		int capacity = Math.max(16, observations * 4);
+		latitudes = new double[capacity];
+		longitudes = new double[capacity];
+	}
+
+	/**
+	 * Adds a candidate of the given observation. Candidates have to be added in the order of their observations.
+	 *
+	 * @return the index of the candidate
+	 */
+	int add(int observation, double lat, double lon) {
+		if (observation < lastObservation)
+			throw new IllegalArgumentException("Candidates have to be added in the order of their observations.");
+
+		while (lastObservation < observation)
+			offsets[++lastObservation] = size;
+
+		if (size == latitudes.length) {
+			latitudes = Arrays.copyOf(latitudes, size * 2);
+			longitudes = Arrays.copyOf(longitudes, size * 2);
+		}
+
+		latitudes[size] = lat;
+		longitudes[size] = lon;
+		return size++;
+	}
+
+	int getFirst(int observation) {
+		return observation <= lastObservation ? offsets[observation] : size;
+	}
+
+	int getCount(int observation) {
+		if (observation > lastObservation)
+			return 0;
+		return (observation < lastObservation ? offsets[observation + 1] : size) - offsets[observation];
+	}
+
+	int size() {
+		return size;
+	}
+
+	double getLatitude(int candidate) {
+		return latitudes[candidate];
+	}
+
+	double getLongitude(int candidate) {
+		return longitudes[candidate];
+	}
+}
@@ -1,98 +1,229 @@
 /*  This file is part of Openrouteservice.
  *
- *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the 
- *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1 
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1
  *  of the License, or (at your option) any later version.
 
- *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
- *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
  *  See the GNU Lesser General Public License for more details.
 
- *  You should have received a copy of the GNU Lesser General Public License along with this library; 
- *  if not, see <https://www.gnu.org/licenses/>.  
+ *  You should have received a copy of the GNU Lesser General Public License along with this library;
+ *  if not, see <https://www.gnu.org/licenses/>.
  */
 package org.heigit.ors.mapmatching.hmm;
 
+import java.util.Arrays;
+
+/**
+ * Viterbi decoder working on log probabilities which is fed one observation (step) at a time.
+ *
+ * Only the transitions which have been added for a step are considered, i.e. the transition matrix is sparse. The
+ * back pointers are kept for the steps which are not decided yet only: as soon as the most probable sequences of all
+ * candidates of the latest step pass through a single candidate, the path up to that candidate is fixed and its
+ * steps are dropped from the window. If none of the candidates of a step can be reached, the most probable path so
+ * far is fixed and a new sequence is started at that step.
+ */
 public class ViterbiSolver {
-	private ViterbiSolver() {}
-	
-	public static int[] findPath(double[] startProbability, double[][] transitionProbability, double[][] emissionProbability, boolean scaled) {
-		int nObservations = emissionProbability[0].length;
-		int nStates = startProbability.length;
-
-		// probability that the most probable hidden states ends at state i
-	    double[][] delta = new double[nObservations][nStates];
-
-	    // previous hidden state in the most probable state leading up to state i
-	    int[][] phi = new int[nObservations - 1][nStates];
-
-	    // initialize the return array
-	    int[] sequence = new int[nObservations];
-
-	    if (scaled) {
-	        for (int i = 0; i < nStates; i++) {
-	          delta[0][i] = Math.log(startProbability[i] * emissionProbability[i][0]);
-	        }
-	      } else {
-
-	        for (int i = 0; i < nStates; i++) {
-	          delta[0][i] = startProbability[i] * emissionProbability[i][0];
-	        }
-	      }
-	    
-	    if (scaled) {
-	      for (int t = 1; t < nObservations; t++) {
-	        for (int i = 0; i < nStates; i++) {
-	          // find the maximum probability and most likely state leading up to this
-	          int maxState = 0;
-	          double maxProb = delta[t - 1][0] + Math.log(transitionProbability[0][i]);
-	          for (int j = 1; j < nStates; j++) {
-	            double prob = delta[t - 1][j] + Math.log(transitionProbability[j][i]);
-	            if (prob > maxProb) {
-	              maxProb = prob;
-	              maxState = j;
-	            }
-	          }
-	          delta[t][i] = maxProb + Math.log(emissionProbability[i][t]);
-	          phi[t - 1][i] = maxState;
-	        }
-	      }
-	    } else {
-	      for (int t = 1; t < nObservations; t++) {
-	        for (int i = 0; i < nStates; i++) {
-	          int maxState = 0;
-	          double maxProb = delta[t - 1][0] * transitionProbability[0][i];
-	          for (int j = 1; j < nStates; j++) {
-	            double prob = delta[t - 1][j] * transitionProbability[j][i];
-	            if (prob > maxProb) {
-	              maxProb = prob;
-	              maxState = j;
-	            }
-	          }
-	          delta[t][i] = maxProb * emissionProbability[i][t];
-	          phi[t - 1][i] = maxState;
-	        }
-	      }
-	    }
-	    
-	    double maxProb;
-	    if (scaled) {
-	      maxProb = Double.NEGATIVE_INFINITY;
-	    } else {
-	      maxProb = 0.0;
-	    }
-	    for (int i = 0; i < nStates; i++) {
-	      if (delta[nObservations - 1][i] > maxProb) {
-	        maxProb = delta[nObservations - 1][i];
-	        sequence[nObservations - 1] = i;
-	      }
-	    }
-
-	    // backtrack
-	    for (int t = nObservations - 2; t >= 0; t--) {
-	      sequence[t] = phi[t][sequence[t + 1]];
-	    }
-	    
-	    return sequence;
+	private final int[] path;
+
+	private final int[] stepObservations;
+	private final int[] stepFirstCandidates;
+	private final int[][] stepParents;
+	private int steps;
+	private int windowStart;
+
+	private double[] scores = new double[0];
+	private int scoresCount;
+
+	private int observation;
+	private int firstCandidate;
+	private int count;
+	private double[] emissions = new double[0];
+	private double[] nextScores = new double[0];
+	private int[] nextParents = new int[0];
+
+	private int[] live = new int[0];
+	private int[] nextLive = new int[0];
+	private int[] marks = new int[0];
+	private int mark;
+
+	/**
+	 * @param observations  the number of observations of the trace
+	 */
+	public ViterbiSolver(int observations) {
+		path = new int[observations];
+		Arrays.fill(path, -1);
+		stepObservations = new int[observations];
+		stepFirstCandidates = new int[observations];
+		stepParents = new int[observations][];
+	}
+
+	/**
+	 * Starts the step of the given observation. Observations have to be added in ascending order, observations without
+	 * any candidates are left out.
+	 *
+	 * @param observation       the index of the observation
+	 * @param firstCandidate    the global index of the first candidate of the observation, the path refers to it
+	 * @param emissions         the log emission probabilities of the candidates
+	 * @param count             the number of candidates
+	 */
+	public void startStep(int observation, int firstCandidate, double[] emissions, int count) {
+		this.observation = observation;
+		this.firstCandidate = firstCandidate;
+		this.count = count;
+
+		if (this.emissions.length < count) {
+			int capacity = Math.max(count, this.emissions.length * 2);
+			this.emissions = new double[capacity];
+			nextScores = new double[capacity];
+			nextParents = new int[capacity];
+		}
+		System.arraycopy(emissions, 0, this.emissions, 0, count);
+		Arrays.fill(nextScores, 0, count, Double.NEGATIVE_INFINITY);
+		Arrays.fill(nextParents, 0, count, -1);
+	}
+
+	/**
+	 * Adds the transition between the candidate {@code from} of the previous step and the candidate {@code to} of the
+	 * current one. Transitions not added are considered impossible.
+	 */
+	public void addTransition(int from, int to, double logProbability) {
+		double score = scores[from] + logProbability + emissions[to];
+		if (score > nextScores[to]) {
+			nextScores[to] = score;
+			nextParents[to] = from;
+		}
+	}
+
+	/**
+	 * @return false if none of the candidates could be reached from the previous step and a new sequence has been
+	 * started
+	 */
+	public boolean finishStep() {
+		boolean connected = true;
+
+		if (steps > windowStart) {
+			connected = false;
+			for (int i = 0; i < count; i++) {
+				if (nextScores[i] > Double.NEGATIVE_INFINITY) {
+					connected = true;
+					break;
+				}
+			}
+
+			if (!connected)
+				commit(steps - 1, getBestCandidate());
+		}
+
+		int[] parents = new int[count];
+		if (steps > windowStart) {
+			System.arraycopy(nextParents, 0, parents, 0, count);
+		} else {
+			System.arraycopy(emissions, 0, nextScores, 0, count);
+			Arrays.fill(parents, -1);
+		}
+
+		stepObservations[steps] = observation;
+		stepFirstCandidates[steps] = firstCandidate;
+		stepParents[steps] = parents;
+		steps++;
+
+		if (scores.length < count)
+			scores = new double[Math.max(count, scores.length * 2)];
+		System.arraycopy(nextScores, 0, scores, 0, count);
+		scoresCount = count;
+
+		commitConverged();
+
+		return connected;
+	}
+
+	/**
+	 * Fixes the remaining steps along the most probable sequence.
+	 *
+	 * @return the global index of the matched candidate per observation or -1 for observations which are not matched
+	 */
+	public int[] getPath() {
+		if (steps > windowStart)
+			commit(steps - 1, getBestCandidate());
+		return path;
+	}
+
+	/**
+	 * @return the number of steps which are not decided yet
+	 */
+	int getWindowSize() {
+		return steps - windowStart;
+	}
+
+	private int getBestCandidate() {
+		int best = 0;
+		for (int i = 1; i < scoresCount; i++) {
+			if (scores[i] > scores[best])
+				best = i;
+		}
+		return best;
+	}
+
+	/**
+	 * Follows the back pointers of all reachable candidates of the latest step until they meet in a single candidate.
+	 */
+	private void commitConverged() {
+		if (steps - windowStart < 2)
+			return;
+
+		ensureLiveCapacity(scoresCount);
+		int liveCount = 0;
+		for (int i = 0; i < scoresCount; i++) {
+			if (scores[i] > Double.NEGATIVE_INFINITY)
+				live[liveCount++] = i;
+		}
+
+		for (int step = steps - 1; step > windowStart; step--) {
+			int[] parents = stepParents[step];
+			int previousCount = stepParents[step - 1].length;
+			ensureLiveCapacity(previousCount);
+
+			mark++;
+			int nextCount = 0;
+			for (int i = 0; i < liveCount; i++) {
+				int parent = parents[live[i]];
+				if (marks[parent] != mark) {
+					marks[parent] = mark;
+					nextLive[nextCount++] = parent;
+				}
+			}
+
+			int[] tmp = live;
+			live = nextLive;
+			nextLive = tmp;
+			liveCount = nextCount;
+
+			if (liveCount == 1) {
+				commit(step - 1, live[0]);
+				return;
+			}
+		}
+	}
+
+	private void commit(int lastStep, int candidate) {
+		for (int step = lastStep; step >= windowStart; step--) {
+			path[stepObservations[step]] = stepFirstCandidates[step] + candidate;
+			candidate = stepParents[step][candidate];
+			stepParents[step] = null;
+		}
+		windowStart = lastStep + 1;
+	}
+
+	private void ensureLiveCapacity(int capacity) {
+		if (live.length >= capacity)
+			return;
+
+		capacity = Math.max(capacity, live.length * 2);
+		live = Arrays.copyOf(live, capacity);
+		nextLive = new int[capacity];
+		marks = new int[capacity];
+		mark = 0;
 	}
 }
@@ -52,6 +52,17 @@ public class MatrixLocations {
 			hasValidNodes = true;
 	}
 	
+	/**
+	 * @return a copy of the locations in the range [fromIndex, toIndex)
+	 */
+	public MatrixLocations subset(int fromIndex, int toIndex)
+	{
+		MatrixLocations res = new MatrixLocations(toIndex - fromIndex);
+		for (int i = fromIndex; i < toIndex; i++)
+			res.setData(i - fromIndex, nodeIds[i], locations[i]);
+		return res;
+	}
+
 	public boolean hasValidNodes()
 	{
 		return hasValidNodes;
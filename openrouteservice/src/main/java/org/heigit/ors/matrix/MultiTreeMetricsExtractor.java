@@ -13,6 +13,7 @@
  */
 package org.heigit.ors.matrix;
 
+import com.carrotsearch.hppc.IntIndexedContainer;
 import com.graphhopper.coll.GHLongObjectHashMap;
 import com.graphhopper.routing.QueryGraph;
 import com.graphhopper.routing.util.FlagEncoder;
@@ -27,6 +28,7 @@ import com.graphhopper.util.EdgeIteratorState;
 import org.heigit.ors.common.DistanceUnit;
 import org.heigit.ors.routing.graphhopper.extensions.storages.MultiTreeSPEntry;
 import org.heigit.ors.routing.graphhopper.extensions.storages.MultiTreeSPEntryItem;
+import org.heigit.ors.routing.graphhopper.extensions.storages.MultiTreeSPStorage;
 import org.heigit.ors.util.DistanceUnitUtil;
 
 public class MultiTreeMetricsExtractor {
@@ -112,6 +114,14 @@ public class MultiTreeMetricsExtractor {
 
 	public void calcValues(MultiTreeSPEntry[] targets, MatrixLocations srcData, MatrixLocations dstData, float[] times,
 			float[] distances, float[] weights) throws Exception {
+		calcValues(targets, srcData, 0, dstData, times, distances, weights);
+	}
+
+	/**
+	 * @param srcOffset row of the first source of {@code srcData} in the result tables
+	 */
+	public void calcValues(MultiTreeSPEntry[] targets, MatrixLocations srcData, int srcOffset, MatrixLocations dstData,
+			float[] times, float[] distances, float[] weights) throws Exception {
 		if (targets == null)
 			throw new IllegalStateException("Target destinations not set");
 
@@ -119,11 +129,9 @@ public class MultiTreeMetricsExtractor {
 		double pathTime;
 		double pathDistance;
 		double pathWeight;
-		long entryHash = 0;
 		boolean calcTime = MatrixMetricsType.isSet(metrics, MatrixMetricsType.DURATION);
 		boolean calcDistance = MatrixMetricsType.isSet(metrics, MatrixMetricsType.DISTANCE);
 		boolean calcWeight = MatrixMetricsType.isSet(metrics, MatrixMetricsType.WEIGHT);
-		MetricsItem edgeMetricsItem;
 		MultiTreeSPEntryItem sptItem;
 
 		for (int i = 0; i < targets.length; ++i) {
@@ -133,7 +141,7 @@ public class MultiTreeMetricsExtractor {
 				pathDistance = -1;
 				pathWeight = -1;
 
-				index = j * dstData.size() + i;
+				index = (srcOffset + j) * dstData.size() + i;
 
 				if (srcData.getNodeId(j) != -1) {
 					MultiTreeSPEntry targetEntry = targets[i];
@@ -147,79 +155,11 @@ public class MultiTreeMetricsExtractor {
 
 						if (sptItem.getParent() != null) {
 							while (EdgeIterator.Edge.isValid(sptItem.getEdge())) {
-								edgeMetricsItem = null;
-								if (edgeMetrics != null) {
-									entryHash = getMultiTreeSPEntryHash(targetEntry, srcNode);
-									edgeMetricsItem = edgeMetrics.get(entryHash);
-								}
-
-								if (edgeMetricsItem == null) {
-									if (chGraph != null) {
-										CHEdgeIteratorState iterState = (CHEdgeIteratorState) graph
-												.getEdgeIteratorState(sptItem.getEdge(), targetEntry.getAdjNode());
-
-										boolean unpackDistance = true;
-										if (calcWeight || calcTime || unpackDistance) {
-											if (iterState.isShortcut()) {
-												if (chGraph.getLevel(iterState.getBaseNode()) > chGraph
-														.getLevel(iterState.getAdjNode())) {
-													reverseOrder = true;
-													extractEdgeValues(iterState, false);
-												} else {
-													reverseOrder = false;
-													extractEdgeValues(iterState, true);
-												}
-											} else {
-												extractEdgeValues(iterState, false);
-											}
-
-											if (unpackDistance)
-												edgeDistance = (distUnits == DistanceUnit.METERS) ? edgeDistance
-														: DistanceUnitUtil.convert(edgeDistance, DistanceUnit.METERS,
-														distUnits);
-										}
-
-										if (!unpackDistance && calcDistance)
-											edgeDistance = (distUnits == DistanceUnit.METERS)
-													? iterState.getDistance()
-													: DistanceUnitUtil.convert(iterState.getDistance(),
-															DistanceUnit.METERS, distUnits);
-									} else {
-										EdgeIteratorState iter = graph.getEdgeIteratorState(sptItem.getEdge(),
-												targetEntry.getAdjNode());
-
-										if (calcDistance)
-											edgeDistance = (distUnits == DistanceUnit.METERS) ? iter.getDistance()
-													: DistanceUnitUtil.convert(iter.getDistance(), DistanceUnit.METERS,
-													distUnits);
-
-										if (calcTime)
-											edgeTime = timeWeighting.calcMillis(iter, false, EdgeIterator.NO_EDGE)
-													/ 1000.0;
-
-										if (calcWeight)
-											edgeWeight = weighting.calcWeight(iter, false, EdgeIterator.NO_EDGE);
-									}
-
-									if (edgeMetrics != null) {
-										edgeMetricsItem = new MetricsItem();
-										edgeMetricsItem.distance = edgeDistance;
-										edgeMetricsItem.time = edgeTime;
-										edgeMetricsItem.weight = edgeWeight;
-										edgeMetrics.put(entryHash, edgeMetricsItem);
-									}
-
-									pathDistance += edgeDistance;
-									pathTime += edgeTime;
-									pathWeight += edgeWeight;
-								} else {
-									if (calcDistance)
-										pathDistance += edgeMetricsItem.distance;
-									if (calcTime)
-										pathTime += edgeMetricsItem.time;
-									if (calcWeight)
-										pathWeight += edgeMetricsItem.weight;
-								}
+								calcEdgeValues(sptItem.getEdge(), targetEntry.getAdjNode(), calcTime, calcDistance, calcWeight);
+
+								pathDistance += edgeDistance;
+								pathTime += edgeTime;
+								pathWeight += edgeWeight;
 
 								targetEntry = sptItem.getParent();
 
@@ -245,8 +185,173 @@ public class MultiTreeMetricsExtractor {
 		}
 	}
 
-	private long getMultiTreeSPEntryHash(MultiTreeSPEntry entry, int sptEntry) {
-		return entry.getAdjNode() * maxEdgeId + entry.getItem(sptEntry).getEdge();
+	/**
+	 * Same as {@link #calcValues(MultiTreeSPEntry[], MatrixLocations, MatrixLocations, float[], float[], float[])}
+	 * for shortest path trees kept in a {@link MultiTreeSPStorage}.
+	 *
+	 * @param targetSlots storage slots of the destinations, {@link MultiTreeSPStorage#NO_SLOT} for unreached ones
+	 */
+	public void calcValues(MultiTreeSPStorage storage, int[] targetSlots, MatrixLocations srcData, MatrixLocations dstData,
+			float[] times, float[] distances, float[] weights) {
+		calcValues(storage, targetSlots, srcData, 0, dstData, times, distances, weights);
+	}
+
+	public void calcValues(MultiTreeSPStorage storage, int[] targetSlots, MatrixLocations srcData, int srcOffset,
+			MatrixLocations dstData, float[] times, float[] distances, float[] weights) {
+		if (targetSlots == null)
+			throw new IllegalStateException("Target destinations not set");
+
+		int index;
+		double pathTime;
+		double pathDistance;
+		double pathWeight;
+		boolean calcTime = MatrixMetricsType.isSet(metrics, MatrixMetricsType.DURATION);
+		boolean calcDistance = MatrixMetricsType.isSet(metrics, MatrixMetricsType.DISTANCE);
+		boolean calcWeight = MatrixMetricsType.isSet(metrics, MatrixMetricsType.WEIGHT);
+
+		for (int i = 0; i < targetSlots.length; ++i) {
+			int srcNode = 0;
+			for (int j = 0; j < srcData.size(); ++j) {
+				pathTime = -1;
+				pathDistance = -1;
+				pathWeight = -1;
+
+				index = (srcOffset + j) * dstData.size() + i;
+
+				if (srcData.getNodeId(j) != -1) {
+					int slot = targetSlots[i];
+
+					if (slot != MultiTreeSPStorage.NO_SLOT) {
+						pathTime = 0.0;
+						pathDistance = 0.0;
+						pathWeight = 0.0;
+
+						if (storage.getParent(slot, srcNode) != MultiTreeSPStorage.NO_SLOT) {
+							int edge = storage.getEdge(slot, srcNode);
+							while (EdgeIterator.Edge.isValid(edge)) {
+								calcEdgeValues(edge, storage.getNode(slot), calcTime, calcDistance, calcWeight);
+
+								pathDistance += edgeDistance;
+								pathTime += edgeTime;
+								pathWeight += edgeWeight;
+
+								slot = storage.getParent(slot, srcNode);
+
+								if (slot == MultiTreeSPStorage.NO_SLOT)
+									break;
+
+								edge = storage.getEdge(slot, srcNode);
+							}
+						}
+					}
+					srcNode++;
+				}
+
+				if (calcTime)
+					times[index] = (float) pathTime;
+
+				if (calcDistance)
+					distances[index] = (float) pathDistance;
+
+				if (calcWeight)
+					weights[index] = (float) pathWeight;
+			}
+		}
+	}
+
+	/**
+	 * Sums up the metrics of the given (possibly shortcut) edges and stores them at the given index of the tables.
+	 *
+	 * @param adjNodes for every edge the node it is traversed towards
+	 */
+	public void calcValues(int index, IntIndexedContainer edges, IntIndexedContainer adjNodes, float[] times,
+			float[] distances, float[] weights) {
+		boolean calcTime = MatrixMetricsType.isSet(metrics, MatrixMetricsType.DURATION);
+		boolean calcDistance = MatrixMetricsType.isSet(metrics, MatrixMetricsType.DISTANCE);
+		boolean calcWeight = MatrixMetricsType.isSet(metrics, MatrixMetricsType.WEIGHT);
+		double pathTime = 0.0;
+		double pathDistance = 0.0;
+		double pathWeight = 0.0;
+
+		for (int i = 0; i < edges.size(); i++) {
+			calcEdgeValues(edges.get(i), adjNodes.get(i), calcTime, calcDistance, calcWeight);
+
+			pathDistance += edgeDistance;
+			pathTime += edgeTime;
+			pathWeight += edgeWeight;
+		}
+
+		if (calcTime)
+			times[index] = (float) pathTime;
+
+		if (calcDistance)
+			distances[index] = (float) pathDistance;
+
+		if (calcWeight)
+			weights[index] = (float) pathWeight;
+	}
+
+	private void calcEdgeValues(int edgeId, int adjNode, boolean calcTime, boolean calcDistance, boolean calcWeight) {
+		long entryHash = 0;
+		MetricsItem edgeMetricsItem = null;
+		if (edgeMetrics != null) {
+			entryHash = adjNode * maxEdgeId + edgeId;
+			edgeMetricsItem = edgeMetrics.get(entryHash);
+		}
+
+		if (edgeMetricsItem != null) {
+			edgeDistance = edgeMetricsItem.distance;
+			edgeTime = edgeMetricsItem.time;
+			edgeWeight = edgeMetricsItem.weight;
+			return;
+		}
+
+		if (chGraph != null) {
+			CHEdgeIteratorState iterState = (CHEdgeIteratorState) graph.getEdgeIteratorState(edgeId, adjNode);
+
+			boolean unpackDistance = true;
+			if (calcWeight || calcTime || unpackDistance) {
+				if (iterState.isShortcut()) {
+					if (chGraph.getLevel(iterState.getBaseNode()) > chGraph.getLevel(iterState.getAdjNode())) {
+						reverseOrder = true;
+						extractEdgeValues(iterState, false);
+					} else {
+						reverseOrder = false;
+						extractEdgeValues(iterState, true);
+					}
+				} else {
+					extractEdgeValues(iterState, false);
+				}
+
+				if (unpackDistance)
+					edgeDistance = (distUnits == DistanceUnit.METERS) ? edgeDistance
+							: DistanceUnitUtil.convert(edgeDistance, DistanceUnit.METERS, distUnits);
+			}
+
+			if (!unpackDistance && calcDistance)
+				edgeDistance = (distUnits == DistanceUnit.METERS) ? iterState.getDistance()
+						: DistanceUnitUtil.convert(iterState.getDistance(), DistanceUnit.METERS, distUnits);
+		} else {
+			EdgeIteratorState iter = graph.getEdgeIteratorState(edgeId, adjNode);
+
+			if (calcDistance)
+				edgeDistance = (distUnits == DistanceUnit.METERS) ? iter.getDistance()
+						: DistanceUnitUtil.convert(iter.getDistance(), DistanceUnit.METERS, distUnits);
+
+			if (calcTime)
+				edgeTime = timeWeighting.calcMillis(iter, false, EdgeIterator.NO_EDGE) / 1000.0;
+
+			if (calcWeight)
+				edgeWeight = weighting.calcWeight(iter, false, EdgeIterator.NO_EDGE);
+		}
+
+		if (edgeMetrics != null) {
+			edgeMetricsItem = new MetricsItem();
+			edgeMetricsItem.distance = edgeDistance;
+			edgeMetricsItem.time = edgeTime;
+			edgeMetricsItem.weight = edgeWeight;
+			edgeMetrics.put(entryHash, edgeMetricsItem);
+		}
 	}
 
 	private void extractEdgeValues(CHEdgeIteratorState iterState, boolean reverse) {
@@ -15,16 +15,35 @@ package org.heigit.ors.matrix.algorithms;
 
 import com.graphhopper.GraphHopper;
 import org.heigit.ors.matrix.MatrixRequest;
+import org.heigit.ors.matrix.algorithms.bucket.BucketMatrixAlgorithm;
 import org.heigit.ors.matrix.algorithms.dijkstra.DijkstraMatrixAlgorithm;
 import org.heigit.ors.matrix.algorithms.rphast.RPHASTMatrixAlgorithm;
+import org.heigit.ors.services.matrix.MatrixServiceSettings;
 
 public class MatrixAlgorithmFactory {
+	private static final int BUCKET_MAXIMUM_DESTINATIONS_PER_SOURCE = 10;
+
 	private MatrixAlgorithmFactory() {}
 
 	public static MatrixAlgorithm createAlgorithm(MatrixRequest req, GraphHopper gh) {
-		if (!req.getFlexibleMode() && gh.isCHEnabled())
+		if (!req.getFlexibleMode() && gh.isCHEnabled()) {
+			if (useBucketAlgorithm(req))
+				return new BucketMatrixAlgorithm();
 			return new RPHASTMatrixAlgorithm();
-		else
+		} else
 			return new DijkstraMatrixAlgorithm();
 	}
+
+	/**
+	 * The bucket-based search runs one upward search per location, RPHAST one upward search from all sources and a
+	 * sweep over the target graph which keeps an entry per source at every node. According to
+	 * MatrixAlgorithmBenchmarkTest the buckets are faster up to the configured number of locations, unless there are
+	 * far more destinations than sources, which is the case RPHAST is made for.
+	 */
+	private static boolean useBucketAlgorithm(MatrixRequest req) {
+		int sources = req.getSources().length;
+		int destinations = req.getDestinations().length;
+		int limit = MatrixServiceSettings.getBucketMaximumLocations();
+		return sources <= limit && destinations <= limit && destinations <= BUCKET_MAXIMUM_DESTINATIONS_PER_SOURCE * sources;
+	}
 }
@@ -15,13 +15,18 @@ package org.heigit.ors.matrix.algorithms.rphast;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import com.graphhopper.GraphHopper;
 import com.graphhopper.routing.ch.PrepareContractionHierarchies;
 import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.util.HintsMap;
 import com.graphhopper.routing.util.TraversalMode;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.storage.Graph;
+import com.graphhopper.util.Helper;
 
 import org.heigit.ors.matrix.MatrixLocations;
 import org.heigit.ors.matrix.MatrixMetricsType;
@@ -30,19 +35,26 @@ import org.heigit.ors.matrix.MatrixResult;
 import org.heigit.ors.matrix.MultiTreeMetricsExtractor;
 import org.heigit.ors.matrix.algorithms.AbstractMatrixAlgorithm;
 import org.heigit.ors.routing.algorithms.RPHASTAlgorithm;
+import org.heigit.ors.routing.graphhopper.extensions.ORSGraphHopper;
 import org.heigit.ors.routing.graphhopper.extensions.storages.MultiTreeSPEntry;
+import org.heigit.ors.routing.graphhopper.extensions.storages.MultiTreeSPStorage;
+import org.heigit.ors.routing.graphhopper.extensions.storages.MultiTreeSPStoragePool;
+import org.heigit.ors.services.matrix.MatrixServiceSettings;
 
 public class RPHASTMatrixAlgorithm extends AbstractMatrixAlgorithm {
+	private static ForkJoinPool batchPool;
+
 	private PrepareContractionHierarchies prepareCH;
 	private MultiTreeMetricsExtractor pathMetricsExtractor;
+	private MatrixRequest matrixRequest;
 
 	@Override
 	public void init(MatrixRequest req, GraphHopper gh, Graph graph, FlagEncoder encoder, Weighting weighting) {
 		super.init(req, gh, graph, encoder, weighting);
 
+		matrixRequest = req;
 		prepareCH = graphHopper.getCHFactoryDecorator().getPreparations().get(0);
-		pathMetricsExtractor = new MultiTreeMetricsExtractor(req.getMetrics(), graph, this.encoder, weighting,
-				req.getUnits());
+		pathMetricsExtractor = createMetricsExtractor(weighting);
 	}
 
 	@Override
@@ -65,31 +77,21 @@ public class RPHASTMatrixAlgorithm extends AbstractMatrixAlgorithm {
 			for (int srcIndex = 0; srcIndex < srcData.size(); srcIndex++) 
 				pathMetricsExtractor.setEmptyValues(srcIndex, dstData, times, distances, weights);
 		} else {
-			RPHASTAlgorithm algorithm = new RPHASTAlgorithm(graph, prepareCH.getPrepareWeighting(),
-					TraversalMode.NODE_BASED);
-			
-			int[] srcIds = getValidNodeIds(srcData.getNodeIds());
 			int[] destIds = getValidNodeIds(dstData.getNodeIds());
 
 			mtxResult.setGraphDate(graphHopper.getGraphHopperStorage().getProperties().get("datareader.import.date"));
-			
-			algorithm.prepare(srcIds, destIds);
 
-			MultiTreeSPEntry[] destTrees = algorithm.calcPaths(srcIds, destIds);
+			int batchSize = MatrixServiceSettings.getParallelBatchSize();
+			if (MatrixServiceSettings.getParallelThreads() > 1 && srcData.size() > batchSize) {
+				computeParallel(srcData, dstData, destIds, batchSize, times, distances, weights);
+			} else {
+				RPHASTAlgorithm algorithm = createAlgorithm();
+				int[] srcIds = getValidNodeIds(srcData.getNodeIds());
 
-			MultiTreeSPEntry[] originalDestTrees = new MultiTreeSPEntry[dstData.size()];
-			
-			int j = 0;
-			for (int i = 0; i < dstData.size(); i++) {
-				if (dstData.getNodeIds()[i] != -1) {
-					originalDestTrees[i] = destTrees[j];
-					++j;
-				} else {
-					originalDestTrees[i] = null;
-				}
-			}
+				algorithm.prepare(srcIds, destIds);
 
-			pathMetricsExtractor.calcValues(originalDestTrees, srcData, dstData, times, distances, weights);
+				computeBatch(algorithm, pathMetricsExtractor, srcIds, destIds, srcData, 0, dstData, times, distances, weights);
+			}
 		}
 
 		if (MatrixMetricsType.isSet(metrics, MatrixMetricsType.DURATION))
@@ -101,7 +103,134 @@ public class RPHASTMatrixAlgorithm extends AbstractMatrixAlgorithm {
 
 		return mtxResult;
 	}
-	
+
+	/**
+	 * Splits the sources into batches which are searched in parallel. Every batch writes into its own rows of the
+	 * result tables. The query graph is only read by the tasks, whereas the target graph, whose detached edge states
+	 * cache their flags, and the request weighting, which may keep buffers, are created per task.
+	 */
+	private void computeParallel(MatrixLocations srcData, MatrixLocations dstData, int[] destIds, int batchSize,
+			float[] times, float[] distances, float[] weights) throws Exception {
+		List<ForkJoinTask<Void>> tasks = new ArrayList<>();
+		for (int offset = 0; offset < srcData.size(); offset += batchSize) {
+			final int batchOffset = offset;
+			final MatrixLocations batchData = srcData.subset(offset, Math.min(offset + batchSize, srcData.size()));
+
+			tasks.add(getBatchPool().submit(() -> {
+				MultiTreeMetricsExtractor metricsExtractor = createMetricsExtractor(createWeighting());
+
+				if (!batchData.hasValidNodes()) {
+					for (int srcIndex = 0; srcIndex < batchData.size(); srcIndex++)
+						metricsExtractor.setEmptyValues(batchOffset + srcIndex, dstData, times, distances, weights);
+					return null;
+				}
+
+				RPHASTAlgorithm algorithm = createAlgorithm();
+				int[] srcIds = getValidNodeIds(batchData.getNodeIds());
+				algorithm.prepare(srcIds, destIds);
+
+				computeBatch(algorithm, metricsExtractor, srcIds, destIds, batchData, batchOffset, dstData, times, distances, weights);
+				return null;
+			}));
+		}
+
+		for (ForkJoinTask<Void> task : tasks) {
+			try {
+				task.get();
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof Exception)
+					throw (Exception) e.getCause();
+				throw e;
+			}
+		}
+	}
+
+	private void computeBatch(RPHASTAlgorithm algorithm, MultiTreeMetricsExtractor metricsExtractor, int[] srcIds,
+			int[] destIds, MatrixLocations srcData, int srcOffset, MatrixLocations dstData, float[] times,
+			float[] distances, float[] weights) throws Exception {
+		if (MatrixServiceSettings.getFlatStorage())
+			computeFlat(algorithm, metricsExtractor, srcIds, destIds, srcData, srcOffset, dstData, times, distances, weights);
+		else
+			computeObjects(algorithm, metricsExtractor, srcIds, destIds, srcData, srcOffset, dstData, times, distances, weights);
+	}
+
+	private void computeObjects(RPHASTAlgorithm algorithm, MultiTreeMetricsExtractor metricsExtractor, int[] srcIds,
+			int[] destIds, MatrixLocations srcData, int srcOffset, MatrixLocations dstData, float[] times,
+			float[] distances, float[] weights) throws Exception {
+		MultiTreeSPEntry[] destTrees = algorithm.calcPaths(srcIds, destIds);
+
+		MultiTreeSPEntry[] originalDestTrees = new MultiTreeSPEntry[dstData.size()];
+
+		int j = 0;
+		for (int i = 0; i < dstData.size(); i++) {
+			if (dstData.getNodeIds()[i] != -1) {
+				originalDestTrees[i] = destTrees[j];
+				++j;
+			} else {
+				originalDestTrees[i] = null;
+			}
+		}
+
+		metricsExtractor.calcValues(originalDestTrees, srcData, srcOffset, dstData, times, distances, weights);
+	}
+
+	private void computeFlat(RPHASTAlgorithm algorithm, MultiTreeMetricsExtractor metricsExtractor, int[] srcIds,
+			int[] destIds, MatrixLocations srcData, int srcOffset, MatrixLocations dstData, float[] times,
+			float[] distances, float[] weights) {
+		MultiTreeSPStorage storage = MultiTreeSPStoragePool.acquire(srcIds.length);
+		try {
+			int[] destSlots = algorithm.calcPaths(srcIds, destIds, storage);
+
+			int[] originalDestSlots = new int[dstData.size()];
+
+			int j = 0;
+			for (int i = 0; i < dstData.size(); i++) {
+				if (dstData.getNodeIds()[i] != -1) {
+					originalDestSlots[i] = destSlots[j];
+					++j;
+				} else {
+					originalDestSlots[i] = MultiTreeSPStorage.NO_SLOT;
+				}
+			}
+
+			metricsExtractor.calcValues(storage, originalDestSlots, srcData, srcOffset, dstData, times, distances, weights);
+		} finally {
+			algorithm.reset();
+			MultiTreeSPStoragePool.release(storage);
+		}
+	}
+
+	private RPHASTAlgorithm createAlgorithm() {
+		return new RPHASTAlgorithm(graph, prepareCH.getPrepareWeighting(), TraversalMode.NODE_BASED);
+	}
+
+	private MultiTreeMetricsExtractor createMetricsExtractor(Weighting weighting) {
+		return new MultiTreeMetricsExtractor(matrixRequest.getMetrics(), graph, this.encoder, weighting,
+				matrixRequest.getUnits());
+	}
+
+	private Weighting createWeighting() {
+		HintsMap hintsMap = new HintsMap();
+		hintsMap.setWeighting(Helper.isEmpty(matrixRequest.getWeightingMethod()) ? "fastest" : matrixRequest.getWeightingMethod());
+		return ((ORSGraphHopper) graphHopper).getORSWeightingFactory().createWeighting(hintsMap, encoder, graphHopper.getGraphHopperStorage());
+	}
+
+	private static synchronized ForkJoinPool getBatchPool() {
+		if (batchPool == null)
+			batchPool = new ForkJoinPool(MatrixServiceSettings.getParallelThreads());
+		return batchPool;
+	}
+
+	/**
+	 * Stops the threads computing the source batches of parallel requests.
+	 */
+	public static synchronized void shutdownBatchPool() {
+		if (batchPool != null) {
+			batchPool.shutdownNow();
+			batchPool = null;
+		}
+	}
+
 	private int[] getValidNodeIds(int[] nodeIds) {
 		List<Integer> nodeList = new ArrayList<>();
 		for (int dst : nodeIds) {
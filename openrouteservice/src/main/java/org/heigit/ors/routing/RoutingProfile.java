@@ -22,6 +22,7 @@ import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.storage.Graph;
 import com.graphhopper.storage.GraphHopperStorage;
 import com.graphhopper.storage.StorableProperties;
+import com.graphhopper.storage.index.LocationIndexTree;
 import com.graphhopper.util.CmdArgs;
 import com.graphhopper.util.Helper;
 import com.graphhopper.util.PMap;
@@ -38,6 +39,7 @@ import org.heigit.ors.isochrones.*;
 import org.heigit.ors.isochrones.statistics.StatisticsProvider;
 import org.heigit.ors.isochrones.statistics.StatisticsProviderConfiguration;
 import org.heigit.ors.isochrones.statistics.StatisticsProviderFactory;
+import org.heigit.ors.mapmatching.LocationIndexMatch;
 import org.heigit.ors.mapmatching.MapMatcher;
 import org.heigit.ors.mapmatching.RouteSegmentInfo;
 import org.heigit.ors.mapmatching.hmm.HiddenMarkovMapMatcher;
@@ -46,10 +48,12 @@ import org.heigit.ors.matrix.algorithms.MatrixAlgorithm;
 import org.heigit.ors.matrix.algorithms.MatrixAlgorithmFactory;
 import org.heigit.ors.routing.configuration.RouteProfileConfiguration;
 import org.heigit.ors.routing.graphhopper.extensions.*;
+import org.heigit.ors.routing.graphhopper.extensions.reader.SharedOSMImport;
 import org.heigit.ors.routing.graphhopper.extensions.storages.GraphStorageUtils;
 import org.heigit.ors.routing.graphhopper.extensions.storages.builders.BordersGraphStorageBuilder;
 import org.heigit.ors.routing.graphhopper.extensions.storages.builders.GraphStorageBuilder;
 import org.heigit.ors.routing.graphhopper.extensions.util.ORSPMap;
+import org.heigit.ors.routing.graphhopper.extensions.util.ORSParameters;
 import org.heigit.ors.routing.parameters.ProfileParameters;
 import org.heigit.ors.routing.parameters.VehicleParameters;
 import org.heigit.ors.routing.parameters.WheelchairParameters;
@@ -57,7 +61,6 @@ import org.heigit.ors.routing.pathprocessors.ORSPathProcessorFactory;
 import org.heigit.ors.services.isochrones.IsochronesServiceSettings;
 import org.heigit.ors.services.matrix.MatrixServiceSettings;
 import org.heigit.ors.util.DebugUtility;
-import org.heigit.ors.util.RuntimeUtility;
 import org.heigit.ors.util.StringUtility;
 import org.heigit.ors.util.TimeUtility;
 
@@ -67,6 +70,9 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * This class generates {@link RoutingProfile} classes and is used by mostly all service classes e.g.
@@ -110,11 +116,10 @@ public class RoutingProfile {
     private static int profileIdentifier = 0;
     private static final Object lockObj = new Object();
 
-    private ORSGraphHopper mGraphHopper;
+    private final AtomicReference<GraphHopperHandle> mGraphHopperHandle = new AtomicReference<>();
+    // updates keep the graph in the same location, so it identifies the profile even after it has been closed
+    private final String mGraphLocation;
     private Integer[] mRoutePrefs;
-    private Integer mUseCounter;
-    private boolean mUpdateRun;
-    private MapMatcher mMapMatcher;
 
     private RouteProfileConfiguration config;
     private String astarApproximation;
@@ -122,9 +127,9 @@ public class RoutingProfile {
 
     public RoutingProfile(String osmFile, RouteProfileConfiguration rpc, RoutingProfileLoadContext loadCntx) throws Exception {
         mRoutePrefs = rpc.getProfilesTypes();
-        mUseCounter = 0;
 
-        mGraphHopper = initGraphHopper(osmFile, rpc, loadCntx);
+        mGraphHopperHandle.set(new GraphHopperHandle(initGraphHopper(osmFile, rpc, loadCntx)));
+        mGraphLocation = getGraphhopper().getGraphHopperStorage().getDirectory().getLocation();
 
         config = rpc;
 
@@ -138,6 +143,17 @@ public class RoutingProfile {
     }
 
     public static ORSGraphHopper initGraphHopper(String osmFile, RouteProfileConfiguration config, RoutingProfileLoadContext loadCntx) throws Exception {
+        SharedOSMImport.Participant sharedImport = loadCntx.getSharedImport(config.getName());
+        try {
+            return initGraphHopper(osmFile, config, loadCntx, sharedImport);
+        } finally {
+            // the other profiles must not wait for this one if it loaded an existing graph or failed at any point
+            if (sharedImport != null)
+                sharedImport.leave();
+        }
+    }
+
+    private static ORSGraphHopper initGraphHopper(String osmFile, RouteProfileConfiguration config, RoutingProfileLoadContext loadCntx, SharedOSMImport.Participant sharedImport) throws Exception {
         CmdArgs args = createGHSettings(osmFile, config);
 
         int profileId = 0;
@@ -176,8 +192,8 @@ public class RoutingProfile {
             loadCntx.setElevationProvider(gh.getElevationProvider());
         }
         gh.setGraphStorageFactory(new ORSGraphStorageFactory(gpc.getStorageBuilders()));
-        gh.setWeightingFactory(new ORSWeightingFactory());
 
+        gh.setSharedImport(sharedImport);
         gh.importOrLoad();
 
         // store CountryBordersReader for later use
@@ -217,7 +233,7 @@ public class RoutingProfile {
     }
 
     public long getCapacity() {
-        GraphHopperStorage graph = mGraphHopper.getGraphHopperStorage();
+        GraphHopperStorage graph = getGraphhopper().getGraphHopperStorage();
         return graph.getCapacity() + GraphStorageUtils.getCapacity(graph.getExtension());
     }
 
@@ -236,6 +252,10 @@ public class RoutingProfile {
             args.put("graph.elevation.dataaccess", StringUtility.trimQuotes(config.getElevationDataAccess()));
             args.put("graph.elevation.clear", config.getElevationCacheClear());
         }
+        if (config.getCoreDataAccess() != null)
+            args.put("graph.core.dataaccess", StringUtility.trimQuotes(config.getCoreDataAccess()));
+        if (config.getCompiledEdgeFilters())
+            args.put("graph.compiled_edge_filters", true);
 
         boolean prepareCH = false;
         boolean prepareLM = false;
@@ -369,20 +389,36 @@ public class RoutingProfile {
         return args;
     }
 
+    /**
+     * @return the graph currently published by this profile or null if the profile has been closed. Requests which use
+     * the graph for longer than a single call have to acquire it by {@link #beginUseGH()} instead.
+     */
     public ORSGraphHopper getGraphhopper() {
-        return mGraphHopper;
+        GraphHopperHandle handle = mGraphHopperHandle.get();
+        return handle == null ? null : handle.getGraphHopper();
     }
 
     public BBox getBounds() {
-        return mGraphHopper.getGraphHopperStorage().getBounds();
+        GraphHopperHandle handle = beginUseGH();
+        try {
+            return handle.getGraphHopper().getGraphHopperStorage().getBounds();
+        } finally {
+            endUseGH(handle);
+        }
     }
 
     public StorableProperties getGraphProperties() {
-        return mGraphHopper.getGraphHopperStorage().getProperties();
+        GraphHopperHandle handle = beginUseGH();
+        try {
+            return handle.getGraphHopper().getGraphHopperStorage().getProperties();
+        } finally {
+            endUseGH(handle);
+        }
     }
 
     public String getGraphLocation() {
-        return mGraphHopper == null ? null : mGraphHopper.getGraphHopperStorage().getDirectory().toString();
+        ORSGraphHopper gh = getGraphhopper();
+        return gh == null ? null : gh.getGraphHopperStorage().getDirectory().toString();
     }
 
     public RouteProfileConfiguration getConfiguration() {
@@ -404,81 +440,97 @@ public class RoutingProfile {
 
 
     public boolean isCHEnabled() {
-        return mGraphHopper != null && mGraphHopper.isCHEnabled();
+        ORSGraphHopper gh = getGraphhopper();
+        return gh != null && gh.isCHEnabled();
     }
 
     public void close() {
-        mGraphHopper.close();
+        GraphHopperHandle handle = mGraphHopperHandle.getAndSet(null);
+        if (handle != null)
+            handle.retire(null);
     }
 
-    private synchronized boolean isGHUsed() {
-        return mUseCounter > 0;
-    }
-
-    private synchronized void beginUseGH() {
-        mUseCounter++;
+    /**
+     * Acquires the currently published graph without locking. The graph stays open until the returned handle is
+     * released by {@link #endUseGH(GraphHopperHandle)}, even if it is replaced by an update in the meantime.
+     */
+    private GraphHopperHandle beginUseGH() {
+        while (true) {
+            GraphHopperHandle handle = mGraphHopperHandle.get();
+            if (handle == null)
+                throw new IllegalStateException("The route profile has been closed.");
+            // acquiring only fails if the handle has been retired in the meantime, so the next attempt gets its successor
+            if (handle.acquire())
+                return handle;
+        }
     }
 
-    private synchronized void endUseGH() {
-        mUseCounter--;
+    private static void endUseGH(GraphHopperHandle handle) {
+        handle.release();
     }
 
-    public void updateGH(GraphHopper gh) throws Exception {
+    /**
+     * Replaces the graph of this profile by the given freshly built one. The new graph is published atomically, so
+     * requests do not have to wait for the update. The previous graph is closed and its files are removed as soon as
+     * the last request using it has finished.
+     *
+     * Note that the memory of the previous graph is not cleared before the new one is loaded, so both graphs of the
+     * profile are held in memory at the same time during an update and until the last request on the previous graph
+     * has finished. The heap has to be sized accordingly.
+     */
+    public synchronized void updateGH(GraphHopper gh) throws Exception {
         if (gh == null)
             throw new Exception("GraphHopper instance is null.");
 
-        try {
-            mUpdateRun = true;
-            while (true) {
-                if (!isGHUsed()) {
-                    GraphHopper ghOld = mGraphHopper;
-
-                    ghOld.close();
-                    ghOld.clean();
-
-                    gh.close();
-                    // gh.clean(); // do not remove on-disk files, we need to
-                    // copy them as follows
-
-                    RuntimeUtility.clearMemory(LOGGER);
-
-                    // Change the content of the graph folder
-                    String oldLocation = ghOld.getGraphHopperLocation();
-                    File dstDir = new File(oldLocation);
-                    File srcDir = new File(gh.getGraphHopperLocation());
-                    FileUtils.copyDirectory(srcDir, dstDir, true);
-                    FileUtils.deleteDirectory(srcDir);
+        GraphHopperHandle oldHandle = mGraphHopperHandle.get();
+        if (oldHandle == null)
+            throw new IllegalStateException("The route profile has been closed.");
 
-                    RoutingProfileLoadContext loadCntx = new RoutingProfileLoadContext();
+        GraphHopper ghOld = oldHandle.getGraphHopper();
+        File dstDir = new File(ghOld.getGraphHopperLocation());
+        File srcDir = new File(gh.getGraphHopperLocation());
+        File retiredDir = new File(dstDir.getPath() + "_" + System.currentTimeMillis());
 
-                    mGraphHopper = initGraphHopper(ghOld.getDataReaderFile(), config, loadCntx);
-
-                    loadCntx.releaseElevationProviderCacheAfterAllVehicleProfilesHaveBeenProcessed();
-
-                    break;
-                }
-
-                Thread.sleep(2000);
-            }
+        try {
+            gh.close();
+            // gh.clean(); // do not remove on-disk files, we need to
+            // copy them as follows
+
+            ORSGraphHopper ghNew = replaceGraphFiles(srcDir, dstDir, retiredDir, () -> {
+                RoutingProfileLoadContext loadCntx = new RoutingProfileLoadContext();
+                ORSGraphHopper result = initGraphHopper(ghOld.getDataReaderFile(), config, loadCntx);
+                loadCntx.releaseElevationProviderCacheAfterAllVehicleProfilesHaveBeenProcessed();
+                return result;
+            });
+
+            mGraphHopperHandle.set(new GraphHopperHandle(ghNew));
+            oldHandle.retire(retiredDir);
         } catch (Exception ex) {
             LOGGER.error(ex.getMessage());
         }
-
-        mUpdateRun = false;
     }
 
-    private void waitForUpdateCompletion() throws Exception {
-        if (mUpdateRun) {
-            long startTime = System.currentTimeMillis();
-
-            while (mUpdateRun) {
-                long curTime = System.currentTimeMillis();
-                if (curTime - startTime > 600000) {
-                    throw new Exception("The route profile is currently being updated.");
-                }
+    /**
+     * Puts the files of a new graph in place of the ones in use and loads the new graph from there. The files of the
+     * graph in use are only moved aside to the retired directory, since memory mapped storages keep reading from them
+     * until the last request using the old graph has finished. If loading fails, they are put back in place.
+     */
+    static <T> T replaceGraphFiles(File srcDir, File dstDir, File retiredDir, Callable<T> loader) throws Exception {
+        FileUtils.moveDirectory(dstDir, retiredDir);
+        try {
+            FileUtils.copyDirectory(srcDir, dstDir, true);
+            FileUtils.deleteDirectory(srcDir);
 
-                Thread.sleep(1000);
+            return loader.call();
+        } catch (Exception ex) {
+            // the old graph is still published, so its files have to be put back in place
+            try {
+                FileUtils.deleteDirectory(dstDir);
+                FileUtils.moveDirectory(retiredDir, dstDir);
+            } catch (Exception ex2) {
+                LOGGER.error("Unable to restore the graph files in " + dstDir + ": " + ex2.getMessage());
             }
+            throw ex;
         }
     }
 
@@ -523,19 +575,18 @@ public class RoutingProfile {
 
 
         IsochroneMap result = null;
-        waitForUpdateCompletion();
-
-        beginUseGH();
+        GraphHopperHandle handle = beginUseGH();
+        ORSGraphHopper gh = handle.getGraphHopper();
 
         try {
-            RouteSearchContext searchCntx = createSearchContext(parameters.getRouteParameters());
+            RouteSearchContext searchCntx = createSearchContext(gh, parameters.getRouteParameters());
 
             IsochroneMapBuilderFactory isochroneMapBuilderFactory = new IsochroneMapBuilderFactory(searchCntx);
             result = isochroneMapBuilderFactory.buildMap(parameters);
 
-            endUseGH();
+            endUseGH(handle);
         } catch (Exception ex) {
-            endUseGH();
+            endUseGH(handle);
 
             LOGGER.error(ex);
 
@@ -584,16 +635,18 @@ public class RoutingProfile {
     public MatrixResult computeMatrix(MatrixRequest req) throws Exception {
         MatrixResult mtxResult = null;
 
-        GraphHopper gh = getGraphhopper();
-        String encoderName = RoutingProfileType.getEncoderName(req.getProfileType());
-        FlagEncoder flagEncoder = gh.getEncodingManager().getEncoder(encoderName);
+        GraphHopperHandle handle = beginUseGH();
+        ORSGraphHopper gh = handle.getGraphHopper();
 
-        MatrixAlgorithm alg = MatrixAlgorithmFactory.createAlgorithm(req, gh);
+        try {
+            String encoderName = RoutingProfileType.getEncoderName(req.getProfileType());
+            FlagEncoder flagEncoder = gh.getEncodingManager().getEncoder(encoderName);
 
-        if (alg == null)
-            throw new Exception("Unable to create an algorithm to for computing distance/duration matrix.");
+            MatrixAlgorithm alg = MatrixAlgorithmFactory.createAlgorithm(req, gh);
+
+            if (alg == null)
+                throw new Exception("Unable to create an algorithm to for computing distance/duration matrix.");
 
-        try {
             String weightingStr = Helper.isEmpty(req.getWeightingMethod()) ? VAL_FASTEST : req.getWeightingMethod();
             Graph graph = null;
             if (!req.getFlexibleMode() && gh.getCHFactoryDecorator().isEnabled() && gh.getCHFactoryDecorator().getCHProfileStrings().contains(weightingStr)) {
@@ -609,7 +662,7 @@ public class RoutingProfile {
 
             HintsMap hintsMap = new HintsMap();
             hintsMap.setWeighting(weightingStr);
-            Weighting weighting = new ORSWeightingFactory().createWeighting(hintsMap, flagEncoder, gh.getGraphHopperStorage());
+            Weighting weighting = gh.getORSWeightingFactory().createWeighting(hintsMap, flagEncoder, gh.getGraphHopperStorage());
 
             alg.init(req, gh, mtxSearchCntx.getGraph(), flagEncoder, weighting);
 
@@ -620,12 +673,14 @@ public class RoutingProfile {
         } catch (Exception ex) {
             LOGGER.error(ex);
             throw new InternalServerException(MatrixErrorCodes.UNKNOWN, "Unable to compute a distance/duration matrix.");
+        } finally {
+            endUseGH(handle);
         }
 
         return mtxResult;
     }
 
-    private RouteSearchContext createSearchContext(RouteSearchParameters searchParams) throws Exception {
+    private RouteSearchContext createSearchContext(ORSGraphHopper gh, RouteSearchParameters searchParams) throws Exception {
         ORSPMap props = new ORSPMap();
 
         int profileType = searchParams.getProfileType();
@@ -634,12 +689,12 @@ public class RoutingProfile {
         if ("UNKNOWN".equals(encoderName))
             throw new InternalServerException(RoutingErrorCodes.UNKNOWN, "unknown vehicle profile.");
 
-        if (!mGraphHopper.getEncodingManager().hasEncoder(encoderName)) {
+        if (!gh.getEncodingManager().hasEncoder(encoderName)) {
             throw new IllegalArgumentException("Vehicle " + encoderName + " unsupported. " + "Supported are: "
-                    + mGraphHopper.getEncodingManager());
+                    + gh.getEncodingManager());
         }
 
-        FlagEncoder flagEncoder = mGraphHopper.getEncodingManager().getEncoder(encoderName);
+        FlagEncoder flagEncoder = gh.getEncodingManager().getEncoder(encoderName);
         ProfileParameters profileParams = searchParams.getProfileParameters();
 
         /*
@@ -705,7 +760,7 @@ public class RoutingProfile {
             }
         }
 
-        RouteSearchContext searchCntx = new RouteSearchContext(mGraphHopper, flagEncoder);
+        RouteSearchContext searchCntx = new RouteSearchContext(gh, flagEncoder);
         searchCntx.setProperties(props);
 
         return searchCntx;
@@ -715,16 +770,14 @@ public class RoutingProfile {
             throws Exception {
         RouteSegmentInfo[] rsi = null;
 
-        waitForUpdateCompletion();
-
-        beginUseGH();
+        GraphHopperHandle handle = beginUseGH();
 
         try {
-            rsi = getMatchedSegmentsInternal(locations, searchRadius, null, bothDirections);
+            rsi = getMatchedSegmentsInternal(handle, locations, searchRadius, null, bothDirections);
 
-            endUseGH();
+            endUseGH(handle);
         } catch (Exception ex) {
-            endUseGH();
+            endUseGH(handle);
 
             throw ex;
         }
@@ -732,30 +785,51 @@ public class RoutingProfile {
         return rsi;
     }
 
-    private RouteSegmentInfo[] getMatchedSegmentsInternal(Coordinate[] locations,
-                                                          double searchRadius, EdgeFilter edgeFilter, boolean bothDirections) {
-        if (mMapMatcher == null) {
-            mMapMatcher = new HiddenMarkovMapMatcher();
-            mMapMatcher.setGraphHopper(mGraphHopper);
+    /**
+     * Matches the GPS locations of a track to the road network of this profile.
+     *
+     * @return the matched positions of the locations, null for locations which have not been matched
+     */
+    public Coordinate[] matchTrack(Coordinate[] locations, double searchRadius) throws Exception {
+        Coordinate[] matched;
+
+        GraphHopperHandle handle = beginUseGH();
+
+        try {
+            MapMatcher mapMatcher = handle.createMapMatcher();
+            mapMatcher.setSearchRadius(searchRadius);
+            matched = mapMatcher.matchLocations(locations);
+
+            endUseGH(handle);
+        } catch (Exception ex) {
+            endUseGH(handle);
+
+            throw ex;
         }
 
-        mMapMatcher.setSearchRadius(searchRadius);
-        mMapMatcher.setEdgeFilter(edgeFilter);
+        return matched;
+    }
+
+    private RouteSegmentInfo[] getMatchedSegmentsInternal(GraphHopperHandle handle, Coordinate[] locations,
+                                                          double searchRadius, EdgeFilter edgeFilter, boolean bothDirections) {
+        MapMatcher mapMatcher = handle.createMapMatcher();
 
-        return mMapMatcher.match(locations, bothDirections);
+        mapMatcher.setSearchRadius(searchRadius);
+        mapMatcher.setEdgeFilter(edgeFilter);
+
+        return mapMatcher.match(locations, bothDirections);
     }
 
     public GHResponse computeRoundTripRoute(double lat0, double lon0, WayPointBearing bearing, RouteSearchParameters searchParams, Boolean geometrySimplify) throws Exception {
         GHResponse resp;
 
-        waitForUpdateCompletion();
-
-        beginUseGH();
+        GraphHopperHandle handle = beginUseGH();
+        ORSGraphHopper gh = handle.getGraphHopper();
 
         try {
             int profileType = searchParams.getProfileType();
             int weightingMethod = searchParams.getWeightingMethod();
-            RouteSearchContext searchCntx = createSearchContext(searchParams);
+            RouteSearchContext searchCntx = createSearchContext(gh, searchParams);
 
             List<GHPoint> points = new ArrayList<>();
             points.add(new GHPoint(lat0, lon0));
@@ -789,7 +863,7 @@ public class RoutingProfile {
                 throw new IllegalArgumentException("Unsupported weighting " + weightingMethod + " for profile + " + profileType);
 
             //Roundtrip not possible with preprocessed edges.
-            setSpeedups(req, false, false, true);
+            setSpeedups(gh, req, false, false, true);
 
             if (astarEpsilon != null)
                 req.getHints().put("astarbi.epsilon", astarEpsilon);
@@ -798,13 +872,13 @@ public class RoutingProfile {
             //Overwrite algorithm selected in setSpeedups
             req.setAlgorithm(Parameters.Algorithms.ROUND_TRIP);
 
-            mGraphHopper.setSimplifyResponse(geometrySimplify);
-            resp = mGraphHopper.route(req);
+            setSimplifyResponse(req, geometrySimplify);
+            resp = gh.route(req);
 
-            endUseGH();
+            endUseGH(handle);
 
         } catch (Exception ex) {
-            endUseGH();
+            endUseGH(handle);
 
             LOGGER.error(ex);
 
@@ -819,17 +893,11 @@ public class RoutingProfile {
 
         GHResponse resp = null;
 
-        waitForUpdateCompletion();
-
-        beginUseGH();
+        GraphHopperHandle handle = beginUseGH();
+        ORSGraphHopper gh = handle.getGraphHopper();
 
         try {
-            int profileType = searchParams.getProfileType();
-            int weightingMethod = searchParams.getWeightingMethod();
-            RouteSearchContext searchCntx = createSearchContext(searchParams);
-
-            int flexibleMode = searchParams.getFlexibleMode() ? KEY_FLEX_PREPROCESSED : KEY_FLEX_STATIC;
-            boolean optimized = searchParams.getOptimized();
+            RouteSearchContext searchCntx = createSearchContext(gh, searchParams);
 
             GHRequest req;
             if (bearings == null || bearings[0] == null)
@@ -839,59 +907,13 @@ public class RoutingProfile {
             else
                 req = new GHRequest(new GHPoint(lat0, lon0), new GHPoint(lat1, lon1), bearings[0].getValue(), bearings[1].getValue());
 
-            req.setVehicle(searchCntx.getEncoder().toString());
-            req.setAlgorithm("dijkstrabi");
-
-            if (radiuses != null)
-                req.setMaxSearchDistance(radiuses);
-
-            PMap props = searchCntx.getProperties();
-            req.setAdditionalHints(props);
-
-            if (props != null && !props.isEmpty())
-                req.getHints().merge(props);
-
-            if (supportWeightingMethod(profileType)) {
-                setWeighting(req, weightingMethod, profileType, searchParams.getVehicleType());
-                flexibleMode = getFlexibilityMode(flexibleMode, searchParams, profileType);
-            }
-            else
-                throw new IllegalArgumentException("Unsupported weighting " + weightingMethod + " for profile + " + profileType);
-
-            if(flexibleMode == KEY_FLEX_STATIC)
-                //Speedup order: useCH, useCore, useALT
-                setSpeedups(req, true, true, true);
-
-            if (flexibleMode == KEY_FLEX_PREPROCESSED) {
-                if(optimized)
-                    setSpeedups(req, false, true, true);
-                else
-                    setSpeedups(req, false, false, true);
-            }
-
-            //cannot use CH or CoreALT with requests where the weighting of non-predefined edges might change
-            if(flexibleMode == KEY_FLEX_FULLY)
-                setSpeedups(req, false, false, true);
-
-            if (astarEpsilon != null)
-                req.getHints().put("astarbi.epsilon", astarEpsilon);
-            if (astarApproximation != null)
-                req.getHints().put("astarbi.approximation", astarApproximation);
-
-            if (searchParams.getAlternativeRoutesCount() > 0) {
-                //TAKB: CH and CORE have to be disabled for alternative routes
-                setSpeedups(req, false, false, true);
-                req.setAlgorithm("alternative_route");
-                req.getHints().put("alternative_route.max_paths", searchParams.getAlternativeRoutesCount());
-                req.getHints().put("alternative_route.max_weight_factor", searchParams.getAlternativeRoutesWeightFactor());
-                req.getHints().put("alternative_route.max_share_factor", searchParams.getAlternativeRoutesShareFactor());
-            }
+            setRouteParameters(gh, req, searchCntx, searchParams, radiuses);
 
             if (directedSegment) {
-                resp = mGraphHopper.constructFreeHandRoute(req);
+                resp = gh.constructFreeHandRoute(req);
             } else {
-                mGraphHopper.setSimplifyResponse(geometrySimplify);
-                resp = mGraphHopper.route(req);
+                setSimplifyResponse(req, geometrySimplify);
+                resp = gh.route(req);
             }
             if (DebugUtility.isDebug() && !directedSegment) {
                 LOGGER.info("visited_nodes.average - " + resp.getHints().get("visited_nodes.average", ""));
@@ -899,9 +921,9 @@ public class RoutingProfile {
             if (DebugUtility.isDebug() && directedSegment) {
                 LOGGER.info("skipped segment - " + resp.getHints().get("skipped_segment", ""));
             }
-            endUseGH();
+            endUseGH(handle);
         } catch (Exception ex) {
-            endUseGH();
+            endUseGH(handle);
 
             LOGGER.error(ex);
 
@@ -910,6 +932,110 @@ public class RoutingProfile {
 
         return resp;
     }
+
+    /**
+     * Computes the route through all given points in a single pass over one query graph and returns one response
+     * per leg. If a point could not be found, the returned list only contains a response with the lookup errors.
+     */
+    public List<GHResponse> computeRouteLegs(double[] latitudes, double[] longitudes, double[] radiuses, RouteSearchParameters searchParams, Boolean geometrySimplify)
+            throws Exception {
+
+        List<GHResponse> legs = null;
+
+        GraphHopperHandle handle = beginUseGH();
+        ORSGraphHopper gh = handle.getGraphHopper();
+
+        try {
+            RouteSearchContext searchCntx = createSearchContext(gh, searchParams);
+
+            List<GHPoint> points = new ArrayList<>(latitudes.length);
+            for (int i = 0; i < latitudes.length; i++)
+                points.add(new GHPoint(latitudes[i], longitudes[i]));
+            GHRequest req = new GHRequest(points);
+
+            setRouteParameters(gh, req, searchCntx, searchParams, radiuses);
+
+            setSimplifyResponse(req, geometrySimplify);
+            GHResponse resp = new GHResponse();
+            legs = gh.routeLegs(req, resp);
+            if (resp.hasErrors() || legs.isEmpty())
+                legs = Collections.singletonList(resp);
+
+            endUseGH(handle);
+        } catch (Exception ex) {
+            endUseGH(handle);
+
+            LOGGER.error(ex);
+
+            throw new InternalServerException(RoutingErrorCodes.UNKNOWN, "Unable to compute a route");
+        }
+
+        return legs;
+    }
+
+    /**
+     * Sets the geometry simplification as a hint of the given request instead of changing the shared GraphHopper
+     * instance, which would leak the setting into concurrently computed routes.
+     */
+    private static void setSimplifyResponse(GHRequest req, Boolean geometrySimplify) {
+        if (geometrySimplify != null)
+            req.getHints().put(ORSParameters.Routing.SIMPLIFY_RESPONSE, geometrySimplify);
+    }
+
+    private void setRouteParameters(ORSGraphHopper gh, GHRequest req, RouteSearchContext searchCntx, RouteSearchParameters searchParams, double[] radiuses) throws Exception {
+        int profileType = searchParams.getProfileType();
+        int weightingMethod = searchParams.getWeightingMethod();
+        int flexibleMode = searchParams.getFlexibleMode() ? KEY_FLEX_PREPROCESSED : KEY_FLEX_STATIC;
+        boolean optimized = searchParams.getOptimized();
+
+        req.setVehicle(searchCntx.getEncoder().toString());
+        req.setAlgorithm("dijkstrabi");
+
+        if (radiuses != null)
+            req.setMaxSearchDistance(radiuses);
+
+        PMap props = searchCntx.getProperties();
+        req.setAdditionalHints(props);
+
+        if (props != null && !props.isEmpty())
+            req.getHints().merge(props);
+
+        if (supportWeightingMethod(profileType)) {
+            setWeighting(req, weightingMethod, profileType, searchParams.getVehicleType());
+            flexibleMode = getFlexibilityMode(flexibleMode, searchParams, profileType);
+        }
+        else
+            throw new IllegalArgumentException("Unsupported weighting " + weightingMethod + " for profile + " + profileType);
+
+        if(flexibleMode == KEY_FLEX_STATIC)
+            //Speedup order: useCH, useCore, useALT
+            setSpeedups(gh, req, true, true, true);
+
+        if (flexibleMode == KEY_FLEX_PREPROCESSED) {
+            if(optimized)
+                setSpeedups(gh, req, false, true, true);
+            else
+                setSpeedups(gh, req, false, false, true);
+        }
+
+        //cannot use CH or CoreALT with requests where the weighting of non-predefined edges might change
+        if(flexibleMode == KEY_FLEX_FULLY)
+            setSpeedups(gh, req, false, false, true);
+
+        if (astarEpsilon != null)
+            req.getHints().put("astarbi.epsilon", astarEpsilon);
+        if (astarApproximation != null)
+            req.getHints().put("astarbi.approximation", astarApproximation);
+
+        if (searchParams.getAlternativeRoutesCount() > 0) {
+            //TAKB: CH and CORE have to be disabled for alternative routes
+            setSpeedups(gh, req, false, false, true);
+            req.setAlgorithm("alternative_route");
+            req.getHints().put("alternative_route.max_paths", searchParams.getAlternativeRoutesCount());
+            req.getHints().put("alternative_route.max_weight_factor", searchParams.getAlternativeRoutesWeightFactor());
+            req.getHints().put("alternative_route.max_share_factor", searchParams.getAlternativeRoutesShareFactor());
+        }
+    }
     /**
      * Get the flexibility mode necessary for the searchParams.
      * Reults in usage of CH, Core or ALT/AStar
@@ -975,25 +1101,26 @@ public class RoutingProfile {
      * Set the speedup techniques used for calculating the route.
      * Reults in usage of CH, Core or ALT/AStar, if they are enabled.
      *
+     * @param gh Graph the route will be calculated on
      * @param req Request whose hints will be set
      * @param useCH Should CH be enabled
      * @param useCore Should Core be enabled
      * @param useALT Should ALT be enabled
      */
-    private void setSpeedups(GHRequest req, boolean useCH, boolean useCore, boolean useALT){
+    private void setSpeedups(ORSGraphHopper gh, GHRequest req, boolean useCH, boolean useCore, boolean useALT){
         //Priority: CH->Core->ALT
-        useCH &= mGraphHopper.isCHEnabled();
+        useCH &= gh.isCHEnabled();
         //If there is either no shortest or fastest profile, CH will be enabled and crash if a missing profile is not present
         if(useCH){
             try{
-                mGraphHopper.getCHFactoryDecorator().getPreparation(req.getHints());
+                gh.getCHFactoryDecorator().getPreparation(req.getHints());
             }
             catch (Exception e){
                 useCH = false;
             }
         }
-        useCore = useCore && mGraphHopper.isCoreEnabled() && !useCH;
-        useALT &= mGraphHopper.getLMFactoryDecorator().isEnabled() && !useCH && !useCore;
+        useCore = useCore && gh.isCoreEnabled() && !useCH;
+        useALT &= gh.getLMFactoryDecorator().isEnabled() && !useCH && !useCore;
 
         req.getHints().put(KEY_CH_DISABLE, !useCH);
         req.getHints().put(KEY_CORE_DISABLE, !useCore);
@@ -1013,15 +1140,15 @@ public class RoutingProfile {
      */
     public IsochroneMap buildIsochrone(IsochroneSearchParameters parameters) throws Exception {
         IsochroneMap result = null;
-        waitForUpdateCompletion();
-        beginUseGH();
+        GraphHopperHandle handle = beginUseGH();
+        ORSGraphHopper gh = handle.getGraphHopper();
         try {
-            RouteSearchContext searchCntx = createSearchContext(parameters.getRouteParameters());
+            RouteSearchContext searchCntx = createSearchContext(gh, parameters.getRouteParameters());
             IsochroneMapBuilderFactory isochroneMapBuilderFactory = new IsochroneMapBuilderFactory(searchCntx);
             result = isochroneMapBuilderFactory.buildMap(parameters);
-            endUseGH();
+            endUseGH(handle);
         } catch (Exception ex) {
-            endUseGH();
+            endUseGH(handle);
             LOGGER.error(ex);
             throw new InternalServerException(IsochronesErrorCodes.UNKNOWN, "Unable to build an isochrone map.");
         }
@@ -1080,6 +1207,62 @@ public class RoutingProfile {
     }
 
     public int hashCode() {
-        return mGraphHopper.getGraphHopperStorage().getDirectory().getLocation().hashCode();
+        return mGraphLocation.hashCode();
+    }
+
+    /**
+     * Reference counted handle of a loaded graph. Requests acquire the handle without locking. The graph is closed
+     * once the handle has been retired and the last request using it has released it.
+     */
+    static class GraphHopperHandle {
+        private final ORSGraphHopper graphHopper;
+        // the published handle holds one reference itself, which is given up when it is retired
+        private final AtomicInteger references = new AtomicInteger(1);
+        private volatile File retiredLocation;
+        private LocationIndexMatch mapMatchingIndex;
+
+        GraphHopperHandle(ORSGraphHopper graphHopper) {
+            this.graphHopper = graphHopper;
+        }
+
+        ORSGraphHopper getGraphHopper() {
+            return graphHopper;
+        }
+
+        /**
+         * Creates a matcher for a single request, only the location index is shared between the requests.
+         */
+        synchronized MapMatcher createMapMatcher() {
+            if (mapMatchingIndex == null)
+                mapMatchingIndex = new LocationIndexMatch(graphHopper.getGraphHopperStorage(), (LocationIndexTree) graphHopper.getLocationIndex());
+            return new HiddenMarkovMapMatcher(graphHopper, mapMatchingIndex);
+        }
+
+        boolean acquire() {
+            while (true) {
+                int count = references.get();
+                if (count == 0)
+                    return false;
+                if (references.compareAndSet(count, count + 1))
+                    return true;
+            }
+        }
+
+        void release() {
+            if (references.decrementAndGet() == 0) {
+                graphHopper.close();
+                if (retiredLocation != null)
+                    FileUtils.deleteQuietly(retiredLocation);
+            }
+        }
+
+        /**
+         * Gives up the reference of the published handle. The files in the given location, if any, are removed
+         * together with the graph.
+         */
+        void retire(File location) {
+            retiredLocation = location;
+            release();
+        }
     }
 }
@@ -14,10 +14,15 @@
 package org.heigit.ors.routing;
 
 import com.graphhopper.reader.dem.ElevationProvider;
+import org.heigit.ors.routing.graphhopper.extensions.reader.SharedOSMImport;
+
+import java.util.HashMap;
+import java.util.Map;
 
 public class RoutingProfileLoadContext {
 	// add here any other shared resources
 	private ElevationProvider elevationProvider = null;
+	private final Map<String, SharedOSMImport.Participant> sharedImports = new HashMap<>();
 	
 	public ElevationProvider getElevationProvider(){
 		return elevationProvider;
@@ -29,6 +34,18 @@ public class RoutingProfileLoadContext {
 		}
 	}
 
+	public synchronized void setSharedImport(String profileName, SharedOSMImport.Participant participant) {
+		sharedImports.put(profileName, participant);
+	}
+
+	/**
+	 * @return the participant of the shared import through which the given profile reads the OSM file, or null if
+	 * the profile reads the file on its own
+	 */
+	public synchronized SharedOSMImport.Participant getSharedImport(String profileName) {
+		return sharedImports.get(profileName);
+	}
+
 	public void releaseElevationProviderCacheAfterAllVehicleProfilesHaveBeenProcessed() {
 		if (elevationProvider != null){
 			elevationProvider.release();
@@ -18,28 +18,37 @@ import com.graphhopper.util.DistanceCalc;
 import com.graphhopper.util.Helper;
 import com.graphhopper.util.PointList;
 import com.vividsolutions.jts.geom.Coordinate;
-import org.apache.commons.lang.NotImplementedException;
 import org.apache.log4j.Logger;
 import org.heigit.ors.exceptions.InternalServerException;
 import org.heigit.ors.exceptions.PointNotFoundException;
 import org.heigit.ors.exceptions.RouteNotFoundException;
 import org.heigit.ors.exceptions.ServerLimitExceededException;
 import org.heigit.ors.isochrones.IsochroneMap;
+import org.heigit.ors.isochrones.IsochroneMapCollection;
 import org.heigit.ors.isochrones.IsochroneSearchParameters;
+import org.heigit.ors.mapmatching.MapMatchingErrorCodes;
 import org.heigit.ors.mapmatching.MapMatchingRequest;
 import org.heigit.ors.matrix.MatrixErrorCodes;
 import org.heigit.ors.matrix.MatrixRequest;
 import org.heigit.ors.matrix.MatrixResult;
+import org.heigit.ors.matrix.algorithms.rphast.RPHASTMatrixAlgorithm;
 import org.heigit.ors.routing.configuration.RouteProfileConfiguration;
 import org.heigit.ors.routing.configuration.RoutingManagerConfiguration;
+import org.heigit.ors.routing.graphhopper.extensions.reader.SharedOSMImport;
+import org.heigit.ors.routing.graphhopper.extensions.storages.MultiTreeSPStoragePool;
 import org.heigit.ors.routing.pathprocessors.ExtraInfoProcessor;
+import org.heigit.ors.services.isochrones.IsochronesServiceSettings;
+import org.heigit.ors.services.mapmatching.MapMatchingServiceSettings;
+import org.heigit.ors.services.matrix.MatrixServiceSettings;
 import org.heigit.ors.services.routing.RoutingServiceSettings;
 import org.heigit.ors.util.FormatUtility;
 import org.heigit.ors.util.RuntimeUtility;
 import org.heigit.ors.util.TimeUtility;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.concurrent.*;
@@ -50,6 +59,7 @@ public class RoutingProfileManager {
     private RoutingProfilesCollection routeProfiles;
     private RoutingProfilesUpdater profileUpdater;
     private static RoutingProfileManager mInstance;
+    private static ForkJoinPool isochronesPool;
 
     public static synchronized RoutingProfileManager getInstance() throws IOException {
         if (mInstance == null) {
@@ -69,6 +79,7 @@ public class RoutingProfileManager {
             int nRouteInstances = rmc.getProfiles().length;
 
             RoutingProfileLoadContext loadCntx = new RoutingProfileLoadContext();
+            addSharedImports(rmc.getProfiles(), loadCntx);
             ExecutorService executor = Executors.newFixedThreadPool(RoutingServiceSettings.getInitializationThreads());
             ExecutorCompletionService<RoutingProfile> compService = new ExecutorCompletionService<>(executor);
 
@@ -122,6 +133,8 @@ public class RoutingProfileManager {
         long startTime = System.currentTimeMillis();
 
         try {
+            MultiTreeSPStoragePool.setMaximumSize(MatrixServiceSettings.getStoragePoolSize() * 1024L * 1024L);
+
             if (RoutingServiceSettings.getEnabled()) {
                 RoutingManagerConfiguration rmc = RoutingManagerConfiguration.loadFromFile(graphProps);
 
@@ -135,6 +148,7 @@ public class RoutingProfileManager {
                     int nRouteInstances = rmc.getProfiles().length;
 
                     RoutingProfileLoadContext loadCntx = new RoutingProfileLoadContext();
+                    addSharedImports(rmc.getProfiles(), loadCntx);
                     ExecutorService executor = Executors.newFixedThreadPool(RoutingServiceSettings.getInitializationThreads());
                     ExecutorCompletionService<RoutingProfile> compService = new ExecutorCompletionService<>(executor);
 
@@ -193,10 +207,38 @@ public class RoutingProfileManager {
             routeProfiles.printStatistics(LOGGER);
     }
 
+    /**
+     * Lets the profiles which have to import the OSM file read it through shared imports, so that the file is decoded
+     * once for several profiles. The profiles of a shared import read at the same time, so they are grouped in the
+     * order in which they are loaded into batches no larger than the number of initialization threads.
+     */
+    private static void addSharedImports(RouteProfileConfiguration[] profiles, RoutingProfileLoadContext loadCntx) {
+        int batchSize = RoutingServiceSettings.getInitializationThreads();
+        if (!RoutingServiceSettings.getSharedOsmImport() || batchSize < 2)
+            return;
+
+        List<RouteProfileConfiguration> importProfiles = new ArrayList<>();
+        for (RouteProfileConfiguration rpc : profiles) {
+            // a graph which has been built before is loaded and does not need the OSM file
+            if (rpc.getEnabled() && rpc.getProfilesTypes() != null && !new File(rpc.getGraphPath(), "properties").exists())
+                importProfiles.add(rpc);
+        }
+
+        File osmFile = new File(RoutingServiceSettings.getSourceFile());
+        for (int i = 0; i + 1 < importProfiles.size(); i += batchSize) {
+            SharedOSMImport sharedImport = new SharedOSMImport(osmFile);
+            for (RouteProfileConfiguration rpc : importProfiles.subList(i, Math.min(i + batchSize, importProfiles.size())))
+                loadCntx.setSharedImport(rpc.getName(), sharedImport.addParticipant());
+        }
+    }
+
     public void destroy() {
         if (profileUpdater != null)
             profileUpdater.destroy();
 
+        RPHASTMatrixAlgorithm.shutdownBatchPool();
+        shutdownIsochronesPool();
+
         routeProfiles.destroy();
     }
 
@@ -216,9 +258,72 @@ public class RoutingProfileManager {
         return profileUpdater == null ? null : profileUpdater.getStatus();
     }
 
+    /**
+     * Matches the GPS track of the request to the road network and computes the route through the matched positions.
+     * The waypoint and distance limits of the routing profiles do not apply, map matching has its own limits.
+     */
     public RouteResult matchTrack(MapMatchingRequest req) throws Exception {
-        LOGGER.error("mapmatching not implemented. " + req);
-        throw new NotImplementedException();
+        RouteSearchParameters searchParams = req.getSearchParameters();
+        RoutingProfile rp = routeProfiles.getRouteProfile(searchParams.getProfileType(), false);
+
+        if (rp == null)
+            throw new InternalServerException(MapMatchingErrorCodes.UNKNOWN, "Unable to get an appropriate route profile for RoutePreference = " + RoutingProfileType.getName(searchParams.getProfileType()));
+
+        double searchRadius = Math.min(req.getAccuracy(), MapMatchingServiceSettings.getMaximumSearchRadius());
+        Coordinate[] matched = rp.matchTrack(req.getCoordinates(), searchRadius);
+
+        List<Coordinate> points = new ArrayList<>(matched.length);
+        for (Coordinate c : matched) {
+            if (c != null && (points.isEmpty() || !c.equals2D(points.get(points.size() - 1))))
+                points.add(c);
+        }
+
+        if (points.size() < 2)
+            throw new PointNotFoundException(String.format("Unable to match the track to the road network within a radius of %.1f meters.", searchRadius));
+
+        // the route through the matched positions is computed on a copy, the track of the request is left as it is
+        Coordinate[] coords = points.toArray(new Coordinate[0]);
+        RoutingRequest routeReq = new RoutingRequest(req, coords);
+
+        double[] latitudes = new double[coords.length];
+        double[] longitudes = new double[coords.length];
+        double[] radiuses = new double[coords.length];
+        for (int i = 0; i < coords.length; i++) {
+            latitudes[i] = coords[i].y;
+            longitudes[i] = coords[i].x;
+            radiuses[i] = searchRadius;
+        }
+
+        List<GHResponse> legs = rp.computeRouteLegs(latitudes, longitudes, radiuses, searchParams, routeReq.getGeometrySimplify());
+        if (legs.size() != coords.length - 1) {
+            // the points of lookup errors are referenced by their index within the matched track
+            GHResponse resp = legs.get(0);
+            if (!resp.getErrors().isEmpty() && resp.getErrors().get(0) instanceof com.graphhopper.util.exceptions.PointNotFoundException)
+                checkRouteErrors(resp, 1, coords, 0, radiuses);
+            // any other failure is not related to a leg, so compute the legs one by one to report the failing one
+            legs = new ArrayList<>(coords.length - 1);
+            for (int i = 0; i < coords.length - 1; i++)
+                legs.add(rp.computeRoute(coords[i].y, coords[i].x, coords[i + 1].y, coords[i + 1].x, null, new double[] {searchRadius, searchRadius}, false, searchParams, routeReq.getGeometrySimplify()));
+        }
+
+        ExtraInfoProcessor extraInfoProcessor = null;
+        for (int i = 0; i < legs.size(); i++) {
+            GHResponse gr = legs.get(i);
+            checkRouteErrors(gr, i + 1, new Coordinate[] {coords[i], coords[i + 1]}, i, new double[] {searchRadius, searchRadius});
+
+            for (Object o : gr.getReturnObjects()) {
+                if (o instanceof ExtraInfoProcessor) {
+                    if (extraInfoProcessor == null) {
+                        extraInfoProcessor = (ExtraInfoProcessor)o;
+                    } else {
+                        extraInfoProcessor.appendData((ExtraInfoProcessor)o);
+                    }
+                }
+            }
+        }
+
+        List<RouteExtraInfo> extraInfos = extraInfoProcessor != null ? extraInfoProcessor.getExtras() : null;
+        return new RouteResultBuilder().createRouteResults(legs, routeReq, new List[]{extraInfos})[0];
     }
 
     public RouteResult[] computeRoundTripRoute(RoutingRequest req) throws Exception {
@@ -328,88 +433,68 @@ public class RoutingProfileManager {
         int numberOfExpectedExtraInfoProcessors = req.getSearchParameters().getAlternativeRoutesCount() < 0 ? 1 : req.getSearchParameters().getAlternativeRoutesCount();
         ExtraInfoProcessor[] extraInfoProcessors = new ExtraInfoProcessor[numberOfExpectedExtraInfoProcessors];
 
+        // routes through several way points without constraints between the legs are computed in a single pass
+        List<GHResponse> legs = null;
+        double[] legRadiuses = null;
+        if (RoutingServiceSettings.getBatchedViaRoutes() && nSegments > 1 && bearings == null && skipSegments.isEmpty()) {
+            legRadiuses = getMaximumRadiuses(searchParams, coords.length, profileType);
+            double[] latitudes = new double[coords.length];
+            double[] longitudes = new double[coords.length];
+            for (int i = 0; i < coords.length; i++) {
+                latitudes[i] = coords[i].y;
+                longitudes[i] = coords[i].x;
+            }
+            legs = rp.computeRouteLegs(latitudes, longitudes, legRadiuses, searchParams, req.getGeometrySimplify());
+            if (legs.size() != nSegments) {
+                // the points of lookup errors are referenced by their index within the whole request
+                GHResponse resp = legs.get(0);
+                if (!resp.getErrors().isEmpty() && resp.getErrors().get(0) instanceof com.graphhopper.util.exceptions.PointNotFoundException)
+                    checkRouteErrors(resp, 1, coords, 0, legRadiuses);
+                // any other failure is not related to a leg, so compute the segments one by one to report the leg
+                legs = null;
+            }
+        }
+
         for (int i = 1; i <= nSegments; ++i) {
             c1 = coords[i];
 
-            if (bearings != null) {
-                bearings[0] = null;
-                if (prevResp != null && req.getContinueStraight()) {
-                    bearings[0] = new WayPointBearing(getHeadingDirection(prevResp), Double.NaN);
-                }
+            GHResponse gr;
+            if (legs != null) {
+                gr = legs.get(i - 1);
+                radiuses = new double[] {legRadiuses[i - 1], legRadiuses[i]};
+            } else {
+                if (bearings != null) {
+                    bearings[0] = null;
+                    if (prevResp != null && req.getContinueStraight()) {
+                        bearings[0] = new WayPointBearing(getHeadingDirection(prevResp), Double.NaN);
+                    }
 
-                if (searchParams.getBearings() != null) {
-                    bearings[0] = searchParams.getBearings()[i - 1];
-                    bearings[1] = (i == nSegments && searchParams.getBearings().length != nSegments + 1) ? new WayPointBearing(Double.NaN, Double.NaN) : searchParams.getBearings()[i];
+                    if (searchParams.getBearings() != null) {
+                        bearings[0] = searchParams.getBearings()[i - 1];
+                        bearings[1] = (i == nSegments && searchParams.getBearings().length != nSegments + 1) ? new WayPointBearing(Double.NaN, Double.NaN) : searchParams.getBearings()[i];
+                    }
                 }
-            }
 
-            if (searchParams.getMaximumRadiuses() != null) {
-                radiuses = new double[2];
-                radiuses[0] = searchParams.getMaximumRadiuses()[i - 1];
-                radiuses[1] = searchParams.getMaximumRadiuses()[i];
-            } else {
-                try {
-                    int maximumSnappingRadius = routeProfiles.getRouteProfile(profileType).getConfiguration().getMaximumSnappingRadius();
+                if (searchParams.getMaximumRadiuses() != null) {
                     radiuses = new double[2];
-                    radiuses[0] = maximumSnappingRadius;
-                    radiuses[1] = maximumSnappingRadius;
-                } catch (Exception ex) {
-                    // do nothing
-                }
-            }
-
-            GHResponse gr = rp.computeRoute(c0.y, c0.x, c1.y, c1.x, bearings, radiuses, skipSegments.contains(i), searchParams, req.getGeometrySimplify());
-
-            if (gr.hasErrors()) {
-                if (!gr.getErrors().isEmpty()) {
-                    if (gr.getErrors().get(0) instanceof com.graphhopper.util.exceptions.ConnectionNotFoundException) {
-                        throw new RouteNotFoundException(
-                                RoutingErrorCodes.ROUTE_NOT_FOUND,
-                                String.format("Unable to find a route between points %d (%s) and %d (%s).",
-                                        i,
-                                        FormatUtility.formatCoordinate(c0),
-                                        i + 1,
-                                        FormatUtility.formatCoordinate(c1))
-                        );
-                    } else if(gr.getErrors().get(0) instanceof com.graphhopper.util.exceptions.PointNotFoundException) {
-                        StringBuilder message = new StringBuilder();
-                        for(Throwable error: gr.getErrors()) {
-                            if(message.length() > 0)
-                                message.append("; ");
-                            if (error instanceof com.graphhopper.util.exceptions.PointNotFoundException) {
-                                com.graphhopper.util.exceptions.PointNotFoundException pointNotFoundException = (com.graphhopper.util.exceptions.PointNotFoundException) error;
-                                int pointReference = (i-1) + pointNotFoundException.getPointIndex();
-
-                                Coordinate pointCoordinate = (pointNotFoundException.getPointIndex() == 0) ? c0 : c1;
-                                double pointRadius = radiuses[pointNotFoundException.getPointIndex()];
-
-                                message.append(String.format("Could not find point %d: %s within a radius of %.1f meters.",
-                                        pointReference,
-                                        FormatUtility.formatCoordinate(pointCoordinate),
-                                        pointRadius));
-
-                            } else {
-                                message.append(error.getMessage());
-                            }
-                        }
-                        throw new PointNotFoundException(message.toString());
-                    } else {
-                        throw new InternalServerException(RoutingErrorCodes.UNKNOWN, gr.getErrors().get(0).getMessage());
-                    }
+                    radiuses[0] = searchParams.getMaximumRadiuses()[i - 1];
+                    radiuses[1] = searchParams.getMaximumRadiuses()[i];
                 } else {
-                    // If there are no errors stored but there is indication that there are errors, something strange
-                    // has happened, so return that a route could not be found
-                    throw new RouteNotFoundException(
-                            RoutingErrorCodes.ROUTE_NOT_FOUND,
-                            String.format("Unable to find a route between points %d (%s) and %d (%s).",
-                                    i,
-                                    FormatUtility.formatCoordinate(c0),
-                                    i + 1,
-                                    FormatUtility.formatCoordinate(c1))
-                    );
+                    try {
+                        int maximumSnappingRadius = routeProfiles.getRouteProfile(profileType).getConfiguration().getMaximumSnappingRadius();
+                        radiuses = new double[2];
+                        radiuses[0] = maximumSnappingRadius;
+                        radiuses[1] = maximumSnappingRadius;
+                    } catch (Exception ex) {
+                        // do nothing
+                    }
                 }
+
+                gr = rp.computeRoute(c0.y, c0.x, c1.y, c1.x, bearings, radiuses, skipSegments.contains(i), searchParams, req.getGeometrySimplify());
             }
 
+            checkRouteErrors(gr, i, new Coordinate[] {c0, c1}, i - 1, radiuses);
+
             if (numberOfExpectedExtraInfoProcessors > 1) {
                 int extraInfoProcessorIndex = 0;
                 for (Object o : gr.getReturnObjects()) {
@@ -445,6 +530,93 @@ public class RoutingProfileManager {
         return new RouteResultBuilder().createRouteResults(routes, req, extraInfos);
     }
 
+    /**
+     * Throws the exception matching the errors of the response of a route segment, if there are any.
+     *
+     * @param gr                The response of the segment
+     * @param segment           The number of the segment, used in the messages for missing connections
+     * @param points            The coordinates of the points which have been looked up for the response
+     * @param firstPointIndex   The index of the first of the points within the request
+     * @param radiuses          The maximum snapping radiuses of the points, -1 or null if they are not limited
+     */
+    private void checkRouteErrors(GHResponse gr, int segment, Coordinate[] points, int firstPointIndex, double[] radiuses) throws Exception {
+        if (!gr.hasErrors())
+            return;
+
+        Coordinate c0 = points[0];
+        Coordinate c1 = points[points.length - 1];
+        if (!gr.getErrors().isEmpty()) {
+            if (gr.getErrors().get(0) instanceof com.graphhopper.util.exceptions.ConnectionNotFoundException) {
+                throw new RouteNotFoundException(
+                        RoutingErrorCodes.ROUTE_NOT_FOUND,
+                        String.format("Unable to find a route between points %d (%s) and %d (%s).",
+                                segment,
+                                FormatUtility.formatCoordinate(c0),
+                                segment + 1,
+                                FormatUtility.formatCoordinate(c1))
+                );
+            } else if(gr.getErrors().get(0) instanceof com.graphhopper.util.exceptions.PointNotFoundException) {
+                StringBuilder message = new StringBuilder();
+                for(Throwable error: gr.getErrors()) {
+                    if(message.length() > 0)
+                        message.append("; ");
+                    if (error instanceof com.graphhopper.util.exceptions.PointNotFoundException) {
+                        com.graphhopper.util.exceptions.PointNotFoundException pointNotFoundException = (com.graphhopper.util.exceptions.PointNotFoundException) error;
+                        int pointReference = firstPointIndex + pointNotFoundException.getPointIndex();
+
+                        Coordinate pointCoordinate = points[pointNotFoundException.getPointIndex()];
+                        double pointRadius = radiuses != null ? radiuses[pointNotFoundException.getPointIndex()] : -1;
+
+                        if (pointRadius >= 0) {
+                            message.append(String.format("Could not find point %d: %s within a radius of %.1f meters.",
+                                    pointReference,
+                                    FormatUtility.formatCoordinate(pointCoordinate),
+                                    pointRadius));
+                        } else {
+                            message.append(String.format("Could not find point %d: %s.",
+                                    pointReference,
+                                    FormatUtility.formatCoordinate(pointCoordinate)));
+                        }
+
+                    } else {
+                        message.append(error.getMessage());
+                    }
+                }
+                throw new PointNotFoundException(message.toString());
+            } else {
+                throw new InternalServerException(RoutingErrorCodes.UNKNOWN, gr.getErrors().get(0).getMessage());
+            }
+        } else {
+            // If there are no errors stored but there is indication that there are errors, something strange
+            // has happened, so return that a route could not be found
+            throw new RouteNotFoundException(
+                    RoutingErrorCodes.ROUTE_NOT_FOUND,
+                    String.format("Unable to find a route between points %d (%s) and %d (%s).",
+                            segment,
+                            FormatUtility.formatCoordinate(c0),
+                            segment + 1,
+                            FormatUtility.formatCoordinate(c1))
+            );
+        }
+    }
+
+    /**
+     * @return the maximum snapping radiuses of all points of the request, -1 (not limited) for all points if they
+     * could not be determined
+     */
+    private double[] getMaximumRadiuses(RouteSearchParameters searchParams, int numPoints, int profileType) {
+        if (searchParams.getMaximumRadiuses() != null)
+            return searchParams.getMaximumRadiuses();
+
+        double[] radiuses = new double[numPoints];
+        try {
+            Arrays.fill(radiuses, routeProfiles.getRouteProfile(profileType).getConfiguration().getMaximumSnappingRadius());
+        } catch (Exception ex) {
+            Arrays.fill(radiuses, -1);
+        }
+        return radiuses;
+    }
+
     /**
      * This will enrich all direct routes with an approximated travel time that is being calculated from the real graphhopper
      * results. The routes object should contain all routes, so the function can maintain and return the proper order!
@@ -594,6 +766,54 @@ public class RoutingProfileManager {
         return rp.buildIsochrone(parameters);
     }
 
+    /**
+     * Builds the isochrone maps of several locations. If parallel threads are configured for the isochrones service,
+     * the maps are built concurrently. The maps are returned in the order of the given parameters in any case.
+     *
+     * @param parameters The {@link IsochroneSearchParameters} of the locations
+     * @return Return is a {@link IsochroneMapCollection} holding one map per location.
+     * @throws Exception
+     */
+    public IsochroneMapCollection buildIsochrones(List<IsochroneSearchParameters> parameters) throws Exception {
+        IsochroneMapCollection isoMaps = new IsochroneMapCollection();
+
+        if (parameters.size() == 1 || IsochronesServiceSettings.getParallelThreads() <= 1) {
+            for (IsochroneSearchParameters searchParams : parameters)
+                isoMaps.add(buildIsochrone(searchParams));
+            return isoMaps;
+        }
+
+        List<Future<IsochroneMap>> tasks = new ArrayList<>(parameters.size());
+        for (IsochroneSearchParameters searchParams : parameters)
+            tasks.add(getIsochronesPool().submit(() -> buildIsochrone(searchParams)));
+
+        try {
+            for (Future<IsochroneMap> task : tasks)
+                isoMaps.add(task.get());
+        } catch (ExecutionException ex) {
+            for (Future<IsochroneMap> task : tasks)
+                task.cancel(true);
+            if (ex.getCause() instanceof Exception)
+                throw (Exception) ex.getCause();
+            throw ex;
+        }
+
+        return isoMaps;
+    }
+
+    private static synchronized ForkJoinPool getIsochronesPool() {
+        if (isochronesPool == null)
+            isochronesPool = new ForkJoinPool(IsochronesServiceSettings.getParallelThreads());
+        return isochronesPool;
+    }
+
+    private static synchronized void shutdownIsochronesPool() {
+        if (isochronesPool != null) {
+            isochronesPool.shutdownNow();
+            isochronesPool = null;
+        }
+    }
+
     public MatrixResult computeMatrix(MatrixRequest req) throws Exception {
         RoutingProfile rp = routeProfiles.getRouteProfile(req.getProfileType(), !req.getFlexibleMode());
 
@@ -51,6 +51,33 @@ public class RoutingRequest extends ServiceRequest {
 		searchParameters = new RouteSearchParameters();
 	}
 
+	/**
+	 * Creates a request with the settings of {@code other} for the given coordinates. The search parameters are shared.
+	 */
+	public RoutingRequest(RoutingRequest other, Coordinate[] coordinates)
+	{
+		setId(other.getId());
+		this.coordinates = coordinates;
+		searchParameters = other.searchParameters;
+		units = other.units;
+		language = other.language;
+		geometryFormat = other.geometryFormat;
+		geometrySimplify = other.geometrySimplify;
+		instructionsFormat = other.instructionsFormat;
+		includeInstructions = other.includeInstructions;
+		includeElevation = other.includeElevation;
+		includeGeometry = other.includeGeometry;
+		includeManeuvers = other.includeManeuvers;
+		includeRoundaboutExits = other.includeRoundaboutExits;
+		attributes = other.attributes;
+		extraInfo = other.extraInfo;
+		locationIndex = other.locationIndex;
+		continueStraight = other.continueStraight;
+		skipSegments = new ArrayList<>(other.skipSegments);
+		includeCountryInfo = other.includeCountryInfo;
+		responseFormat = other.responseFormat;
+	}
+
 	public Coordinate[] getCoordinates() {
 		return coordinates;
 	}
@@ -0,0 +1,314 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library;
+ *  if not, see <https://www.gnu.org/licenses/>.
+ */
+package org.heigit.ors.routing.algorithms;
+
+import java.util.Arrays;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntIntHashMap;
+import com.graphhopper.routing.QueryGraph;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.CHGraph;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+
+import org.heigit.ors.routing.graphhopper.extensions.edgefilters.ch.CHLevelEdgeFilter;
+import org.heigit.ors.routing.graphhopper.extensions.edgefilters.ch.DownwardSearchEdgeFilter;
+import org.heigit.ors.routing.graphhopper.extensions.edgefilters.ch.UpwardSearchEdgeFilter;
+
+/**
+ * Bucket-based many-to-many search on a contraction hierarchy (Knopp et al.).
+ *
+ * {@link #prepare(int[])} runs a backward upward search from every target and stores (target, weight) pairs in
+ * the buckets of all nodes of its search space. {@link #calcPaths(int)} then runs a forward upward search from a
+ * single source and scans the buckets of the settled nodes. The buckets are kept in flat arrays grouped by node,
+ * so that a bucket scan is a linear pass over contiguous memory.
+ */
+public class BucketManyToManyAlgorithm {
+	private static final int NO_ENTRY = -1;
+
+	private final Weighting weighting;
+	private final UpwardSearchEdgeFilter upwardEdgeFilter;
+	private final DownwardSearchEdgeFilter downwardEdgeFilter;
+	private final EdgeExplorer explorer;
+	private int visitedNodes;
+
+	// search space of the current upward search
+	private final IntIntHashMap searchEntries;
+	private final IndexedMinHeap searchQueue;
+	private int[] searchNodes;
+	private double[] searchWeights;
+	private int[] searchParents;
+	private int[] searchEdges;
+	private int searchSize;
+
+	// backward search trees of all targets, needed to unpack the found paths
+	private int[] treeNodes;
+	private int[] treeParents;
+	private int[] treeEdges;
+	private int treeSize;
+
+	// buckets grouped by node: entries of bucket b are at [bucketOffsets[b], bucketOffsets[b + 1])
+	private final IntIntHashMap bucketIds;
+	private int[] bucketOffsets;
+	private int[] bucketTargets;
+	private double[] bucketWeights;
+	private int[] bucketTreeEntries;
+
+	// best connections from the current source to all targets
+	private int numTargets;
+	private double[] bestWeights;
+	private int[] bestSearchEntries;
+	private int[] bestTreeEntries;
+
+	public BucketManyToManyAlgorithm(Graph graph, Weighting weighting) {
+		this.weighting = weighting;
+
+		CHGraph chGraph = null;
+		if (graph instanceof CHGraph)
+			chGraph = (CHGraph) graph;
+		else if (graph instanceof QueryGraph) {
+			QueryGraph qGraph = (QueryGraph) graph;
+			chGraph = (CHGraph) qGraph.getMainGraph();
+		}
+
+		upwardEdgeFilter = new UpwardSearchEdgeFilter(chGraph, weighting.getFlagEncoder());
+		downwardEdgeFilter = new DownwardSearchEdgeFilter(chGraph, weighting.getFlagEncoder());
+		explorer = graph.createEdgeExplorer();
+
+		int size = Math.min(Math.max(200, graph.getNodes() / 10), 2000);
+		searchEntries = new IntIntHashMap(size);
+		searchQueue = new IndexedMinHeap(size);
+		searchNodes = new int[size];
+		searchWeights = new double[size];
+		searchParents = new int[size];
+		searchEdges = new int[size];
+
+		treeNodes = new int[size];
+		treeParents = new int[size];
+		treeEdges = new int[size];
+
+		bucketIds = new IntIntHashMap(size);
+	}
+
+	/**
+	 * Runs the backward searches from all targets and fills the buckets. Targets with node id -1 are skipped.
+	 */
+	public void prepare(int[] targets) {
+		numTargets = targets.length;
+		treeSize = 0;
+		bucketIds.clear();
+
+		int[] stageBuckets = new int[searchNodes.length];
+		int[] stageTargets = new int[searchNodes.length];
+		double[] stageWeights = new double[searchNodes.length];
+		int stageSize = 0;
+		int numBuckets = 0;
+
+		for (int t = 0; t < targets.length; t++) {
+			if (targets[t] == -1)
+				continue;
+
+			runUpwardSearch(targets[t], true);
+
+			int treeOffset = treeSize;
+			ensureTreeCapacity(treeSize + searchSize);
+
+			if (stageSize + searchSize > stageBuckets.length) {
+				int newLength = Math.max(stageSize + searchSize, stageBuckets.length * 2);
+				stageBuckets = Arrays.copyOf(stageBuckets, newLength);
+				stageTargets = Arrays.copyOf(stageTargets, newLength);
+				stageWeights = Arrays.copyOf(stageWeights, newLength);
+			}
+
+			for (int i = 0; i < searchSize; i++) {
+				int node = searchNodes[i];
+				treeNodes[treeOffset + i] = node;
+				treeParents[treeOffset + i] = searchParents[i] == NO_ENTRY ? NO_ENTRY : treeOffset + searchParents[i];
+				treeEdges[treeOffset + i] = searchEdges[i];
+
+				int bucket = bucketIds.getOrDefault(node, NO_ENTRY);
+				if (bucket == NO_ENTRY) {
+					bucket = numBuckets++;
+					bucketIds.put(node, bucket);
+				}
+
+				stageBuckets[stageSize] = bucket;
+				stageTargets[stageSize] = t;
+				stageWeights[stageSize] = searchWeights[i];
+				stageSize++;
+			}
+			treeSize += searchSize;
+		}
+
+		// group the staged entries by bucket (counting sort), the tree entry of a staged entry equals its index
+		bucketOffsets = new int[numBuckets + 1];
+		for (int i = 0; i < stageSize; i++)
+			bucketOffsets[stageBuckets[i] + 1]++;
+		for (int b = 0; b < numBuckets; b++)
+			bucketOffsets[b + 1] += bucketOffsets[b];
+
+		bucketTargets = new int[stageSize];
+		bucketWeights = new double[stageSize];
+		bucketTreeEntries = new int[stageSize];
+		int[] fill = Arrays.copyOf(bucketOffsets, numBuckets);
+		for (int i = 0; i < stageSize; i++) {
+			int pos = fill[stageBuckets[i]]++;
+			bucketTargets[pos] = stageTargets[i];
+			bucketWeights[pos] = stageWeights[i];
+			bucketTreeEntries[pos] = i;
+		}
+
+		bestWeights = new double[numTargets];
+		bestSearchEntries = new int[numTargets];
+		bestTreeEntries = new int[numTargets];
+	}
+
+	/**
+	 * Runs the forward search from the given source node and determines the best connections to all targets.
+	 */
+	public void calcPaths(int source) {
+		Arrays.fill(bestWeights, Double.POSITIVE_INFINITY);
+		Arrays.fill(bestSearchEntries, NO_ENTRY);
+		Arrays.fill(bestTreeEntries, NO_ENTRY);
+
+		runUpwardSearch(source, false);
+
+		for (int i = 0; i < searchSize; i++) {
+			int bucket = bucketIds.getOrDefault(searchNodes[i], NO_ENTRY);
+			if (bucket == NO_ENTRY)
+				continue;
+
+			double weight = searchWeights[i];
+			int end = bucketOffsets[bucket + 1];
+			for (int k = bucketOffsets[bucket]; k < end; k++) {
+				double candidate = weight + bucketWeights[k];
+				int target = bucketTargets[k];
+				if (candidate < bestWeights[target]) {
+					bestWeights[target] = candidate;
+					bestSearchEntries[target] = i;
+					bestTreeEntries[target] = bucketTreeEntries[k];
+				}
+			}
+		}
+	}
+
+	public boolean isFound(int targetIndex) {
+		return bestSearchEntries[targetIndex] != NO_ENTRY;
+	}
+
+	public double getWeight(int targetIndex) {
+		return bestWeights[targetIndex];
+	}
+
+	/**
+	 * Collects the (possibly shortcut) edges of the best path from the current source to the given target. For
+	 * every edge the node it is traversed towards is added to {@code adjNodes}. The edges are not ordered.
+	 */
+	public void extractPath(int targetIndex, IntArrayList edges, IntArrayList adjNodes) {
+		edges.clear();
+		adjNodes.clear();
+
+		int entry = bestSearchEntries[targetIndex];
+		while (entry != NO_ENTRY && searchParents[entry] != NO_ENTRY) {
+			edges.add(searchEdges[entry]);
+			adjNodes.add(searchNodes[entry]);
+			entry = searchParents[entry];
+		}
+
+		entry = bestTreeEntries[targetIndex];
+		while (entry != NO_ENTRY && treeParents[entry] != NO_ENTRY) {
+			edges.add(treeEdges[entry]);
+			adjNodes.add(treeNodes[treeParents[entry]]);
+			entry = treeParents[entry];
+		}
+	}
+
+	public int getVisitedNodes() {
+		return visitedNodes;
+	}
+
+	private void runUpwardSearch(int startNode, boolean backward) {
+		CHLevelEdgeFilter edgeFilter = backward ? downwardEdgeFilter : upwardEdgeFilter;
+
+		searchEntries.clear();
+		searchQueue.clear();
+		searchSize = 0;
+
+		searchQueue.update(addSearchEntry(startNode, 0.0, NO_ENTRY, EdgeIterator.NO_EDGE), 0.0);
+
+		while (!searchQueue.isEmpty()) {
+			int entry = searchQueue.poll();
+			int baseNode = searchNodes[entry];
+			double baseWeight = searchWeights[entry];
+			visitedNodes++;
+
+			EdgeIterator iter = explorer.setBaseNode(baseNode);
+			edgeFilter.setBaseNode(baseNode);
+
+			while (iter.next()) {
+				if (!edgeFilter.accept(iter))
+					continue;
+
+				double weight = weighting.calcWeight(iter, backward, EdgeIterator.NO_EDGE);
+				if (Double.isInfinite(weight))
+					continue;
+
+				weight += baseWeight;
+				int adjNode = iter.getAdjNode();
+				int adjEntry = searchEntries.getOrDefault(adjNode, NO_ENTRY);
+
+				if (adjEntry == NO_ENTRY) {
+					adjEntry = addSearchEntry(adjNode, weight, entry, iter.getEdge());
+					searchQueue.update(adjEntry, weight);
+				} else if (weight < searchWeights[adjEntry]) {
+					searchWeights[adjEntry] = weight;
+					searchParents[adjEntry] = entry;
+					searchEdges[adjEntry] = iter.getEdge();
+					searchQueue.update(adjEntry, weight);
+				}
+			}
+		}
+	}
+
+	private int addSearchEntry(int node, double weight, int parent, int edge) {
+		if (searchSize == searchNodes.length) {
+			int newLength = searchNodes.length * 2;
+			searchNodes = Arrays.copyOf(searchNodes, newLength);
+			searchWeights = Arrays.copyOf(searchWeights, newLength);
+			searchParents = Arrays.copyOf(searchParents, newLength);
+			searchEdges = Arrays.copyOf(searchEdges, newLength);
+		}
+
+		int entry = searchSize++;
+		searchNodes[entry] = node;
+		searchWeights[entry] = weight;
+		searchParents[entry] = parent;
+		searchEdges[entry] = edge;
+		searchEntries.put(node, entry);
+
+		return entry;
+	}
+
+	private void ensureTreeCapacity(int capacity) {
+		if (capacity <= treeNodes.length)
+			return;
+
+		int newLength = Math.max(capacity, treeNodes.length * 2);
+		treeNodes = Arrays.copyOf(treeNodes, newLength);
+		treeParents = Arrays.copyOf(treeParents, newLength);
+		treeEdges = Arrays.copyOf(treeEdges, newLength);
+	}
+}
@@ -34,6 +34,7 @@ public class DijkstraOneToManyAlgorithm extends AbstractOneToManyRoutingAlgorith
     private int targetsFound = 0;
     private IntObjectMap<SPTEntry> targets;
     private int targetsCount = 0;
+    private double maxWeight = Double.MAX_VALUE;
 
     public DijkstraOneToManyAlgorithm(Graph graph, Weighting weighting, TraversalMode tMode) {
         super(graph, weighting, tMode);
@@ -54,6 +55,15 @@ public class DijkstraOneToManyAlgorithm extends AbstractOneToManyRoutingAlgorith
     	targetsFound = 0;
     }
     
+    /**
+     * Stops the search once the weight of the settled nodes exceeds the given limit. Targets which have not been
+     * settled by then are either missing in the result or carry a tentative weight above the limit.
+     */
+    public void setMaxWeight(double maxWeight)
+    {
+    	this.maxWeight = maxWeight;
+    }
+    
     public int getFoundTargets()
     {
     	return targetsFound;
@@ -106,7 +116,7 @@ public class DijkstraOneToManyAlgorithm extends AbstractOneToManyRoutingAlgorith
         EdgeExplorer explorer = outEdgeExplorer;
         while (true) {
             visitedNodes++;
-            if (isMaxVisitedNodesExceeded() || finished())
+            if (isMaxVisitedNodesExceeded() || finished() || currEdge.weight > maxWeight)
                 break;
 
             int startNode = currEdge.adjNode;
@@ -0,0 +1,158 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library;
+ *  if not, see <https://www.gnu.org/licenses/>.
+ */
+package org.heigit.ors.routing.algorithms;
+
+import java.util.Arrays;
+
+/**
+ * Indexed binary min-heap over dense non-negative int ids with double keys.
+ *
+ * In contrast to {@link MultiTreeSPEntryHeap} the heap positions are kept in a plain array indexed by id, so it
+ * is meant for ids which are assigned consecutively, e.g. the slots of a
+ * {@link org.heigit.ors.routing.graphhopper.extensions.storages.MultiTreeSPStorage}.
+ */
+public class IndexedMinHeap {
+	private static final int NOT_CONTAINED = -1;
+
+	private int[] ids;
+	private double[] keys;
+	private int[] positions;
+	private int size;
+
+	public IndexedMinHeap(int capacity) {
+		capacity = Math.max(capacity, 16);
+		ids = new int[capacity];
+		keys = new double[capacity];
+		positions = new int[capacity];
+		Arrays.fill(positions, NOT_CONTAINED);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public boolean contains(int id) {
+		return id < positions.length && positions[id] != NOT_CONTAINED;
+	}
+
+	public void clear() {
+		for (int i = 0; i < size; i++)
+			positions[ids[i]] = NOT_CONTAINED;
+		size = 0;
+	}
+
+	/**
+	 * Inserts the id with the given key or moves it to its new position if it is already contained.
+	 */
+	public void update(int id, double key) {
+		ensurePositionCapacity(id + 1);
+		int pos = positions[id];
+
+		if (pos == NOT_CONTAINED) {
+			ensureCapacity(size + 1);
+			pos = size++;
+			ids[pos] = id;
+			keys[pos] = key;
+			siftUp(pos);
+		} else {
+			double oldKey = keys[pos];
+			keys[pos] = key;
+			if (key < oldKey)
+				siftUp(pos);
+			else if (key > oldKey)
+				siftDown(pos);
+		}
+	}
+
+	/**
+	 * @return the id with the smallest key or -1 if the heap is empty
+	 */
+	public int poll() {
+		if (size == 0)
+			return -1;
+
+		int result = ids[0];
+		positions[result] = NOT_CONTAINED;
+
+		size--;
+		if (size > 0) {
+			set(0, ids[size], keys[size]);
+			siftDown(0);
+		}
+
+		return result;
+	}
+
+	private void siftUp(int pos) {
+		int id = ids[pos];
+		double key = keys[pos];
+
+		while (pos > 0) {
+			int parent = (pos - 1) >>> 1;
+			if (keys[parent] <= key)
+				break;
+			set(pos, ids[parent], keys[parent]);
+			pos = parent;
+		}
+
+		set(pos, id, key);
+	}
+
+	private void siftDown(int pos) {
+		int id = ids[pos];
+		double key = keys[pos];
+		int half = size >>> 1;
+
+		while (pos < half) {
+			int child = (pos << 1) + 1;
+			int right = child + 1;
+			if (right < size && keys[right] < keys[child])
+				child = right;
+			if (key <= keys[child])
+				break;
+			set(pos, ids[child], keys[child]);
+			pos = child;
+		}
+
+		set(pos, id, key);
+	}
+
+	private void set(int pos, int id, double key) {
+		ids[pos] = id;
+		keys[pos] = key;
+		positions[id] = pos;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity <= ids.length)
+			return;
+
+		int newCapacity = Math.max(capacity, ids.length + (ids.length >> 1));
+		ids = Arrays.copyOf(ids, newCapacity);
+		keys = Arrays.copyOf(keys, newCapacity);
+	}
+
+	private void ensurePositionCapacity(int capacity) {
+		if (capacity <= positions.length)
+			return;
+
+		int oldLength = positions.length;
+		positions = Arrays.copyOf(positions, Math.max(capacity, oldLength + (oldLength >> 1)));
+		Arrays.fill(positions, oldLength, positions.length, NOT_CONTAINED);
+	}
+}
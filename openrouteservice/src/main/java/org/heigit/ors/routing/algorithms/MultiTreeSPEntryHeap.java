@@ -0,0 +1,164 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library;
+ *  if not, see <https://www.gnu.org/licenses/>.
+ */
+package org.heigit.ors.routing.algorithms;
+
+import com.carrotsearch.hppc.IntIntHashMap;
+
+import org.heigit.ors.routing.graphhopper.extensions.storages.MultiTreeSPEntry;
+
+/**
+ * Indexed binary min-heap of {@link MultiTreeSPEntry} objects ordered by their total weight.
+ *
+ * Entries are keyed by their adjacent node id, so an entry whose weights have changed can be moved to its new
+ * position in O(log n) instead of the linear remove/add cycle required by {@link java.util.PriorityQueue}.
+ * Weights are cached in a primitive array, i.e. callers must invoke {@link #update(MultiTreeSPEntry)} after
+ * changing the weights of an entry that is already contained in the heap.
+ */
+public class MultiTreeSPEntryHeap {
+	private MultiTreeSPEntry[] entries;
+	private double[] keys;
+	private final IntIntHashMap positions;
+	private int size;
+
+	public MultiTreeSPEntryHeap(int capacity) {
+		capacity = Math.max(capacity, 16);
+		entries = new MultiTreeSPEntry[capacity];
+		keys = new double[capacity];
+		positions = new IntIntHashMap(capacity);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public boolean contains(int node) {
+		return positions.containsKey(node);
+	}
+
+	public void clear() {
+		for (int i = 0; i < size; i++)
+			entries[i] = null;
+		size = 0;
+		positions.clear();
+	}
+
+	public MultiTreeSPEntry peek() {
+		return size == 0 ? null : entries[0];
+	}
+
+	/**
+	 * Inserts the entry or, if an entry for the same node is already queued, moves it to the position given
+	 * by its current total weight.
+	 */
+	public void update(MultiTreeSPEntry entry) {
+		int node = entry.getAdjNode();
+		int pos = positions.getOrDefault(node, -1);
+		double key = entry.getTotalWeight();
+
+		if (pos < 0) {
+			ensureCapacity(size + 1);
+			pos = size++;
+			entries[pos] = entry;
+			keys[pos] = key;
+			positions.put(node, pos);
+			siftUp(pos);
+		} else {
+			double oldKey = keys[pos];
+			entries[pos] = entry;
+			keys[pos] = key;
+			if (key < oldKey)
+				siftUp(pos);
+			else if (key > oldKey)
+				siftDown(pos);
+		}
+	}
+
+	public MultiTreeSPEntry poll() {
+		if (size == 0)
+			return null;
+
+		MultiTreeSPEntry result = entries[0];
+		positions.remove(result.getAdjNode());
+
+		size--;
+		if (size > 0) {
+			move(size, 0);
+			siftDown(0);
+		}
+		entries[size] = null;
+
+		return result;
+	}
+
+	private void siftUp(int pos) {
+		MultiTreeSPEntry entry = entries[pos];
+		double key = keys[pos];
+
+		while (pos > 0) {
+			int parent = (pos - 1) >>> 1;
+			if (keys[parent] <= key)
+				break;
+			move(parent, pos);
+			pos = parent;
+		}
+
+		set(pos, entry, key);
+	}
+
+	private void siftDown(int pos) {
+		MultiTreeSPEntry entry = entries[pos];
+		double key = keys[pos];
+		int half = size >>> 1;
+
+		while (pos < half) {
+			int child = (pos << 1) + 1;
+			int right = child + 1;
+			if (right < size && keys[right] < keys[child])
+				child = right;
+			if (key <= keys[child])
+				break;
+			move(child, pos);
+			pos = child;
+		}
+
+		set(pos, entry, key);
+	}
+
+	private void move(int from, int to) {
+		set(to, entries[from], keys[from]);
+	}
+
+	private void set(int pos, MultiTreeSPEntry entry, double key) {
+		entries[pos] = entry;
+		keys[pos] = key;
+		positions.put(entry.getAdjNode(), pos);
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity <= entries.length)
+			return;
+
+		int newCapacity = Math.max(capacity, entries.length + (entries.length >> 1));
+		MultiTreeSPEntry[] newEntries = new MultiTreeSPEntry[newCapacity];
+		double[] newKeys = new double[newCapacity];
+		System.arraycopy(entries, 0, newEntries, 0, size);
+		System.arraycopy(keys, 0, newKeys, 0, size);
+		entries = newEntries;
+		keys = newKeys;
+	}
+}
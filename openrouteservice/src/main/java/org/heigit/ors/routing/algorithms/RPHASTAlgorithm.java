@@ -30,11 +30,14 @@ import org.heigit.ors.routing.graphhopper.extensions.edgefilters.ch.DownwardSear
 import org.heigit.ors.routing.graphhopper.extensions.edgefilters.ch.UpwardSearchEdgeFilter;
 import org.heigit.ors.routing.graphhopper.extensions.storages.MultiTreeSPEntry;
 import org.heigit.ors.routing.graphhopper.extensions.storages.MultiTreeSPEntryItem;
+import org.heigit.ors.routing.graphhopper.extensions.storages.MultiTreeSPStorage;
 
 public class RPHASTAlgorithm extends AbstractManyToManyRoutingAlgorithm {
 	private IntObjectMap<MultiTreeSPEntry> bestWeightMapFrom;
 	private MultiTreeSPEntry currFrom;
-	private PriorityQueue<MultiTreeSPEntry> prioQueue;
+	private MultiTreeSPEntryHeap prioQueue;
+	private MultiTreeSPStorage storage;
+	private IndexedMinHeap slotQueue;
 	private UpwardSearchEdgeFilter upwardEdgeFilter;
 	private DownwardSearchEdgeFilter downwardEdgeFilter;
 	private SubGraph targetGraph;
@@ -76,7 +79,8 @@ public class RPHASTAlgorithm extends AbstractManyToManyRoutingAlgorithm {
 	}
 
 	protected void initCollections(int size) {
-		prioQueue = new PriorityQueue<>(size);
+		prioQueue = new MultiTreeSPEntryHeap(size);
+		slotQueue = new IndexedMinHeap(size);
 		bestWeightMapFrom = new GHIntObjectHashMap<>(size);
 	}
 
@@ -85,7 +89,9 @@ public class RPHASTAlgorithm extends AbstractManyToManyRoutingAlgorithm {
 		finishedFrom = false;
 		finishedTo = false;
 		prioQueue.clear();
+		slotQueue.clear();
 		bestWeightMapFrom.clear();
+		storage = null;
 	}
 
 	@Override
@@ -180,7 +186,7 @@ public class RPHASTAlgorithm extends AbstractManyToManyRoutingAlgorithm {
 			currFrom = new MultiTreeSPEntry(from[i], EdgeIterator.NO_EDGE, 0.0, true, null, from.length);
 			currFrom.getItem(i).setWeight(0.0);
 			currFrom.setVisited(true);
-				prioQueue.add(currFrom);
+			prioQueue.update(currFrom);
 
 			if (!traversalMode.isEdgeBased())
 				bestWeightMapFrom.put(from[i], currFrom);
@@ -196,13 +202,13 @@ public class RPHASTAlgorithm extends AbstractManyToManyRoutingAlgorithm {
 		currFrom.setVisited(true);
 		currFrom.resetUpdate(true);
 		prioQueue.clear();
-		prioQueue.add(currFrom);
+		prioQueue.update(currFrom);
 
 		for (int i = 0; i < from.length; i++) {
 			int sourceNode = from[i];
 			MultiTreeSPEntry mspTree = bestWeightMapFrom.get(sourceNode);
 			mspTree.getItem(i).setUpdate(true);
-			prioQueue.add(mspTree);
+			prioQueue.update(mspTree);
 		}
 
 		outEdgeExplorer = targetGraph.createExplorer();
@@ -216,7 +222,186 @@ public class RPHASTAlgorithm extends AbstractManyToManyRoutingAlgorithm {
 		return targets;
 	}
 
-	private void fillEdgesUpward(MultiTreeSPEntry currEdge, PriorityQueue<MultiTreeSPEntry> prioQueue,
+	/**
+	 * Variant of {@link #calcPaths(int[], int[])} which keeps the shortest path trees in the given flat storage
+	 * instead of allocating {@link MultiTreeSPEntry} objects. The storage must have been initialized with the
+	 * number of sources.
+	 *
+	 * @return the storage slots of the targets or {@link MultiTreeSPStorage#NO_SLOT} for unreached targets
+	 */
+	public int[] calcPaths(int[] from, int[] to, MultiTreeSPStorage storage) {
+		if (traversalMode.isEdgeBased())
+			throw new IllegalStateException("Edge-based behavior not supported");
+
+		this.storage = storage;
+		slotQueue.clear();
+
+		for (int i = 0; i < from.length; i++) {
+			if (from[i] == -1)
+				continue;
+
+			//If two queried points are on the same node, this case can occur
+			int existing = storage.getSlot(from[i]);
+			if (existing != MultiTreeSPStorage.NO_SLOT) {
+				storage.setWeight(existing, i, 0.0);
+				continue;
+			}
+
+			int slot = storage.addSlot(from[i], EdgeIterator.NO_EDGE, 0.0, true, MultiTreeSPStorage.NO_SLOT);
+			storage.setWeight(slot, i, 0.0);
+			storage.setVisited(slot, true);
+			slotQueue.update(slot, storage.getTotalWeight(slot));
+		}
+
+		outEdgeExplorer = graph.createEdgeExplorer();
+
+		while (!isMaxVisitedNodesExceeded() && !finishedFrom) {
+			finishedFrom = !upwardSearchFlat();
+		}
+
+		int highestSlot = storage.getSlot(upwardEdgeFilter.getHighestNode());
+		storage.setVisited(highestSlot, true);
+		storage.resetUpdate(highestSlot, true);
+		slotQueue.clear();
+		slotQueue.update(highestSlot, storage.getTotalWeight(highestSlot));
+
+		for (int i = 0; i < from.length; i++) {
+			int sourceSlot = storage.getSlot(from[i]);
+			storage.setUpdate(sourceSlot, i, true);
+			slotQueue.update(sourceSlot, storage.getTotalWeight(sourceSlot));
+		}
+
+		outEdgeExplorer = targetGraph.createExplorer();
+
+		while (!finishedTo) {
+			finishedTo = !downwardSearchFlat();
+		}
+
+		int[] targets = new int[to.length];
+
+		for (int i = 0; i < to.length; ++i)
+			targets[i] = storage.getSlot(to[i]);
+
+		return targets;
+	}
+
+	private boolean upwardSearchFlat() {
+		if (slotQueue.isEmpty())
+			return false;
+
+		fillEdgesUpwardFlat(slotQueue.poll(), outEdgeExplorer);
+		visitedCountFrom++;
+
+		return true;
+	}
+
+	private boolean downwardSearchFlat() {
+		if (slotQueue.isEmpty())
+			return false;
+
+		fillEdgesDownwardFlat(slotQueue.poll(), outEdgeExplorer);
+		visitedCountTo++;
+
+		return true;
+	}
+
+	private void fillEdgesUpwardFlat(int currSlot, EdgeExplorer explorer) {
+		int currNode = storage.getNode(currSlot);
+		EdgeIterator iter = explorer.setBaseNode(currNode);
+
+		if (iter == null) // we reach one of the target nodes
+			return;
+
+		upwardEdgeFilter.setBaseNode(currNode);
+
+		while (iter.next()) {
+			if (!upwardEdgeFilter.accept(iter))
+				continue;
+
+			upwardEdgeFilter.updateHighestNode(iter);
+
+			edgeWeight = weighting.calcWeight(iter, false, 0);
+
+			if (!Double.isInfinite(edgeWeight)) {
+				int slot = storage.getSlot(iter.getAdjNode());
+
+				if (slot == MultiTreeSPStorage.NO_SLOT) {
+					slot = storage.addSlot(iter.getAdjNode(), iter.getEdge(), edgeWeight, true, currSlot);
+					slotQueue.update(slot, storage.getTotalWeight(slot));
+				} else {
+					addToQueue = false;
+
+					for (int i = 0; i < treeEntrySize; ++i) {
+						entryWeight = storage.getWeight(currSlot, i);
+
+						if (entryWeight == Double.POSITIVE_INFINITY || !storage.isUpdate(currSlot, i))
+							continue;
+
+						tmpWeight = edgeWeight + entryWeight;
+
+						if (storage.getWeight(slot, i) > tmpWeight) {
+							storage.setItem(slot, i, tmpWeight, iter.getEdge(), currSlot, true);
+							addToQueue = true;
+						}
+					}
+
+					if (addToQueue) {
+						storage.updateWeights(slot);
+						slotQueue.update(slot, storage.getTotalWeight(slot));
+					}
+				}
+			}
+		}
+
+		if(!targetGraph.containsNode(currNode)) storage.resetUpdate(currSlot, false);
+	}
+
+	private void fillEdgesDownwardFlat(int currSlot, EdgeExplorer explorer) {
+		EdgeIterator iter = explorer.setBaseNode(storage.getNode(currSlot));
+
+		if (iter == null)
+			return;
+
+		while (iter.next()) {
+			edgeWeight = weighting.calcWeight(iter, false, 0);
+
+			if (!Double.isInfinite(edgeWeight)) {
+				int slot = storage.getSlot(iter.getAdjNode());
+
+				if (slot == MultiTreeSPStorage.NO_SLOT) {
+					slot = storage.addSlot(iter.getAdjNode(), iter.getEdge(), edgeWeight, true, currSlot);
+					storage.setVisited(slot, true);
+					slotQueue.update(slot, storage.getTotalWeight(slot));
+				} else {
+					addToQueue = false;
+
+					for (int i = 0; i < treeEntrySize; ++i) {
+						entryWeight = storage.getWeight(currSlot, i);
+
+						if (entryWeight == Double.POSITIVE_INFINITY)
+							continue;
+
+						tmpWeight = edgeWeight + entryWeight;
+
+						if (storage.getWeight(slot, i) > tmpWeight) {
+							storage.setItem(slot, i, tmpWeight, iter.getEdge(), currSlot, true);
+							addToQueue = true;
+						}
+					}
+
+					storage.updateWeights(slot);
+
+					if (!storage.isVisited(slot) || addToQueue) {
+						// nodes settled in the upward pass are needed to reach lower level nodes
+						storage.setVisited(slot, true);
+						slotQueue.update(slot, storage.getTotalWeight(slot));
+					}
+				}
+			}
+		}
+	}
+
+	private void fillEdgesUpward(MultiTreeSPEntry currEdge, MultiTreeSPEntryHeap prioQueue,
 			IntObjectMap<MultiTreeSPEntry> shortestWeightMap, EdgeExplorer explorer) {
 		EdgeIterator iter = explorer.setBaseNode(currEdge.getAdjNode());
 
@@ -240,7 +425,7 @@ public class RPHASTAlgorithm extends AbstractManyToManyRoutingAlgorithm {
 					ee = new MultiTreeSPEntry(iter.getAdjNode(), iter.getEdge(), edgeWeight, true, currEdge, currEdge.getSize());
 
 					shortestWeightMap.put(iter.getAdjNode(), ee);
-					prioQueue.add(ee);
+					prioQueue.update(ee);
 				} else {
 					addToQueue = false;
 					
@@ -266,8 +451,7 @@ public class RPHASTAlgorithm extends AbstractManyToManyRoutingAlgorithm {
 
 					if (addToQueue) {
 						ee.updateWeights();
-						prioQueue.remove(ee);
-						prioQueue.add(ee);
+						prioQueue.update(ee);
 					}
 				}
 			}
@@ -276,7 +460,7 @@ public class RPHASTAlgorithm extends AbstractManyToManyRoutingAlgorithm {
 		if(!targetGraph.containsNode(currEdge.getAdjNode())) currEdge.resetUpdate(false);
 	}
 
-	private void fillEdgesDownward(MultiTreeSPEntry currEdge, PriorityQueue<MultiTreeSPEntry> prioQueue,
+	private void fillEdgesDownward(MultiTreeSPEntry currEdge, MultiTreeSPEntryHeap prioQueue,
 			IntObjectMap<MultiTreeSPEntry> shortestWeightMap, EdgeExplorer explorer) {
 
 		EdgeIterator iter = explorer.setBaseNode(currEdge.getAdjNode());
@@ -295,7 +479,7 @@ public class RPHASTAlgorithm extends AbstractManyToManyRoutingAlgorithm {
 					ee.setVisited(true);
 
 					shortestWeightMap.put(iter.getAdjNode(), ee);
-					prioQueue.add(ee);
+					prioQueue.update(ee);
 				} else {
 					addToQueue = false;
 					
@@ -331,11 +515,10 @@ public class RPHASTAlgorithm extends AbstractManyToManyRoutingAlgorithm {
 						// weight
 						// // does not have to be reset necessarily //
 						ee.setVisited(true);
-						prioQueue.add(ee);
+						prioQueue.update(ee);
 					} else if (addToQueue) {
 						ee.setVisited(true);
-						prioQueue.remove(ee);
-						prioQueue.add(ee);
+						prioQueue.update(ee);
 					}
 				}
 			}
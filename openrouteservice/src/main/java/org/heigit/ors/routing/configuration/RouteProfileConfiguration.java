@@ -48,6 +48,8 @@ public class RouteProfileConfiguration {
 	private String elevationCachePath = null;
 	private String elevationDataAccess = "MMAP";
 	private boolean elevationCacheClear = true;
+	private String coreDataAccess = null;
+	private boolean compiledEdgeFilters = false;
 	private int maximumSnappingRadius = 350;
 
 	private Envelope extent;
@@ -86,6 +88,8 @@ public class RouteProfileConfiguration {
 		elevationCacheClear = rpc.elevationCacheClear;
 		elevationProvider = rpc.elevationProvider;
 		elevationDataAccess = rpc.elevationDataAccess;
+		coreDataAccess = rpc.coreDataAccess;
+		compiledEdgeFilters = rpc.compiledEdgeFilters;
 
 		maximumSnappingRadius = rpc.maximumSnappingRadius;
 		hasMaximumSnappingRadius = rpc.hasMaximumSnappingRadius;
@@ -294,6 +298,26 @@ public class RouteProfileConfiguration {
 		return elevationDataAccess;
 	}
 	
+	public void setCoreDataAccess(String value)
+	{
+		coreDataAccess = value;
+	}
+
+	public String getCoreDataAccess()
+	{
+		return coreDataAccess;
+	}
+
+	public void setCompiledEdgeFilters(Boolean value)
+	{
+		compiledEdgeFilters = value;
+	}
+
+	public boolean getCompiledEdgeFilters()
+	{
+		return compiledEdgeFilters;
+	}
+
 	public void setElevationCacheClear(Boolean value)
 	{
 		elevationCacheClear = value;
@@ -123,6 +123,12 @@ public class RoutingManagerConfiguration  {
 							}
 						}
 						break;
+					case "core_data_access":
+						profile.setCoreDataAccess(StringUtility.trimQuotes(paramItem.getValue().toString()));
+						break;
+					case "compiled_edge_filters":
+						profile.setCompiledEdgeFilters(Boolean.parseBoolean(paramItem.getValue().toString()));
+						break;
 					case "ext_storages":
 						@SuppressWarnings("unchecked") 
 						Map<String, Object> storageList = (Map<String, Object>)paramItem.getValue();
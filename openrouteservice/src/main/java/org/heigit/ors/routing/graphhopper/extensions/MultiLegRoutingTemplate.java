@@ -0,0 +1,114 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the 
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1 
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library; 
+ *  if not, see <https://www.gnu.org/licenses/>.  
+ */
+package org.heigit.ors.routing.graphhopper.extensions;
+
+import com.graphhopper.GHRequest;
+import com.graphhopper.GHResponse;
+import com.graphhopper.PathWrapper;
+import com.graphhopper.routing.AlgorithmOptions;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.QueryGraph;
+import com.graphhopper.routing.RoutingAlgorithmFactory;
+import com.graphhopper.routing.template.ViaRoutingTemplate;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.util.PathProcessor;
+import com.graphhopper.storage.index.LocationIndex;
+import com.graphhopper.storage.index.QueryResult;
+import com.graphhopper.util.PathMerger;
+import com.graphhopper.util.PointList;
+import com.graphhopper.util.Translation;
+import com.graphhopper.util.shapes.GHPoint;
+import com.graphhopper.util.shapes.GHPoint3D;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Routing template for routes with via points which are returned as one response per leg, as if every leg had been
+ * requested separately. All points are looked up once and the legs are calculated on a single query graph with the
+ * same edge filter, but every leg is merged into its own {@link PathWrapper} with its own path processors.
+ */
+public class MultiLegRoutingTemplate extends ViaRoutingTemplate {
+	private final EncodingManager encodingManager;
+	private final Supplier<PathProcessor> pathProcessorSupplier;
+	private final List<GHResponse> legResponses = new ArrayList<>();
+	private List<QueryResult> legQueryResults = Collections.emptyList();
+	private List<Path> legPaths = Collections.emptyList();
+
+	public MultiLegRoutingTemplate(GHRequest ghRequest, GHResponse ghRsp, LocationIndex locationIndex,
+								   EncodingManager encodingManager, Supplier<PathProcessor> pathProcessorSupplier) {
+		super(ghRequest, ghRsp, locationIndex, encodingManager);
+		this.encodingManager = encodingManager;
+		this.pathProcessorSupplier = pathProcessorSupplier;
+	}
+
+	@Override
+	public List<QueryResult> lookup(List<GHPoint> points, FlagEncoder encoder) {
+		legQueryResults = super.lookup(points, encoder);
+		return legQueryResults;
+	}
+
+	@Override
+	public List<Path> calcPaths(QueryGraph queryGraph, RoutingAlgorithmFactory algoFactory, AlgorithmOptions algoOpts) {
+		legPaths = super.calcPaths(queryGraph, algoFactory, algoOpts);
+		return legPaths;
+	}
+
+	@Override
+	public boolean isReady(PathMerger pathMerger, Translation tr) {
+		if (legPaths.size() != legQueryResults.size() - 1)
+			throw new IllegalStateException("There should be exactly one more point than paths. points:" + legQueryResults.size() + ", paths:" + legPaths.size());
+
+		legResponses.clear();
+		for (int i = 0; i < legPaths.size(); i++) {
+			GHResponse legRsp = new GHResponse();
+			PathProcessor pathProcessor = pathProcessorSupplier.get();
+			legRsp.addReturnObject(pathProcessor);
+
+			PathWrapper legPath = new PathWrapper();
+			legPath.setWaypoints(createWaypoints(legQueryResults.get(i), legQueryResults.get(i + 1)));
+			legRsp.add(legPath);
+
+			pathMerger.setPathProcessor(new PathProcessor[] {pathProcessor});
+			pathMerger.doWork(legPath, Collections.singletonList(legPaths.get(i)), encodingManager, tr);
+			legResponses.add(legRsp);
+		}
+		return true;
+	}
+
+	/**
+	 * @return one response for every leg of the route, available after {@link #isReady(PathMerger, Translation)}
+	 */
+	public List<GHResponse> getLegResponses() {
+		return legResponses;
+	}
+
+	private static PointList createWaypoints(QueryResult from, QueryResult to) {
+		GHPoint3D fromPoint = from.getSnappedPoint();
+		GHPoint3D toPoint = to.getSnappedPoint();
+		boolean is3D = !Double.isNaN(fromPoint.getEle());
+		PointList waypoints = new PointList(2, is3D);
+		if (is3D) {
+			waypoints.add(fromPoint.getLat(), fromPoint.getLon(), fromPoint.getEle());
+			waypoints.add(toPoint.getLat(), toPoint.getLon(), toPoint.getEle());
+		} else {
+			waypoints.add(fromPoint.getLat(), fromPoint.getLon());
+			waypoints.add(toPoint.getLat(), toPoint.getLon());
+		}
+		return waypoints;
+	}
+}
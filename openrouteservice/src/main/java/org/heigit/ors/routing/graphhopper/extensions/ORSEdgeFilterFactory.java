@@ -22,6 +22,7 @@ import com.graphhopper.util.PMap;
 import com.vividsolutions.jts.geom.Polygon;
 import org.heigit.ors.routing.RouteSearchParameters;
 import org.heigit.ors.routing.graphhopper.extensions.edgefilters.*;
+import org.heigit.ors.routing.graphhopper.extensions.storages.EdgeAttributesColumn;
 import org.heigit.ors.routing.graphhopper.extensions.util.ORSPMap;
 import org.heigit.ors.routing.parameters.VehicleParameters;
 import org.heigit.ors.routing.parameters.WheelchairParameters;
@@ -38,6 +39,10 @@ public class ORSEdgeFilterFactory implements EdgeFilterFactory {
         /* Default edge filter which accepts both directions of the specified vehicle */
         edgeFilters.add(DefaultEdgeFilter.allEdges(flagEncoder));
 
+        /* Filters which can be evaluated over the edge attributes column of the graph, if it has been created */
+        EdgeAttributesColumn column = EdgeAttributesColumn.get(gs);
+        CompiledEdgeFilter compiledFilter = column == null ? null : new CompiledEdgeFilter(column);
+
         try {
             ORSPMap params = (ORSPMap)opts;
         
@@ -48,7 +53,11 @@ public class ORSEdgeFilterFactory implements EdgeFilterFactory {
     
             /* Heavy vehicle filter */
             if (params.has("edgefilter_hgv")) {
-                edgeFilters.add(new HeavyVehicleEdgeFilter(params.getInt("edgefilter_hgv", 0), (VehicleParameters)params.getObj("routing_profile_params"), gs));
+                HeavyVehicleEdgeFilter hgvFilter = new HeavyVehicleEdgeFilter(params.getInt("edgefilter_hgv", 0), (VehicleParameters)params.getObj("routing_profile_params"), gs);
+                if (compiledFilter != null && compiledFilter.canCompile(hgvFilter))
+                    compiledFilter.add(hgvFilter);
+                else
+                    edgeFilters.add(hgvFilter);
             }
 
             /* Wheelchair filter */
@@ -58,17 +67,29 @@ public class ORSEdgeFilterFactory implements EdgeFilterFactory {
     
             /* Avoid features */
             if (params.hasObj("avoid_features") && params.has("routing_profile_type")) {
-                edgeFilters.add(new AvoidFeaturesEdgeFilter(params.getInt("routing_profile_type", 0), (RouteSearchParameters) params.getObj("avoid_features"), gs));
+                AvoidFeaturesEdgeFilter avoidFeaturesFilter = new AvoidFeaturesEdgeFilter(params.getInt("routing_profile_type", 0), (RouteSearchParameters) params.getObj("avoid_features"), gs);
+                if (compiledFilter != null && compiledFilter.canCompile(avoidFeaturesFilter))
+                    compiledFilter.add(avoidFeaturesFilter);
+                else
+                    edgeFilters.add(avoidFeaturesFilter);
             }
     
             /* Avoid borders */
             if (params.hasObj("avoid_borders")) {
-                edgeFilters.add(new AvoidBordersEdgeFilter((RouteSearchParameters) params.getObj("avoid_borders"), gs));
+                AvoidBordersEdgeFilter avoidBordersFilter = new AvoidBordersEdgeFilter((RouteSearchParameters) params.getObj("avoid_borders"), gs);
+                if (compiledFilter != null && compiledFilter.canCompile(avoidBordersFilter))
+                    compiledFilter.add(avoidBordersFilter);
+                else
+                    edgeFilters.add(avoidBordersFilter);
             }
             
         } catch (Exception ex) {
             LOGGER.error(ex);
         }
+
+        if (compiledFilter != null && !compiledFilter.isEmpty())
+            edgeFilters.add(compiledFilter);
+
         return edgeFilters;
     }
 }
@@ -0,0 +1,51 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library;
+ *  if not, see <https://www.gnu.org/licenses/>.
+ */
+package org.heigit.ors.routing.graphhopper.extensions;
+
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.GHDirectory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Directory which allows to store selected files with a different {@link DAType} than the one requested by the
+ * storage creating them, e.g. to memory map the core graph and the core landmarks while the rest of the graph is
+ * kept in RAM. The files are compatible between the types, so the setting can be changed for an existing graph.
+ */
+public class ORSGHDirectory extends GHDirectory {
+	private final Map<String, DAType> prefixTypes = new LinkedHashMap<>();
+
+	public ORSGHDirectory(String location, DAType defaultType) {
+		super(location, defaultType);
+	}
+
+	/**
+	 * Sets the type used for all files whose name starts with the given prefix.
+	 */
+	public ORSGHDirectory putPrefix(String prefix, DAType type) {
+		prefixTypes.put(prefix, type);
+		return this;
+	}
+
+	@Override
+	public DataAccess find(String name, DAType type) {
+		for (Map.Entry<String, DAType> entry : prefixTypes.entrySet()) {
+			if (name.startsWith(entry.getKey()))
+				return super.find(name, entry.getValue());
+		}
+		return super.find(name, type);
+	}
+}
@@ -29,6 +29,8 @@ import com.graphhopper.routing.util.*;
 import com.graphhopper.routing.weighting.TurnWeighting;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.storage.CHProfile;
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.Graph;
 import com.graphhopper.storage.GraphHopperStorage;
 import com.graphhopper.storage.index.QueryResult;
 import com.graphhopper.util.*;
@@ -42,12 +44,18 @@ import org.heigit.ors.routing.RoutingProfileCategory;
 import org.heigit.ors.routing.graphhopper.extensions.core.CoreAlgoFactoryDecorator;
 import org.heigit.ors.routing.graphhopper.extensions.core.CoreLMAlgoFactoryDecorator;
 import org.heigit.ors.routing.graphhopper.extensions.core.PrepareCore;
+import org.heigit.ors.routing.graphhopper.extensions.edgefilters.DestinationZoneResolver;
 import org.heigit.ors.routing.graphhopper.extensions.edgefilters.EdgeFilterSequence;
 import org.heigit.ors.routing.graphhopper.extensions.edgefilters.core.AvoidBordersCoreEdgeFilter;
 import org.heigit.ors.routing.graphhopper.extensions.edgefilters.core.AvoidFeaturesCoreEdgeFilter;
 import org.heigit.ors.routing.graphhopper.extensions.edgefilters.core.HeavyVehicleCoreEdgeFilter;
 import org.heigit.ors.routing.graphhopper.extensions.edgefilters.core.WheelchairCoreEdgeFilter;
+import org.heigit.ors.routing.graphhopper.extensions.reader.SharedOSMImport;
+import org.heigit.ors.routing.graphhopper.extensions.storages.EdgeAttributesColumn;
+import org.heigit.ors.routing.graphhopper.extensions.storages.GraphStorageUtils;
+import org.heigit.ors.routing.graphhopper.extensions.storages.HeavyVehicleAttributesGraphStorage;
 import org.heigit.ors.routing.graphhopper.extensions.util.ORSParameters;
+import org.heigit.ors.routing.util.DestinationDependentEdgeFilter;
 import org.heigit.ors.util.CoordTools;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -71,6 +79,10 @@ public class ORSGraphHopper extends GraphHopper {
 
 	private int minNetworkSize = 200;
 	private int minOneWayNetworkSize = 0;
+	private DAType coreDataAccessType;
+	private boolean compiledEdgeFilters = false;
+	private SharedOSMImport.Participant sharedImport;
+	private final ORSWeightingFactory weightingFactory = new ORSWeightingFactory();
 
 	private final CoreAlgoFactoryDecorator coreFactoryDecorator =  new CoreAlgoFactoryDecorator();
 
@@ -84,6 +96,7 @@ public class ORSGraphHopper extends GraphHopper {
 		algoDecorators.add(coreLMFactoryDecorator);
 		algoDecorators.add(getCHFactoryDecorator());
 		algoDecorators.add(getLMFactoryDecorator());
+		setWeightingFactory(weightingFactory);
 		processContext.init(this);
 	}
 
@@ -97,9 +110,27 @@ public class ORSGraphHopper extends GraphHopper {
 		GraphHopper ret = super.init(args);
 		minNetworkSize = args.getInt("prepare.min_network_size", minNetworkSize);
 		minOneWayNetworkSize = args.getInt("prepare.min_one_way_network_size", minOneWayNetworkSize);
+		String coreDataAccess = args.get("graph.core.dataaccess", "");
+		if (!Helper.isEmpty(coreDataAccess))
+			coreDataAccessType = DAType.fromString(coreDataAccess);
+		compiledEdgeFilters = args.getBool("graph.compiled_edge_filters", compiledEdgeFilters);
 		return ret;
 	}
 
+	/**
+	 * @return the weighting factory of this instance, which is shared by all requests to the graph
+	 */
+	public ORSWeightingFactory getORSWeightingFactory() {
+		return weightingFactory;
+	}
+
+	/**
+	 * @return the data access type of the core graphs and core landmarks or null if they use the type of the graph
+	 */
+	public DAType getCoreDataAccessType() {
+		return coreDataAccessType;
+	}
+
 	@Override
 	protected void cleanUp() {
 		if (LOGGER.isInfoEnabled())
@@ -120,9 +151,18 @@ public class ORSGraphHopper extends GraphHopper {
 		super.cleanUp();
 	}
 
+	/**
+	 * Lets the import read the OSM file through an import shared with other profiles.
+	 */
+	public void setSharedImport(SharedOSMImport.Participant sharedImport) {
+		this.sharedImport = sharedImport;
+	}
+
 	@Override
 	protected DataReader createReader(GraphHopperStorage tmpGraph) {
-		return initDataReader(new ORSOSMReader(tmpGraph, processContext));
+		ORSOSMReader reader = new ORSOSMReader(tmpGraph, processContext);
+		reader.setSharedImport(sharedImport);
+		return initDataReader(reader);
 	}
 
 	@SuppressWarnings("unchecked")
@@ -164,11 +204,37 @@ public class ORSGraphHopper extends GraphHopper {
 			}
 		}
 
+		DestinationZoneResolver.invalidate(GraphStorageUtils.getGraphExtension(getGraphHopperStorage(), HeavyVehicleAttributesGraphStorage.class));
+
+		if (compiledEdgeFilters) {
+			StopWatch sw = new StopWatch().start();
+			EdgeAttributesColumn column = EdgeAttributesColumn.create(getGraphHopperStorage());
+			LOGGER.info(String.format("Created edge attributes column for %d edges, took %.1fs", column.getEdges(), sw.stop().getSeconds()));
+		}
+
 		return gh;
 	}
 
 	@Override
 	public List<Path> calcPaths(GHRequest request, GHResponse ghRsp) {
+		return calcPaths(request, ghRsp, null);
+	}
+
+	/**
+	 * Calculates a route with via points in one pass and returns a separate response for every leg, like the
+	 * responses of routing each pair of consecutive points on its own. Errors of the point lookup are added to the
+	 * given response, in which case no legs are returned.
+	 */
+	public List<GHResponse> routeLegs(GHRequest request, GHResponse ghRsp) {
+		List<GHResponse> legResponses = new ArrayList<>();
+		calcPaths(request, ghRsp, legResponses);
+		String date = ghRsp.getHints().get("data.date", "");
+		for (GHResponse legRsp : legResponses)
+			legRsp.getHints().put("data.date", date);
+		return legResponses;
+	}
+
+	private List<Path> calcPaths(GHRequest request, GHResponse ghRsp, List<GHResponse> legResponses) {
 		if (getGraphHopperStorage() == null || !isFullyLoaded())
 			throw new IllegalStateException("Do a successful call to load or importOrLoad before routing");
 
@@ -220,7 +286,10 @@ public class ORSGraphHopper extends GraphHopper {
 			checkIfPointsAreInBounds(points);
 
 			RoutingTemplate routingTemplate;
-			if (ROUND_TRIP.equalsIgnoreCase(algoStr))
+			if (legResponses != null)
+				routingTemplate = new MultiLegRoutingTemplate(request, ghRsp, getLocationIndex(), getEncodingManager(),
+						() -> pathProcessorFactory.createPathProcessor(request.getAdditionalHints(), encoder, getGraphHopperStorage()));
+			else if (ROUND_TRIP.equalsIgnoreCase(algoStr))
 				routingTemplate = new RoundTripRoutingTemplate(request, ghRsp, getLocationIndex(), getEncodingManager(), getMaxRoundTripRetries());
 			else if (ALT_ROUTE.equalsIgnoreCase(algoStr))
 				routingTemplate = new AlternativeRoutingTemplate(request, ghRsp, getLocationIndex(), getEncodingManager());
@@ -230,8 +299,11 @@ public class ORSGraphHopper extends GraphHopper {
 			EdgeFilter edgeFilter = edgeFilterFactory.createEdgeFilter(request.getAdditionalHints(), encoder, getGraphHopperStorage());
 			routingTemplate.setEdgeFilter(edgeFilter);
 
-			for (int c = 0; c < request.getHints().getInt("alternative_route.max_paths", 1); c++) {
-				ghRsp.addReturnObject(pathProcessorFactory.createPathProcessor(request.getAdditionalHints(), encoder, getGraphHopperStorage()));
+			// the path processors of separate legs are created by the routing template
+			if (legResponses == null) {
+				for (int c = 0; c < request.getHints().getInt("alternative_route.max_paths", 1); c++) {
+					ghRsp.addReturnObject(pathProcessorFactory.createPathProcessor(request.getAdditionalHints(), encoder, getGraphHopperStorage()));
+				}
 			}
 			List<PathProcessor> ppList = new ArrayList<>();
 			for (Object returnObject : ghRsp.getReturnObjects()) {
@@ -332,7 +404,12 @@ public class ORSGraphHopper extends GraphHopper {
 
 				algoOpts.setEdgeFilter(edgeFilter);
 
-				altPaths = routingTemplate.calcPaths(queryGraph, tmpAlgoFactory, algoOpts);
+				RoutingAlgorithmFactory legAlgoFactory = tmpAlgoFactory;
+				DestinationDependentEdgeFilter destinationFilter = edgeFilter instanceof EdgeFilterSequence ? ((EdgeFilterSequence) edgeFilter).getFilter(DestinationDependentEdgeFilter.class) : null;
+				if (destinationFilter != null && routingTemplate instanceof ViaRoutingTemplate)
+					legAlgoFactory = new DestinationEdgeAlgorithmFactory(tmpAlgoFactory, destinationFilter, qResults, encoder, tMode);
+
+				altPaths = routingTemplate.calcPaths(queryGraph, legAlgoFactory, algoOpts);
 
 				String date = getGraphHopperStorage().getProperties().get("datareader.data.date");
 				if (Helper.isEmpty(date)) {
@@ -347,12 +424,15 @@ public class ORSGraphHopper extends GraphHopper {
 				PathMerger pathMerger = new PathMerger().setCalcPoints(tmpCalcPoints).setDouglasPeucker(peucker)
                         .setEnableInstructions(tmpEnableInstructions)
 						.setPathProcessor(ppList.toArray(new PathProcessor[]{}))
-						.setSimplifyResponse(isSimplifyResponse() && wayPointMaxDistance > 0);
+						.setSimplifyResponse(hints.getBool(ORSParameters.Routing.SIMPLIFY_RESPONSE, isSimplifyResponse()) && wayPointMaxDistance > 0);
 
 				if (routingTemplate.isReady(pathMerger, tr))
 					break;
 			}
 
+			if (legResponses != null)
+				legResponses.addAll(((MultiLegRoutingTemplate) routingTemplate).getLegResponses());
+
 			return altPaths;
 
 		} catch (IllegalArgumentException ex) {
@@ -610,6 +690,44 @@ public class ORSGraphHopper extends GraphHopper {
 	}
 
 
+	@Override
+	public void close() {
+		DestinationZoneResolver.invalidate(GraphStorageUtils.getGraphExtension(getGraphHopperStorage(), HeavyVehicleAttributesGraphStorage.class));
+		super.close();
+		coreLMFactoryDecorator.close();
+	}
+
+	/**
+	 * Sets the destination edge of a {@link DestinationDependentEdgeFilter} to the closest edge of the end point of
+	 * every leg before the algorithm of the leg is created. The {@link ViaRoutingTemplate} creates one algorithm per
+	 * leg in the order of the points.
+	 */
+	private static class DestinationEdgeAlgorithmFactory implements RoutingAlgorithmFactory {
+		private final RoutingAlgorithmFactory algoFactory;
+		private final DestinationDependentEdgeFilter edgeFilter;
+		private final List<QueryResult> queryResults;
+		private final FlagEncoder encoder;
+		private final TraversalMode tMode;
+		private int leg = 0;
+
+		DestinationEdgeAlgorithmFactory(RoutingAlgorithmFactory algoFactory, DestinationDependentEdgeFilter edgeFilter,
+										List<QueryResult> queryResults, FlagEncoder encoder, TraversalMode tMode) {
+			this.algoFactory = algoFactory;
+			this.edgeFilter = edgeFilter;
+			this.queryResults = queryResults;
+			this.encoder = encoder;
+			this.tMode = tMode;
+		}
+
+		@Override
+		public RoutingAlgorithm createAlgo(Graph graph, AlgorithmOptions opts) {
+			leg++;
+			if (leg < queryResults.size())
+				edgeFilter.setDestinationEdge(queryResults.get(leg).getClosestEdge(), graph, encoder, tMode);
+			return algoFactory.createAlgo(graph, opts);
+		}
+	}
+
 	/**
 	 * For landmarks it is required to always call this method: either it creates the landmark data or it loads it.
 	 */
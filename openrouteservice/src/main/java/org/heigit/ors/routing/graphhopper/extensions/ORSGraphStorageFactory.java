@@ -102,6 +102,7 @@ public class ORSGraphStorageFactory implements GraphStorageFactory {
 		}
 		if (((ORSGraphHopper)gh).isCoreEnabled()) {
 			profiles.addAll(((ORSGraphHopper)gh).getCoreFactoryDecorator().getCHProfiles());
+			dir = createCoreDirectory(dir, (ORSGraphHopper) gh);
 		}
 		if (!profiles.isEmpty())
 			return new GraphHopperStorage(profiles, dir, encodingManager, gh.hasElevation(), graphExtension);
@@ -109,6 +110,29 @@ public class ORSGraphStorageFactory implements GraphStorageFactory {
 			return new GraphHopperStorage(dir, encodingManager, gh.hasElevation(), graphExtension);
 	}
 
+	/**
+	 * Returns a directory which stores the core graphs and the core landmarks with the data access type configured
+	 * for the core, or the given directory if they use the same type as the rest of the graph.
+	 */
+	private GHDirectory createCoreDirectory(GHDirectory dir, ORSGraphHopper gh) {
+		DAType coreType = gh.getCoreDataAccessType();
+		if (coreType == null || coreType.equals(dir.getDefaultType()))
+			return dir;
+
+		ORSGHDirectory coreDir = new ORSGHDirectory(dir.getLocation(), dir.getDefaultType());
+		for (CHProfile profile : gh.getCoreFactoryDecorator().getCHProfiles()) {
+			coreDir.putPrefix("nodes_ch_" + profile.toFileName(), coreType);
+			coreDir.putPrefix("shortcuts_" + profile.toFileName(), coreType);
+		}
+		if (gh.isCoreLMEnabled())
+			coreDir.putPrefix("landmarks_core_", coreType);
+
+		if (LOGGER.isInfoEnabled())
+			LOGGER.info(String.format("Using %s for core storages in '%s'", coreType, dir.getLocation()));
+
+		return coreDir;
+	}
+
 	private GraphExtension getExtension(ArrayList<GraphExtension> graphExtensions) {
 		if (graphExtensions.size() > 1) {
 			ArrayList<GraphExtension> seq = new ArrayList<>(graphExtensions);
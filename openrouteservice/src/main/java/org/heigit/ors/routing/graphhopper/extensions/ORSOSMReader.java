@@ -16,6 +16,7 @@ package org.heigit.ors.routing.graphhopper.extensions;
 import com.carrotsearch.hppc.LongArrayList;
 import com.graphhopper.reader.ReaderNode;
 import com.graphhopper.reader.ReaderWay;
+import com.graphhopper.reader.osm.OSMInput;
 import com.graphhopper.reader.osm.OSMReader;
 import com.graphhopper.storage.GraphHopperStorage;
 import com.graphhopper.storage.IntsRef;
@@ -24,6 +25,8 @@ import com.graphhopper.util.shapes.GHPoint;
 import com.vividsolutions.jts.geom.Coordinate;
 import org.apache.log4j.Logger;
 import org.heigit.ors.config.AppConfig;
+import org.heigit.ors.routing.graphhopper.extensions.reader.OSMNodeTagStore;
+import org.heigit.ors.routing.graphhopper.extensions.reader.SharedOSMImport;
 import org.heigit.ors.routing.graphhopper.extensions.reader.osmfeatureprocessors.OSMFeatureFilter;
 import org.heigit.ors.routing.graphhopper.extensions.reader.osmfeatureprocessors.WheelchairWayFilter;
 import org.heigit.ors.routing.graphhopper.extensions.storages.builders.BordersGraphStorageBuilder;
@@ -31,6 +34,9 @@ import org.heigit.ors.routing.graphhopper.extensions.storages.builders.GraphStor
 import org.heigit.ors.routing.graphhopper.extensions.storages.builders.RoadAccessRestrictionsGraphStorageBuilder;
 import org.heigit.ors.routing.graphhopper.extensions.storages.builders.WheelchairGraphStorageBuilder;
 
+import javax.xml.stream.XMLStreamException;
+import java.io.File;
+import java.io.IOException;
 import java.io.InvalidObjectException;
 import java.util.*;
 import java.util.Map.Entry;
@@ -43,7 +49,7 @@ public class ORSOSMReader extends OSMReader {
 	private boolean processNodeTags;
 	private OSMDataReaderContext readerCntx;
 
-	private HashMap<Long, HashMap<String, String>> nodeTags = new HashMap<>();
+	private OSMNodeTagStore nodeTags;
 
 	private boolean processGeom = false;
 	private boolean processSimpleGeom = false;
@@ -56,6 +62,8 @@ public class ORSOSMReader extends OSMReader {
 
 	private HashSet<String> extraTagKeys;
 
+	private SharedOSMImport.Participant sharedImport;
+
 	public ORSOSMReader(GraphHopperStorage storage, GraphProcessContext procCntx) {
 		super(storage);
 
@@ -97,6 +105,23 @@ public class ORSOSMReader extends OSMReader {
 				extraTagKeys.add("motorcycle");
 			}
 		}
+
+		if (processNodeTags)
+			nodeTags = new OSMNodeTagStore(storage.getDirectory());
+	}
+
+	/**
+	 * Reads the OSM file through an import shared with other readers instead of decoding it on its own.
+	 */
+	public void setSharedImport(SharedOSMImport.Participant sharedImport) {
+		this.sharedImport = sharedImport;
+	}
+
+	@Override
+	protected OSMInput openOsmInputFile(File osmFile) throws XMLStreamException, IOException {
+		if (sharedImport != null)
+			return sharedImport.openPass();
+		return super.openOsmInputFile(osmFile);
 	}
 
 	@Override
@@ -115,18 +140,11 @@ public class ORSOSMReader extends OSMReader {
 		// can be accessed when it comes to using ways
 		if(processNodeTags && node.hasTags()) {
 			// Check each node and store the tags that are required
-			HashMap<String, String> tagValues = new HashMap<>();
-			Set<String> nodeKeys = node.getTags().keySet();
-			for(String key : nodeKeys) {
-				if(extraTagKeys.contains(key)) {
-					tagValues.put(key, node.getTag(key));
+			for(Entry<String, Object> tag : node.getTags().entrySet()) {
+				if(extraTagKeys.contains(tag.getKey())) {
+					nodeTags.addTag(node.getId(), tag.getKey(), String.valueOf(tag.getValue()));
 				}
 			}
-
-			// Now if we have tag data, we need to store it
-			if(tagValues.size() > 0) {
-				nodeTags.put(node.getId(), tagValues);
-			}
 		}
 		return node;
 	}
@@ -175,10 +193,10 @@ public class ORSOSMReader extends OSMReader {
 	@Override
 	public void onProcessWay(ReaderWay way) {
 
-		HashMap<Integer, HashMap<String,String>> tags = new HashMap<>();
+		HashMap<Integer, HashMap<String,String>> tags = null;
 		ArrayList<Coordinate> coords = new ArrayList<>();
 
-		if(processNodeTags) {
+		if(processNodeTags && !nodeTags.isEmpty()) {
 			// If we are processing the node tags then we need to obtain the tags for nodes that are on the way. We
 			// should store the internal node id though rather than the osm node as during the edge processing, we
 			// do not know the osm node id
@@ -190,12 +208,13 @@ public class ORSOSMReader extends OSMReader {
 			for(int i=0; i<size; i++) {
 				// find the node
 				long id = osmNodeIds.get(i);
-				// replace the osm id with the internal id
-				int internalId = getNodeMap().get(id);
 				HashMap<String, String> tagsForNode = nodeTags.get(id);
 
 				if(tagsForNode != null) {
-					tags.put(internalId, nodeTags.get(id));
+					if(tags == null)
+						tags = new HashMap<>();
+					// replace the osm id with the internal id
+					tags.put(getNodeMap().get(id), tagsForNode);
 				}
 			}
 		}
@@ -239,9 +258,9 @@ public class ORSOSMReader extends OSMReader {
 
 		}
 
-		if(tags.size() > 0 || coords.size() > 1) {
+		if(tags != null || coords.size() > 1) {
 			// Use an overloaded method that allows the passing of parameters from this reader
-			procCntx.processWay(way, coords.toArray(new Coordinate[coords.size()]), tags);
+			procCntx.processWay(way, coords.toArray(new Coordinate[coords.size()]), tags == null ? new HashMap<>() : tags);
 		} else {
 			procCntx.processWay(way);
 		}
@@ -412,6 +431,11 @@ public class ORSOSMReader extends OSMReader {
 
 	@Override
 	protected void finishedReading() {
+		// the node tags are only needed while processing the ways
+		if (nodeTags != null) {
+			nodeTags.release();
+			nodeTags = null;
+		}
 		super.finishedReading();
 		procCntx.finish();
 	}
@@ -33,17 +33,16 @@ import java.io.File;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Creates the weightings of a routing profile. One instance is shared by all requests of a profile, so that the
+ * turn cost extension is only initialized once per graph storage and is not reloaded for every request.
+ */
 public class ORSWeightingFactory implements WeightingFactory {
-	private Map<Object, TurnCostExtension> turnCostExtensionMap;
-
-	public ORSWeightingFactory()
-	{
-		turnCostExtensionMap = new HashMap<>();
-	}
+	private final Map<GraphHopperStorage, TurnCostExtension> turnCostExtensionMap = new ConcurrentHashMap<>();
 
 	public Weighting createWeighting(HintsMap hintsMap, FlagEncoder encoder, GraphHopperStorage graphStorage) {
 
@@ -93,21 +92,9 @@ public class ORSWeightingFactory implements WeightingFactory {
 		}
 
 		if (encoder.supports(TurnWeighting.class) && !isFootBasedFlagEncoder(encoder) && graphStorage != null && !tMode.equals(TraversalMode.NODE_BASED)) {
-			Path path = Paths.get(graphStorage.getDirectory().getLocation(), "turn_costs");
-			File file = path.toFile();
-			if (file.exists()) {
-				TurnCostExtension turnCostExt = null;
-				synchronized (turnCostExtensionMap) {
-					turnCostExt = turnCostExtensionMap.get(graphStorage);
-					if (turnCostExt == null) {
-						turnCostExt = new TurnCostExtension();
-						turnCostExt.init(graphStorage, graphStorage.getDirectory());
-						turnCostExtensionMap.put(graphStorage, turnCostExt);
-					}
-				}
-
+			TurnCostExtension turnCostExt = getTurnCostExtension(graphStorage);
+			if (turnCostExt != null)
 				result = new TurnWeighting(result, turnCostExt);
-			}
 		}
 
 		// Apply soft weightings
@@ -156,6 +143,25 @@ public class ORSWeightingFactory implements WeightingFactory {
 		return result;
 	}
 
+	/**
+	 * @return the turn cost extension of the given graph, which is loaded on first use, or null if the graph has no
+	 * turn costs
+	 */
+	TurnCostExtension getTurnCostExtension(GraphHopperStorage graphStorage) {
+		return turnCostExtensionMap.computeIfAbsent(graphStorage, this::loadTurnCostExtension);
+	}
+
+	private TurnCostExtension loadTurnCostExtension(GraphHopperStorage graphStorage) {
+		Path path = Paths.get(graphStorage.getDirectory().getLocation(), "turn_costs");
+		File file = path.toFile();
+		if (!file.exists())
+			return null;
+
+		TurnCostExtension turnCostExt = new TurnCostExtension();
+		turnCostExt.init(graphStorage, graphStorage.getDirectory());
+		return turnCostExt;
+	}
+
 	private boolean isFootBasedFlagEncoder(FlagEncoder encoder){
 		return encoder instanceof FootFlagEncoder;
 	}
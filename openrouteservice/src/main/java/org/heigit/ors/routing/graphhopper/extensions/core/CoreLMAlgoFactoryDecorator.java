@@ -23,7 +23,6 @@ import com.graphhopper.routing.lm.LandmarkSuggestion;
 import com.graphhopper.routing.util.HintsMap;
 import com.graphhopper.routing.weighting.AbstractWeighting;
 import com.graphhopper.routing.weighting.Weighting;
-import com.graphhopper.storage.CHGraphImpl;
 import com.graphhopper.storage.Graph;
 import com.graphhopper.storage.GraphHopperStorage;
 import com.graphhopper.storage.StorableProperties;
@@ -71,6 +70,7 @@ public class CoreLMAlgoFactoryDecorator implements RoutingAlgorithmFactoryDecora
     private ExecutorService threadPool;
     private boolean logDetails = false;
     private CoreLMOptions coreLMOptions = new CoreLMOptions();
+    private final List<CoreNodeIdMap> coreNodeIdMaps = new ArrayList<>();
 
     public CoreLMAlgoFactoryDecorator() {
         setPreparationThreads(1);
@@ -301,7 +301,7 @@ public class CoreLMAlgoFactoryDecorator implements RoutingAlgorithmFactoryDecora
 
         for (Weighting weighting : getWeightings()) {
 
-            Map<Integer, Integer> coreNodeIdMap = createCoreNodeIdMap(ghStorage, weighting);
+            CoreNodeIdMap coreNodeIdMap = createCoreNodeIdMap(ghStorage, weighting);
 
             for (LMEdgeFilterSequence edgeFilterSequence : coreLMOptions.getFilters()) {
                 Double maximumWeight = maximumWeights.get(weighting.getName());
@@ -321,24 +321,29 @@ public class CoreLMAlgoFactoryDecorator implements RoutingAlgorithmFactoryDecora
 
     /**
      * This method creates a mapping of CoreNode ids to integers from 0 to numCoreNodes to save space.
-     * Otherwise we would have to store a lot of empty info
+     * Otherwise we would have to store a lot of empty info. An existing mapping is loaded from the graph directory,
+     * a new one is stored there right away. The mapping is shared by the landmark storages of the weighting and
+     * closed by {@link #close()}.
      */
-
-    public Map<Integer, Integer> createCoreNodeIdMap(GraphHopperStorage graph, Weighting weighting) {
-        CHGraphImpl core = graph.getCoreGraph(weighting);
-        HashMap<Integer, Integer> coreNodeIdMap = new HashMap<>();
-        int maxNode = graph.getNodes();
-        int coreNodeLevel = maxNode + 1;
-        int index = 0;
-        for (int i = 0; i < maxNode; i++){
-            if (core.getLevel(i) < coreNodeLevel)
-                continue;
-            coreNodeIdMap.put(i, index);
-            index++;
+    public CoreNodeIdMap createCoreNodeIdMap(GraphHopperStorage graph, Weighting weighting) {
+        CoreNodeIdMap coreNodeIdMap = new CoreNodeIdMap(graph.getDirectory(), AbstractWeighting.weightingToFileName(weighting));
+        if (!coreNodeIdMap.loadExisting(graph.getNodes())) {
+            coreNodeIdMap.init(graph.getCoreGraph(weighting), graph.getNodes());
+            coreNodeIdMap.flush();
         }
+        coreNodeIdMaps.add(coreNodeIdMap);
         return coreNodeIdMap;
     }
 
+    /**
+     * Closes the core node id mappings, the landmark storages using them leave them open.
+     */
+    public void close() {
+        for (CoreNodeIdMap coreNodeIdMap : coreNodeIdMaps)
+            coreNodeIdMap.close();
+        coreNodeIdMaps.clear();
+    }
+
     public CoreLMOptions getCoreLMOptions(){
         return coreLMOptions;
     }
@@ -84,13 +84,13 @@ public class CoreLandmarkStorage implements Storable<LandmarkStorage>{
     private LMEdgeFilterSequence landmarksFilter;
     private int count = 0;
 
-    private Map<Integer, Integer> coreNodeIdMap;
+    private CoreNodeIdMap coreNodeIdMap;
     /**
      * 'to' and 'from' fit into 32 bit => 16 bit for each of them => 65536
      */
     static final long PRECISION = 1 << 16;
 
-    public CoreLandmarkStorage(Directory dir, GraphHopperStorage graph, Map<Integer, Integer> coreNodeIdMap, final Weighting weighting, LMEdgeFilterSequence landmarksFilter, int landmarks) {
+    public CoreLandmarkStorage(Directory dir, GraphHopperStorage graph, CoreNodeIdMap coreNodeIdMap, final Weighting weighting, LMEdgeFilterSequence landmarksFilter, int landmarks) {
         this.graph = graph;
         this.coreNodeIdMap = coreNodeIdMap;
         this.core = graph.getCoreGraph(weighting);
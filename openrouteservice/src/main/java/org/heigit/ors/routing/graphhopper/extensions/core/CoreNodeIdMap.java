@@ -0,0 +1,131 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library;
+ *  if not, see <https://www.gnu.org/licenses/>.
+ */
+package org.heigit.ors.routing.graphhopper.extensions.core;
+
+import com.graphhopper.storage.CHGraph;
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+import com.graphhopper.storage.Storable;
+
+/**
+ * Maps the ids of core nodes to consecutive integers from 0 to the number of core nodes, which are used as row
+ * index of the core landmark storages. The mapping is a dense int column indexed by node id, so a lookup is a
+ * single memory access. It is stored next to the landmark files of the weighting. A single instance per weighting
+ * is shared by all core landmark storages and owned by {@link CoreLMAlgoFactoryDecorator}.
+ */
+public class CoreNodeIdMap implements Storable<CoreNodeIdMap> {
+    public static final int NO_CORE_NODE = -1;
+
+    private final DataAccess da;
+    private int nodes;
+    private int coreNodes;
+
+    public CoreNodeIdMap(Directory dir, String name) {
+        DAType type = dir.getDefaultType();
+        da = dir.find("landmarks_core_ids_" + name, type.isMMap() ? DAType.MMAP : (type.isStoring() ? DAType.RAM_STORE : DAType.RAM));
+    }
+
+    /**
+     * Creates the mapping for all nodes of the given core graph which have the core level.
+     */
+    public CoreNodeIdMap init(CHGraph core, int nodes) {
+        create(4L * nodes);
+        this.nodes = nodes;
+        int coreNodeLevel = nodes + 1;
+        int index = 0;
+        for (int i = 0; i < nodes; i++) {
+            if (core.getLevel(i) < coreNodeLevel) {
+                da.setInt(4L * i, NO_CORE_NODE);
+                continue;
+            }
+            da.setInt(4L * i, index);
+            index++;
+        }
+        coreNodes = index;
+        da.setHeader(0, nodes);
+        da.setHeader(4, coreNodes);
+        return this;
+    }
+
+    /**
+     * @return the index of the given core node or {@link #NO_CORE_NODE}
+     */
+    public int get(int node) {
+        return da.getInt((long) node << 2);
+    }
+
+    public int getNodes() {
+        return nodes;
+    }
+
+    public int getCoreNodes() {
+        return coreNodes;
+    }
+
+    /**
+     * Loads the stored mapping, which has to belong to a graph with the given number of nodes.
+     *
+     * @throws IllegalStateException if the stored mapping has been created for a different graph, e.g. by an older
+     * build which left its landmark files behind
+     */
+    public boolean loadExisting(int graphNodes) {
+        if (!loadExisting())
+            return false;
+
+        if (nodes != graphNodes)
+            throw new IllegalStateException("The core node id mapping " + da.getName() + " has been created for " + nodes
+                    + " nodes, but the graph has " + graphNodes + " nodes. Remove the landmark files to rebuild them.");
+        if (da.getCapacity() < 4L * nodes)
+            throw new IllegalStateException("The core node id mapping " + da.getName() + " is incomplete. Remove the landmark files to rebuild them.");
+        return true;
+    }
+
+    @Override
+    public boolean loadExisting() {
+        if (da.loadExisting()) {
+            nodes = da.getHeader(0);
+            coreNodes = da.getHeader(4);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public CoreNodeIdMap create(long byteCount) {
+        da.create(2000);
+        da.ensureCapacity(byteCount);
+        return this;
+    }
+
+    @Override
+    public void flush() {
+        da.flush();
+    }
+
+    @Override
+    public void close() {
+        da.close();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return da.isClosed();
+    }
+
+    @Override
+    public long getCapacity() {
+        return da.getCapacity();
+    }
+}
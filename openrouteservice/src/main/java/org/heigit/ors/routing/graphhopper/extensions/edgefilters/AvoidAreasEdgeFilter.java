@@ -13,17 +13,27 @@
  */
 package org.heigit.ors.routing.graphhopper.extensions.edgefilters;
 
+import com.carrotsearch.hppc.IntByteHashMap;
 import com.graphhopper.routing.util.EdgeFilter;
 import com.graphhopper.util.EdgeIteratorState;
 import com.graphhopper.util.PointList;
 import com.vividsolutions.jts.geom.*;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
 
 import java.io.Serializable;
+import java.util.Arrays;
 
 public class AvoidAreasEdgeFilter implements EdgeFilter {
+	private static final byte VERDICT_ACCEPT = 1;
+	private static final byte VERDICT_REJECT = 2;
 
 	private Envelope env; 
 	private Polygon[] polys;
+	private PreparedGeometry[] preparedPolys;
+	private AreaGrid grid;
+	// verdicts of the edges which have already been checked, the filter lives as long as one request
+	private IntByteHashMap verdicts;
 	private DefaultCoordinateSequence coordSequence;
 	private GeometryFactory geomFactory = new GeometryFactory();
 	
@@ -36,25 +46,16 @@ public class AvoidAreasEdgeFilter implements EdgeFilter {
 
 		if (polys != null && polys.length > 0)
 		{
-			double minX = Double.MAX_VALUE;
-			double minY = Double.MAX_VALUE;
-			double maxX = Double.MIN_VALUE;
-			double maxY = Double.MIN_VALUE;
+			env = new Envelope();
+			preparedPolys = new PreparedGeometry[polys.length];
 
 			for (int i = 0; i < polys.length; i++) {
-				Polygon poly = polys[i];
-				Envelope internal = poly.getEnvelopeInternal();
-				if (internal.getMinX() < minX)
-					minX = internal.getMinX();
-				if (internal.getMinY() < minY)
-					minY = internal.getMinY();
-				if (internal.getMaxX() > maxX)
-					maxX = internal.getMaxX();
-				if (internal.getMaxY() > maxY)
-					maxY = internal.getMaxY();
+				env.expandToInclude(polys[i].getEnvelopeInternal());
+				preparedPolys[i] = PreparedGeometryFactory.prepare(polys[i]);
 			}
 
-			env = new Envelope(minX, maxX, minY, maxY);
+			grid = new AreaGrid(env, polys, preparedPolys, geomFactory);
+			verdicts = new IntByteHashMap();
 
 			coordSequence = new DefaultCoordinateSequence(new Coordinate[1], 1);
 		}
@@ -65,25 +66,34 @@ public class AvoidAreasEdgeFilter implements EdgeFilter {
 		if (env == null)
 			return true;
 
-		boolean inEnv = false;
+		int edge = iter.getEdge();
+		byte verdict = verdicts.get(edge);
+		if (verdict != 0)
+			return verdict == VERDICT_ACCEPT;
+
 		//   PointList pl = iter.fetchWayGeometry(2); // does not work
-		PointList pl = iter.fetchWayGeometry(3);
+		boolean accept = acceptGeometry(iter.fetchWayGeometry(3));
+		verdicts.put(edge, accept ? VERDICT_ACCEPT : VERDICT_REJECT);
+
+		return accept;
+	}
+
+	private boolean acceptGeometry(PointList pl) {
 		int size = pl.getSize();
+		boolean insideVertex = false;
 
 		double eMinX = Double.MAX_VALUE;
 		double eMinY = Double.MAX_VALUE;
-		double eMaxX = Double.MIN_VALUE;
-		double eMaxY = Double.MIN_VALUE;
+		double eMaxX = -Double.MAX_VALUE;
+		double eMaxY = -Double.MAX_VALUE;
 
-		for (int j = 0; j < pl.getSize(); j++)
+		for (int j = 0; j < size; j++)
 		{
 			double x = pl.getLon(j);
 			double y = pl.getLat(j);
-			if (env.contains(x, y))
-			{
-				inEnv = true;
-				break;
-			}
+
+			if (!insideVertex && grid.isInside(x, y))
+				insideVertex = true;
 
 			if (x < eMinX)
 				eMinX = x;
@@ -95,50 +105,204 @@ public class AvoidAreasEdgeFilter implements EdgeFilter {
 				eMaxY = y;
 		}
 
-		if (inEnv || !(eMinX > env.getMaxX() || eMaxX < env.getMinX() || eMinY > env.getMaxY() || eMaxY < env.getMinY()))
+		if (eMinX > env.getMaxX() || eMaxX < env.getMinX() || eMinY > env.getMaxY() || eMaxY < env.getMinY())
+			return true;
+
+		// a vertex in the interior of an avoid area means that the edge either crosses or lies within it
+		if (insideVertex)
+			return false;
+
+		if (size < 2)
+			return true;
+
+		// only edges which pass cells containing a polygon boundary need the exact tests
+		if (grid.isOutside(eMinX, eMinY, eMaxX, eMaxY))
+			return true;
+
+		// We have to reset the coordinate sequence else for some reason the envelopes for the edge are wrong
+		coordSequence = new DefaultCoordinateSequence(new Coordinate[1], 1);
+		// resize sequence if needed
+		coordSequence.resize(size);
+
+		for (int j = 0; j < size; j++)
 		{
-			// We have to reset the coordinate sequence else for some reason the envelopes for the edge are wrong
-			coordSequence = new DefaultCoordinateSequence(new Coordinate[1], 1);
-			if (size >= 2)
+			double x = pl.getLon(j);
+			double y = pl.getLat(j);
+			Coordinate c =  coordSequence.getCoordinate(j);
+
+			if (c == null)
 			{
-				// resize sequence if needed
-				coordSequence.resize(size);
-
-				for (int j = 0; j < size; j++)
-				{
-					double x = pl.getLon(j);
-					double y = pl.getLat(j);
-					Coordinate c =  coordSequence.getCoordinate(j);
-
-					if (c == null)
-					{
-						c = new Coordinate(x, y);
-						coordSequence.setCoordinate(j, c);
-					}
-					else
-					{
-						c.x = x;
-						c.y = y;
-					}
-				}
+				c = new Coordinate(x, y);
+				coordSequence.setCoordinate(j, c);
+			}
+			else
+			{
+				c.x = x;
+				c.y = y;
+			}
+		}
+
+		LineString ls = geomFactory.createLineString(coordSequence);
+		Envelope lsEnv = ls.getEnvelopeInternal();
+
+		for (int i = 0; i < polys.length; i++)
+		{
+			Polygon poly = polys[i];
+			if (!poly.getEnvelopeInternal().intersects(lsEnv))
+				continue;
+
+			PreparedGeometry preparedPoly = preparedPolys[i];
+			if (preparedPoly.containsProperly(ls))
+				return false;
+			if (!preparedPoly.intersects(ls))
+				continue;
+
+			// the line intersects the polygon, but might only touch its boundary
+			if (poly.contains(ls) || ls.crosses(poly))
+				return false;
+		}
+
+		return true;
+	}
 
-				LineString ls = geomFactory.createLineString(coordSequence);
+	/**
+	 * Uniform grid over the envelope of the avoid areas with cells classified as being outside of all areas, in the
+	 * interior of an area, or containing an area boundary. The cells are classified by recursively splitting the
+	 * envelope, so that only cells containing boundaries are split further.
+	 */
+	private static class AreaGrid {
+		private static final byte OUTSIDE = 0;
+		private static final byte BOUNDARY = 1;
+		private static final byte INSIDE = 2;
+		private static final int LEVELS = 6;
+
+		private final Polygon[] polys;
+		private final PreparedGeometry[] preparedPolys;
+		private final GeometryFactory geomFactory;
+
+		private final int size;
+		private final double minX;
+		private final double minY;
+		private final double cellWidth;
+		private final double cellHeight;
+		private final byte[] cells;
+		// summed-area table of the cells which are not outside, (size + 1) x (size + 1)
+		private final int[] nonOutsideSums;
+
+		AreaGrid(Envelope env, Polygon[] polys, PreparedGeometry[] preparedPolys, GeometryFactory geomFactory) {
+			this.polys = polys;
+			this.preparedPolys = preparedPolys;
+			this.geomFactory = geomFactory;
 
-				for (int i = 0; i < polys.length; i++)
-				{
-					Polygon poly = polys[i];
-					if (poly.contains(ls) || ls.crosses(poly))
-					{
-						return false;
+			minX = env.getMinX();
+			minY = env.getMinY();
+
+			if (env.getWidth() > 0 && env.getHeight() > 0) {
+				size = 1 << LEVELS;
+				cellWidth = env.getWidth() / size;
+				cellHeight = env.getHeight() / size;
+				cells = new byte[size * size];
+
+				int[] candidates = new int[polys.length];
+				for (int i = 0; i < candidates.length; i++)
+					candidates[i] = i;
+				classify(0, 0, size, candidates);
+
+				nonOutsideSums = new int[(size + 1) * (size + 1)];
+				for (int y = 0; y < size; y++) {
+					for (int x = 0; x < size; x++) {
+						int value = cells[y * size + x] == OUTSIDE ? 0 : 1;
+						nonOutsideSums[(y + 1) * (size + 1) + x + 1] = value + nonOutsideSums[y * (size + 1) + x + 1]
+								+ nonOutsideSums[(y + 1) * (size + 1) + x] - nonOutsideSums[y * (size + 1) + x];
 					}
 				}
+			} else {
+				// degenerated areas, all edges need the exact tests
+				size = 0;
+				cellWidth = 0;
+				cellHeight = 0;
+				cells = null;
+				nonOutsideSums = null;
 			}
-			else
-			{
+		}
+
+		/**
+		 * @return true if the given point is in the interior of one of the areas
+		 */
+		boolean isInside(double x, double y) {
+			if (size == 0)
+				return false;
+
+			int cellX = (int) Math.floor((x - minX) / cellWidth);
+			int cellY = (int) Math.floor((y - minY) / cellHeight);
+			if (cellX < 0 || cellX >= size || cellY < 0 || cellY >= size || cells[cellY * size + cellX] != INSIDE)
+				return false;
+
+			// guard against rounding errors at the cell borders
+			return x >= minX + cellX * cellWidth && x <= minX + (cellX + 1) * cellWidth
+					&& y >= minY + cellY * cellHeight && y <= minY + (cellY + 1) * cellHeight;
+		}
+
+		/**
+		 * @return true if all cells overlapping the given envelope are outside of all areas
+		 */
+		boolean isOutside(double eMinX, double eMinY, double eMaxX, double eMaxY) {
+			if (size == 0)
 				return false;
+
+			// widen the range by one cell to be safe from rounding errors at the cell borders
+			int x0 = clamp((int) Math.floor((eMinX - minX) / cellWidth) - 1);
+			int y0 = clamp((int) Math.floor((eMinY - minY) / cellHeight) - 1);
+			int x1 = clamp((int) Math.floor((eMaxX - minX) / cellWidth) + 1) + 1;
+			int y1 = clamp((int) Math.floor((eMaxY - minY) / cellHeight) + 1) + 1;
+
+			int count = nonOutsideSums[y1 * (size + 1) + x1] - nonOutsideSums[y0 * (size + 1) + x1]
+					- nonOutsideSums[y1 * (size + 1) + x0] + nonOutsideSums[y0 * (size + 1) + x0];
+			return count == 0;
+		}
+
+		private int clamp(int cell) {
+			return Math.max(0, Math.min(size - 1, cell));
+		}
+
+		private void classify(int x0, int y0, int cellCount, int[] candidates) {
+			Envelope cellEnv = new Envelope(minX + x0 * cellWidth, minX + (x0 + cellCount) * cellWidth,
+					minY + y0 * cellHeight, minY + (y0 + cellCount) * cellHeight);
+			Geometry cellGeom = geomFactory.toGeometry(cellEnv);
+
+			int[] intersecting = new int[candidates.length];
+			int numIntersecting = 0;
+			for (int c : candidates) {
+				if (!polys[c].getEnvelopeInternal().intersects(cellEnv))
+					continue;
+				if (preparedPolys[c].containsProperly(cellGeom)) {
+					fill(x0, y0, cellCount, INSIDE);
+					return;
+				}
+				if (preparedPolys[c].intersects(cellGeom))
+					intersecting[numIntersecting++] = c;
+			}
+
+			if (numIntersecting == 0)
+				return;
+
+			if (cellCount == 1) {
+				fill(x0, y0, cellCount, BOUNDARY);
+				return;
 			}
+
+			int[] next = Arrays.copyOf(intersecting, numIntersecting);
+			int half = cellCount / 2;
+			classify(x0, y0, half, next);
+			classify(x0 + half, y0, half, next);
+			classify(x0, y0 + half, half, next);
+			classify(x0 + half, y0 + half, half, next);
+		}
+
+		private void fill(int x0, int y0, int cellCount, byte value) {
+			for (int y = y0; y < y0 + cellCount; y++)
+				Arrays.fill(cells, y * size + x0, y * size + x0 + cellCount, value);
 		}
-		return true;
 	}
 
 	/**
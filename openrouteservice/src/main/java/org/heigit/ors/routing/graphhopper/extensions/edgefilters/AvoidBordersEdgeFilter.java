@@ -63,6 +63,18 @@ public class AvoidBordersEdgeFilter implements EdgeFilter {
         }
     }
 
+    public BordersExtractor.Avoid getAvoidBorders() {
+        return avoidBorders;
+    }
+
+    public boolean isAvoidCountries() {
+        return avoidCountries;
+    }
+
+    public boolean isStorageBuilt() {
+        return isStorageBuilt;
+    }
+
     /**
      * Determine whether the edge should be accepted for processing or reject. Depending on whether the request was to
      * not cross any border or not cross controlled borders determines the type of border to reject.
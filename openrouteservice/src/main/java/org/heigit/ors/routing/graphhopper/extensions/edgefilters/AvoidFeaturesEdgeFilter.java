@@ -34,21 +34,33 @@ public class AvoidFeaturesEdgeFilter implements EdgeFilter {
 	private static final int NOT_TOLLWAYS = ~AvoidFeatureFlags.TOLLWAYS;
 
 	public AvoidFeaturesEdgeFilter(int profileType, RouteSearchParameters searchParams, GraphStorage graphStorage) throws Exception {
+		this(profileType, searchParams, GraphStorageUtils.getGraphExtension(graphStorage, WayCategoryGraphStorage.class),
+				GraphStorageUtils.getGraphExtension(graphStorage, TollwaysGraphStorage.class));
+	}
+
+	public AvoidFeaturesEdgeFilter(int profileType, RouteSearchParameters searchParams, WayCategoryGraphStorage extWayCategories, TollwaysGraphStorage extTollways) throws Exception {
 		this.buffer = new byte[10];
 
 		profileCategory = RoutingProfileCategory.getFromRouteProfile(profileType);
 
 		this.avoidFeatureType = searchParams.getAvoidFeatureTypes() & AvoidFeatureFlags.getProfileFlags(profileCategory);
 
-		storage = GraphStorageUtils.getGraphExtension(graphStorage, WayCategoryGraphStorage.class);
+		storage = extWayCategories;
 		if (storage == null)
 			throw new Exception("ExtendedGraphStorage for avoid features was not found.");
 
-		TollwaysGraphStorage extTollways = GraphStorageUtils.getGraphExtension(graphStorage, TollwaysGraphStorage.class);
 		if (extTollways != null)
 			tollwayExtractor = new TollwayExtractor(extTollways, searchParams.getProfileType(), searchParams.getProfileParameters());
 	}
 
+	public int getAvoidFeatureType() {
+		return avoidFeatureType;
+	}
+
+	public TollwayExtractor getTollwayExtractor() {
+		return tollwayExtractor;
+	}
+
 	@Override
 	public final boolean accept(EdgeIteratorState iter) {
 		if (avoidFeatureType != 0) {
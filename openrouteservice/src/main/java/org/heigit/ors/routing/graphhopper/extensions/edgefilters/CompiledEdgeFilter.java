@@ -0,0 +1,124 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the 
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1 
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library; 
+ *  if not, see <https://www.gnu.org/licenses/>.  
+ */
+package org.heigit.ors.routing.graphhopper.extensions.edgefilters;
+
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.util.EdgeIteratorState;
+import org.heigit.ors.routing.AvoidFeatureFlags;
+import org.heigit.ors.routing.graphhopper.extensions.storages.BordersGraphStorage;
+import org.heigit.ors.routing.graphhopper.extensions.storages.EdgeAttributesColumn;
+import org.heigit.ors.routing.pathprocessors.BordersExtractor;
+import org.heigit.ors.routing.pathprocessors.TollwayExtractor;
+
+/**
+ * Evaluates the avoid features, avoid borders and heavy vehicle filters of a request over an
+ * {@link EdgeAttributesColumn}. The restrictions are compiled into a bit mask of rejected attributes and a table of
+ * rejected tollway types, so that most edges are decided by a single array access. Only edges with heavy vehicle
+ * attributes are passed to the heavy vehicle filter, and edges which are not part of the column (virtual edges and
+ * shortcuts) are passed to the original filters.
+ */
+public class CompiledEdgeFilter implements EdgeFilter {
+	private static final int TOLLWAYS = AvoidFeatureFlags.TOLLWAYS << EdgeAttributesColumn.WAY_CATEGORY_SHIFT;
+
+	private final EdgeAttributesColumn column;
+	private final int edges;
+	private final EdgeFilterSequence fallback = new EdgeFilterSequence();
+	private int rejectMask;
+	// bit t is set if tollway type t is a toll for the vehicle of the request
+	private long tollwayTypes;
+	private int delegateMask;
+	private EdgeFilter delegate;
+	private boolean empty = true;
+
+	public CompiledEdgeFilter(EdgeAttributesColumn column) {
+		this.column = column;
+		this.edges = column.getEdges();
+	}
+
+	/**
+	 * @return true if the given filter can be evaluated over the column
+	 */
+	public boolean canCompile(AvoidFeaturesEdgeFilter filter) {
+		return column.hasWayCategories() && (filter.getTollwayExtractor() == null || column.hasTollways());
+	}
+
+	public void add(AvoidFeaturesEdgeFilter filter) {
+		int avoidFeatureType = filter.getAvoidFeatureType();
+		rejectMask |= (avoidFeatureType & ~AvoidFeatureFlags.TOLLWAYS) << EdgeAttributesColumn.WAY_CATEGORY_SHIFT;
+
+		TollwayExtractor tollwayExtractor = filter.getTollwayExtractor();
+		if ((avoidFeatureType & AvoidFeatureFlags.TOLLWAYS) != 0 && tollwayExtractor != null) {
+			for (int type = 0; type <= EdgeAttributesColumn.TOLLWAY_MASK; type++) {
+				if (tollwayExtractor.getValueForType(type) != 0)
+					tollwayTypes |= 1L << type;
+			}
+		}
+		fallback.add(filter);
+		empty = false;
+	}
+
+	/**
+	 * @return true if the given filter can be evaluated over the column, which is not the case for avoided countries
+	 */
+	public boolean canCompile(AvoidBordersEdgeFilter filter) {
+		return column.hasBorders() && filter.isStorageBuilt() && !filter.isAvoidCountries();
+	}
+
+	public void add(AvoidBordersEdgeFilter filter) {
+		if (filter.getAvoidBorders() == BordersExtractor.Avoid.ALL)
+			rejectMask |= (BordersGraphStorage.CONTROLLED_BORDER | BordersGraphStorage.OPEN_BORDER) << EdgeAttributesColumn.BORDER_SHIFT;
+		else if (filter.getAvoidBorders() == BordersExtractor.Avoid.CONTROLLED)
+			rejectMask |= BordersGraphStorage.CONTROLLED_BORDER << EdgeAttributesColumn.BORDER_SHIFT;
+		fallback.add(filter);
+		empty = false;
+	}
+
+	public boolean canCompile(HeavyVehicleEdgeFilter filter) {
+		return column.hasHeavyVehicleAttributes();
+	}
+
+	public void add(HeavyVehicleEdgeFilter filter) {
+		delegateMask |= EdgeAttributesColumn.HEAVY_VEHICLE_ATTRIBUTES;
+		delegate = filter;
+		fallback.add(filter);
+		empty = false;
+	}
+
+	public boolean isEmpty() {
+		return empty;
+	}
+
+	/**
+	 * @return the original filters, which are evaluated for edges that are not part of the column
+	 */
+	EdgeFilterSequence getFallback() {
+		return fallback;
+	}
+
+	@Override
+	public final boolean accept(EdgeIteratorState iter) {
+		int edge = iter.getEdge();
+		if (edge < 0 || edge >= edges)
+			return fallback.accept(iter);
+
+		int value = column.getValue(edge);
+		if ((value & rejectMask) != 0)
+			return false;
+		if ((value & TOLLWAYS) != 0 && ((tollwayTypes >>> EdgeAttributesColumn.getTollwayType(value)) & 1) != 0)
+			return false;
+		if ((value & delegateMask) != 0)
+			return delegate.accept(iter);
+		return true;
+	}
+}
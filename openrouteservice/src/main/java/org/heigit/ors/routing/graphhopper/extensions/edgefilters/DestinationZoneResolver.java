@@ -0,0 +1,140 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the 
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1 
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library; 
+ *  if not, see <https://www.gnu.org/licenses/>.  
+ */
+package org.heigit.ors.routing.graphhopper.extensions.edgefilters;
+
+import com.carrotsearch.hppc.IntArrayDeque;
+import com.carrotsearch.hppc.IntHashSet;
+import com.graphhopper.routing.util.DefaultEdgeFilter;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeIteratorState;
+import org.heigit.ors.routing.graphhopper.extensions.HeavyVehicleAttributes;
+import org.heigit.ors.routing.graphhopper.extensions.storages.HeavyVehicleAttributesGraphStorage;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Resolves the destination zone of an edge, i.e. the edges with a destination restriction for a vehicle type which
+ * are connected to one of its nodes. A zone is searched on the base graph and limited to {@link #MAX_ZONE_EDGES}
+ * edges. The zones are cached per graph, up to {@link #MAX_CACHED_EDGES} edges in total, so that later requests to
+ * the same destination edge do not need to search them again. The cache of a graph is cleared when the graph is
+ * (re)loaded or closed by {@link org.heigit.ors.routing.graphhopper.extensions.ORSGraphHopper}.
+ */
+public class DestinationZoneResolver {
+	static final int MAX_ZONE_EDGES = 50000;
+	static final int MAX_CACHED_EDGES = 1000000;
+
+	private static final Map<HeavyVehicleAttributesGraphStorage, DestinationZoneResolver> resolvers = Collections.synchronizedMap(new WeakHashMap<>());
+
+	private final HeavyVehicleAttributesGraphStorage storage;
+	// least recently used zones first
+	private final LinkedHashMap<String, IntHashSet> zones = new LinkedHashMap<>(16, 0.75f, true);
+	private int cachedEdges;
+
+	private DestinationZoneResolver(HeavyVehicleAttributesGraphStorage storage) {
+		this.storage = storage;
+	}
+
+	public static DestinationZoneResolver getInstance(HeavyVehicleAttributesGraphStorage storage) {
+		return resolvers.computeIfAbsent(storage, DestinationZoneResolver::new);
+	}
+
+	/**
+	 * Drops the cached zones of the given storage, has to be called whenever its graph is (re)loaded.
+	 */
+	public static void invalidate(HeavyVehicleAttributesGraphStorage storage) {
+		if (storage != null)
+			resolvers.remove(storage);
+	}
+
+	/**
+	 * Get the ids of all edges in the destination zone of the given edge. The returned set must not be modified.
+	 *
+	 * @param graph         The graph (or query graph) of the request, the zone is searched on its base graph
+	 * @param encoder       The encoder used to determine the accessible edges
+	 * @param edgeId        The id of the (original) destination edge
+	 * @param vehicleType   The heavy vehicle type
+	 * @return              The edge ids of the zone, empty if the edge has no destination restriction
+	 */
+	public IntHashSet getZone(Graph graph, FlagEncoder encoder, int edgeId, int vehicleType) {
+		String key = encoder.toString() + ":" + vehicleType + ":" + edgeId;
+		synchronized (zones) {
+			IntHashSet zone = zones.get(key);
+			if (zone != null)
+				return zone;
+		}
+
+		IntHashSet zone = resolve(graph.getBaseGraph(), encoder, edgeId, vehicleType);
+		synchronized (zones) {
+			IntHashSet previous = zones.put(key, zone);
+			cachedEdges += zone.size() - (previous == null ? 0 : previous.size());
+			Iterator<IntHashSet> iter = zones.values().iterator();
+			while (cachedEdges > MAX_CACHED_EDGES && iter.hasNext()) {
+				IntHashSet eldest = iter.next();
+				if (eldest == zone)
+					break;
+				cachedEdges -= eldest.size();
+				iter.remove();
+			}
+		}
+		return zone;
+	}
+
+	int getCachedEdges() {
+		synchronized (zones) {
+			return cachedEdges;
+		}
+	}
+
+	private IntHashSet resolve(Graph graph, FlagEncoder encoder, int edgeId, int vehicleType) {
+		byte[] buffer = new byte[2];
+		IntHashSet zone = new IntHashSet();
+		if (isDestinationEdge(edgeId, vehicleType, buffer))
+			zone.add(edgeId);
+
+		EdgeIteratorState edge = graph.getEdgeIteratorState(edgeId, Integer.MIN_VALUE);
+		IntHashSet visitedNodes = new IntHashSet();
+		IntArrayDeque queue = new IntArrayDeque();
+		visitedNodes.add(edge.getBaseNode());
+		queue.addLast(edge.getBaseNode());
+		if (visitedNodes.add(edge.getAdjNode()))
+			queue.addLast(edge.getAdjNode());
+
+		EdgeExplorer explorer = graph.createEdgeExplorer(DefaultEdgeFilter.allEdges(encoder));
+		while (!queue.isEmpty() && zone.size() < MAX_ZONE_EDGES) {
+			EdgeIterator iter = explorer.setBaseNode(queue.removeFirst());
+			while (iter.next() && zone.size() < MAX_ZONE_EDGES) {
+				if (!isDestinationEdge(iter.getEdge(), vehicleType, buffer))
+					continue;
+
+				zone.add(iter.getEdge());
+				if (visitedNodes.add(iter.getAdjNode()))
+					queue.addLast(iter.getAdjNode());
+			}
+		}
+
+		return zone;
+	}
+
+	private boolean isDestinationEdge(int edgeId, int vehicleType, byte[] buffer) {
+		int vt = storage.getEdgeVehicleType(edgeId, buffer);
+		return vt != HeavyVehicleAttributes.UNKNOWN && buffer[1] != 0 && (vt & vehicleType) == vehicleType;
+	}
+}
@@ -48,6 +48,26 @@ public class EdgeFilterSequence implements EdgeFilter {
 		filters.add(o);
 	}
 
+	/**
+	 * @return the first filter of the given type in this sequence, including nested sequences and the filters of a
+	 * {@link CompiledEdgeFilter}, or null if there is none
+	 */
+	public <T> T getFilter(Class<T> type) {
+		for (EdgeFilter edgeFilter: filters) {
+			if (type.isInstance(edgeFilter))
+				return type.cast(edgeFilter);
+
+			T filter = null;
+			if (edgeFilter instanceof EdgeFilterSequence)
+				filter = ((EdgeFilterSequence) edgeFilter).getFilter(type);
+			else if (edgeFilter instanceof CompiledEdgeFilter)
+				filter = ((CompiledEdgeFilter) edgeFilter).getFallback().getFilter(type);
+			if (filter != null)
+				return filter;
+		}
+		return null;
+	}
+
 	@Override
 	public String toString() {
 		return "EdgeFilter Sequence: " + name + " (" + filters.size() + ")";
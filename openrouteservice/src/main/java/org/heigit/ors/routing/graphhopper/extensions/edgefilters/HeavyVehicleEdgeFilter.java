@@ -13,18 +13,12 @@
  */
 package org.heigit.ors.routing.graphhopper.extensions.edgefilters;
 
-import com.carrotsearch.hppc.IntObjectMap;
-import com.carrotsearch.hppc.cursors.IntObjectCursor;
-import com.graphhopper.routing.Dijkstra;
+import com.carrotsearch.hppc.IntHashSet;
 import com.graphhopper.routing.EdgeIteratorStateHelper;
-import com.graphhopper.routing.util.EdgeFilter;
 import com.graphhopper.routing.util.FlagEncoder;
 import com.graphhopper.routing.util.TraversalMode;
-import com.graphhopper.routing.weighting.FastestWeighting;
-import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.storage.Graph;
 import com.graphhopper.storage.GraphStorage;
-import com.graphhopper.storage.SPTEntry;
 import com.graphhopper.util.EdgeIteratorState;
 import org.heigit.ors.routing.graphhopper.extensions.HeavyVehicleAttributes;
 import org.heigit.ors.routing.graphhopper.extensions.VehicleDimensionRestrictions;
@@ -35,21 +29,9 @@ import org.heigit.ors.routing.parameters.VehicleParameters;
 import org.heigit.ors.routing.util.DestinationDependentEdgeFilter;
 
 import java.util.ArrayList;
-import java.util.List;
 
 public class HeavyVehicleEdgeFilter implements DestinationDependentEdgeFilter {
 
-	public static class CustomDijkstra extends Dijkstra {
-		CustomDijkstra(Graph g, Weighting weighting, TraversalMode tMode) {
-			super(g, weighting, tMode);
-			initCollections(1000);
-		}
-		public IntObjectMap<SPTEntry> getMap()
-		{
-			return fromMap;
-		} 
-	}
-
 	private int vehicleType;
 	private boolean hasHazmat; 
 	private HeavyVehicleAttributesGraphStorage gsHeavyVehicles;
@@ -59,10 +41,9 @@ public class HeavyVehicleEdgeFilter implements DestinationDependentEdgeFilter {
 	private Integer[] indexLocs;
 	private int restCount;
 	private int mode = MODE_CLOSEST_EDGE;
-	private	List<Integer> destinationEdges;
+	private IntHashSet destinationEdges;
 	private byte[] buffer;
 
-	private static final int MODE_DESTINATION_EDGES = -1;
 	private static final int MODE_CLOSEST_EDGE = -2;
 	private static final int MODE_ROUTE = 0;
 
@@ -102,36 +83,18 @@ public class HeavyVehicleEdgeFilter implements DestinationDependentEdgeFilter {
 		this.gsHeavyVehicles = GraphStorageUtils.getGraphExtension(graphStorage, HeavyVehicleAttributesGraphStorage.class);
 	}
 
+	/**
+	 * Switches the filter from the lookup of the closest edges to routing towards the given destination edge. Edges
+	 * with a destination restriction for the vehicle type are only accepted if they belong to the destination zone
+	 * of that edge. Has to be called for every leg of a route, as the zone of the previous leg is dropped.
+	 */
 	public void setDestinationEdge(EdgeIteratorState edge, Graph graph, FlagEncoder encoder, TraversalMode tMode) {
-		if (edge != null) {
-			int nodeId = edge.getBaseNode();
-			if (nodeId != -1) {
-				mode = MODE_DESTINATION_EDGES;
-				Weighting weighting = new FastestWeighting(encoder);
-				CustomDijkstra dijkstraAlg = new CustomDijkstra(graph, weighting, tMode);
-				EdgeFilter edgeFilter = this;
-				dijkstraAlg.setEdgeFilter(edgeFilter);
-				dijkstraAlg.calcPath(nodeId, Integer.MIN_VALUE);
-
-				IntObjectMap<SPTEntry> destination = dijkstraAlg.getMap();
-
-				destinationEdges = new ArrayList<>(destination.size());
-				for (IntObjectCursor<SPTEntry> ee : destination) {
-					if (!destinationEdges.contains(ee.value.edge)) // was originalEdge
-						destinationEdges.add(ee.value.edge);
-				}
-
-				if (!destinationEdges.contains(EdgeIteratorStateHelper.getOriginalEdge(edge))) {
-					int vt = gsHeavyVehicles.getEdgeVehicleType(EdgeIteratorStateHelper.getOriginalEdge(edge), buffer);
-					boolean dstFlag = buffer[1]!=0; // ((buffer[1] >> (vehicleType >> 1)) & 1) == 1
-
-					if (((vt & vehicleType) == vehicleType) && (dstFlag))
-						destinationEdges.add(EdgeIteratorStateHelper.getOriginalEdge(edge));
-				}
-
-				if (destinationEdges.isEmpty())
-					destinationEdges = null;
-			}
+		destinationEdges = null;
+		if (edge != null && edge.getBaseNode() != -1) {
+			int edgeId = EdgeIteratorStateHelper.getOriginalEdge(edge);
+			IntHashSet zone = DestinationZoneResolver.getInstance(gsHeavyVehicles).getZone(graph, encoder, edgeId, vehicleType);
+			if (!zone.isEmpty())
+				destinationEdges = zone;
 		}
 		mode = MODE_ROUTE;
 	}
@@ -150,9 +113,6 @@ public class HeavyVehicleEdgeFilter implements DestinationDependentEdgeFilter {
 				boolean edgeRestricted = ((vt & vehicleType) == vehicleType);
 				if ((edgeRestricted || dstFlag) && buffer[1] != vehicleType)
 					return false;
-			} else if (mode == MODE_DESTINATION_EDGES) {
-				// Here we are looking for all edges that have destination
-				return  dstFlag && ((vt & vehicleType) == vehicleType);
 			} else {
 				// Check an edge with destination attribute
 				if (dstFlag) {
@@ -170,10 +130,6 @@ public class HeavyVehicleEdgeFilter implements DestinationDependentEdgeFilter {
 				else if ((vt & vehicleType) == vehicleType)
 					return false;
 			}
-		} else {
-			if (mode == MODE_DESTINATION_EDGES) {
-				return false;
-			}
 		}
 
 		if (hasHazmat && (vt & HeavyVehicleAttributes.HAZMAT) != 0) {
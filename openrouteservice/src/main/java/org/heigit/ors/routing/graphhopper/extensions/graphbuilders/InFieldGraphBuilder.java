@@ -13,51 +13,30 @@
  */
 package org.heigit.ors.routing.graphhopper.extensions.graphbuilders;
 
-import com.carrotsearch.hppc.IntIndexedContainer;
+import com.carrotsearch.hppc.IntArrayList;
 import com.carrotsearch.hppc.LongArrayList;
+import com.carrotsearch.hppc.LongHashSet;
 import com.graphhopper.GraphHopper;
 import com.graphhopper.coll.LongIntMap;
 import com.graphhopper.reader.ReaderWay;
-import com.graphhopper.routing.Dijkstra;
-import com.graphhopper.routing.Path;
-import com.graphhopper.routing.util.EncodingManager;
-import com.graphhopper.routing.util.FootFlagEncoder;
-import com.graphhopper.routing.util.TraversalMode;
-import com.graphhopper.routing.weighting.FastestWeighting;
-import com.graphhopper.routing.weighting.Weighting;
-import com.graphhopper.storage.GraphExtension;
-import com.graphhopper.storage.GraphHopperStorage;
 import com.graphhopper.storage.IntsRef;
-import com.graphhopper.storage.RAMDirectory;
-import com.graphhopper.util.DistanceCalc;
 import com.graphhopper.util.EdgeIteratorState;
-import com.graphhopper.util.Helper;
 import com.vividsolutions.jts.geom.*;
 import org.heigit.ors.routing.graphhopper.extensions.DataReaderContext;
 
-import java.util.*;
+import java.util.List;
 
+/**
+ * Connects the tower nodes on the boundary of open spaces (ways tagged with area=yes) through the open space along
+ * the shortest paths of its {@link OpenSpaceVisibilityGraph}. The builder keeps no state between ways.
+ */
 public class InFieldGraphBuilder extends AbstractGraphBuilder {
 
 	private GeometryFactory geometryFactory = new GeometryFactory();
-	private Map<Integer, Integer> intId2idx = new HashMap<>();
-	private Map<Integer, Integer> idx2intId =  new HashMap<>();
-	private Map<Integer, Long> intId2osmId = new HashMap<>();
-	private ArrayList<Integer> internalTowerNodeIds = new ArrayList<>();
-	private Coordinate[] coordinates;
-	private Set<ArrayList<Integer>> edges = new HashSet<>();
-	private ArrayList<Integer> tmpEdge = new ArrayList<>();
-	private List<Weighting> weightings;
-	private EncodingManager encodingManager;
 
 	@Override
 	public void init(GraphHopper graphhopper) throws Exception {
-		// create local network taken from        
-		// https://github.com/graphhopper/graphhopper/blob/0.5/core/src/test/java/com/graphhopper/GraphHopperTest.java#L746
-		FootFlagEncoder footEncoder = new FootFlagEncoder();
-		encodingManager = EncodingManager.create(footEncoder);
-		weightings = new ArrayList<>(1);
-		weightings.add(new FastestWeighting(footEncoder));
+		// do nothing
 	}
 
 	@Override
@@ -68,148 +47,50 @@ public class InFieldGraphBuilder extends AbstractGraphBuilder {
 		LongIntMap nodeMap = readerCntx.getNodeMap();
 		Polygon openSpace = osmPolygon2JTS(readerCntx, osmNodeIds);
 
-		internalTowerNodeIds.clear();
-		intId2osmId.clear();
-		idx2intId.clear();
-		intId2idx.clear();
-
-		// fill list with tower nodes        
-		// fill map "internal ID 2 OSM ID"     
-		for (int j = 0; j < osmNodeIds.size() - 1; j++) {       
-			long osmNodeId = osmNodeIds.get(j);           
-			int internalOSMId = nodeMap.get(osmNodeId);   
-			intId2osmId.put(internalOSMId, osmNodeId);          
-			if (internalOSMId < -2) //towernode
-			{        
-				internalTowerNodeIds.add(internalOSMId);    
-			}      
+		// the last node closes the ring
+		int numNodes = osmNodeIds.size() - 1;
+		int[] internalIds = new int[numNodes];
+		IntArrayList towerNodes = new IntArrayList();
+		for (int i = 0; i < numNodes; i++) {
+			internalIds[i] = nodeMap.get(osmNodeIds.get(i));
+			if (internalIds[i] < -2) // tower node
+				towerNodes.add(i);
 		}
 
-		DistanceCalc distCalc = Helper.DIST_EARTH;
-		try (GraphHopperStorage graphStorage = new GraphHopperStorage(weightings,  new RAMDirectory(), encodingManager, false,  new GraphExtension.NoOpExtension()).create(20)) {
-			for (int idxMain = 0; idxMain < osmNodeIds.size() - 1; idxMain++) {
-				long mainOsmId = osmNodeIds.get(idxMain);
-				int internalMainId = nodeMap.get(mainOsmId);
-				// coordinates of the first nodes
-				double latMain = readerCntx.getNodeLatitude(internalMainId);
-				double lonMain = readerCntx.getNodeLongitude(internalMainId);
-				// connect the boundary of the open space
-				long neighborOsmId = osmNodeIds.get(idxMain + 1);
-				int internalNeighborId = nodeMap.get(neighborOsmId);
-				int idxNeighbor = idxMain + 1;
-				double latNeighbor = readerCntx.getNodeLatitude(internalNeighborId);
-				double lonNeighbor = readerCntx.getNodeLongitude(internalNeighborId);
-				double distance = distCalc.calcDist(latMain, lonMain, latNeighbor, lonNeighbor);
-				graphStorage.edge(idxMain, idxNeighbor, distance, true);
-				// iterate through remaining nodes,
-				// but not through the direct neighbors
-				for (int idxPartner = idxMain + 2; idxPartner < osmNodeIds.size() - 1; idxPartner++) {
-					long partnerOsmId = osmNodeIds.get(idxPartner);
-					int internalPartnerId = nodeMap.get(partnerOsmId);
-					// coordinates of second nodes
-					double latPartner = readerCntx.getNodeLatitude(internalPartnerId);
-					double lonPartner = readerCntx.getNodeLatitude(internalPartnerId);
-					// connect nodes
-					LineString ls = geometryFactory.createLineString(new Coordinate[]{new Coordinate(lonMain, latMain), new Coordinate(lonPartner, latPartner)});
-					// check if new edge is within open space
-					if (ls.within(openSpace)) {
-						// compute distance between nodes
-						distance = distCalc.calcDist(latMain, lonMain, latPartner, lonPartner);
-						// the index number of the nodes in the local network
-						// necessary, because it does not accept big values
-						// fill
-						intId2idx.put(internalMainId, idxMain);
-						intId2idx.put(internalPartnerId, idxPartner);
-						// fill
-						idx2intId.put(idxMain, internalMainId);
-						idx2intId.put(idxPartner, internalPartnerId);
-						// add edge to local graph
-						graphStorage.edge(idxMain, idxPartner, distance, true);
-					}
-				}
-			}
-
-			// a set with all created edges.
-			// the nodes which create the edge are stored in a ArrayList.
-			// it is important that the first node is smaller than the second node.
-			// TODO maybe a treeset would make the code more elegant
-			edges.clear();
-
-			// compute routes between all tower nodes using the local graph
-			for (int i = 0; i < internalTowerNodeIds.size(); i++) {
-				int internalIdTowerStart = internalTowerNodeIds.get(i);
-				// check if tower node is in map
-				// it can miss if no edge is starting from here
-				if (!intId2idx.containsKey(internalIdTowerStart)) {
-					continue;
-				}
-				int idxTowerStart = intId2idx.get(internalIdTowerStart);
-				for (int j = i + 1; j < internalTowerNodeIds.size(); j++) {
-					int internalIdTowerDestination = internalTowerNodeIds.get(j);
-					// check if tower node is in map
-					// it can miss if no edge is starting from here
-					if (!intId2idx.containsKey(internalIdTowerDestination)) {
-						continue;
-					}
-					int idxTowerDest = intId2idx.get(internalIdTowerDestination);
-					// compute route between tower nodes
-					try {
-						Dijkstra dijkstra = new Dijkstra(graphStorage, weightings.get(0), TraversalMode.EDGE_BASED);
-						Path path = dijkstra.calcPath(idxTowerStart, idxTowerDest);
-						IntIndexedContainer pathNodes = path.calcNodes();
-						// iterate through nodes of routing result
-						for (int k = 0; k < pathNodes.size() - 1; k++) {
-							// local index
-							int idxNodeA = pathNodes.get(k);
-							int idxNodeB = pathNodes.get(k + 1);
-							// internal Node IDs
-							int nodeA = idx2intId.get(idxNodeA);
-							int nodeB = idx2intId.get(idxNodeB);
-							// add to nodes to array sorted
-							int minNode = Integer.min(nodeA, nodeB);
-							int maxNode = Integer.max(nodeA, nodeB);
-							tmpEdge.clear();
-							tmpEdge.add(minNode);
-							tmpEdge.add(maxNode);
-							boolean edgeIsNew = edges.add(tmpEdge);
-							if (edgeIsNew) {
-								// it is necessary to get the long node OSM IDs...
-								long osmNodeA = intId2osmId.get(minNode);
-								long osmNodeB = intId2osmId.get(maxNode);
-								addNodePairAsEdgeToGraph(readerCntx, way.getId(), wayFlags, createdEdges, osmNodeA, osmNodeB);
-							}
-						}
-					} catch (Exception ex) {
-						// do nothing
-					}
-				}
+		// all created edges, keyed by the internal IDs of their nodes
+		LongHashSet edges = new LongHashSet();
+
+		// connect the tower nodes along their shortest paths through the open space
+		OpenSpaceVisibilityGraph visibilityGraph = new OpenSpaceVisibilityGraph(openSpace);
+		IntArrayList pathEdges = visibilityGraph.computePathEdges(towerNodes.toArray());
+		for (int k = 0; k < pathEdges.size(); k += 2) {
+			int idxA = pathEdges.get(k);
+			int idxB = pathEdges.get(k + 1);
+			if (internalIds[idxB] < internalIds[idxA]) {
+				int tmp = idxA;
+				idxA = idxB;
+				idxB = tmp;
 			}
+			if (edges.add(edgeKey(internalIds[idxA], internalIds[idxB])))
+				addNodePairAsEdgeToGraph(readerCntx, way.getId(), wayFlags, createdEdges, osmNodeIds.get(idxA), osmNodeIds.get(idxB));
+		}
 
-			// TODO this loop can maybe be integrated at the part where the boundary edges are handled alread<
-			// add boundary of open space
-			for (int i = 0; i < osmNodeIds.size() - 1; i++) {
-				long osmIdA = osmNodeIds.get(i);
-				long osmIdB = osmNodeIds.get(i + 1);
-				int internalIdA = nodeMap.get(osmIdA);
-				int internalIdB = nodeMap.get(osmIdB);
-				// add to nodes to array sorted
-				int minIntId = Integer.min(internalIdA, internalIdB);
-				int maxIndId = Integer.max(internalIdA, internalIdB);
-				// create a boundary edge
-				tmpEdge.clear();
-				tmpEdge.add(minIntId);
-				tmpEdge.add(maxIndId);
-				// test if already exists
-				boolean edgeIsNew = edges.add(tmpEdge);
-				if (edgeIsNew) {
-					// edge is added to global GraphHopper graph
-					addNodePairAsEdgeToGraph(readerCntx, way.getId(), wayFlags, createdEdges, osmIdA, osmIdB);
-				}
-			}
+		// add boundary of open space
+		for (int i = 0; i < numNodes; i++) {
+			long osmIdA = osmNodeIds.get(i);
+			long osmIdB = osmNodeIds.get(i + 1);
+			if (edges.add(edgeKey(nodeMap.get(osmIdA), nodeMap.get(osmIdB))))
+				addNodePairAsEdgeToGraph(readerCntx, way.getId(), wayFlags, createdEdges, osmIdA, osmIdB);
 		}
 		return true;
 	}
 
+	private static long edgeKey(int nodeA, int nodeB) {
+		int minNode = Integer.min(nodeA, nodeB);
+		int maxNode = Integer.max(nodeA, nodeB);
+		return ((long) minNode << 32) | (maxNode & 0xFFFFFFFFL);
+	}
+
 	private void addNodePairAsEdgeToGraph(DataReaderContext readerCntx, long wayOsmId, IntsRef wayFlags,  List<EdgeIteratorState> createdEdges, long node1, long node2) {
 		// list which contains the Nodes of the new Edge     
 		LongArrayList subgraphNodes = new LongArrayList(5);  
@@ -218,20 +99,14 @@ public class InFieldGraphBuilder extends AbstractGraphBuilder {
 		createdEdges.addAll(readerCntx.addWay(subgraphNodes, wayFlags, wayOsmId));   
 	}
 
-	private Polygon osmPolygon2JTS(DataReaderContext readerCntx, LongArrayList osmNodeIds) {     
-		// collect all coordinates in ArrayList       
-		if (coordinates == null || coordinates.length < osmNodeIds.size())
-			coordinates = new Coordinate[osmNodeIds.size()];
-
-		for (int i = 0; i < osmNodeIds.size(); i++) 
-		{      
-			long osmNodeId = osmNodeIds.get(i);       
-			int internalID = readerCntx.getNodeMap().get(osmNodeId);   
-			coordinates[i] = new Coordinate(readerCntx.getNodeLongitude(internalID),  readerCntx.getNodeLatitude(internalID));
-		}  
+	private Polygon osmPolygon2JTS(DataReaderContext readerCntx, LongArrayList osmNodeIds) {
+		Coordinate[] coords = new Coordinate[osmNodeIds.size()];
+		for (int i = 0; i < osmNodeIds.size(); i++) {
+			int internalID = readerCntx.getNodeMap().get(osmNodeIds.get(i));
+			coords[i] = new Coordinate(readerCntx.getNodeLongitude(internalID), readerCntx.getNodeLatitude(internalID));
+		}
 
-		Coordinate[] coords  = Arrays.copyOf(coordinates, osmNodeIds.size());
-		LinearRing ring = geometryFactory.createLinearRing(coords);     
+		LinearRing ring = geometryFactory.createLinearRing(coords);
 		// a JTS polygon consists of a ring and holes
 		return geometryFactory.createPolygon(ring, null);
 	}
@@ -0,0 +1,505 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the 
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1 
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library; 
+ *  if not, see <https://www.gnu.org/licenses/>.  
+ */
+package org.heigit.ors.routing.graphhopper.extensions.graphbuilders;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.LongHashSet;
+import com.carrotsearch.hppc.sorting.IndirectSort;
+import com.vividsolutions.jts.algorithm.CGAlgorithms;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+
+import java.util.Arrays;
+
+/**
+ * Visibility graph of the boundary vertices of an open space (e.g. a pedestrian plaza). Two vertices are connected
+ * if the straight line between them lies within the open space.
+ *
+ * The visible vertices of each vertex are found with a rotational sweep: the other vertices are visited in angular
+ * order while the boundary edges crossing the current ray are kept ordered by their distance along the ray, so that a
+ * vertex is visible if the nearest of these edges does not cross the ray before it. Pairs which are (nearly) collinear
+ * with other vertices or boundary edges are left to the exact predicate of the prepared polygon. An instance does not
+ * share any state with other instances, so several open spaces can be processed concurrently.
+ */
+public class OpenSpaceVisibilityGraph {
+	private static final double EPSILON = 1e-10;
+
+	private static final byte INSIDE = 0;
+	private static final byte OUTSIDE = 1;
+	private static final byte UNDECIDED = 2;
+
+	private final GeometryFactory geometryFactory;
+	private final PreparedGeometry openSpace;
+	private final boolean valid;
+	private final int numVertices;
+	private final double[] x;
+	private final double[] y;
+	// successor and predecessor of each vertex along the ring, boundary edge e connects e and ringNext[e]
+	private final int[] ringNext;
+	private final int[] ringPrev;
+	// next and previous vertex such that the interior is to the left of next - vertex
+	private final int[] next;
+	private final int[] prev;
+	// planar coordinates scaled to the latitude of the open space, used for the path lengths
+	private final double[] planarX;
+
+	private int[][] adjacency;
+
+	public OpenSpaceVisibilityGraph(Polygon polygon) {
+		geometryFactory = polygon.getFactory();
+		openSpace = PreparedGeometryFactory.prepare(polygon);
+		valid = polygon.isValid();
+
+		Coordinate[] ring = polygon.getExteriorRing().getCoordinates();
+		numVertices = ring.length - 1;
+		x = new double[numVertices];
+		y = new double[numVertices];
+		ringNext = new int[numVertices];
+		ringPrev = new int[numVertices];
+		next = new int[numVertices];
+		prev = new int[numVertices];
+		planarX = new double[numVertices];
+
+		boolean ccw = CGAlgorithms.isCCW(ring);
+		double cosLat = Math.cos(Math.toRadians(polygon.getEnvelopeInternal().centre().y));
+		for (int i = 0; i < numVertices; i++) {
+			x[i] = ring[i].x;
+			y[i] = ring[i].y;
+			planarX[i] = ring[i].x * cosLat;
+			ringNext[i] = (i + 1) % numVertices;
+			ringPrev[i] = (i + numVertices - 1) % numVertices;
+			next[i] = ccw ? ringNext[i] : ringPrev[i];
+			prev[i] = ccw ? ringPrev[i] : ringNext[i];
+		}
+	}
+
+	public int getNumVertices() {
+		return numVertices;
+	}
+
+	/**
+	 * Returns the visible vertices of every vertex. The boundary neighbours of a vertex are always included.
+	 */
+	public int[][] getAdjacency() {
+		if (adjacency == null)
+			adjacency = computeAdjacency();
+		return adjacency;
+	}
+
+	/**
+	 * Computes the shortest paths through the open space between all pairs of the given terminal vertices and returns
+	 * the edges used by them, each edge once, as a flat list of vertex index pairs.
+	 */
+	public IntArrayList computePathEdges(int[] terminals) {
+		int[][] adj = getAdjacency();
+		IntArrayList edges = new IntArrayList();
+		LongHashSet edgeKeys = new LongHashSet();
+
+		double[] dist = new double[numVertices];
+		int[] parent = new int[numVertices];
+		boolean[] settled = new boolean[numVertices];
+		int[] walked = new int[numVertices];
+		Arrays.fill(walked, -1);
+
+		for (int i = 0; i < terminals.length - 1; i++) {
+			int source = terminals[i];
+			computeShortestPathTree(adj, source, dist, parent, settled);
+
+			for (int j = i + 1; j < terminals.length; j++) {
+				int node = terminals[j];
+				// walk back towards the source until a part of the tree which has been walked already for this source
+				while (node != source && parent[node] >= 0 && walked[node] != i) {
+					walked[node] = i;
+					int from = parent[node];
+					if (edgeKeys.add(edgeKey(from, node))) {
+						edges.add(from);
+						edges.add(node);
+					}
+					node = from;
+				}
+			}
+		}
+		return edges;
+	}
+
+	private void computeShortestPathTree(int[][] adj, int source, double[] dist, int[] parent, boolean[] settled) {
+		Arrays.fill(dist, Double.POSITIVE_INFINITY);
+		Arrays.fill(parent, -1);
+		Arrays.fill(settled, false);
+		dist[source] = 0;
+
+		// the visibility graph is dense, so a linear scan for the closest vertex is cheaper than a heap
+		for (int k = 0; k < numVertices; k++) {
+			int u = -1;
+			double best = Double.POSITIVE_INFINITY;
+			for (int v = 0; v < numVertices; v++) {
+				if (!settled[v] && dist[v] < best) {
+					best = dist[v];
+					u = v;
+				}
+			}
+			if (u < 0)
+				break;
+			settled[u] = true;
+
+			for (int v : adj[u]) {
+				if (settled[v])
+					continue;
+				double d = best + length(u, v);
+				if (d < dist[v]) {
+					dist[v] = d;
+					parent[v] = u;
+				}
+			}
+		}
+	}
+
+	private double length(int a, int b) {
+		double dx = planarX[b] - planarX[a];
+		double dy = y[b] - y[a];
+		return Math.sqrt(dx * dx + dy * dy);
+	}
+
+	private static long edgeKey(int a, int b) {
+		return a < b ? ((long) a << 32) | b : ((long) b << 32) | a;
+	}
+
+	private int[][] computeAdjacency() {
+		// every pair is reported once by the sweep of its lower vertex, boundary edges are added separately
+		IntArrayList pairs = new IntArrayList();
+		for (int p = 0; p < numVertices; p++) {
+			if (valid)
+				sweep(p, pairs);
+			else
+				testAll(p, pairs);
+		}
+		if (numVertices > 2) {
+			for (int i = 0; i < numVertices; i++) {
+				pairs.add(i);
+				pairs.add(ringNext[i]);
+			}
+		}
+
+		int[] degree = new int[numVertices];
+		for (int k = 0; k < pairs.size(); k++)
+			degree[pairs.get(k)]++;
+		int[][] result = new int[numVertices][];
+		for (int i = 0; i < numVertices; i++)
+			result[i] = new int[degree[i]];
+		Arrays.fill(degree, 0);
+		for (int k = 0; k < pairs.size(); k += 2) {
+			int a = pairs.get(k);
+			int b = pairs.get(k + 1);
+			result[a][degree[a]++] = b;
+			result[b][degree[b]++] = a;
+		}
+		return result;
+	}
+
+	private void testAll(int p, IntArrayList pairs) {
+		for (int w = p + 1; w < numVertices; w++) {
+			if (w != next[p] && w != prev[p] && isWithin(p, w)) {
+				pairs.add(p);
+				pairs.add(w);
+			}
+		}
+	}
+
+	private void sweep(int p, IntArrayList pairs) {
+		double px = x[p];
+		double py = y[p];
+
+		int numEvents = numVertices - 1;
+		int[] events = new int[numEvents];
+		double[] angles = new double[numVertices];
+		for (int i = 0, k = 0; i < numVertices; i++) {
+			if (i == p)
+				continue;
+			events[k++] = i;
+			angles[i] = pseudoAngle(x[i] - px, y[i] - py);
+		}
+		int[] order = IndirectSort.mergesort(0, numEvents, (a, b) -> Double.compare(angles[events[a]], angles[events[b]]));
+		int[] sorted = new int[numEvents];
+		for (int k = 0; k < numEvents; k++)
+			sorted[k] = events[order[k]];
+
+		// vertices which share their ray with another vertex are decided by the exact predicate
+		boolean[] collinear = new boolean[numVertices];
+		for (int k = 0; k < numEvents; k++) {
+			int a = sorted[k];
+			int b = sorted[(k + 1) % numEvents];
+			if (a != b && isSameRay(p, a, b)) {
+				collinear[a] = true;
+				collinear[b] = true;
+			}
+		}
+
+		int[] active = new int[numVertices];
+		int numActive = initActiveEdges(p, sorted[0], active);
+
+		int k = 0;
+		while (k < numEvents) {
+			// collect the vertices on the current ray
+			int end = k + 1;
+			while (end < numEvents && collinear[sorted[end]] && isSameRay(p, sorted[k], sorted[end]))
+				end++;
+
+			for (int e = k; e < end; e++) {
+				int w = sorted[e];
+				if (w == next[p] || w == prev[p] || w < p)
+					continue;
+				if (isVisible(p, w, collinear[w], active, numActive)) {
+					pairs.add(p);
+					pairs.add(w);
+				}
+			}
+
+			// remove the edges ending on this ray before adding the ones starting on it
+			for (int e = k; e < end; e++) {
+				int w = sorted[e];
+				numActive = removeEdgeIfEnding(p, w, w, active, numActive);
+				numActive = removeEdgeIfEnding(p, w, ringPrev[w], active, numActive);
+			}
+			for (int e = k; e < end; e++) {
+				int w = sorted[e];
+				numActive = addEdgeIfStarting(p, w, w, active, numActive);
+				numActive = addEdgeIfStarting(p, w, ringPrev[w], active, numActive);
+			}
+			k = end;
+		}
+	}
+
+	private boolean isVisible(int p, int w, boolean collinear, int[] active, int numActive) {
+		byte cone = classifyDirection(p, w);
+		if (cone == OUTSIDE)
+			return false;
+		if (cone == UNDECIDED || collinear)
+			return isWithin(p, w);
+
+		double dx = x[w] - x[p];
+		double dy = y[w] - y[p];
+		boolean undecided = false;
+		for (int i = 0; i < numActive; i++) {
+			int edge = active[i];
+			if (isIncident(edge, w))
+				continue;
+			double t = rayParameter(p, dx, dy, edge);
+			if (t < 1 - EPSILON)
+				return false;
+			if (t > 1 + EPSILON)
+				break;
+			undecided = true;
+		}
+		return !undecided || isWithin(p, w);
+	}
+
+	/**
+	 * Classifies the direction from p towards w with respect to the interior angle of the open space at p.
+	 */
+	private byte classifyDirection(int p, int w) {
+		double ux = x[next[p]] - x[p];
+		double uy = y[next[p]] - y[p];
+		double tx = x[prev[p]] - x[p];
+		double ty = y[prev[p]] - y[p];
+		double dx = x[w] - x[p];
+		double dy = y[w] - y[p];
+
+		int sideNext = sign(ux, uy, dx, dy);
+		int sidePrev = sign(dx, dy, tx, ty);
+		if (sideNext == 0 || sidePrev == 0)
+			return UNDECIDED;
+
+		int turn = sign(ux, uy, tx, ty);
+		if (turn > 0) // convex vertex
+			return sideNext > 0 && sidePrev > 0 ? INSIDE : OUTSIDE;
+		if (turn < 0) // reflex vertex
+			return sideNext < 0 && sidePrev < 0 ? OUTSIDE : INSIDE;
+		if (ux * tx + uy * ty > 0) // spike
+			return UNDECIDED;
+		return sideNext > 0 ? INSIDE : OUTSIDE;
+	}
+
+	private int initActiveEdges(int p, int first, int[] active) {
+		double dx = x[first] - x[p];
+		double dy = y[first] - y[p];
+		int numActive = 0;
+		double[] params = new double[numVertices];
+		for (int edge = 0; edge < numVertices; edge++) {
+			int a = edge;
+			int b = ringNext[edge];
+			if (a == p || b == p)
+				continue;
+			int sideA = sign(dx, dy, x[a] - x[p], y[a] - y[p]);
+			int sideB = sign(dx, dy, x[b] - x[p], y[b] - y[p]);
+			double t = rayParameter(p, dx, dy, edge);
+			if (sideA * sideB < 0 && t > 0) {
+				params[edge] = t;
+				active[numActive++] = edge;
+			}
+		}
+		int[] order = IndirectSort.mergesort(0, numActive, (i, j) -> Double.compare(params[active[i]], params[active[j]]));
+		int[] edges = Arrays.copyOf(active, numActive);
+		for (int i = 0; i < numActive; i++)
+			active[i] = edges[order[i]];
+		return numActive;
+	}
+
+	/**
+	 * Inserts the edge into the active edges, which are ordered by their distance from p along the current ray, if it
+	 * starts at w, i.e. its other vertex comes after w in counter-clockwise order.
+	 */
+	private int addEdgeIfStarting(int p, int w, int edge, int[] active, int numActive) {
+		if (isIncident(edge, p))
+			return numActive;
+		int other = otherVertex(edge, w);
+		double dx = x[w] - x[p];
+		double dy = y[w] - y[p];
+		if (sign(dx, dy, x[other] - x[p], y[other] - y[p]) <= 0)
+			return numActive;
+
+		int low = 0;
+		int high = numActive;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (isCloser(p, w, dx, dy, active[mid], edge))
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		System.arraycopy(active, low, active, low + 1, numActive - low);
+		active[low] = edge;
+		return numActive + 1;
+	}
+
+	/**
+	 * Checks whether edge e is closer to p than edge f just after the ray through w.
+	 */
+	private boolean isCloser(int p, int w, double dx, double dy, int e, int f) {
+		boolean eAtW = isIncident(e, w);
+		boolean fAtW = isIncident(f, w);
+		if (eAtW && fAtW) {
+			// both edges start at w, the one between p and the other edge is closer
+			int a = otherVertex(e, w);
+			int b = otherVertex(f, w);
+			double bx = x[b] - x[w];
+			double by = y[b] - y[w];
+			return sign(bx, by, x[a] - x[w], y[a] - y[w]) == sign(bx, by, x[p] - x[w], y[p] - y[w]);
+		}
+		double te = eAtW ? 1 : rayParameter(p, dx, dy, e);
+		double tf = fAtW ? 1 : rayParameter(p, dx, dy, f);
+		return te < tf;
+	}
+
+	/**
+	 * Removes the edge from the active edges if it ends at w, i.e. its other vertex came before w.
+	 */
+	private int removeEdgeIfEnding(int p, int w, int edge, int[] active, int numActive) {
+		if (isIncident(edge, p))
+			return numActive;
+		int other = otherVertex(edge, w);
+		double dx = x[w] - x[p];
+		double dy = y[w] - y[p];
+		if (sign(dx, dy, x[other] - x[p], y[other] - y[p]) >= 0)
+			return numActive;
+
+		// the edges touching the ray at w follow the ones crossing it before w
+		int low = 0;
+		int high = numActive;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (!isIncident(active[mid], w) && rayParameter(p, dx, dy, active[mid]) < 1)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		int index = -1;
+		for (int i = low; i < numActive && isIncident(active[i], w); i++) {
+			if (active[i] == edge)
+				index = i;
+		}
+		if (index < 0) {
+			// not where it is expected due to rounding, fall back to a linear search
+			for (int i = 0; i < numActive && index < 0; i++) {
+				if (active[i] == edge)
+					index = i;
+			}
+			if (index < 0)
+				return numActive;
+		}
+		System.arraycopy(active, index + 1, active, index, numActive - index - 1);
+		return numActive - 1;
+	}
+
+	private boolean isIncident(int edge, int vertex) {
+		return edge == vertex || ringNext[edge] == vertex;
+	}
+
+	private int otherVertex(int edge, int vertex) {
+		return edge == vertex ? ringNext[edge] : edge;
+	}
+
+	/**
+	 * Returns the parameter t at which the ray p + t * (dx, dy) crosses the given edge.
+	 */
+	private double rayParameter(int p, double dx, double dy, int edge) {
+		int a = edge;
+		int b = ringNext[edge];
+		double ex = x[b] - x[a];
+		double ey = y[b] - y[a];
+		double denom = dx * ey - dy * ex;
+		if (denom == 0)
+			return Double.POSITIVE_INFINITY;
+		return ((x[a] - x[p]) * ey - (y[a] - y[p]) * ex) / denom;
+	}
+
+	private boolean isSameRay(int p, int a, int b) {
+		double ax = x[a] - x[p];
+		double ay = y[a] - y[p];
+		double bx = x[b] - x[p];
+		double by = y[b] - y[p];
+		return sign(ax, ay, bx, by) == 0 && ax * bx + ay * by >= 0;
+	}
+
+	/**
+	 * Monotonic substitute for the angle of a direction in [0, 4), which is much cheaper to compute than atan2.
+	 */
+	private static double pseudoAngle(double dx, double dy) {
+		double sum = Math.abs(dx) + Math.abs(dy);
+		if (sum == 0)
+			return 0;
+		double r = dy / sum;
+		if (dx < 0)
+			return 2 - r;
+		return dy < 0 ? 4 + r : r;
+	}
+
+	/**
+	 * Sign of the cross product of the two vectors, zero if it is negligible compared to their lengths.
+	 */
+	private static int sign(double ax, double ay, double bx, double by) {
+		double cross = ax * by - ay * bx;
+		if (cross * cross <= EPSILON * EPSILON * (ax * ax + ay * ay) * (bx * bx + by * by))
+			return 0;
+		return cross > 0 ? 1 : -1;
+	}
+
+	private boolean isWithin(int a, int b) {
+		return openSpace.contains(geometryFactory.createLineString(new Coordinate[] {
+				new Coordinate(x[a], y[a]), new Coordinate(x[b], y[b])
+		}));
+	}
+}
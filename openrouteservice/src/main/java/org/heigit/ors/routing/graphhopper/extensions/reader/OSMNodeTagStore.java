@@ -0,0 +1,204 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library;
+ *  if not, see <https://www.gnu.org/licenses/>.
+ */
+package org.heigit.ors.routing.graphhopper.extensions.reader;
+
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Temporary store for the tags of OSM nodes which are needed when the ways are processed.
+ *
+ * Tag keys and values are interned into small dictionaries and every tag is stored as a single packed int. The
+ * records are kept in {@link DataAccess} objects which are memory mapped if the directory is backed by files, so
+ * that the tags of planet sized imports do not need to be held on the heap. Nodes are expected in ascending id
+ * order as in sorted OSM files; otherwise the records are sorted once before the first lookup.
+ */
+public class OSMNodeTagStore {
+	private static final int VALUE_BITS = 24;
+	private static final int VALUE_MASK = (1 << VALUE_BITS) - 1;
+	private static final int MAX_KEYS = 1 << (32 - VALUE_BITS);
+	// osm id (two ints) and offset of the tag entries
+	private static final int RECORD_BYTES = 12;
+
+	private final Directory dir;
+	private final DataAccess records;
+	private final DataAccess entries;
+
+	private final Map<String, Integer> keyIds = new HashMap<>();
+	private final List<String> keys = new ArrayList<>();
+	private final Map<String, Integer> valueIds = new HashMap<>();
+	private final List<String> values = new ArrayList<>();
+
+	private long size;
+	private long entriesSize;
+	private long lastId;
+	private long lastOffset;
+	private boolean sorted = true;
+
+	public OSMNodeTagStore(Directory dir) {
+		this.dir = dir;
+		DAType type = dir.getDefaultType().isStoring() ? DAType.MMAP : DAType.RAM;
+		records = dir.find("tmp_node_tag_records", type);
+		entries = dir.find("tmp_node_tag_entries", type);
+		records.create(1 << 16);
+		entries.create(1 << 16);
+	}
+
+	/**
+	 * Adds a tag to the given node. Tags of the same node have to be added consecutively.
+	 */
+	public void addTag(long osmId, String key, String value) {
+		if (entriesSize + 2 > Integer.MAX_VALUE)
+			throw new IllegalStateException("Too many node tags to store: " + entriesSize);
+
+		if (size == 0 || osmId != lastId) {
+			if (size > 0 && osmId < lastId)
+				sorted = false;
+
+			long recordPointer = size * RECORD_BYTES;
+			records.ensureCapacity(recordPointer + RECORD_BYTES);
+			records.setInt(recordPointer, (int) osmId);
+			records.setInt(recordPointer + 4, (int) (osmId >>> 32));
+			records.setInt(recordPointer + 8, (int) entriesSize);
+			size++;
+
+			// the first entry of a record is the number of its tags
+			lastId = osmId;
+			lastOffset = entriesSize;
+			entries.ensureCapacity((entriesSize + 1) * 4);
+			entries.setInt(entriesSize * 4, 0);
+			entriesSize++;
+		}
+
+		entries.ensureCapacity((entriesSize + 1) * 4);
+		entries.setInt(entriesSize * 4, (intern(keyIds, keys, key, MAX_KEYS) << VALUE_BITS) | intern(valueIds, values, value, VALUE_MASK + 1));
+		entriesSize++;
+		entries.setInt(lastOffset * 4, entries.getInt(lastOffset * 4) + 1);
+	}
+
+	/**
+	 * @return the tags of the given node or null if no tags have been stored for it
+	 */
+	public HashMap<String, String> get(long osmId) {
+		if (!sorted) {
+			sortRecords();
+			sorted = true;
+		}
+
+		long low = 0;
+		long high = size - 1;
+		while (low <= high) {
+			long mid = (low + high) >>> 1;
+			long midId = getId(mid);
+			if (midId < osmId)
+				low = mid + 1;
+			else if (midId > osmId)
+				high = mid - 1;
+			else
+				return getTags(records.getInt(mid * RECORD_BYTES + 8));
+		}
+		return null;
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Removes the underlying storages. The store must not be used afterwards.
+	 */
+	public void release() {
+		dir.remove(records);
+		dir.remove(entries);
+		keyIds.clear();
+		keys.clear();
+		valueIds.clear();
+		values.clear();
+		size = 0;
+		entriesSize = 0;
+	}
+
+	private HashMap<String, String> getTags(long offset) {
+		int count = entries.getInt(offset * 4);
+		HashMap<String, String> tags = new HashMap<>(count * 2);
+		for (int i = 1; i <= count; i++) {
+			int entry = entries.getInt((offset + i) * 4);
+			tags.put(keys.get(entry >>> VALUE_BITS), values.get(entry & VALUE_MASK));
+		}
+		return tags;
+	}
+
+	private static int intern(Map<String, Integer> ids, List<String> strings, String str, int maxSize) {
+		Integer id = ids.get(str);
+		if (id == null) {
+			if (strings.size() == maxSize)
+				throw new IllegalStateException("Too many distinct node tag keys or values, maximum is " + maxSize);
+			id = strings.size();
+			ids.put(str, id);
+			strings.add(str);
+		}
+		return id;
+	}
+
+	private long getId(long record) {
+		long pointer = record * RECORD_BYTES;
+		return (records.getInt(pointer) & 0xFFFFFFFFL) | ((long) records.getInt(pointer + 4) << 32);
+	}
+
+	/**
+	 * In-place heap sort of the records by osm id, so that no additional memory is needed for unsorted input.
+	 */
+	private void sortRecords() {
+		for (long i = size / 2 - 1; i >= 0; i--)
+			siftDown(i, size);
+		for (long end = size - 1; end > 0; end--) {
+			swap(0, end);
+			siftDown(0, end);
+		}
+	}
+
+	private void siftDown(long root, long end) {
+		while (true) {
+			long child = 2 * root + 1;
+			if (child >= end)
+				return;
+			if (child + 1 < end && getId(child + 1) > getId(child))
+				child++;
+			if (getId(root) >= getId(child))
+				return;
+			swap(root, child);
+			root = child;
+		}
+	}
+
+	private void swap(long a, long b) {
+		long pa = a * RECORD_BYTES;
+		long pb = b * RECORD_BYTES;
+		for (int i = 0; i < RECORD_BYTES; i += 4) {
+			int tmp = records.getInt(pa + i);
+			records.setInt(pa + i, records.getInt(pb + i));
+			records.setInt(pb + i, tmp);
+		}
+	}
+}
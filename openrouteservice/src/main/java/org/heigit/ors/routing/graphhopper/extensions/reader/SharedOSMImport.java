@@ -0,0 +1,264 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library;
+ *  if not, see <https://www.gnu.org/licenses/>.
+ */
+package org.heigit.ors.routing.graphhopper.extensions.reader;
+
+import com.graphhopper.reader.ReaderElement;
+import com.graphhopper.reader.ReaderNode;
+import com.graphhopper.reader.ReaderRelation;
+import com.graphhopper.reader.ReaderWay;
+import com.graphhopper.reader.osm.OSMInput;
+import com.graphhopper.reader.osm.OSMInputFile;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decodes an OSM file once for several readers which import it at the same time, e.g. the readers of all routing
+ * profiles. Every reader reads the file in passes (a pre-processing pass and the pass writing the graph). A pass is
+ * decoded as soon as all participants have opened it, and the decoded elements are handed to every participant
+ * through a bounded queue, so that the readers process them in parallel and the slowest reader limits the pace.
+ *
+ * Readers modify the elements (e.g. by adding tags), so every participant receives its own copy. All participants
+ * have to read at the same time; a participant which does not import (anymore) has to {@link Participant#leave()},
+ * otherwise the others wait for it.
+ */
+public class SharedOSMImport {
+	private static final Logger LOGGER = Logger.getLogger(SharedOSMImport.class.getName());
+
+	private static final int QUEUE_CAPACITY = 10000;
+	private static final int WORKER_THREADS = 2;
+	private static final ReaderElement END_OF_PASS = new ReaderNode(-1, 0, 0);
+
+	private final File osmFile;
+	private final List<Participant> participants = new ArrayList<>();
+	private final List<Pass> passes = new ArrayList<>();
+
+	public SharedOSMImport(File osmFile) {
+		this.osmFile = osmFile;
+	}
+
+	/**
+	 * Registers a reader. All participants have to be added before the first one opens the file.
+	 */
+	public synchronized Participant addParticipant() {
+		if (!passes.isEmpty())
+			throw new IllegalStateException("Participants cannot be added after the import has started.");
+		Participant participant = new Participant();
+		participants.add(participant);
+		return participant;
+	}
+
+	public File getFile() {
+		return osmFile;
+	}
+
+	private synchronized OSMInput open(Participant participant) {
+		if (participant.left)
+			throw new IllegalStateException("The participant has already left the shared import.");
+
+		int index = participant.nextPass++;
+		while (passes.size() <= index)
+			passes.add(new Pass(passes.size()));
+
+		Pass pass = passes.get(index);
+		if (pass.started)
+			throw new IllegalStateException("Pass " + index + " of the shared import has already started.");
+
+		PassInput input = new PassInput();
+		participant.inputs.add(input);
+		pass.inputs.add(input);
+		startIfComplete(pass);
+		return input;
+	}
+
+	private synchronized void leave(Participant participant) {
+		if (participant.left)
+			return;
+		participant.left = true;
+		for (PassInput input : participant.inputs)
+			input.close();
+		for (Pass pass : passes)
+			startIfComplete(pass);
+	}
+
+	private void startIfComplete(Pass pass) {
+		if (pass.started || pass.inputs.isEmpty())
+			return;
+		for (Participant participant : participants) {
+			if (!participant.left && participant.nextPass <= pass.index)
+				return;
+		}
+		pass.started = true;
+
+		Thread thread = new Thread(pass, "ORS-osm-import-" + pass.index);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private static ReaderElement copy(ReaderElement element) {
+		ReaderElement result;
+		switch (element.getType()) {
+			case ReaderElement.NODE:
+				ReaderNode node = (ReaderNode) element;
+				result = new ReaderNode(node.getId(), node.getLat(), node.getLon());
+				break;
+			case ReaderElement.WAY:
+				ReaderWay way = new ReaderWay(element.getId());
+				way.getNodes().addAll(((ReaderWay) element).getNodes());
+				result = way;
+				break;
+			case ReaderElement.RELATION:
+				ReaderRelation relation = new ReaderRelation(element.getId());
+				for (ReaderRelation.Member member : ((ReaderRelation) element).getMembers())
+					relation.add(member);
+				result = relation;
+				break;
+			default:
+				// the file header is only read
+				return element;
+		}
+		for (Map.Entry<String, Object> tag : element.getTags().entrySet())
+			result.setTag(tag.getKey(), tag.getValue());
+		return result;
+	}
+
+	/**
+	 * A reader taking part in the shared import.
+	 */
+	public class Participant {
+		private int nextPass = 0;
+		private boolean left = false;
+		private final List<PassInput> inputs = new ArrayList<>();
+
+		/**
+		 * Opens the next pass over the file. The elements are delivered once all participants have opened it.
+		 */
+		public OSMInput openPass() {
+			return open(this);
+		}
+
+		/**
+		 * Stops taking part in the import, so that the other participants do not wait for this one.
+		 */
+		public void leave() {
+			SharedOSMImport.this.leave(this);
+		}
+	}
+
+	private class Pass implements Runnable {
+		private final int index;
+		private final List<PassInput> inputs = new ArrayList<>();
+		private boolean started = false;
+
+		Pass(int index) {
+			this.index = index;
+		}
+
+		@Override
+		public void run() {
+			List<PassInput> targets;
+			synchronized (SharedOSMImport.this) {
+				targets = new ArrayList<>(inputs);
+			}
+			LOGGER.info(String.format("Reading '%s' for %d readers (pass %d).", osmFile, targets.size(), index + 1));
+
+			Exception error = null;
+			try (OSMInputFile in = new OSMInputFile(osmFile).setWorkerThreads(WORKER_THREADS).open()) {
+				ReaderElement item;
+				boolean hasReaders = true;
+				while (hasReaders && (item = in.getNext()) != null) {
+					hasReaders = false;
+					for (PassInput input : targets)
+						hasReaders |= input.put(item);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				error = e;
+			} catch (Exception e) {
+				error = e;
+				LOGGER.error("Failed to read " + osmFile, e);
+			}
+
+			for (PassInput input : targets)
+				input.finish(error);
+		}
+	}
+
+	private static class PassInput implements OSMInput {
+		private final BlockingQueue<ReaderElement> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+		private volatile boolean closed = false;
+		private volatile Exception error;
+		private boolean finished = false;
+
+		/**
+		 * @return false if the input has been closed and does not take elements anymore
+		 */
+		boolean put(ReaderElement item) throws InterruptedException {
+			while (!closed) {
+				if (queue.offer(item, 100, TimeUnit.MILLISECONDS))
+					return true;
+			}
+			return false;
+		}
+
+		void finish(Exception error) {
+			this.error = error;
+			try {
+				while (!closed && !queue.offer(END_OF_PASS, 100, TimeUnit.MILLISECONDS)) {
+					// wait for the reader to take elements
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				closed = true;
+			}
+		}
+
+		@Override
+		public ReaderElement getNext() {
+			if (finished)
+				return null;
+			ReaderElement item;
+			try {
+				item = queue.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while reading the OSM file.", e);
+			}
+			if (item == END_OF_PASS) {
+				finished = true;
+				if (error != null)
+					throw new IllegalStateException("Failed to read the OSM file.", error);
+				return null;
+			}
+			return copy(item);
+		}
+
+		@Override
+		public int getUnprocessedElements() {
+			return queue.size();
+		}
+
+		@Override
+		public void close() {
+			closed = true;
+			queue.clear();
+		}
+	}
+}
@@ -14,14 +14,18 @@
 package org.heigit.ors.routing.graphhopper.extensions.reader.borders;
 
 import com.vividsolutions.jts.geom.*;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
 import org.apache.log4j.Logger;
 
 import java.io.InvalidObjectException;
 
 public class CountryBordersPolygon {
     private static final Logger LOGGER = Logger.getLogger(CountryBordersPolygon.class);
+    private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory();
     private String name;
     private MultiPolygon boundary;
+    private PreparedGeometry preparedBoundary;
     private Geometry boundaryLine;
     private double area = 0;
     private double minLat = 180f;
@@ -48,6 +52,7 @@ public class CountryBordersPolygon {
             LOGGER.error("Invalid geometry - " + boundary.getGeometryType());
             throw new InvalidObjectException("Invalid geometry for boundary " + name);
         }
+        this.preparedBoundary = PreparedGeometryFactory.prepare(this.boundary);
         this.boundaryLine = boundary.getBoundary();
         this.area = this.boundary.getArea();
         // calculate lat and lon values
@@ -89,9 +94,7 @@ public class CountryBordersPolygon {
 
     public boolean inArea(Coordinate c) {
         if(!Double.isNaN(c.x) && !Double.isNaN(c.y) && inBbox(c)) {
-            GeometryFactory gf = new GeometryFactory();
-
-            return boundary.contains(gf.createPoint(c));
+            return preparedBoundary.contains(GEOMETRY_FACTORY.createPoint(c));
         }
 
         return false;
@@ -14,7 +14,9 @@
 package org.heigit.ors.routing.graphhopper.extensions.reader.borders;
 
 import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.index.strtree.STRtree;
 import org.heigit.ors.geojson.GeometryJSON;
 import org.heigit.ors.util.CSVUtility;
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
@@ -46,6 +48,8 @@ public class CountryBordersReader {
     private HashMap<String, Integer> isoCodes = new HashMap<>();
 
     private HashMap<Long, CountryBordersHierarchy> hierarchies = new HashMap<>();
+    // packed STR-tree over the polygons of all hierarchies, rebuilt lazily when a hierarchy is added
+    private volatile STRtree polygonIndex;
 
     private static CountryBordersReader currentInstance = null;
 
@@ -82,6 +86,7 @@ public class CountryBordersReader {
             LOGGER.info("Border geometries read");
 
             createGeometries(data);
+            getPolygonIndex();
 
             readIds();
             LOGGER.info("Border ids data read");
@@ -100,6 +105,7 @@ public class CountryBordersReader {
     public void addHierarchy(Long id, CountryBordersHierarchy hierarchy) {
         if(!hierarchies.containsKey(id)) {
             hierarchies.put(id, hierarchy);
+            polygonIndex = null;
         }
     }
 
@@ -265,19 +271,11 @@ public class CountryBordersReader {
      * @return      An array of CountryBorderPolygons that the point is within the geometry of.
      */
     public CountryBordersPolygon[] getCountry(Coordinate c) {
-        ArrayList<CountryBordersPolygon> countries = new ArrayList<>();
-        Iterator it = hierarchies.entrySet().iterator();
-        while(it.hasNext()) {
-            Map.Entry<Long, CountryBordersHierarchy> pair = (Map.Entry)it.next();
-            CountryBordersHierarchy h =  pair.getValue();
-            if(h.inBbox(c)) {
-                // Now need to check the countries
-                List<CountryBordersPolygon> ps = h.getPolygons();
-                for(CountryBordersPolygon cp : ps) {
-                    if(cp.inBbox(c) && cp.inArea(c)) {
-                        countries.add(cp);
-                    }
-                }
+        List<IndexEntry> entries = queryPolygonIndex(c);
+        ArrayList<CountryBordersPolygon> countries = new ArrayList<>(entries.size());
+        for(IndexEntry entry : entries) {
+            if(entry.polygon.inArea(c)) {
+                countries.add(entry.polygon);
             }
         }
 
@@ -294,23 +292,72 @@ public class CountryBordersReader {
      * @return      An array of CountryBorderPolygons that the point is within the geometry of.
      */
     public CountryBordersPolygon[] getCandidateCountry(Coordinate c) {
-        ArrayList<CountryBordersPolygon> countries = new ArrayList<>();
-        Iterator it = hierarchies.entrySet().iterator();
-        while(it.hasNext()) {
-            Map.Entry<Long, CountryBordersHierarchy> pair = (Map.Entry)it.next();
-            CountryBordersHierarchy h =  pair.getValue();
-            if(h.inBbox(c)) {
-                // Now need to check the countries
-                List<CountryBordersPolygon> ps = h.getPolygons();
-                for(CountryBordersPolygon cp : ps) {
-                    if(cp.inBbox(c)) {
-                        countries.add(cp);
+        List<IndexEntry> entries = queryPolygonIndex(c);
+        CountryBordersPolygon[] countries = new CountryBordersPolygon[entries.size()];
+        for(int i = 0; i < countries.length; i++) {
+            countries[i] = entries.get(i).polygon;
+        }
+
+        return countries;
+    }
+
+    /**
+     * Find the polygons whose bounding box (and the bounding box of their hierarchy) contains the given coordinate.
+     * The entries are returned in the order of the hierarchies and their polygons.
+     */
+    @SuppressWarnings("unchecked")
+    private List<IndexEntry> queryPolygonIndex(Coordinate c) {
+        List<IndexEntry> candidates;
+        if(Double.isNaN(c.x) || Double.isNaN(c.y)) {
+            // the bounding box checks do not reject a NaN ordinate, so all polygons are checked like before the index
+            candidates = new ArrayList<>();
+            int order = 0;
+            for(CountryBordersHierarchy h : hierarchies.values()) {
+                for(CountryBordersPolygon cp : h.getPolygons()) {
+                    candidates.add(new IndexEntry(order++, h, cp));
+                }
+            }
+        } else {
+            candidates = getPolygonIndex().query(new Envelope(c));
+        }
+        ArrayList<IndexEntry> entries = new ArrayList<>(candidates.size());
+        for(IndexEntry entry : candidates) {
+            if(entry.hierarchy.inBbox(c) && entry.polygon.inBbox(c)) {
+                entries.add(entry);
+            }
+        }
+        if(entries.size() > 1) {
+            entries.sort(Comparator.comparingInt(entry -> entry.order));
+        }
+
+        return entries;
+    }
+
+    /**
+     * Get the spatial index of the polygons, building it if necessary. Once built, the tree is only read and can be
+     * queried concurrently.
+     */
+    private STRtree getPolygonIndex() {
+        STRtree index = polygonIndex;
+        if(index == null) {
+            synchronized (this) {
+                index = polygonIndex;
+                if(index == null) {
+                    index = new STRtree();
+                    int order = 0;
+                    for(CountryBordersHierarchy h : hierarchies.values()) {
+                        for(CountryBordersPolygon cp : h.getPolygons()) {
+                            double[] bbox = cp.getBBox();
+                            index.insert(new Envelope(bbox[0], bbox[1], bbox[2], bbox[3]), new IndexEntry(order++, h, cp));
+                        }
                     }
+                    index.build();
+                    polygonIndex = index;
                 }
             }
         }
 
-        return countries.toArray(new CountryBordersPolygon[countries.size()]);
+        return index;
     }
 
     /**
@@ -444,6 +491,21 @@ public class CountryBordersReader {
         }
     }
 
+    /**
+     * Item of the polygon index, keeping the position of the polygon in the hierarchies to preserve result order.
+     */
+    private static class IndexEntry {
+        private final int order;
+        private final CountryBordersHierarchy hierarchy;
+        private final CountryBordersPolygon polygon;
+
+        IndexEntry(int order, CountryBordersHierarchy hierarchy, CountryBordersPolygon polygon) {
+            this.order = order;
+            this.hierarchy = hierarchy;
+            this.polygon = polygon;
+        }
+    }
+
     /**
      * Holder class for storing information about a country read from the ids csv.
      */
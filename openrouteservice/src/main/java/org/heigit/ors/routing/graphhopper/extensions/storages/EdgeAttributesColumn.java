@@ -0,0 +1,129 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the 
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1 
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library; 
+ *  if not, see <https://www.gnu.org/licenses/>.  
+ */
+package org.heigit.ors.routing.graphhopper.extensions.storages;
+
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.GraphStorage;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Packs the attributes of the ORS graph extensions which are used by the edge filters into a single int per edge:
+ * the way category in bits 0-7, the tollway type in bits 8-13, the border type in bits 14-15 and a flag for heavy
+ * vehicle attributes in bit 16. The column is created once when the graph is loaded and lets the filters of a request
+ * be evaluated with a single array access per edge, see
+ * {@link org.heigit.ors.routing.graphhopper.extensions.edgefilters.CompiledEdgeFilter}.
+ */
+public class EdgeAttributesColumn {
+	public static final int WAY_CATEGORY_SHIFT = 0;
+	public static final int WAY_CATEGORY_MASK = 0xFF;
+	public static final int TOLLWAY_SHIFT = 8;
+	public static final int TOLLWAY_MASK = 0x3F;
+	public static final int BORDER_SHIFT = 14;
+	public static final int BORDER_MASK = 0x3;
+	public static final int HEAVY_VEHICLE_ATTRIBUTES = 1 << 16;
+
+	private static final Map<GraphStorage, EdgeAttributesColumn> columns = Collections.synchronizedMap(new WeakHashMap<>());
+
+	private final int[] values;
+	private final boolean hasWayCategories;
+	private final boolean hasTollways;
+	private final boolean hasBorders;
+	private final boolean hasHeavyVehicleAttributes;
+
+	public EdgeAttributesColumn(int edges, WayCategoryGraphStorage wayCategories, TollwaysGraphStorage tollways,
+								BordersGraphStorage borders, HeavyVehicleAttributesGraphStorage heavyVehicles) {
+		values = new int[edges];
+		hasWayCategories = wayCategories != null;
+		hasTollways = tollways != null;
+		hasBorders = borders != null;
+		hasHeavyVehicleAttributes = heavyVehicles != null;
+
+		byte[] buffer = new byte[2];
+		for (int edge = 0; edge < edges; edge++) {
+			int value = 0;
+			if (wayCategories != null)
+				value |= (wayCategories.getEdgeValue(edge, buffer) & WAY_CATEGORY_MASK) << WAY_CATEGORY_SHIFT;
+			if (tollways != null)
+				value |= (tollways.getEdgeValue(edge) & TOLLWAY_MASK) << TOLLWAY_SHIFT;
+			if (borders != null)
+				value |= (borders.getEdgeValue(edge, BordersGraphStorage.Property.TYPE) & BORDER_MASK) << BORDER_SHIFT;
+			if (heavyVehicles != null && heavyVehicles.hasEdgeRestriction(edge))
+				value |= HEAVY_VEHICLE_ATTRIBUTES;
+			values[edge] = value;
+		}
+	}
+
+	/**
+	 * Creates the column for all edges of the given graph and registers it, so that it can be obtained by
+	 * {@link #get(GraphStorage)}.
+	 */
+	public static EdgeAttributesColumn create(GraphHopperStorage graphStorage) {
+		EdgeAttributesColumn column = new EdgeAttributesColumn(graphStorage.getEdges(),
+				GraphStorageUtils.getGraphExtension(graphStorage, WayCategoryGraphStorage.class),
+				GraphStorageUtils.getGraphExtension(graphStorage, TollwaysGraphStorage.class),
+				GraphStorageUtils.getGraphExtension(graphStorage, BordersGraphStorage.class),
+				GraphStorageUtils.getGraphExtension(graphStorage, HeavyVehicleAttributesGraphStorage.class));
+		columns.put(graphStorage, column);
+		return column;
+	}
+
+	/**
+	 * @return the column of the given graph or null if none has been created
+	 */
+	public static EdgeAttributesColumn get(GraphStorage graphStorage) {
+		return graphStorage == null ? null : columns.get(graphStorage);
+	}
+
+	public static int getWayCategory(int value) {
+		return (value >>> WAY_CATEGORY_SHIFT) & WAY_CATEGORY_MASK;
+	}
+
+	public static int getTollwayType(int value) {
+		return (value >>> TOLLWAY_SHIFT) & TOLLWAY_MASK;
+	}
+
+	public static int getBorderType(int value) {
+		return (value >>> BORDER_SHIFT) & BORDER_MASK;
+	}
+
+	/**
+	 * @return the packed attributes of the given edge
+	 */
+	public int getValue(int edge) {
+		return values[edge];
+	}
+
+	public int getEdges() {
+		return values.length;
+	}
+
+	public boolean hasWayCategories() {
+		return hasWayCategories;
+	}
+
+	public boolean hasTollways() {
+		return hasTollways;
+	}
+
+	public boolean hasBorders() {
+		return hasBorders;
+	}
+
+	public boolean hasHeavyVehicleAttributes() {
+		return hasHeavyVehicleAttributes;
+	}
+}
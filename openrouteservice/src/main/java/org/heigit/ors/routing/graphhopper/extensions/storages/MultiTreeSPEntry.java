@@ -72,6 +72,10 @@ public class MultiTreeSPEntry implements Comparable<MultiTreeSPEntry> {
 		return items[index];
 	}
 
+	public double getTotalWeight() {
+		return totalWeight;
+	}
+
 	public void resetUpdate(boolean value) {
 		for (int i = 0; i < items.length; i++) {
 			items[i].setUpdate(value);
@@ -0,0 +1,227 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library;
+ *  if not, see <https://www.gnu.org/licenses/>.
+ */
+package org.heigit.ors.routing.graphhopper.extensions.storages;
+
+import com.carrotsearch.hppc.IntIntHashMap;
+import com.graphhopper.util.EdgeIterator;
+
+/**
+ * Flat counterpart of {@link MultiTreeSPEntry}/{@link MultiTreeSPEntryItem} for many-to-many searches.
+ *
+ * Every node reached by the search is assigned a slot. The per-tree weight, edge, parent slot and update flag of
+ * a slot are stored in primitive arrays at index {@code slot * numTrees + tree}, so no objects are allocated per
+ * node or tree. Instances are meant to be obtained from and returned to {@link MultiTreeSPStoragePool}, which
+ * keeps the arrays for reuse by subsequent requests.
+ */
+public class MultiTreeSPStorage {
+	public static final int NO_SLOT = -1;
+
+	private int numTrees;
+	private int numSlots;
+	private final IntIntHashMap nodeSlots;
+
+	// per slot
+	private int[] nodes;
+	private double[] totalWeights;
+	private boolean[] visited;
+
+	// per slot and tree
+	private double[] weights;
+	private int[] edges;
+	private int[] parents;
+	private boolean[] updates;
+
+	public MultiTreeSPStorage(int initialSlots) {
+		nodeSlots = new IntIntHashMap(initialSlots);
+		nodes = new int[initialSlots];
+		totalWeights = new double[initialSlots];
+		visited = new boolean[initialSlots];
+		weights = new double[0];
+		edges = new int[0];
+		parents = new int[0];
+		updates = new boolean[0];
+	}
+
+	/**
+	 * Drops all slots and prepares the storage for a search with the given number of trees.
+	 */
+	public void init(int numTrees) {
+		this.numTrees = numTrees;
+		numSlots = 0;
+		nodeSlots.clear();
+	}
+
+	public int getNumTrees() {
+		return numTrees;
+	}
+
+	public int getNumSlots() {
+		return numSlots;
+	}
+
+	/**
+	 * @return the approximate number of bytes held by the arrays of the storage
+	 */
+	public long getMemorySize() {
+		long slotBytes = (long) nodes.length * (4 + 8 + 1) + (long) nodeSlots.keys.length * (4 + 4);
+		long itemBytes = (long) weights.length * (8 + 4 + 4 + 1);
+		return slotBytes + itemBytes;
+	}
+
+	public int getSlot(int node) {
+		return nodeSlots.getOrDefault(node, NO_SLOT);
+	}
+
+	/**
+	 * Creates a new slot for the given node. The semantics equal those of the {@link MultiTreeSPEntry}
+	 * constructor: all trees which have been reached at the parent slot are extended by the given edge.
+	 */
+	public int addSlot(int node, int edgeId, double edgeWeight, boolean updated, int parentSlot) {
+		int slot = numSlots++;
+		ensureCapacity(numSlots);
+
+		nodeSlots.put(node, slot);
+		nodes[slot] = node;
+		visited[slot] = false;
+
+		double total = 0.0;
+		int offset = slot * numTrees;
+		int parentOffset = parentSlot * numTrees;
+
+		for (int i = 0; i < numTrees; ++i) {
+			int index = offset + i;
+			double entryWeight = parentSlot == NO_SLOT ? Double.POSITIVE_INFINITY : weights[parentOffset + i];
+
+			if (entryWeight == Double.POSITIVE_INFINITY && parentSlot != NO_SLOT) {
+				weights[index] = Double.POSITIVE_INFINITY;
+				edges[index] = EdgeIterator.NO_EDGE;
+				parents[index] = NO_SLOT;
+				updates[index] = false;
+				continue;
+			}
+
+			weights[index] = edgeWeight + entryWeight;
+			edges[index] = edgeId;
+			parents[index] = parentSlot;
+			updates[index] = updated;
+			total += weights[index];
+		}
+		totalWeights[slot] = total;
+
+		return slot;
+	}
+
+	public int getNode(int slot) {
+		return nodes[slot];
+	}
+
+	public boolean isVisited(int slot) {
+		return visited[slot];
+	}
+
+	public void setVisited(int slot, boolean value) {
+		visited[slot] = value;
+	}
+
+	public double getTotalWeight(int slot) {
+		return totalWeights[slot];
+	}
+
+	public double getWeight(int slot, int tree) {
+		return weights[slot * numTrees + tree];
+	}
+
+	public void setWeight(int slot, int tree, double weight) {
+		weights[slot * numTrees + tree] = weight;
+	}
+
+	public int getEdge(int slot, int tree) {
+		return edges[slot * numTrees + tree];
+	}
+
+	public int getParent(int slot, int tree) {
+		return parents[slot * numTrees + tree];
+	}
+
+	public boolean isUpdate(int slot, int tree) {
+		return updates[slot * numTrees + tree];
+	}
+
+	public void setUpdate(int slot, int tree, boolean value) {
+		updates[slot * numTrees + tree] = value;
+	}
+
+	public void setItem(int slot, int tree, double weight, int edgeId, int parentSlot, boolean updated) {
+		int index = slot * numTrees + tree;
+		weights[index] = weight;
+		edges[index] = edgeId;
+		parents[index] = parentSlot;
+		updates[index] = updated;
+	}
+
+	public void resetUpdate(int slot, boolean value) {
+		int offset = slot * numTrees;
+		for (int i = 0; i < numTrees; i++)
+			updates[offset + i] = value;
+	}
+
+	public void updateWeights(int slot) {
+		double total = 0.0;
+		int offset = slot * numTrees;
+
+		for (int i = 0; i < numTrees; i++) {
+			double weight = weights[offset + i];
+			if (weight == Double.POSITIVE_INFINITY)
+				continue;
+			total += weight;
+		}
+		totalWeights[slot] = total;
+	}
+
+	private void ensureCapacity(int slots) {
+		if (slots > nodes.length) {
+			int newLength = Math.max(slots, nodes.length + (nodes.length >> 1) + 1);
+			int[] newNodes = new int[newLength];
+			double[] newTotalWeights = new double[newLength];
+			boolean[] newVisited = new boolean[newLength];
+			System.arraycopy(nodes, 0, newNodes, 0, numSlots - 1);
+			System.arraycopy(totalWeights, 0, newTotalWeights, 0, numSlots - 1);
+			System.arraycopy(visited, 0, newVisited, 0, numSlots - 1);
+			nodes = newNodes;
+			totalWeights = newTotalWeights;
+			visited = newVisited;
+		}
+
+		long items = (long) nodes.length * numTrees;
+		if (items > weights.length) {
+			if (items > Integer.MAX_VALUE)
+				throw new IllegalStateException("Too many nodes for flat multi-tree storage: " + slots);
+
+			int newLength = (int) items;
+			int used = (numSlots - 1) * numTrees;
+			double[] newWeights = new double[newLength];
+			int[] newEdges = new int[newLength];
+			int[] newParents = new int[newLength];
+			boolean[] newUpdates = new boolean[newLength];
+			System.arraycopy(weights, 0, newWeights, 0, used);
+			System.arraycopy(edges, 0, newEdges, 0, used);
+			System.arraycopy(parents, 0, newParents, 0, used);
+			System.arraycopy(updates, 0, newUpdates, 0, used);
+			weights = newWeights;
+			edges = newEdges;
+			parents = newParents;
+			updates = newUpdates;
+		}
+	}
+}
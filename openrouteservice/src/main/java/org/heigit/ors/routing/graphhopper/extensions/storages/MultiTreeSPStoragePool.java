@@ -0,0 +1,81 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library;
+ *  if not, see <https://www.gnu.org/licenses/>.
+ */
+package org.heigit.ors.routing.graphhopper.extensions.storages;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps released {@link MultiTreeSPStorage} instances so that their arrays can be reused by later matrix requests.
+ * The pool holds at most {@link #getMaximumSize()} bytes; storages which do not fit are left to the garbage
+ * collector.
+ */
+public class MultiTreeSPStoragePool {
+	private static final long DEFAULT_MAXIMUM_SIZE = 64L * 1024 * 1024;
+	private static final int INITIAL_SLOTS = 1000;
+
+	private static final ConcurrentLinkedQueue<MultiTreeSPStorage> storages = new ConcurrentLinkedQueue<>();
+	private static final AtomicLong pooledSize = new AtomicLong();
+	private static volatile long maximumSize = DEFAULT_MAXIMUM_SIZE;
+
+	private MultiTreeSPStoragePool() {}
+
+	public static MultiTreeSPStorage acquire(int numTrees) {
+		MultiTreeSPStorage storage = storages.poll();
+		if (storage == null)
+			storage = new MultiTreeSPStorage(INITIAL_SLOTS);
+		else
+			pooledSize.addAndGet(-storage.getMemorySize());
+
+		storage.init(numTrees);
+		return storage;
+	}
+
+	public static void release(MultiTreeSPStorage storage) {
+		if (storage == null)
+			return;
+
+		long size = storage.getMemorySize();
+		if (pooledSize.addAndGet(size) > maximumSize) {
+			pooledSize.addAndGet(-size);
+			return;
+		}
+
+		storage.init(0);
+		storages.offer(storage);
+	}
+
+	public static long getMaximumSize() {
+		return maximumSize;
+	}
+
+	/**
+	 * Sets the number of bytes the pooled storages may hold in total. Storages pooled already are dropped if they
+	 * exceed the new limit.
+	 */
+	public static void setMaximumSize(long bytes) {
+		maximumSize = Math.max(0, bytes);
+
+		MultiTreeSPStorage storage;
+		while (pooledSize.get() > maximumSize && (storage = storages.poll()) != null)
+			pooledSize.addAndGet(-storage.getMemorySize());
+	}
+
+	/**
+	 * @return the number of bytes currently held by pooled storages
+	 */
+	public static long getPooledSize() {
+		return pooledSize.get();
+	}
+}
@@ -80,5 +80,16 @@ public class ORSParameters {
         public static final String INIT_DISABLING_ALLOWED = ROUTING_INIT_PREFIX + "corelm.disabling_allowed";
     }
 
+    /**
+     * Per request routing options
+     */
+    public static final class Routing {
+        private Routing() {}
 
+        /**
+         * This property name in HintsMap configures at runtime if the geometry of the response should be simplified.
+         * It is read per request, so that concurrent requests do not have to change the shared GraphHopper instance.
+         */
+        public static final String SIMPLIFY_RESPONSE = "simplify_response";
+    }
 }
@@ -22,27 +22,44 @@ import com.graphhopper.util.PMap;
 import org.heigit.ors.routing.graphhopper.extensions.storages.GraphStorageUtils;
 import org.heigit.ors.routing.graphhopper.extensions.storages.GreenIndexGraphStorage;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * Created by lliu on 15/03/2017.
  */
 public class GreenWeighting extends FastestWeighting {
     private GreenIndexGraphStorage gsGreenIndex;
     private byte[] buffer = new byte[1];
-    private double[] factors = new double[TOTAL_LEVEL];
+    private double[] factors;
 
     private static final int TOTAL_LEVEL = 64;
+    private static final int MAX_CACHED_FACTORS = 256;
+    // the factor tables only depend on the requested factor, so they are shared between requests
+    private static final Map<Double, double[]> FACTOR_TABLES = new ConcurrentHashMap<>();
 
     public GreenWeighting(FlagEncoder encoder, PMap map, GraphStorage graphStorage) {
         super(encoder, map);
         
         gsGreenIndex = GraphStorageUtils.getGraphExtension(graphStorage, GreenIndexGraphStorage.class);
         double factor = map.getDouble("factor", 1);
-        
+
+        factors = FACTOR_TABLES.get(factor);
+        if (factors == null) {
+            factors = createFactors(factor);
+            if (FACTOR_TABLES.size() < MAX_CACHED_FACTORS)
+                FACTOR_TABLES.put(factor, factors);
+        }
+    }
+
+    private static double[] createFactors(double factor) {
+        double[] res = new double[TOTAL_LEVEL];
         for (int i = 0; i < TOTAL_LEVEL; i++)
-        	factors[i] = calcGreenWeightFactor(i, factor);
+            res[i] = calcGreenWeightFactor(i, factor);
+        return res;
     }
 
-    private double calcGreenWeightFactor(int level, double factor) {
+    private static double calcGreenWeightFactor(int level, double factor) {
         // There is an implicit convention here:
         // the green level range is [0, total - 1].
         // And the @level will be transformed to a float number
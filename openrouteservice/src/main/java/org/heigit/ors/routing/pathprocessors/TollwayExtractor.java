@@ -38,8 +38,16 @@ public class TollwayExtractor {
 	 * @see HeavyVehicleAttributes
 	 */
 	public int getValue(int edgeId) {
-		int value = storage.getEdgeValue(edgeId);
+		return getValueForType(storage.getEdgeValue(edgeId));
+	}
 
+	/**
+	 * return if a way with the given tollway type is a tollway for the configured vehicle.
+	 *
+	 * @param value				The tollway type of the way
+	 * @see TollwayType
+	 */
+	public int getValueForType(int value) {
 		switch (value) {
 			// toll=no
 			case TollwayType.NONE:
@@ -35,6 +35,8 @@ public class IsochronesServiceSettings {
 	private static Map<Integer, Integer> profileMaxRangeTimes;
 	private static int maximumIntervals = 1;
 	private static boolean allowComputeArea = true;
+	private static int parallelThreads = 1;
+	private static int accessibilityMapCacheSize = 0;
 	private static Map<String, StatisticsProviderConfiguration> statsProviders;
 	private static String attribution = "";
 
@@ -79,6 +81,12 @@ public class IsochronesServiceSettings {
 		value = AppConfig.getGlobal().getServiceParameter(SERVICE_NAME_ISOCHRONES, "allow_compute_area");
 		if (value != null)
 			allowComputeArea = Boolean.parseBoolean(value);
+		value = AppConfig.getGlobal().getServiceParameter(SERVICE_NAME_ISOCHRONES, "parallel_threads");
+		if (value != null)
+			parallelThreads = Math.max(1, Integer.parseInt(value));
+		value = AppConfig.getGlobal().getServiceParameter(SERVICE_NAME_ISOCHRONES, "accessibility_map_cache_size");
+		if (value != null)
+			accessibilityMapCacheSize = Math.max(0, Integer.parseInt(value));
 
 		statsProviders = new HashMap<>();
 
@@ -143,6 +151,20 @@ public class IsochronesServiceSettings {
 		return allowComputeArea;
 	}
 
+	/**
+	 * @return number of threads used to build the isochrones of several locations in parallel, 1 disables the parallel mode
+	 */
+	public static int getParallelThreads() {
+		return parallelThreads;
+	}
+
+	/**
+	 * @return maximum number of shortest path tree entries of cached accessibility maps per graph, 0 disables the cache
+	 */
+	public static int getAccessibilityMapCacheSize() {
+		return accessibilityMapCacheSize;
+	}
+
 	public static int getMaximumLocations() {
 		return maximumLocations;
 	}
@@ -90,13 +90,11 @@ public class JsonIsochronesRequestProcessor extends AbstractHttpRequestProcessor
         }
 
         if (!travellers.isEmpty()) {
-            IsochroneMapCollection isoMaps = new IsochroneMapCollection();
+            List<IsochroneSearchParameters> searchParams = new ArrayList<>(travellers.size());
+            for (int i = 0; i < travellers.size(); ++i)
+                searchParams.add(req.getSearchParameters(i));
 
-            for (int i = 0; i < travellers.size(); ++i) {
-                IsochroneSearchParameters searchParams = req.getSearchParameters(i);
-                IsochroneMap isochroneMap = RoutingProfileManager.getInstance().buildIsochrone(searchParams);
-                isoMaps.add(isochroneMap);
-            }
+            IsochroneMapCollection isoMaps = RoutingProfileManager.getInstance().buildIsochrones(searchParams);
             writeResponse(response, req, isoMaps);
         }
     }
@@ -20,6 +20,7 @@ import com.vividsolutions.jts.geom.Coordinate;
 
 import org.heigit.ors.common.DistanceUnit;
 import org.heigit.ors.exceptions.MissingParameterException;
+import org.heigit.ors.exceptions.ParameterOutOfRangeException;
 import org.heigit.ors.exceptions.ParameterValueException;
 import org.heigit.ors.exceptions.UnknownParameterValueException;
 import org.heigit.ors.localization.LocalizationManager;
@@ -83,6 +84,23 @@ public class JsonMapMatchingRequestParser {
 			req.setCoordinates(coords);
 		}		
 
+		value = request.getParameter("accuracy");
+		if (!Helper.isEmpty(value)) {
+			double accuracy;
+			try {
+				accuracy = Double.parseDouble(value);
+			} catch(NumberFormatException ex) {
+				throw new ParameterValueException(MapMatchingErrorCodes.INVALID_PARAMETER_FORMAT, "accuracy");
+			}
+
+			if (accuracy <= 0)
+				throw new ParameterValueException(MapMatchingErrorCodes.INVALID_PARAMETER_VALUE, "accuracy", value);
+			if (accuracy > MapMatchingServiceSettings.getMaximumSearchRadius())
+				throw new ParameterOutOfRangeException(MapMatchingErrorCodes.PARAMETER_VALUE_EXCEEDS_MAXIMUM, "accuracy", value, Double.toString(MapMatchingServiceSettings.getMaximumSearchRadius()));
+
+			req.setAccuracy(accuracy);
+		}
+
 		value = request.getParameter("units");
 		if (!Helper.isEmpty(value)) {
 			DistanceUnit units = DistanceUnitUtil.getFromString(value, DistanceUnit.UNKNOWN);
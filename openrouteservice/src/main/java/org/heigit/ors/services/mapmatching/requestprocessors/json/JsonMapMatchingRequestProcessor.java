@@ -28,7 +28,6 @@ import org.heigit.ors.mapmatching.MapMatchingRequest;
 import org.heigit.ors.routing.RouteResult;
 import org.heigit.ors.routing.RoutingProfileManager;
 import org.heigit.ors.services.mapmatching.MapMatchingServiceSettings;
-import org.heigit.ors.services.matrix.MatrixServiceSettings;
 import org.heigit.ors.servlet.http.AbstractHttpRequestProcessor;
 import org.heigit.ors.servlet.util.ServletUtility;
 
@@ -46,8 +45,8 @@ public class JsonMapMatchingRequestProcessor extends AbstractHttpRequestProcesso
 		if (req == null)
 			throw new StatusCodeException(StatusCode.BAD_REQUEST, MapMatchingErrorCodes.UNKNOWN, "MapMatchingRequest object is null.");
 
-		if (MapMatchingServiceSettings.getMaximumLocations() > 0 && req.getCoordinates().length > MatrixServiceSettings.getMaximumRoutes(false))
-			throw new ParameterOutOfRangeException(MapMatchingErrorCodes.PARAMETER_VALUE_EXCEEDS_MAXIMUM, "sources/destinations", Integer.toString(req.getCoordinates().length), Integer.toString(MapMatchingServiceSettings.getMaximumLocations()));
+		if (MapMatchingServiceSettings.getMaximumLocations() > 0 && req.getCoordinates().length > MapMatchingServiceSettings.getMaximumLocations())
+			throw new ParameterOutOfRangeException(MapMatchingErrorCodes.PARAMETER_VALUE_EXCEEDS_MAXIMUM, "coordinates", Integer.toString(req.getCoordinates().length), Integer.toString(MapMatchingServiceSettings.getMaximumLocations()));
 
 		
 		RouteResult result = RoutingProfileManager.getInstance().matchTrack(req);
@@ -23,6 +23,11 @@ public class MatrixServiceSettings {
 	private static boolean allowResolveLocations = true;
 	private static String attribution = "";
 	private static boolean enabled = true;
+	private static boolean flatStorage = false;
+	private static int parallelThreads = 1;
+	private static int parallelBatchSize = 64;
+	private static int bucketMaximumLocations = 250;
+	private static int storagePoolSize = 64;
 
 	public static final String PARAM_MATRIX = "matrix";
 
@@ -48,6 +53,21 @@ public class MatrixServiceSettings {
 		value = AppConfig.getGlobal().getServiceParameter(PARAM_MATRIX, "attribution");
 		if (value != null)
 			attribution = value;
+		value = AppConfig.getGlobal().getServiceParameter(PARAM_MATRIX, "storage_mode");
+		if (value != null)
+			flatStorage = "flat".equalsIgnoreCase(value);
+		value = AppConfig.getGlobal().getServiceParameter(PARAM_MATRIX, "parallel_threads");
+		if (value != null)
+			parallelThreads = Math.max(1, Integer.parseInt(value));
+		value = AppConfig.getGlobal().getServiceParameter(PARAM_MATRIX, "parallel_batch_size");
+		if (value != null)
+			parallelBatchSize = Math.max(1, Integer.parseInt(value));
+		value = AppConfig.getGlobal().getServiceParameter(PARAM_MATRIX, "bucket_maximum_locations");
+		if (value != null)
+			bucketMaximumLocations = Math.max(0, Integer.parseInt(value));
+		value = AppConfig.getGlobal().getServiceParameter(PARAM_MATRIX, "storage_pool_size");
+		if (value != null)
+			storagePoolSize = Math.max(0, Integer.parseInt(value));
 	}
 
 	private MatrixServiceSettings() {}
@@ -72,6 +92,39 @@ public class MatrixServiceSettings {
 		return maximumSearchRadius;
 	}
 	
+	/**
+	 * @return true if the many-to-many search trees should be kept in flat primitive arrays instead of one object per
+	 * node and source
+	 */
+	public static boolean getFlatStorage() {
+		return flatStorage;
+	}
+
+	/**
+	 * @return number of threads used to compute batches of sources in parallel, 1 disables the parallel mode
+	 */
+	public static int getParallelThreads() {
+		return parallelThreads;
+	}
+
+	public static int getParallelBatchSize() {
+		return parallelBatchSize;
+	}
+
+	/**
+	 * @return maximum number of sources and destinations for which the bucket-based CH algorithm is used, 0 disables it
+	 */
+	public static int getBucketMaximumLocations() {
+		return bucketMaximumLocations;
+	}
+
+	/**
+	 * @return the size in megabytes up to which released search storages are kept for reuse
+	 */
+	public static int getStoragePoolSize() {
+		return storagePoolSize;
+	}
+
 	public static String getAttribution() {
 		return attribution;
 	}
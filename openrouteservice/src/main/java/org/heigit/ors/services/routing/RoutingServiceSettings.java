@@ -27,6 +27,8 @@ public class RoutingServiceSettings {
 	private static String workingMode = "Normal"; // Normal or PrepareGraphs
 	private static int initializationThreads = 1;
 	private static boolean distanceApproximation = false;
+	private static boolean batchedViaRoutes = true;
+	private static boolean sharedOsmImport = true;
 	private static String storageFormat = "Native";
 	private static String attribution = "";
 	private static String routingName = "openrouteservice directions";
@@ -61,6 +63,14 @@ public class RoutingServiceSettings {
 		if (value != null)
 			distanceApproximation = Boolean.parseBoolean(value);
 		
+		value = config.getServiceParameter(SERVICE_NAME_ROUTING, "batched_via_routes");
+		if (value != null)
+			batchedViaRoutes = Boolean.parseBoolean(value);
+
+		value = config.getServiceParameter(SERVICE_NAME_ROUTING, "shared_osm_import");
+		if (value != null)
+			sharedOsmImport = Boolean.parseBoolean(value);
+
 		value = config.getServiceParameter(SERVICE_NAME_ROUTING, "storage_format");
 		if (value != null)
 			storageFormat = value;
@@ -94,6 +104,14 @@ public class RoutingServiceSettings {
 		return distanceApproximation;
 	}
 	
+	public static boolean getBatchedViaRoutes()	{
+		return batchedViaRoutes;
+	}
+
+	public static boolean getSharedOsmImport()	{
+		return sharedOsmImport;
+	}
+
 	public static String getStorageFormat()	{
 		return storageFormat;
 	}
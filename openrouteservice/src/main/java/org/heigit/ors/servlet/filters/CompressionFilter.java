@@ -24,29 +24,47 @@ import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.apache.log4j.Logger;
+import org.meteogroup.jbrotli.libloader.BrotliLibraryLoader;
+
 public class CompressionFilter implements Filter {
+	private static final Logger LOGGER = Logger.getLogger(CompressionFilter.class.getName());
+	private static final String PARAM_MIN_SIZE = "min_compress_size";
+	private static final String PARAM_BROTLI = "brotli";
+
+	private int minSize = 0;
+	private boolean brotliEnabled = false;
+
 	public void doFilter(ServletRequest req, ServletResponse res, FilterChain chain) throws IOException, ServletException {
 		if (req instanceof HttpServletRequest) {
 			HttpServletRequest request = (HttpServletRequest) req;
 			HttpServletResponse response = (HttpServletResponse) res;
-			String acceptEncoding = request.getHeader("accept-encoding");
-			
-			if (acceptEncoding != null) {
-				if(acceptEncoding.indexOf(ContentEncodingType.GZIP) != -1) {
-					GZIPResponseWrapper wrappedResponse = new GZIPResponseWrapper(response);
-					chain.doFilter(req, wrappedResponse);
-					wrappedResponse.finishResponse();
-					return;
-				} else if (acceptEncoding.indexOf(ContentEncodingType.DEFLATE) != -1) {
-                   // not implemented
-				}
+			String encoding = ContentEncodingType.select(request.getHeader("accept-encoding"), brotliEnabled);
+
+			if (encoding != null) {
+				CompressionResponseWrapper wrappedResponse = new CompressionResponseWrapper(response, encoding, minSize);
+				chain.doFilter(req, wrappedResponse);
+				wrappedResponse.finishResponse();
+				return;
 			}
 			chain.doFilter(req, res);
 		}
 	}
 
 	public void init(FilterConfig filterConfig) {
-		// nothing to do
+		String value = filterConfig.getInitParameter(PARAM_MIN_SIZE);
+		if (value != null)
+			minSize = Integer.parseInt(value.trim());
+
+		value = filterConfig.getInitParameter(PARAM_BROTLI);
+		if (value != null && Boolean.parseBoolean(value.trim())) {
+			try {
+				BrotliLibraryLoader.loadBrotli();
+				brotliEnabled = true;
+			} catch (Exception | UnsatisfiedLinkError e) {
+				LOGGER.warn("Brotli native library could not be loaded, responses are not compressed with brotli: " + e.getMessage());
+			}
+		}
 	}
 
 	public void destroy() {
@@ -0,0 +1,178 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the 
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1 
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library; 
+ *  if not, see <https://www.gnu.org/licenses/>.  
+ */
+package org.heigit.ors.servlet.filters;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.log4j.Logger;
+import org.meteogroup.jbrotli.Brotli;
+import org.meteogroup.jbrotli.io.BrotliOutputStream;
+
+/**
+ * Output stream which compresses the response while it is written. The first bytes are held back until the minimum
+ * size for compression is reached; smaller responses are sent uncompressed with their content length. Compressed
+ * responses are sent without a content length, so that the container streams them with chunked transfer encoding.
+ * If the underlying response has already been committed when the compression would start, the headers can not be
+ * changed anymore and the data is passed through uncompressed.
+ */
+class CompressionResponseStream extends ServletOutputStream {
+	private static final Logger LOGGER = Logger.getLogger(CompressionResponseStream.class.getName());
+	private static final int BUFFER_SIZE = 8192;
+	private static final int BROTLI_QUALITY = 5;
+	private static final int BROTLI_LGWIN = 22;
+
+	private final HttpServletResponse servletResponse;
+	private final ServletOutputStream servletOutputStream;
+	private final String encoding;
+	private final byte[] pending;
+	private int pendingSize = 0;
+	private OutputStream compressedStream = null;
+	private Deflater deflater = null;
+	private boolean closed = false;
+
+	public CompressionResponseStream(HttpServletResponse response, String encoding, int minSize) throws IOException {
+		super();
+
+		this.servletResponse = response;
+		this.servletOutputStream = response.getOutputStream();
+		this.encoding = encoding;
+		this.pending = new byte[Math.max(minSize, 0)];
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed)
+			throw new IOException("This output stream has already been closed");
+
+		if (compressedStream != null) {
+			try {
+				compressedStream.close();
+			} finally {
+				// the deflater has been created by this stream, so its native memory is not released by closing it
+				if (deflater != null)
+					deflater.end();
+			}
+		} else {
+			// the response is too small to be worth compressing
+			if (!servletResponse.isCommitted())
+				servletResponse.setContentLength(pendingSize);
+			else
+				LOGGER.debug("Response has already been committed, it is sent without a content length");
+			servletOutputStream.write(pending, 0, pendingSize);
+			servletOutputStream.close();
+		}
+		closed = true;
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	@Override
+	public void flush() throws IOException {
+		if (closed)
+			throw new IOException("Cannot flush a closed output stream");
+
+		// before the minimum size is reached the data is held back to be able to decide on the encoding
+		if (compressedStream != null)
+			compressedStream.flush();
+	}
+
+	public void write(int b) throws IOException {
+		if (closed)
+			throw new IOException("Cannot write to a closed output stream");
+
+		if (compressedStream == null && pendingSize < pending.length) {
+			pending[pendingSize++] = (byte) b;
+			return;
+		}
+
+		startCompression().write(b);
+	}
+
+	@Override
+	public void write(byte[] b) throws IOException {
+		write(b, 0, b.length);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (closed)
+			throw new IOException("Cannot write to a closed output stream");
+
+		if (compressedStream == null && pendingSize + len <= pending.length) {
+			System.arraycopy(b, off, pending, pendingSize, len);
+			pendingSize += len;
+			return;
+		}
+
+		startCompression().write(b, off, len);
+	}
+
+	private OutputStream startCompression() throws IOException {
+		if (compressedStream == null) {
+			if (servletResponse.isCommitted()) {
+				// without the Content-Encoding header the client could not decode the data
+				LOGGER.warn("Response has already been committed, it is sent uncompressed");
+				compressedStream = servletOutputStream;
+				compressedStream.write(pending, 0, pendingSize);
+				pendingSize = 0;
+				return compressedStream;
+			}
+
+			servletResponse.addHeader("Content-Encoding", encoding);
+			servletResponse.addHeader("Vary", "Accept-Encoding");
+
+			switch (encoding) {
+				case ContentEncodingType.BROTLI:
+					compressedStream = new BrotliOutputStream(servletOutputStream,
+							new Brotli.Parameter(Brotli.Mode.TEXT, BROTLI_QUALITY, BROTLI_LGWIN, 0));
+					break;
+				case ContentEncodingType.DEFLATE:
+					deflater = new Deflater();
+					compressedStream = new DeflaterOutputStream(servletOutputStream, deflater, BUFFER_SIZE, true);
+					break;
+				default:
+					compressedStream = new GZIPOutputStream(servletOutputStream, BUFFER_SIZE, true);
+					break;
+			}
+
+			compressedStream.write(pending, 0, pendingSize);
+			pendingSize = 0;
+		}
+		return compressedStream;
+	}
+
+	public void reset() {
+		// nothing to do
+	}
+
+	@Override
+	public boolean isReady() {
+		return servletOutputStream.isReady();
+	}
+
+	@Override
+	public void setWriteListener(WriteListener listener) {
+		servletOutputStream.setWriteListener(listener);
+	}
+}
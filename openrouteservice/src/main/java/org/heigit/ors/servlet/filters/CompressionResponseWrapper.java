@@ -22,20 +22,23 @@ import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpServletResponseWrapper;
 
-class GZIPResponseWrapper extends HttpServletResponseWrapper {
+class CompressionResponseWrapper extends HttpServletResponseWrapper {
 	protected HttpServletResponse origResponse;
-	protected GZIPResponseStream responseStream = null;
+	protected CompressionResponseStream responseStream = null;
 	protected PrintWriter writer = null;
+	private final String encoding;
+	private final int minSize;
 
-	public GZIPResponseWrapper(HttpServletResponse response) {
+	public CompressionResponseWrapper(HttpServletResponse response, String encoding, int minSize) {
 		super(response);
 		origResponse = response;
+		this.encoding = encoding;
+		this.minSize = minSize;
 	}
 
-	public GZIPResponseStream createOutputStream() throws IOException {
-		return new GZIPResponseStream(origResponse);
+	public CompressionResponseStream createOutputStream() throws IOException {
+		return new CompressionResponseStream(origResponse, encoding, minSize);
 	}
-
 	public void finishResponse() {
 		try {
 			if (writer != null)
@@ -79,4 +82,9 @@ class GZIPResponseWrapper extends HttpServletResponseWrapper {
 	public void setContentLength(int length) {
 		// nothing to do
 	}
+
+	@Override
+	public void setContentLengthLong(long length) {
+		// nothing to do
+	}
 }
@@ -13,10 +13,69 @@
  */
 package org.heigit.ors.servlet.filters;
 
+import java.util.Arrays;
+
 public final class ContentEncodingType {
 	public static final String BROTLI = "br";
 	public static final String GZIP = "gzip";
 	public static final String DEFLATE = "deflate";
 
+	// supported encodings in the order of preference for equal quality values
+	private static final String[] SUPPORTED = { BROTLI, GZIP, DEFLATE };
+
 	private  ContentEncodingType() {}
+
+	/**
+	 * Select the encoding to use for a response from the value of an Accept-Encoding header. Encodings with the
+	 * highest quality value are preferred, ties are resolved in the order brotli, gzip, deflate.
+	 *
+	 * @param acceptEncoding    The value of the Accept-Encoding header, may be null
+	 * @param allowBrotli       Whether brotli can be used
+	 * @return                  One of the encoding constants or null if the response should not be compressed
+	 */
+	public static String select(String acceptEncoding, boolean allowBrotli) {
+		if (acceptEncoding == null || acceptEncoding.isEmpty())
+			return null;
+
+		double[] qualities = new double[SUPPORTED.length];
+		Arrays.fill(qualities, -1);
+		double wildcard = -1;
+
+		for (String token : acceptEncoding.split(",")) {
+			String[] parts = token.split(";");
+			String name = parts[0].trim().toLowerCase();
+			double q = 1;
+			for (int i = 1; i < parts.length; i++) {
+				String param = parts[i].trim();
+				if (param.startsWith("q=")) {
+					try {
+						q = Double.parseDouble(param.substring(2).trim());
+					} catch (NumberFormatException e) {
+						q = 0;
+					}
+				}
+			}
+
+			if ("*".equals(name))
+				wildcard = q;
+			for (int i = 0; i < SUPPORTED.length; i++) {
+				if (SUPPORTED[i].equals(name))
+					qualities[i] = q;
+			}
+		}
+
+		String result = null;
+		double bestQuality = 0;
+		for (int i = 0; i < SUPPORTED.length; i++) {
+			if (!allowBrotli && SUPPORTED[i].equals(BROTLI))
+				continue;
+			double q = qualities[i] < 0 ? wildcard : qualities[i];
+			if (q > bestQuality) {
+				bestQuality = q;
+				result = SUPPORTED[i];
+			}
+		}
+
+		return result;
+	}
 }
@@ -33,8 +33,15 @@ import org.opengis.referencing.operation.TransformException;
 public class GeomUtility {
 
 	private static GeometryFactory geometryFactory = new GeometryFactory();
-	
-	private static MathTransform transformWgs84Sphericalmercator = null;// CRS.findMathTransform(DefaultGeographicCRS.WGS84,
+
+	// WGS84 semi-major axis, which GeoTools uses as the radius of the Mollweide projection
+	private static final double EARTH_RADIUS = 6378137.0;
+
+	private static final String MOLLWEIDE_WKT = "PROJCS[\"World_Mollweide\",GEOGCS[\"GCS_WGS_1984\",DATUM[\"WGS_1984\",SPHEROID[\"WGS_1984\",6378137,298.257223563]],PRIMEM[\"Greenwich\",0],UNIT[\"Degree\",0.017453292519943295]],PROJECTION[\"Mollweide\"],PARAMETER[\"False_Easting\",0],PARAMETER[\"False_Northing\",0],PARAMETER[\"Central_Meridian\",0],UNIT[\"Meter\",1],AUTHORITY[\"EPSG\",\"54009\"]]";
+	private static final String PSEUDO_MERCATOR_WKT = "PROJCS[\"WGS 84 / Pseudo-Mercator\",GEOGCS[\"WGS 84\",DATUM[\"WGS_1984\",SPHEROID[\"WGS 84\",6378137,298.257223563,AUTHORITY[\"EPSG\",\"7030\"]],AUTHORITY[\"EPSG\",\"6326\"]],PRIMEM[\"Greenwich\",0,AUTHORITY[\"EPSG\",\"8901\"]],UNIT[\"degree\",0.0174532925199433,AUTHORITY[\"EPSG\",\"9122\"]],AUTHORITY[\"EPSG\",\"4326\"]],PROJECTION[\"Mercator_1SP\"],PARAMETER[\"central_meridian\",0],PARAMETER[\"scale_factor\",1],PARAMETER[\"false_easting\",0],PARAMETER[\"false_northing\",0],UNIT[\"metre\",1,AUTHORITY[\"EPSG\",\"9001\"]],AXIS[\"X\",EAST],AXIS[\"Y\",NORTH],AUTHORITY[\"EPSG\",\"3857\"]]";
+
+	private static volatile MathTransform transformWgs84Mollweide = null;
+	private static volatile MathTransform transformWgs84Sphericalmercator = null;
 
 	private GeomUtility() {}
 
@@ -143,30 +150,9 @@ public class GeomUtility {
 		try {
 			if (inMeters) {
 				if (geom instanceof Polygon) {
-
-					// https://gis.stackexchange.com/questions/265481/geotools-unexpected-result-reprojecting-bounding-box-to-epsg3035
-					System.setProperty("org.geotools.referencing.forceXY", "true");
-
-					Polygon poly = (Polygon) geom;
-
-					CoordinateReferenceSystem sourceCRS = CRS.decode("EPSG:4326");
-
-					String mollweideProj = "PROJCS[\"World_Mollweide\",GEOGCS[\"GCS_WGS_1984\",DATUM[\"WGS_1984\",SPHEROID[\"WGS_1984\",6378137,298.257223563]],PRIMEM[\"Greenwich\",0],UNIT[\"Degree\",0.017453292519943295]],PROJECTION[\"Mollweide\"],PARAMETER[\"False_Easting\",0],PARAMETER[\"False_Northing\",0],PARAMETER[\"Central_Meridian\",0],UNIT[\"Meter\",1],AUTHORITY[\"EPSG\",\"54009\"]]";
-
-					CoordinateReferenceSystem targetCRS = CRS.parseWKT(mollweideProj);
-
-					MathTransform transform = CRS.findMathTransform(sourceCRS, targetCRS);
-					Geometry targetGeometry = JTS.transform(poly, transform);
-
-					return targetGeometry.getArea();
+					return getSphericalArea((Polygon) geom);
 				} else {
-					if (transformWgs84Sphericalmercator == null) {
-						String wkt = "PROJCS[\"WGS 84 / Pseudo-Mercator\",GEOGCS[\"WGS 84\",DATUM[\"WGS_1984\",SPHEROID[\"WGS 84\",6378137,298.257223563,AUTHORITY[\"EPSG\",\"7030\"]],AUTHORITY[\"EPSG\",\"6326\"]],PRIMEM[\"Greenwich\",0,AUTHORITY[\"EPSG\",\"8901\"]],UNIT[\"degree\",0.0174532925199433,AUTHORITY[\"EPSG\",\"9122\"]],AUTHORITY[\"EPSG\",\"4326\"]],PROJECTION[\"Mercator_1SP\"],PARAMETER[\"central_meridian\",0],PARAMETER[\"scale_factor\",1],PARAMETER[\"false_easting\",0],PARAMETER[\"false_northing\",0],UNIT[\"metre\",1,AUTHORITY[\"EPSG\",\"9001\"]],AXIS[\"X\",EAST],AXIS[\"Y\",NORTH],AUTHORITY[\"EPSG\",\"3857\"]]";
-						CoordinateReferenceSystem crs = CRS.parseWKT(wkt);//  CRS.decode("EPSG:3857")
-						transformWgs84Sphericalmercator = CRS.findMathTransform(DefaultGeographicCRS.WGS84, crs, true);
-					}
-
-					Geometry transformedGeometry = JTS.transform(geom, transformWgs84Sphericalmercator);
+					Geometry transformedGeometry = JTS.transform(geom, getTransformWgs84Sphericalmercator());
 					return transformedGeometry.getArea();
 				}
 			} else {
@@ -183,21 +169,68 @@ public class GeomUtility {
 		}
     }
 
-	public static double calculateMaxExtent(Geometry geom) throws InternalServerException {
-		try {
-			// https://gis.stackexchange.com/questions/265481/geotools-unexpected-result-reprojecting-bounding-box-to-epsg3035
-			System.setProperty("org.geotools.referencing.forceXY", "true");
+	/**
+	 * Calculates the area of a polygon given in WGS84 coordinates on a sphere with the radius of the WGS84 semi-major
+	 * axis. This is the area the polygon has in the (equal-area) Mollweide projection, but it is computed directly from
+	 * the coordinates without projecting or copying them.
+	 *
+	 * @param poly polygon with longitude as x and latitude as y
+	 * @return the area in square metres
+	 */
+	public static double getSphericalArea(Polygon poly) {
+		double area = Math.abs(getSphericalArea(poly.getExteriorRing().getCoordinateSequence()));
+		for (int i = 0; i < poly.getNumInteriorRing(); i++)
+			area -= Math.abs(getSphericalArea(poly.getInteriorRingN(i).getCoordinateSequence()));
+		return Math.max(area, 0.0);
+	}
 
-			Polygon poly = (Polygon) geom;
+	/**
+	 * Signed area of a ring by the shoelace formula in the cylindrical equal-area projection (x = longitude, y = sine of
+	 * latitude). Coordinates are taken relative to the first point to keep the precision for small rings; longitude
+	 * differences are wrapped so that rings crossing the antimeridian are handled as well.
+	 */
+	private static double getSphericalArea(CoordinateSequence ring) {
+		int size = ring.size();
+		if (size < 3)
+			return 0.0;
 
-			CoordinateReferenceSystem sourceCRS = CRS.decode("EPSG:4326");
+		double lon0 = Math.toRadians(ring.getX(0));
+		double sinLat0 = Math.sin(Math.toRadians(ring.getY(0)));
+		double prevX = 0.0;
+		double prevY = 0.0;
+		double prevLon = lon0;
+		double sum = 0.0;
+		for (int i = 1; i < size; i++) {
+			double lon = Math.toRadians(ring.getX(i));
+			double deltaLon = lon - prevLon;
+			if (deltaLon > Math.PI)
+				deltaLon -= 2 * Math.PI;
+			else if (deltaLon < -Math.PI)
+				deltaLon += 2 * Math.PI;
+			double x = prevX + deltaLon;
+			double y = Math.sin(Math.toRadians(ring.getY(i))) - sinLat0;
+			sum += prevX * y - x * prevY;
+			prevX = x;
+			prevY = y;
+			prevLon = lon;
+		}
+		// rings are closed, the last point equals the first one which lies at the origin
 
-			String mollweideProj = "PROJCS[\"World_Mollweide\",GEOGCS[\"GCS_WGS_1984\",DATUM[\"WGS_1984\",SPHEROID[\"WGS_1984\",6378137,298.257223563]],PRIMEM[\"Greenwich\",0],UNIT[\"Degree\",0.017453292519943295]],PROJECTION[\"Mollweide\"],PARAMETER[\"False_Easting\",0],PARAMETER[\"False_Northing\",0],PARAMETER[\"Central_Meridian\",0],UNIT[\"Meter\",1],AUTHORITY[\"EPSG\",\"54009\"]]";
+		return sum * 0.5 * EARTH_RADIUS * EARTH_RADIUS;
+	}
+
+	/**
+	 * Calculates the area of a geometry given in WGS84 coordinates after projecting it to Mollweide by GeoTools.
+	 */
+	static double getProjectedArea(Geometry geom) throws FactoryException, TransformException {
+		return JTS.transform(geom, getTransformWgs84Mollweide()).getArea();
+	}
 
-			CoordinateReferenceSystem targetCRS = CRS.parseWKT(mollweideProj);
+	public static double calculateMaxExtent(Geometry geom) throws InternalServerException {
+		try {
+			Polygon poly = (Polygon) geom;
 
-			MathTransform transform = CRS.findMathTransform(sourceCRS, targetCRS);
-			Geometry targetGeometry = JTS.transform(poly, transform);
+			Geometry targetGeometry = JTS.transform(poly, getTransformWgs84Mollweide());
 
 			Envelope envelope = targetGeometry.getEnvelopeInternal();
 			return Math.max(envelope.getHeight(), envelope.getWidth());
@@ -211,4 +244,41 @@ public class GeomUtility {
 			throw new InternalServerException("Could not transform features (getting area of feature)");
 		}
 	}
+
+	/**
+	 * The transformations are created once and shared, GeoTools math transforms are immutable and thread-safe.
+	 */
+	private static MathTransform getTransformWgs84Mollweide() throws FactoryException {
+		MathTransform transform = transformWgs84Mollweide;
+		if (transform == null) {
+			synchronized (GeomUtility.class) {
+				transform = transformWgs84Mollweide;
+				if (transform == null) {
+					// https://gis.stackexchange.com/questions/265481/geotools-unexpected-result-reprojecting-bounding-box-to-epsg3035
+					System.setProperty("org.geotools.referencing.forceXY", "true");
+
+					CoordinateReferenceSystem sourceCRS = CRS.decode("EPSG:4326");
+					CoordinateReferenceSystem targetCRS = CRS.parseWKT(MOLLWEIDE_WKT);
+					transform = CRS.findMathTransform(sourceCRS, targetCRS);
+					transformWgs84Mollweide = transform;
+				}
+			}
+		}
+		return transform;
+	}
+
+	private static MathTransform getTransformWgs84Sphericalmercator() throws FactoryException {
+		MathTransform transform = transformWgs84Sphericalmercator;
+		if (transform == null) {
+			synchronized (GeomUtility.class) {
+				transform = transformWgs84Sphericalmercator;
+				if (transform == null) {
+					CoordinateReferenceSystem crs = CRS.parseWKT(PSEUDO_MERCATOR_WKT);//  CRS.decode("EPSG:3857")
+					transform = CRS.findMathTransform(DefaultGeographicCRS.WGS84, crs, true);
+					transformWgs84Sphericalmercator = transform;
+				}
+			}
+		}
+		return transform;
+	}
 }
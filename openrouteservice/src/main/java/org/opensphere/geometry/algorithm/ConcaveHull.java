@@ -24,19 +24,18 @@
  */
 package org.opensphere.geometry.algorithm;
 
-import java.util.*;
-import java.util.Map.Entry;
-
-import org.opensphere.geometry.triangulation.DoubleComparator;
-import org.opensphere.geometry.triangulation.model.Edge;
-import org.opensphere.geometry.triangulation.model.Triangle;
-import org.opensphere.geometry.triangulation.model.Vertex;
-
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.carrotsearch.hppc.sorting.IndirectSort;
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryCollection;
 import com.vividsolutions.jts.geom.GeometryFactory;
-import com.vividsolutions.jts.geom.LineSegment;
 import com.vividsolutions.jts.geom.LineString;
 import com.vividsolutions.jts.geom.LinearRing;
 import com.vividsolutions.jts.geom.Point;
@@ -46,7 +45,7 @@ import com.vividsolutions.jts.operation.linemerge.LineMerger;
 import com.vividsolutions.jts.triangulate.ConformingDelaunayTriangulationBuilder;
 import com.vividsolutions.jts.triangulate.quadedge.QuadEdge;
 import com.vividsolutions.jts.triangulate.quadedge.QuadEdgeSubdivision;
-import com.vividsolutions.jts.triangulate.quadedge.QuadEdgeTriangle;
+import com.vividsolutions.jts.triangulate.quadedge.Vertex;
 import com.vividsolutions.jts.util.UniqueCoordinateArrayFilter;
 
 /**
@@ -61,21 +60,37 @@ import com.vividsolutions.jts.util.UniqueCoordinateArrayFilter;
  * "Efficient generation of simple polygons for characterizing the shape of a
  * set of points in the plane".
  *
+ * <p>
+ * The triangulation is kept in flat arrays indexed by edge, triangle and
+ * vertex ids, and the border edges to erode are taken from a min-heap of the
+ * edge ranks by decreasing length.
+ *
  * @author Eric Grosso
  *
  */
 public class ConcaveHull {
 
+    private static final int NONE = 0;
+    private static final int LONG_BORDER = 1;
+    private static final int SHORT_BORDER = 2;
+
     private GeometryFactory geomFactory;
     private GeometryCollection geometries;
+    private QuadEdgeSubdivision subdivision;
     private double threshold;
-    private Map<LineSegment, Integer> segments = new HashMap<>();
-    private Map<Integer, Edge> edges = new HashMap<>();
-    private Map<Integer, Triangle> triangles = new HashMap<>();
-    private NavigableMap<Integer, Edge> lengths = new TreeMap<>();
-    private Map<Integer, Edge> shortLengths = new HashMap<>();
-    private Map<Coordinate, Integer> coordinates = new HashMap<>();
-    private Map<Integer, Vertex> vertices = new HashMap<>();
+
+    // edges: end vertices, length, rank by decreasing length, the (up to two) adjacent triangles and the border state
+    private int[] edgeVertices;
+    private double[] edgeLengths;
+    private int[] edgeRanks;
+    private int[] edgesByRank;
+    private int[] edgeTriangles;
+    private boolean[] edgeBorder;
+    private int[] edgeState;
+    // triangles: their three edges
+    private int[] triangleEdges;
+    private boolean[] vertexBorder;
+    private Coordinate[] vertexCoordinates;
 
     /**
      * Create a new concave hull construction for the input {@link Geometry}.
@@ -103,6 +118,22 @@ public class ConcaveHull {
         this.geomFactory = geometries.getFactory();
     }
 
+    /**
+     * Create a new concave hull construction for the sites of an existing
+     * Delaunay triangulation, e.g. one to which sites are inserted
+     * incrementally. The triangulation is not modified, apart from the data of
+     * its quad edges, and must contain at least three sites.
+     *
+     * @param subdivision
+     * @param geomFactory
+     * @param threshold
+     */
+    public ConcaveHull(QuadEdgeSubdivision subdivision, GeometryFactory geomFactory, double threshold) {
+        this.subdivision = subdivision;
+        this.threshold = threshold;
+        this.geomFactory = geomFactory;
+    }
+
     /**
      * Transform into GeometryCollection.
      *
@@ -156,6 +187,9 @@ public class ConcaveHull {
      */
     public Geometry getConcaveHull() {
 
+        if (this.subdivision != null) {
+            return concaveHull();
+        }
         if (this.geometries.getNumGeometries() == 0) {
             return this.geomFactory.createGeometryCollection(null);
         }
@@ -176,280 +210,244 @@ public class ConcaveHull {
      */
     private Geometry concaveHull() {
 
-        // triangulation: create a DelaunayTriangulationBuilder object	
-        ConformingDelaunayTriangulationBuilder cdtb = new ConformingDelaunayTriangulationBuilder();
-
-        // add geometry collection
-        cdtb.setSites(this.geometries);
+        QuadEdgeSubdivision qes = this.subdivision;
+        if (qes == null) {
+            // triangulation: create a DelaunayTriangulationBuilder object
+            ConformingDelaunayTriangulationBuilder cdtb = new ConformingDelaunayTriangulationBuilder();
 
-        QuadEdgeSubdivision qes = cdtb.getSubdivision();
+            // add geometry collection
+            cdtb.setSites(this.geometries);
 
-        Collection<QuadEdge> quadEdges = qes.getEdges();
-        List<QuadEdgeTriangle> qeTriangles = QuadEdgeTriangle.createOn(qes);
-        Collection<com.vividsolutions.jts.triangulate.quadedge.Vertex> qeVertices =
-                qes.getVertices(false);
-
-        int iV = 0;
-        for (com.vividsolutions.jts.triangulate.quadedge.Vertex v : qeVertices) {
-            this.coordinates.put(v.getCoordinate(), iV);
-            this.vertices.put(iV, new Vertex(iV, v.getCoordinate()));
-            iV++;
+            qes = cdtb.getSubdivision();
         }
 
-        // border
-        List<QuadEdge> qeFrameBorder = new ArrayList<>();
-        List<QuadEdge> qeFrame = new ArrayList<>();
-        List<QuadEdge> qeBorder = new ArrayList<>();
+        @SuppressWarnings("unchecked")
+        Collection<Vertex> qeVertices = qes.getVertices(false);
+        Map<Vertex, Integer> vertexIds = new IdentityHashMap<>(qeVertices.size());
+        this.vertexCoordinates = new Coordinate[qeVertices.size()];
+        for (Vertex v : qeVertices) {
+            this.vertexCoordinates[vertexIds.size()] = v.getCoordinate();
+            vertexIds.put(v, vertexIds.size());
+        }
+        this.vertexBorder = new boolean[qeVertices.size()];
+
+        createEdges(qes, vertexIds);
+        createTriangles(qes);
+
+        // border edges to erode, the longest first
+        IntMinHeap lengths = new IntMinHeap(this.edgeState.length);
+        for (int e = 0; e < this.edgeState.length; e++) {
+            if (this.edgeBorder[e]) {
+                setBorder(e);
+                if (this.edgeLengths[e] < this.threshold) {
+                    this.edgeState[e] = SHORT_BORDER;
+                } else {
+                    this.edgeState[e] = LONG_BORDER;
+                    lengths.push(this.edgeRanks[e]);
+                }
+            }
+        }
 
-        for (QuadEdge qe : quadEdges) {
-            if (qes.isFrameBorderEdge(qe)) {
-                qeFrameBorder.add(qe);
+        // concave hull algorithm
+        while (!lengths.isEmpty()) {
+            int e = this.edgesByRank[lengths.peek()];
+            if (this.edgeLengths[e] <= this.threshold)
+                break;
+
+            int triangle = this.edgeTriangles[2 * e] != -1 ? this.edgeTriangles[2 * e] : this.edgeTriangles[2 * e + 1];
+            // irregular triangle test and test if all the vertices are on the border
+            if (triangle == -1 || countNeighbours(triangle) == 1 || isBorderTriangle(triangle)) {
+                lengths.pop();
+                this.edgeState[e] = SHORT_BORDER;
+                continue;
             }
-            if (qes.isFrameEdge(qe)) {
-                qeFrame.add(qe);
+
+            // the triangle has a single border edge, which is removed, and its other two edges become border edges
+            lengths.pop();
+            this.edgeState[e] = NONE;
+            for (int k = 0; k < 3; k++) {
+                int edge = this.triangleEdges[3 * triangle + k];
+                if (edge == e)
+                    continue;
+                this.edgeBorder[edge] = true;
+                setBorder(edge);
+                removeTriangle(edge, triangle);
+                if (this.edgeLengths[edge] < this.threshold) {
+                    this.edgeState[edge] = SHORT_BORDER;
+                } else {
+                    this.edgeState[edge] = LONG_BORDER;
+                    lengths.push(this.edgeRanks[edge]);
+                }
             }
         }
 
-        // border
-        for (int j = 0; j < qeFrameBorder.size(); j++) {
-            QuadEdge q = qeFrameBorder.get(j);
-            if (!qeFrame.contains(q)) {
-                qeBorder.add(q);
+        // concave hull creation
+        List<LineString> tmpEdges = new ArrayList<>();
+        for (int e = 0; e < this.edgeState.length; e++) {
+            if (this.edgeState[e] != NONE) {
+                Coordinate p0 = this.vertexCoordinates[this.edgeVertices[2 * e]];
+                Coordinate p1 = this.vertexCoordinates[this.edgeVertices[2 * e + 1]];
+                // same orientation as a normalized line segment
+                if (p1.compareTo(p0) < 0) {
+                    Coordinate tmp = p0;
+                    p0 = p1;
+                    p1 = tmp;
+                }
+                tmpEdges.add(this.geomFactory.createLineString(new Coordinate[]{p0, p1}));
             }
         }
 
-        // deletion of exterior edges
-        for (QuadEdge qe : qeFrame) {
-            qes.delete(qe);
-        }
+        // merge
+        LineMerger lineMerger = new LineMerger();
+        lineMerger.add(tmpEdges);
+        LineString merge = (LineString) lineMerger.getMergedLineStrings().iterator().next();
 
-        HashMap<QuadEdge, Double> qeDistances = new HashMap<>(quadEdges.size()); //  Modification by Maxim Rylov: Make use of a constructor with capacity parameter
-        for (QuadEdge qe : quadEdges) {
-            qeDistances.put(qe, qe.toLineSegment().getLength());
+        if (merge.isRing()) {
+            LinearRing lr = new LinearRing(merge.getCoordinateSequence(), this.geomFactory);
+            return new Polygon(lr, null, this.geomFactory);
         }
 
-        DoubleComparator dc = new DoubleComparator(qeDistances);
-        TreeMap<QuadEdge, Double> qeSorted = new TreeMap<>(dc);
-        qeSorted.putAll(qeDistances);
-
-        // edges creation
-        int i = 0;
-        for (QuadEdge qe : qeSorted.keySet()) {
-            LineSegment s = qe.toLineSegment();
-            s.normalize();
-
-            Integer idS = this.coordinates.get(s.p0);
-            Integer idD = this.coordinates.get(s.p1);
-            Vertex oV = this.vertices.get(idS);
-            Vertex eV = this.vertices.get(idD);
-
-            Edge edge;
-            if (qeBorder.contains(qe)) {
-                oV.setBorder(true);
-                eV.setBorder(true);
-                edge = new Edge(i, s, oV, eV, true);
-                if (s.getLength() < this.threshold) {
-                    this.shortLengths.put(i, edge);
-                } else {
-                    this.lengths.put(i, edge);
-                }
-            } else {
-                edge = new Edge(i, s, oV, eV, false);
-            }
-            this.edges.put(i, edge);
-            this.segments.put(s, i);
-            i++;
-        }
+        return merge;
+    }
+
+    /**
+     * Creates the edges of the triangulation without the frame, ranked by decreasing length. The id of an edge is
+     * stored as data of its quad edges.
+     */
+    private void createEdges(QuadEdgeSubdivision qes, Map<Vertex, Integer> vertexIds) {
+        @SuppressWarnings("unchecked")
+        Collection<QuadEdge> quadEdges = qes.getEdges();
+        int capacity = quadEdges.size();
+        this.edgeVertices = new int[2 * capacity];
+        this.edgeLengths = new double[capacity];
+        this.edgeBorder = new boolean[capacity];
 
-        // hm of linesegment and hm of edges // with id as key
-        // hm of triangles using hm of ls and connection with hm of edges
-
-        i = 0;
-        for (QuadEdgeTriangle qet : qeTriangles) {
-            LineSegment sA = qet.getEdge(0).toLineSegment();
-            LineSegment sB = qet.getEdge(1).toLineSegment();
-            LineSegment sC = qet.getEdge(2).toLineSegment();
-            sA.normalize();
-            sB.normalize();
-            sC.normalize();
-
-            Edge edgeA = this.edges.get(this.segments.get(sA));
-            Edge edgeB = this.edges.get(this.segments.get(sB));
-            Edge edgeC = this.edges.get(this.segments.get(sC));
-
-            Triangle triangle = new Triangle(i, qet.isBorder());
-            triangle.addEdge(edgeA);
-            triangle.addEdge(edgeB);
-            triangle.addEdge(edgeC);
-
-            edgeA.addTriangle(triangle);
-            edgeB.addTriangle(triangle);
-            edgeC.addTriangle(triangle);
-
-            this.triangles.put(i, triangle);
-            i++;
+        int nEdges = 0;
+        for (QuadEdge qe : quadEdges) {
+            if (qes.isFrameEdge(qe))
+                continue;
+            this.edgeVertices[2 * nEdges] = vertexIds.get(qe.orig());
+            this.edgeVertices[2 * nEdges + 1] = vertexIds.get(qe.dest());
+            this.edgeLengths[nEdges] = qe.orig().getCoordinate().distance(qe.dest().getCoordinate());
+            this.edgeBorder[nEdges] = qes.isFrameBorderEdge(qe);
+            qe.setData(nEdges);
+            qe.sym().setData(nEdges);
+            nEdges++;
         }
+        this.edgeVertices = Arrays.copyOf(this.edgeVertices, 2 * nEdges);
+        this.edgeLengths = Arrays.copyOf(this.edgeLengths, nEdges);
+        this.edgeBorder = Arrays.copyOf(this.edgeBorder, nEdges);
+        this.edgeState = new int[nEdges];
+
+        final double[] lengths = this.edgeLengths;
+        this.edgesByRank = IndirectSort.mergesort(0, nEdges, (a, b) -> Double.compare(lengths[b], lengths[a]));
+        this.edgeRanks = new int[nEdges];
+        for (int rank = 0; rank < nEdges; rank++)
+            this.edgeRanks[this.edgesByRank[rank]] = rank;
+    }
 
-        // add triangle neighbourood
-        for (Edge edge : this.edges.values()) {
-            if (edge.getTriangles().size() != 1) {
-                Triangle tA = edge.getTriangles().get(0);
-                Triangle tB = edge.getTriangles().get(1);
-                tA.addNeighbour(tB);
-                tB.addNeighbour(tA);
+    private void createTriangles(QuadEdgeSubdivision qes) {
+        @SuppressWarnings("unchecked")
+        List<QuadEdge[]> qeTriangles = qes.getTriangleEdges(false);
+        this.triangleEdges = new int[3 * qeTriangles.size()];
+        this.edgeTriangles = new int[2 * this.edgeState.length];
+        Arrays.fill(this.edgeTriangles, -1);
+
+        int t = 0;
+        for (QuadEdge[] qet : qeTriangles) {
+            for (int k = 0; k < 3; k++) {
+                int e = (Integer) qet[k].getData();
+                this.triangleEdges[3 * t + k] = e;
+                this.edgeTriangles[this.edgeTriangles[2 * e] == -1 ? 2 * e : 2 * e + 1] = t;
             }
+            t++;
         }
+    }
 
+    private void setBorder(int edge) {
+        this.vertexBorder[this.edgeVertices[2 * edge]] = true;
+        this.vertexBorder[this.edgeVertices[2 * edge + 1]] = true;
+    }
 
-        // concave hull algorithm
-        int index = 0;
-        while (index != -1) {
-            index = -1;
+    private void removeTriangle(int edge, int triangle) {
+        if (this.edgeTriangles[2 * edge] == triangle)
+            this.edgeTriangles[2 * edge] = -1;
+        else if (this.edgeTriangles[2 * edge + 1] == triangle)
+            this.edgeTriangles[2 * edge + 1] = -1;
+    }
 
-            Edge e = null;
+    /**
+     * @return the number of triangles sharing an edge with the given one
+     */
+    private int countNeighbours(int triangle) {
+        int count = 0;
+        for (int k = 0; k < 3; k++) {
+            int e = this.triangleEdges[3 * triangle + k];
+            if (this.edgeTriangles[2 * e] != -1 && this.edgeTriangles[2 * e + 1] != -1)
+                count++;
+        }
+        return count;
+    }
 
-            // find the max length (smallest id so first entry)
-            int si = this.lengths.size();
+    private boolean isBorderTriangle(int triangle) {
+        for (int k = 0; k < 3; k++) {
+            int e = this.triangleEdges[3 * triangle + k];
+            if (!this.vertexBorder[this.edgeVertices[2 * e]] || !this.vertexBorder[this.edgeVertices[2 * e + 1]])
+                return false;
+        }
+        return true;
+    }
 
-            if (si != 0) {
-                Entry<Integer, Edge> entry = this.lengths.firstEntry();
-                int ind = entry.getKey();
-                if (entry.getValue().getGeometry().getLength() > this.threshold) {
-                    index = ind;
-                    e = entry.getValue();
-                }
-            }
+    /**
+     * Binary min-heap of ints.
+     */
+    private static class IntMinHeap {
+        private int[] items;
+        private int size;
 
-            if (e != null && index != -1) {
-                Triangle triangle = e.getTriangles().get(0);
-                List<Triangle> neighbours = triangle.getNeighbours();
-                // irregular triangle test
-                if (neighbours.size() == 1) {
-                    this.shortLengths.put(e.getId(), e);
-                    this.lengths.remove(e.getId());
-                } else {
-                    Edge e0 = triangle.getEdges().get(0);
-                    Edge e1 = triangle.getEdges().get(1);
-                    // test if all the vertices are on the border
-                    if (e0.getOV().isBorder() && e0.getEV().isBorder()
-                            && e1.getOV().isBorder() && e1.getEV().isBorder()) {
-                        this.shortLengths.put(e.getId(), e);
-                        this.lengths.remove(e.getId());
-                    } else {
-                        // management of triangles
-                        Triangle tA = neighbours.get(0);
-                        Triangle tB = neighbours.get(1);
-                        tA.setBorder(true); // FIXME not necessarily useful
-                        tB.setBorder(true); // FIXME not necessarily useful
-                        this.triangles.remove(triangle.getId());
-                        tA.removeNeighbour(triangle);
-                        tB.removeNeighbour(triangle);
-
-                        // new edges
-                        List<Edge> ee = triangle.getEdges();
-                        Edge eA = ee.get(0);
-                        Edge eB = ee.get(1);
-                        Edge eC = ee.get(2);
-
-                        if (eA.isBorder()) {
-                            this.edges.remove(eA.getId());
-                            eB.setBorder(true);
-                            eB.getOV().setBorder(true);
-                            eB.getEV().setBorder(true);
-                            eC.setBorder(true);
-                            eC.getOV().setBorder(true);
-                            eC.getEV().setBorder(true);
-
-                            // clean the relationships with the triangle
-                            eB.removeTriangle(triangle);
-                            eC.removeTriangle(triangle);
-
-                            if (eB.getGeometry().getLength() < this.threshold) {
-                                this.shortLengths.put(eB.getId(), eB);
-                            } else {
-                                this.lengths.put(eB.getId(), eB);
-                            }
-                            if (eC.getGeometry().getLength() < this.threshold) {
-                                this.shortLengths.put(eC.getId(), eC);
-                            } else {
-                                this.lengths.put(eC.getId(), eC);
-                            }
-                            this.lengths.remove(eA.getId());
-                        } else if (eB.isBorder()) {
-                            this.edges.remove(eB.getId());
-                            eA.setBorder(true);
-                            eA.getOV().setBorder(true);
-                            eA.getEV().setBorder(true);
-                            eC.setBorder(true);
-                            eC.getOV().setBorder(true);
-                            eC.getEV().setBorder(true);
-
-                            // clean the relationships with the triangle
-                            eA.removeTriangle(triangle);
-                            eC.removeTriangle(triangle);
-
-                            if (eA.getGeometry().getLength() < this.threshold) {
-                                this.shortLengths.put(eA.getId(), eA);
-                            } else {
-                                this.lengths.put(eA.getId(), eA);
-                            }
-                            if (eC.getGeometry().getLength() < this.threshold) {
-                                this.shortLengths.put(eC.getId(), eC);
-                            } else {
-                                this.lengths.put(eC.getId(), eC);
-                            }
-                            this.lengths.remove(eB.getId());
-                        } else {
-                            this.edges.remove(eC.getId());
-                            eA.setBorder(true);
-                            eA.getOV().setBorder(true);
-                            eA.getEV().setBorder(true);
-                            eB.setBorder(true);
-                            eB.getOV().setBorder(true);
-                            eB.getEV().setBorder(true);
-                            // clean the relationships with the triangle
-                            eA.removeTriangle(triangle);
-                            eB.removeTriangle(triangle);
-
-                            if (eA.getGeometry().getLength() < this.threshold) {
-                                this.shortLengths.put(eA.getId(), eA);
-                            } else {
-                                this.lengths.put(eA.getId(), eA);
-                            }
-                            if (eB.getGeometry().getLength() < this.threshold) {
-                                this.shortLengths.put(eB.getId(), eB);
-                            } else {
-                                this.lengths.put(eB.getId(), eB);
-                            }
-                            this.lengths.remove(eC.getId());
-                        }
-                    }
-                }
-            }
+        IntMinHeap(int capacity) {
+            this.items = new int[Math.max(1, capacity)];
         }
 
-        // concave hull creation
-        List<LineString> tmpEdges = new ArrayList<>(this.lengths.size() + this.shortLengths.size());
-        for (Edge e : this.lengths.values()) {
-            LineString l = e.getGeometry().toGeometry(this.geomFactory);
-            tmpEdges.add(l);
+        boolean isEmpty() {
+            return this.size == 0;
         }
 
-        for (Edge e : this.shortLengths.values()) {
-            LineString l = e.getGeometry().toGeometry(this.geomFactory);
-            tmpEdges.add(l);
+        int peek() {
+            return this.items[0];
         }
 
-        // merge
-        LineMerger lineMerger = new LineMerger();
-        lineMerger.add(tmpEdges);
-        LineString merge = (LineString) lineMerger.getMergedLineStrings().iterator().next();
-
-        if (merge.isRing()) {
-            LinearRing lr = new LinearRing(merge.getCoordinateSequence(), this.geomFactory);
-            return new Polygon(lr, null, this.geomFactory);
+        void push(int item) {
+            if (this.size == this.items.length)
+                this.items = Arrays.copyOf(this.items, 2 * this.items.length);
+            int i = this.size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (this.items[parent] <= item)
+                    break;
+                this.items[i] = this.items[parent];
+                i = parent;
+            }
+            this.items[i] = item;
         }
 
-        return merge;
+        int pop() {
+            int result = this.items[0];
+            int item = this.items[--this.size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= this.size)
+                    break;
+                if (child + 1 < this.size && this.items[child + 1] < this.items[child])
+                    child++;
+                if (item <= this.items[child])
+                    break;
+                this.items[i] = this.items[child];
+                i = child;
+            }
+            this.items[i] = item;
+            return result;
+        }
     }
-}
\ No newline at end of file
+}
@@ -33,9 +33,12 @@ import java.util.Map;
  * Comparator of a map containing QuadEdge as key
  * and Double as value (Double comparator).
  * 
+ * @deprecated not used by {@link org.opensphere.geometry.algorithm.ConcaveHull} anymore, which keeps its
+ * triangulation in primitive arrays. It will be removed in a future release.
  * @author Eric Grosso
  *
  */
+@Deprecated
 public class DoubleComparator implements Comparator<QuadEdge> {
 	
 	private Map<QuadEdge,Double> map;
@@ -32,9 +32,12 @@ import com.vividsolutions.jts.geom.LineSegment;
 /**
  * Edge.
  * 
+ * @deprecated not used by {@link org.opensphere.geometry.algorithm.ConcaveHull} anymore, which keeps its
+ * triangulation in primitive arrays. It will be removed in a future release.
  * @author Eric Grosso
  *
  */
+@Deprecated
 public class Edge {
 
 	/** ID of the edge */
@@ -30,9 +30,12 @@ import java.util.List;
 /**
  * Triangle.
  * 
+ * @deprecated not used by {@link org.opensphere.geometry.algorithm.ConcaveHull} anymore, which keeps its
+ * triangulation in primitive arrays. It will be removed in a future release.
  * @author Eric Grosso
  *
  */
+@Deprecated
 public class Triangle {
 
 	/** ID of the triangle */
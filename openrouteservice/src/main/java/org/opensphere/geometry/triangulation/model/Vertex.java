@@ -29,9 +29,12 @@ import com.vividsolutions.jts.geom.Coordinate;
 /**
  * Vertex.
  * 
+ * @deprecated not used by {@link org.opensphere.geometry.algorithm.ConcaveHull} anymore, which keeps its
+ * triangulation in primitive arrays. It will be removed in a future release.
  * @author Eric Grosso
  *
  */
+@Deprecated
 public class Vertex {
 
 	/** ID of the vertex */
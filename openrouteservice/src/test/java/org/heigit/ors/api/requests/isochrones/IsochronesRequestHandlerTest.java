@@ -210,6 +210,8 @@ public class IsochronesRequestHandlerTest {
         Assert.assertEquals("concaveballs", calcMethod);
         calcMethod = handler.convertCalcMethod(IsochronesRequestEnums.CalculationMethod.GRID);
         Assert.assertEquals("grid", calcMethod);
+        calcMethod = handler.convertCalcMethod(IsochronesRequestEnums.CalculationMethod.MARCHING_SQUARES);
+        Assert.assertEquals("marchingsquares", calcMethod);
     }
 
     @Test
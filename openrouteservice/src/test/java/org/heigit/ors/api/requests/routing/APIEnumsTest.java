@@ -63,6 +63,7 @@ public class APIEnumsTest {
     @Test(expected = ParameterValueException.class)
     public void testMatrixResponseTypeEnumCreation() throws ParameterValueException {
         Assert.assertEquals(APIEnums.MatrixResponseType.JSON, APIEnums.MatrixResponseType.forValue("json"));
+        Assert.assertEquals(APIEnums.MatrixResponseType.BINARY, APIEnums.MatrixResponseType.forValue("binary"));
 
         APIEnums.MatrixResponseType.forValue("invalid");
     }
@@ -0,0 +1,90 @@
+package org.heigit.ors.api.responses.matrix.binary;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import org.heigit.ors.api.requests.common.APIEnums;
+import org.heigit.ors.api.requests.matrix.MatrixRequest;
+import org.heigit.ors.api.requests.matrix.MatrixRequestEnums;
+import org.heigit.ors.exceptions.StatusCodeException;
+import org.heigit.ors.matrix.MatrixMetricsType;
+import org.heigit.ors.matrix.MatrixResult;
+import org.heigit.ors.matrix.ResolvedLocation;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+public class BinaryMatrixResponseTest {
+    private MatrixRequest apiRequest;
+    private ResolvedLocation[] sources;
+    private ResolvedLocation[] destinations;
+
+    @Before
+    public void setUp() throws StatusCodeException {
+        System.setProperty("ors_app_config", "target/test-classes/app.config.test");
+
+        Double[][] bareCoordinates = new Double[][]{{8.681495, 49.41461}, {8.686507, 49.41943}, {8.687872, 49.420318}};
+        apiRequest = new MatrixRequest(bareCoordinates);
+        apiRequest.setProfile(APIEnums.Profile.DRIVING_CAR);
+        apiRequest.setMetrics(new MatrixRequestEnums.Metrics[]{MatrixRequestEnums.Metrics.DISTANCE, MatrixRequestEnums.Metrics.DURATION});
+
+        sources = new ResolvedLocation[]{
+                new ResolvedLocation(new Coordinate(8.681495, 49.41461), "foo", 0.0),
+                new ResolvedLocation(new Coordinate(8.686507, 49.41943), "foo", 0.0)
+        };
+        destinations = new ResolvedLocation[]{
+                new ResolvedLocation(new Coordinate(8.681495, 49.41461), "foo", 0.0),
+                new ResolvedLocation(new Coordinate(8.686507, 49.41943), "foo", 0.0),
+                new ResolvedLocation(new Coordinate(8.687872, 49.420318), "foo", 0.0)
+        };
+    }
+
+    @Test
+    public void writesHeaderAndTables() throws IOException {
+        MatrixResult result = new MatrixResult(sources, destinations);
+        result.setTable(MatrixMetricsType.DURATION, new float[]{0, 1.5f, 2, 3, -1, 5});
+        result.setTable(MatrixMetricsType.DISTANCE, new float[]{10, 11, 12, 13, 14, 15.25f});
+
+        BinaryMatrixResponse response = new BinaryMatrixResponse(result, apiRequest);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.write(out);
+
+        byte[] bytes = out.toByteArray();
+        Assert.assertEquals(response.getContentLength(), bytes.length);
+        Assert.assertEquals(BinaryMatrixResponse.HEADER_SIZE + 2 * 6 * Float.BYTES, bytes.length);
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        Assert.assertArrayEquals(BinaryMatrixResponse.MAGIC, Arrays.copyOfRange(bytes, 0, 4));
+        Assert.assertEquals(BinaryMatrixResponse.VERSION, buffer.get(4));
+        Assert.assertEquals(MatrixMetricsType.DURATION | MatrixMetricsType.DISTANCE, buffer.get(5));
+        Assert.assertEquals(2, buffer.getInt(8));
+        Assert.assertEquals(3, buffer.getInt(12));
+
+        buffer.position(BinaryMatrixResponse.HEADER_SIZE);
+        float[] durations = new float[6];
+        float[] distances = new float[6];
+        buffer.asFloatBuffer().get(durations).get(distances);
+
+        Assert.assertArrayEquals(new float[]{0, 1.5f, 2, 3, Float.NaN, 5}, durations, 0);
+        Assert.assertArrayEquals(new float[]{10, 11, 12, 13, 14, 15.25f}, distances, 0);
+    }
+
+    @Test
+    public void writesOnlyPresentTables() throws IOException {
+        MatrixResult result = new MatrixResult(sources, destinations);
+        result.setTable(MatrixMetricsType.DISTANCE, new float[]{10, 11, 12, 13, 14, 15});
+
+        BinaryMatrixResponse response = new BinaryMatrixResponse(result, apiRequest);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.write(out);
+
+        byte[] bytes = out.toByteArray();
+        Assert.assertEquals(MatrixMetricsType.DISTANCE, response.getMetrics());
+        Assert.assertEquals(BinaryMatrixResponse.HEADER_SIZE + 6 * Float.BYTES, bytes.length);
+        Assert.assertEquals(10f, ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).getFloat(BinaryMatrixResponse.HEADER_SIZE), 0);
+    }
+}
@@ -0,0 +1,37 @@
+package org.heigit.ors.api.responses.matrix.json;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class JSONMatrixTableTest {
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void serializesLikeBoxedTable() throws Exception {
+        float[] table = new float[]{0, 1.234f, -1, 25.555f, 1234.5f, 0.001f};
+        JSONMatrixTable matrixTable = new JSONMatrixTable(table, 2, 3);
+
+        Double[][] expected = new Double[][]{{0.0, 1.23, null}, {25.56, 1234.5, 0.0}};
+        Assert.assertEquals(mapper.writeValueAsString(expected), mapper.writeValueAsString(matrixTable));
+        Assert.assertArrayEquals(expected, matrixTable.toArray());
+    }
+
+    @Test
+    public void serializesBoxedValues() throws Exception {
+        Double[][] values = new Double[][]{{1.0, null}, {3.5, 4.0}};
+        JSONMatrixTable matrixTable = new JSONMatrixTable(values);
+
+        Assert.assertEquals(2, matrixTable.getRows());
+        Assert.assertEquals(2, matrixTable.getColumns());
+        Assert.assertEquals(mapper.writeValueAsString(values), mapper.writeValueAsString(matrixTable));
+        Assert.assertSame(values, matrixTable.toArray());
+    }
+
+    @Test
+    public void getValue() {
+        JSONMatrixTable matrixTable = new JSONMatrixTable(new float[]{-1, 2.345f}, 1, 2);
+        Assert.assertNull(matrixTable.getValue(0, 0));
+        Assert.assertEquals(2.35, matrixTable.getValue(0, 1), 0);
+    }
+}
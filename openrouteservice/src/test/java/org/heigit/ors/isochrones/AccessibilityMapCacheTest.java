@@ -0,0 +1,75 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the 
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1 
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library; 
+ *  if not, see <https://www.gnu.org/licenses/>.  
+ */
+package org.heigit.ors.isochrones;
+
+import com.carrotsearch.hppc.IntObjectMap;
+import com.graphhopper.coll.GHIntObjectHashMap;
+import com.graphhopper.storage.SPTEntry;
+import org.heigit.ors.routing.graphhopper.extensions.AccessibilityMap;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AccessibilityMapCacheTest {
+
+    @Test
+    public void testGetCachedMap() {
+        AccessibilityMapCache cache = new AccessibilityMapCache(100);
+        AccessibilityMap map = createMap(10);
+        cache.put("a", map);
+
+        Assert.assertSame(map, cache.get("a"));
+        Assert.assertNull(cache.get("b"));
+    }
+
+    @Test
+    public void testEvictLeastRecentlyUsedMaps() {
+        AccessibilityMapCache cache = new AccessibilityMapCache(100);
+        cache.put("a", createMap(40));
+        cache.put("b", createMap(40));
+        cache.get("a");
+        cache.put("c", createMap(40));
+
+        Assert.assertEquals(2, cache.size());
+        Assert.assertNotNull(cache.get("a"));
+        Assert.assertNull(cache.get("b"));
+        Assert.assertNotNull(cache.get("c"));
+    }
+
+    @Test
+    public void testSkipMapsLargerThanCache() {
+        AccessibilityMapCache cache = new AccessibilityMapCache(100);
+        cache.put("a", createMap(40));
+        cache.put("b", createMap(101));
+
+        Assert.assertEquals(1, cache.size());
+        Assert.assertNull(cache.get("b"));
+    }
+
+    @Test
+    public void testReplaceMap() {
+        AccessibilityMapCache cache = new AccessibilityMapCache(100);
+        cache.put("a", createMap(60));
+        cache.put("a", createMap(60));
+        cache.put("b", createMap(40));
+
+        Assert.assertEquals(2, cache.size());
+    }
+
+    private static AccessibilityMap createMap(int size) {
+        IntObjectMap<SPTEntry> map = new GHIntObjectHashMap<>(size);
+        for (int i = 0; i < size; i++)
+            map.put(i, new SPTEntry(i, i, i));
+        return new AccessibilityMap(map, null);
+    }
+}
@@ -0,0 +1,107 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the 
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1 
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library; 
+ *  if not, see <https://www.gnu.org/licenses/>.  
+ */
+package org.heigit.ors.isochrones.builders.concaveballs;
+
+import com.carrotsearch.hppc.IntObjectMap;
+import com.carrotsearch.hppc.cursors.IntObjectCursor;
+import com.graphhopper.coll.GHIntObjectHashMap;
+import com.graphhopper.storage.SPTEntry;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class EdgeCostIndexTest {
+    private IntObjectMap<SPTEntry> map;
+
+    @Before
+    public void setUp() {
+        map = new GHIntObjectHashMap<>();
+        SPTEntry root = createEntry(-1, 0, 0, null);
+        map.put(0, root);
+        SPTEntry parent = root;
+        // a chain of edges 1 -> 10 with costs 0, 10, 20, ... for entering them
+        for (int i = 1; i <= 10; i++) {
+            SPTEntry entry = createEntry(i, i, i * 10, parent);
+            map.put(i, entry);
+            parent = entry;
+        }
+        // a virtual node which has to be left out
+        map.put(11, createEntry(11, 100, 5, root));
+    }
+
+    @Test
+    public void testIndexLeavesOutRootAndVirtualNodes() {
+        EdgeCostIndex index = new EdgeCostIndex(map, 10);
+
+        Assert.assertEquals(10, index.size());
+    }
+
+    @Test
+    public void testGetEntriesOfCostWindow() {
+        EdgeCostIndex index = new EdgeCostIndex(map, 10);
+
+        // edges entered at cost 20, 30 and 40
+        Assert.assertEquals(3, index.getEntries(20, 40).length);
+        Assert.assertEquals(10, index.getEntries(Double.NEGATIVE_INFINITY, 100).length);
+        Assert.assertEquals(1, index.getEntries(0, 0).length);
+        Assert.assertEquals(0, index.getEntries(95, 100).length);
+    }
+
+    @Test
+    public void testGetEntriesAboveExcludesLowerBound() {
+        EdgeCostIndex index = new EdgeCostIndex(map, 10);
+
+        // edges entered at cost 30 and 40
+        Assert.assertEquals(2, index.getEntriesAbove(20, 40).length);
+        Assert.assertEquals(0, index.getEntriesAbove(20, 20).length);
+        Assert.assertEquals(10, index.getEntriesAbove(Double.NEGATIVE_INFINITY, 100).length);
+
+        // consecutive windows contain every edge exactly once
+        int total = 0;
+        double prevCost = Double.NEGATIVE_INFINITY;
+        for (double cost = 15; cost <= 105; cost += 15) {
+            total += index.getEntriesAbove(prevCost, cost).length;
+            prevCost = cost;
+        }
+        Assert.assertEquals(10, total);
+    }
+
+    @Test
+    public void testGetEntriesInTreeOrder() {
+        EdgeCostIndex index = new EdgeCostIndex(map, 10);
+
+        List<SPTEntry> expected = new ArrayList<>();
+        for (IntObjectCursor<SPTEntry> entry : map) {
+            double cost = entry.value.parent == null ? -1 : entry.value.parent.weight;
+            if (entry.value.adjNode <= 10 && cost >= 30 && cost <= 70)
+                expected.add(entry.value);
+        }
+
+        List<SPTEntry> actual = new ArrayList<>();
+        for (int i : index.getEntries(30, 70))
+            actual.add(index.get(i));
+
+        Assert.assertEquals(expected, actual);
+    }
+
+    private static SPTEntry createEntry(int edge, int adjNode, double weight, SPTEntry parent) {
+        SPTEntry entry = new SPTEntry(edge, adjNode, weight);
+        entry.originalEdge = edge;
+        entry.parent = parent;
+        return entry;
+    }
+}
@@ -0,0 +1,56 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the 
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1 
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library; 
+ *  if not, see <https://www.gnu.org/licenses/>.  
+ */
+package org.heigit.ors.isochrones.builders.marchingsquares;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CostGridTest {
+    @Test
+    public void testAddSegmentInterpolatesCost() {
+        CostGrid grid = new CostGrid(0, 0, 1, 1, 10, 1);
+        grid.addSegment(0, 0.5, 0, 10, 0.5, 100);
+
+        for (int x = 0; x < 10; x++) {
+            Assert.assertTrue(grid.getValue(x, 0) >= x * 10);
+            Assert.assertTrue(grid.getValue(x, 0) <= (x + 1) * 10);
+        }
+    }
+
+    @Test
+    public void testAddPointKeepsLowestCost() {
+        CostGrid grid = new CostGrid(0, 0, 1, 1, 2, 2);
+        grid.addPoint(0.5, 0.5, 10);
+        grid.addPoint(0.5, 0.5, 5);
+        grid.addPoint(0.5, 0.5, 7);
+        grid.addPoint(5, 5, 1);
+
+        Assert.assertEquals(5, grid.getValue(0, 0), 0);
+        Assert.assertEquals(Float.POSITIVE_INFINITY, grid.getValue(1, 1), 0);
+    }
+
+    @Test
+    public void testSpread() {
+        CostGrid grid = new CostGrid(0, 0, 1, 1, 7, 7);
+        grid.setValue(3, 3, 10);
+        grid.spread(2, 1);
+
+        Assert.assertEquals(10, grid.getValue(3, 3), 0);
+        Assert.assertEquals(11, grid.getValue(4, 3), 0);
+        Assert.assertEquals(12, grid.getValue(3, 1), 0);
+        Assert.assertEquals(10 + Math.sqrt(2), grid.getValue(4, 4), 1e-6);
+        Assert.assertEquals(Float.POSITIVE_INFINITY, grid.getValue(5, 5), 0);
+        Assert.assertEquals(Float.POSITIVE_INFINITY, grid.getValue(3, 0), 0);
+    }
+}
@@ -0,0 +1,89 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the 
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1 
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library; 
+ *  if not, see <https://www.gnu.org/licenses/>.  
+ */
+package org.heigit.ors.isochrones.builders.marchingsquares;
+
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Polygon;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+public class MarchingSquaresTest {
+    private final GeometryFactory geometryFactory = new GeometryFactory();
+
+    private CostGrid createBlockGrid() {
+        CostGrid grid = new CostGrid(0, 0, 1, 1, 7, 7);
+        for (int y = 1; y < 6; y++) {
+            for (int x = 1; x < 6; x++)
+                grid.setValue(x, y, 1);
+        }
+        grid.setValue(3, 3, Float.POSITIVE_INFINITY);
+        return grid;
+    }
+
+    @Test
+    public void testBlockWithHole() {
+        List<List<Polygon>> contours = new MarchingSquares(createBlockGrid(), geometryFactory).computeContours(new double[] {2}, 0);
+
+        Assert.assertEquals(1, contours.size());
+        Assert.assertEquals(1, contours.get(0).size());
+        Polygon poly = contours.get(0).get(0);
+        Assert.assertTrue(poly.isValid());
+        Assert.assertEquals(1, poly.getNumInteriorRing());
+        // the cells reached at cost 1 form a 5x5 block whose contour runs halfway to the unreached neighbours
+        Assert.assertEquals(24.5 - 0.5, poly.getArea(), 1e-9);
+    }
+
+    @Test
+    public void testSmallHolesAreLeftOut() {
+        List<List<Polygon>> contours = new MarchingSquares(createBlockGrid(), geometryFactory).computeContours(new double[] {2}, 1);
+
+        Assert.assertEquals(0, contours.get(0).get(0).getNumInteriorRing());
+    }
+
+    @Test
+    public void testSeparatedCellsAtSaddle() {
+        CostGrid grid = new CostGrid(0, 0, 1, 1, 5, 5);
+        grid.setValue(1, 1, 1);
+        grid.setValue(2, 2, 1);
+        grid.setValue(3, 3, 1);
+
+        List<Polygon> polygons = new MarchingSquares(grid, geometryFactory).computeContours(new double[] {2}, 0).get(0);
+
+        Assert.assertEquals(3, polygons.size());
+    }
+
+    @Test
+    public void testAllLevelsInOnePass() {
+        CostGrid grid = new CostGrid(0, 0, 1, 1, 11, 11);
+        for (int y = 1; y < 10; y++) {
+            for (int x = 1; x < 10; x++)
+                grid.setValue(x, y, Math.max(Math.abs(x - 5), Math.abs(y - 5)));
+        }
+
+        List<List<Polygon>> contours = new MarchingSquares(grid, geometryFactory).computeContours(new double[] {1.5, 2.5, 3.5}, 0);
+
+        Assert.assertEquals(3, contours.size());
+        double prevArea = 0;
+        for (List<Polygon> polygons : contours) {
+            Assert.assertEquals(1, polygons.size());
+            Polygon poly = polygons.get(0);
+            Assert.assertTrue(poly.getArea() > prevArea);
+            prevArea = poly.getArea();
+        }
+        // the contour at 2.5 is interpolated halfway between the cells at cost 2 and 3, a 5x5 square with cut corners
+        Assert.assertEquals(25 - 4 * 0.125, contours.get(1).get(0).getArea(), 1e-9);
+    }
+}
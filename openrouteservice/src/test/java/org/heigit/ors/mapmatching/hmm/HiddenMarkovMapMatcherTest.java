@@ -0,0 +1,158 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library;
+ *  if not, see <https://www.gnu.org/licenses/>.
+ */
+package org.heigit.ors.mapmatching.hmm;
+
+import com.graphhopper.routing.util.CarFlagEncoder;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.storage.GraphBuilder;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.storage.index.LocationIndexTree;
+import com.graphhopper.util.DistanceCalc;
+import com.graphhopper.util.DistanceCalcEarth;
+import com.vividsolutions.jts.geom.Coordinate;
+import org.heigit.ors.mapmatching.LocationIndexMatch;
+import org.heigit.ors.routing.graphhopper.extensions.ORSGraphHopper;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class HiddenMarkovMapMatcherTest {
+    private static final double LAT_A = 49.0;
+    private static final double LAT_B = LAT_A + 40 / 111195.0;
+    private static final double LON = 8.001;
+    private static final int ROAD_NODES = 21;
+
+    private final DistanceCalc distCalc = new DistanceCalcEarth();
+    private HiddenMarkovMapMatcher matcher;
+
+    @Before
+    public void setUp() {
+        // two parallel roads 40 meters apart which are not connected to each other
+        //  B: 21--22--23-- ... --41
+        //  A:  0---1---2-- ... --20
+        CarFlagEncoder encoder = new CarFlagEncoder();
+        EncodingManager encodingManager = EncodingManager.create(encoder);
+        GraphHopperStorage graph = new GraphBuilder(encodingManager).create();
+        NodeAccess na = graph.getNodeAccess();
+        for (int i = 0; i < ROAD_NODES; i++) {
+            na.setNode(i, LAT_A, 8.0 + i * 0.001);
+            na.setNode(ROAD_NODES + i, LAT_B, 8.0 + i * 0.001);
+        }
+        for (int i = 0; i < ROAD_NODES - 1; i++) {
+            double distance = distCalc.calcDist(LAT_A, 8.0 + i * 0.001, LAT_A, 8.0 + (i + 1) * 0.001);
+            graph.edge(i, i + 1, distance, true);
+            graph.edge(ROAD_NODES + i, ROAD_NODES + i + 1, distance, true);
+        }
+        graph.freeze();
+
+        LocationIndexTree index = new LocationIndexTree(graph, new RAMDirectory());
+        index.prepareIndex();
+
+        ORSGraphHopper gh = new ORSGraphHopper();
+        gh.setEncodingManager(encodingManager);
+        gh.setGraphHopperStorage(graph);
+
+        matcher = new HiddenMarkovMapMatcher(gh, new LocationIndexMatch(graph, index));
+        matcher.setSearchRadius(30);
+    }
+
+    /**
+     * @return the location the given number of meters east and north of the start of the trace
+     */
+    private static Coordinate location(double east, double north) {
+        return new Coordinate(LON + east / (111195.0 * Math.cos(Math.toRadians(LAT_A))), LAT_A + north / 111195.0);
+    }
+
+    private static void assertMatchedOnRoad(double lat, Coordinate location, Coordinate matched) {
+        assertNotNull(matched);
+        assertEquals(lat, matched.y, 1e-6);
+        assertEquals(location.x, matched.x, 1e-5);
+    }
+
+    @Test
+    public void testTransitionsAcrossChunkBoundary() {
+        Coordinate[] locations = new Coordinate[40];
+        for (int t = 0; t < locations.length; t++)
+            locations[t] = location(20 * t, 5);
+        // the first observation of the second chunk is closer to road B, which cannot be reached from road A. It is
+        // matched to road A only if the transitions from the last observation of the first chunk are taken into account.
+        locations[32] = location(20 * 32, 21);
+
+        Coordinate[] matched = matcher.matchLocations(locations);
+
+        assertEquals(locations.length, matched.length);
+        for (int t = 0; t < locations.length; t++)
+            assertMatchedOnRoad(LAT_A, locations[t], matched[t]);
+    }
+
+    @Test
+    public void testCloseObservationsAreSkipped() {
+        Coordinate[] locations = {
+                location(0, 5),
+                location(3, 5),
+                location(50, 5),
+                location(55, 4),
+                location(100, 5),
+                location(102, 5)
+        };
+
+        Coordinate[] matched = matcher.matchLocations(locations);
+
+        assertMatchedOnRoad(LAT_A, locations[0], matched[0]);
+        assertNull(matched[1]);
+        assertMatchedOnRoad(LAT_A, locations[2], matched[2]);
+        assertNull(matched[3]);
+        assertMatchedOnRoad(LAT_A, locations[4], matched[4]);
+        // the last observation is never skipped
+        assertMatchedOnRoad(LAT_A, locations[5], matched[5]);
+    }
+
+    @Test
+    public void testObservationWithoutCandidates() {
+        Coordinate[] locations = {
+                location(0, -5),
+                location(50, -5),
+                location(100, -500),
+                location(150, -5),
+                location(200, -5)
+        };
+
+        Coordinate[] matched = matcher.matchLocations(locations);
+
+        assertMatchedOnRoad(LAT_A, locations[0], matched[0]);
+        assertMatchedOnRoad(LAT_A, locations[1], matched[1]);
+        assertNull(matched[2]);
+        assertMatchedOnRoad(LAT_A, locations[3], matched[3]);
+        assertMatchedOnRoad(LAT_A, locations[4], matched[4]);
+    }
+
+    @Test
+    public void testUnmatchableTrace() {
+        // none of the locations is within the search radius, the route request is rejected with a PointNotFoundException
+        Coordinate[] locations = new Coordinate[50];
+        for (int t = 0; t < locations.length; t++)
+            locations[t] = location(20 * t, -500);
+
+        Coordinate[] matched = matcher.matchLocations(locations);
+
+        assertEquals(locations.length, matched.length);
+        for (Coordinate c : matched)
+            assertNull(c);
+    }
+}
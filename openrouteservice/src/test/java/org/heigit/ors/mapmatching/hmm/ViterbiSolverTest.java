@@ -0,0 +1,125 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library;
+ *  if not, see <https://www.gnu.org/licenses/>.
+ */
+package org.heigit.ors.mapmatching.hmm;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ViterbiSolverTest {
+    private static final double LIKELY = Math.log(0.9);
+    private static final double UNLIKELY = Math.log(0.1);
+
+    @Test
+    public void testTransitionsOutweighEmissions() {
+        ViterbiSolver viterbi = new ViterbiSolver(3);
+
+        viterbi.startStep(0, 0, new double[] {LIKELY, UNLIKELY}, 2);
+        Assert.assertTrue(viterbi.finishStep());
+
+        // candidate 0 of the second step is closer, but it can only be reached by an unlikely detour
+        viterbi.startStep(1, 2, new double[] {LIKELY, UNLIKELY}, 2);
+        viterbi.addTransition(0, 0, Math.log(1e-6));
+        viterbi.addTransition(0, 1, LIKELY);
+        viterbi.addTransition(1, 1, LIKELY);
+        Assert.assertTrue(viterbi.finishStep());
+
+        viterbi.startStep(2, 4, new double[] {LIKELY, UNLIKELY}, 2);
+        viterbi.addTransition(0, 0, LIKELY);
+        viterbi.addTransition(1, 0, LIKELY);
+        viterbi.addTransition(1, 1, LIKELY);
+        Assert.assertTrue(viterbi.finishStep());
+
+        Assert.assertArrayEquals(new int[] {0, 3, 4}, viterbi.getPath());
+    }
+
+    @Test
+    public void testUnreachableStepStartsNewSequence() {
+        ViterbiSolver viterbi = new ViterbiSolver(3);
+
+        viterbi.startStep(0, 0, new double[] {UNLIKELY, LIKELY}, 2);
+        Assert.assertTrue(viterbi.finishStep());
+
+        viterbi.startStep(1, 2, new double[] {LIKELY}, 1);
+        viterbi.addTransition(0, 0, LIKELY);
+        Assert.assertTrue(viterbi.finishStep());
+
+        viterbi.startStep(2, 3, new double[] {UNLIKELY, LIKELY}, 2);
+        Assert.assertFalse(viterbi.finishStep());
+        Assert.assertEquals(1, viterbi.getWindowSize());
+
+        Assert.assertArrayEquals(new int[] {0, 2, 4}, viterbi.getPath());
+    }
+
+    @Test
+    public void testConvergedStepsLeaveWindow() {
+        int observations = 1000;
+        ViterbiSolver viterbi = new ViterbiSolver(observations);
+
+        viterbi.startStep(0, 0, new double[] {LIKELY, UNLIKELY}, 2);
+        viterbi.finishStep();
+
+        for (int t = 1; t < observations; t++) {
+            viterbi.startStep(t, 2 * t, new double[] {LIKELY, UNLIKELY}, 2);
+            // both candidates are reached from candidate 1 only, so the sequences meet in the previous step
+            viterbi.addTransition(1, 0, LIKELY);
+            viterbi.addTransition(1, 1, LIKELY);
+            Assert.assertTrue(viterbi.finishStep());
+            Assert.assertEquals(1, viterbi.getWindowSize());
+        }
+
+        int[] path = viterbi.getPath();
+        for (int t = 0; t < observations - 1; t++)
+            Assert.assertEquals(2 * t + 1, path[t]);
+        Assert.assertEquals(2 * (observations - 1), path[observations - 1]);
+    }
+
+    @Test
+    public void testWindowGrowsUntilSequencesMeet() {
+        ViterbiSolver viterbi = new ViterbiSolver(4);
+
+        viterbi.startStep(0, 0, new double[] {LIKELY, LIKELY}, 2);
+        viterbi.finishStep();
+
+        // two parallel roads
+        for (int t = 1; t < 3; t++) {
+            viterbi.startStep(t, 2 * t, new double[] {LIKELY, LIKELY}, 2);
+            viterbi.addTransition(0, 0, LIKELY);
+            viterbi.addTransition(1, 1, LIKELY);
+            viterbi.finishStep();
+        }
+        Assert.assertEquals(3, viterbi.getWindowSize());
+
+        // which join, the second one being the more likely
+        viterbi.startStep(3, 6, new double[] {LIKELY}, 1);
+        viterbi.addTransition(0, 0, UNLIKELY);
+        viterbi.addTransition(1, 0, LIKELY);
+        viterbi.finishStep();
+
+        Assert.assertArrayEquals(new int[] {1, 3, 5, 6}, viterbi.getPath());
+    }
+
+    @Test
+    public void testObservationsWithoutCandidatesAreNotMatched() {
+        ViterbiSolver viterbi = new ViterbiSolver(3);
+
+        viterbi.startStep(0, 0, new double[] {LIKELY}, 1);
+        viterbi.finishStep();
+
+        viterbi.startStep(2, 1, new double[] {LIKELY}, 1);
+        viterbi.addTransition(0, 0, LIKELY);
+        viterbi.finishStep();
+
+        Assert.assertArrayEquals(new int[] {0, -1, 1}, viterbi.getPath());
+    }
+}
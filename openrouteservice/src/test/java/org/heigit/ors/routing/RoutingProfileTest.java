@@ -0,0 +1,217 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library;
+ *  if not, see <https://www.gnu.org/licenses/>.
+ */
+package org.heigit.ors.routing;
+
+import com.graphhopper.reader.ReaderElement;
+import com.graphhopper.reader.osm.OSMInput;
+import com.typesafe.config.ConfigFactory;
+import org.apache.commons.io.FileUtils;
+import org.heigit.ors.routing.configuration.RouteProfileConfiguration;
+import org.heigit.ors.routing.graphhopper.extensions.ORSGraphHopper;
+import org.heigit.ors.routing.graphhopper.extensions.reader.SharedOSMImport;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RoutingProfileTest {
+    private static final File LOCATION = new File("./target/tmp-routing-profile");
+
+    private static class CountingGraphHopper extends ORSGraphHopper {
+        private final AtomicInteger closed = new AtomicInteger();
+
+        @Override
+        public void close() {
+            closed.incrementAndGet();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteQuietly(LOCATION);
+    }
+
+    private static File createGraphDir(String name, String content) throws IOException {
+        File dir = new File(LOCATION, name);
+        FileUtils.writeStringToFile(new File(dir, "nodes"), content, StandardCharsets.UTF_8);
+        return dir;
+    }
+
+    private static String readGraphFile(File dir) throws IOException {
+        return FileUtils.readFileToString(new File(dir, "nodes"), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testRetiredGraphIsClosedByLastUser() throws IOException {
+        CountingGraphHopper gh = new CountingGraphHopper();
+        File retiredDir = createGraphDir("retired", "old");
+        RoutingProfile.GraphHopperHandle handle = new RoutingProfile.GraphHopperHandle(gh);
+
+        assertTrue(handle.acquire());
+        assertTrue(handle.acquire());
+        handle.retire(retiredDir);
+        assertFalse(handle.acquire());
+
+        handle.release();
+        assertEquals(0, gh.closed.get());
+        assertTrue(retiredDir.exists());
+
+        handle.release();
+        assertEquals(1, gh.closed.get());
+        assertFalse(retiredDir.exists());
+    }
+
+    @Test
+    public void testUnusedGraphIsClosedWhenRetired() {
+        CountingGraphHopper gh = new CountingGraphHopper();
+        RoutingProfile.GraphHopperHandle handle = new RoutingProfile.GraphHopperHandle(gh);
+
+        handle.retire(null);
+
+        assertEquals(1, gh.closed.get());
+        assertFalse(handle.acquire());
+    }
+
+    @Test
+    public void testAcquireRacingRetire() throws InterruptedException {
+        for (int run = 0; run < 20; run++) {
+            CountingGraphHopper gh = new CountingGraphHopper();
+            RoutingProfile.GraphHopperHandle handle = new RoutingProfile.GraphHopperHandle(gh);
+            AtomicInteger usedClosedGraph = new AtomicInteger();
+            CountDownLatch start = new CountDownLatch(1);
+
+            Thread[] threads = new Thread[4];
+            for (int t = 0; t < threads.length; t++) {
+                threads[t] = new Thread(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < 1000; i++) {
+                        if (!handle.acquire())
+                            break;
+                        if (gh.closed.get() != 0)
+                            usedClosedGraph.incrementAndGet();
+                        handle.release();
+                    }
+                });
+                threads[t].start();
+            }
+
+            start.countDown();
+            handle.retire(null);
+            for (Thread thread : threads)
+                thread.join();
+
+            assertEquals(0, usedClosedGraph.get());
+            assertEquals(1, gh.closed.get());
+        }
+    }
+
+    @Test
+    public void testReplaceGraphFiles() throws Exception {
+        File srcDir = createGraphDir("new", "new");
+        File dstDir = createGraphDir("graph", "old");
+        File retiredDir = new File(LOCATION, "graph_retired");
+
+        String loaded = RoutingProfile.replaceGraphFiles(srcDir, dstDir, retiredDir, () -> readGraphFile(dstDir));
+
+        assertEquals("new", loaded);
+        assertEquals("new", readGraphFile(dstDir));
+        assertEquals("old", readGraphFile(retiredDir));
+        assertFalse(srcDir.exists());
+    }
+
+    @Test
+    public void testFailedUpdateRestoresGraphFiles() throws Exception {
+        File srcDir = createGraphDir("new", "new");
+        File dstDir = createGraphDir("graph", "old");
+        File retiredDir = new File(LOCATION, "graph_retired");
+
+        try {
+            RoutingProfile.replaceGraphFiles(srcDir, dstDir, retiredDir, () -> {
+                throw new IllegalStateException("unable to load the graph");
+            });
+            fail("The failure of the loader has to be passed on");
+        } catch (IllegalStateException ex) {
+            assertEquals("unable to load the graph", ex.getMessage());
+        }
+
+        assertEquals("old", readGraphFile(dstDir));
+        assertFalse(retiredDir.exists());
+    }
+
+    @Test
+    public void testFailingProfileLeavesSharedImport() throws Exception {
+        File osmFile = new File(LOCATION, "shared.osm");
+        FileUtils.writeLines(osmFile, "UTF-8", Arrays.asList(
+                "<?xml version='1.0' encoding='UTF-8'?>",
+                "<osm version='0.6' generator='test'>",
+                " <node id='1' lat='49.41' lon='8.68'/>",
+                " <node id='2' lat='49.42' lon='8.69'/>",
+                " <way id='10'><nd ref='1'/><nd ref='2'/><tag k='highway' v='residential'/></way>",
+                "</osm>"));
+
+        SharedOSMImport sharedImport = new SharedOSMImport(osmFile);
+        RoutingProfileLoadContext loadCntx = new RoutingProfileLoadContext();
+        loadCntx.setSharedImport("failing", sharedImport.addParticipant());
+        SharedOSMImport.Participant other = sharedImport.addParticipant();
+
+        // the ch options lack the enabled flag, so the profile fails before it gets to the import
+        RouteProfileConfiguration config = new RouteProfileConfiguration();
+        config.setName("failing");
+        config.setGraphPath(new File(LOCATION, "graph").getPath());
+        config.setPreparationOpts(ConfigFactory.parseString("methods: { ch: { threads: 1 } }"));
+        try {
+            RoutingProfile.initGraphHopper(osmFile.getPath(), config, loadCntx);
+            fail("The profile has to fail");
+        } catch (Exception ex) {
+            // expected
+        }
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Integer> elements = executor.submit(() -> {
+                int count = 0;
+                try (OSMInput in = other.openPass()) {
+                    ReaderElement item;
+                    while ((item = in.getNext()) != null) {
+                        if (item.getType() != ReaderElement.FILEHEADER)
+                            count++;
+                    }
+                }
+                return count;
+            });
+            // the remaining participant must not wait for the failed one
+            assertEquals(3, elements.get(30, TimeUnit.SECONDS).intValue());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
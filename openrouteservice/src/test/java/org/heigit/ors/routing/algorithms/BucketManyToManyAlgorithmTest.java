@@ -0,0 +1,164 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library;
+ *  if not, see <https://www.gnu.org/licenses/>.
+ */
+package org.heigit.ors.routing.algorithms;
+
+import com.graphhopper.routing.Dijkstra;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.ch.PrepareContractionHierarchies;
+import com.graphhopper.routing.util.CarFlagEncoder;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.ShortestWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.CHGraph;
+import com.graphhopper.storage.CHProfile;
+import com.graphhopper.storage.GraphBuilder;
+import com.graphhopper.storage.GraphHopperStorage;
+import org.heigit.ors.routing.graphhopper.extensions.storages.MultiTreeSPEntry;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BucketManyToManyAlgorithmTest {
+    private final CarFlagEncoder carEncoder = new CarFlagEncoder();
+    private final EncodingManager encodingManager = EncodingManager.create(carEncoder);
+    private final Weighting weighting = new ShortestWeighting(carEncoder);
+    private final CHProfile chProfile = CHProfile.nodeBased(weighting);
+    private GraphHopperStorage graph;
+    private CHGraph chGraph;
+    private Weighting prepareWeighting;
+
+    @Before
+    public void setUp() {
+        //    3---4--5-->9--10
+        //   /\   |  |
+        //  2--0  6--7     11--12
+        //  | / \   /
+        //  |/   \ /
+        //  1-----8
+        graph = new GraphBuilder(encodingManager).setCHProfiles(chProfile).create();
+        graph.edge(0, 1, 1, true);
+        graph.edge(0, 2, 1, true);
+        graph.edge(0, 3, 5, true);
+        graph.edge(0, 8, 1, true);
+        graph.edge(1, 2, 1, true);
+        graph.edge(1, 8, 2, true);
+        graph.edge(2, 3, 2, true);
+        graph.edge(3, 4, 2, true);
+        graph.edge(4, 5, 1, true);
+        graph.edge(4, 6, 1, true);
+        graph.edge(5, 7, 1, true);
+        graph.edge(6, 7, 2, true);
+        graph.edge(7, 8, 3, true);
+        graph.edge(5, 9, 2, false);
+        graph.edge(9, 10, 1, true);
+        graph.edge(11, 12, 1, true);
+        graph.freeze();
+
+        PrepareContractionHierarchies prepare = PrepareContractionHierarchies.fromGraphHopperStorage(graph, chProfile);
+        prepare.doWork();
+        prepareWeighting = prepare.getPrepareWeighting();
+        chGraph = graph.getCHGraph(chProfile);
+    }
+
+    private double[] calcWeightsWithBuckets(int[] sources, int[] targets) {
+        BucketManyToManyAlgorithm algorithm = new BucketManyToManyAlgorithm(chGraph, prepareWeighting);
+        algorithm.prepare(targets);
+
+        double[] weights = new double[sources.length * targets.length];
+        for (int i = 0; i < sources.length; i++) {
+            algorithm.calcPaths(sources[i]);
+            for (int j = 0; j < targets.length; j++)
+                weights[i * targets.length + j] = algorithm.isFound(j) ? algorithm.getWeight(j) : Double.POSITIVE_INFINITY;
+        }
+        return weights;
+    }
+
+    private double[] calcWeightsWithRPHAST(int[] sources, int[] targets) {
+        RPHASTAlgorithm algorithm = new RPHASTAlgorithm(chGraph, prepareWeighting, TraversalMode.NODE_BASED);
+        algorithm.prepare(sources, targets);
+        MultiTreeSPEntry[] entries = algorithm.calcPaths(sources, targets);
+
+        double[] weights = new double[sources.length * targets.length];
+        for (int i = 0; i < sources.length; i++) {
+            for (int j = 0; j < targets.length; j++)
+                weights[i * targets.length + j] = entries[j] == null ? Double.POSITIVE_INFINITY : entries[j].getItem(i).getWeight();
+        }
+        return weights;
+    }
+
+    private double[] calcWeightsWithDijkstra(int[] sources, int[] targets) {
+        double[] weights = new double[sources.length * targets.length];
+        for (int i = 0; i < sources.length; i++) {
+            for (int j = 0; j < targets.length; j++) {
+                Path path = new Dijkstra(graph, weighting, TraversalMode.NODE_BASED).calcPath(sources[i], targets[j]);
+                weights[i * targets.length + j] = path.isFound() ? path.getWeight() : Double.POSITIVE_INFINITY;
+            }
+        }
+        return weights;
+    }
+
+    private void assertTablesEqual(double[] expected, double[] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++)
+            assertEquals("Unexpected weight at " + i, expected[i], actual[i], 1e-9);
+    }
+
+    @Test
+    public void testMatchesDijkstraAndRPHAST() {
+        int[] sources = {0, 2, 5, 8, 7};
+        int[] targets = {1, 3, 5, 7, 0, 6};
+
+        double[] weights = calcWeightsWithBuckets(sources, targets);
+
+        assertTablesEqual(calcWeightsWithDijkstra(sources, targets), weights);
+        assertTablesEqual(calcWeightsWithRPHAST(sources, targets), weights);
+    }
+
+    @Test
+    public void testSourceEqualsTarget() {
+        int[] nodes = {0, 4, 8};
+
+        double[] weights = calcWeightsWithBuckets(nodes, nodes);
+
+        for (int i = 0; i < nodes.length; i++)
+            assertEquals(0.0, weights[i * nodes.length + i], 1e-9);
+        assertTablesEqual(calcWeightsWithDijkstra(nodes, nodes), weights);
+    }
+
+    @Test
+    public void testUnreachableTargets() {
+        // 9 and 10 can be reached from 5 but not left, 11 and 12 are not connected at all
+        int[] sources = {5, 9, 11};
+        int[] targets = {10, 0, 12};
+
+        double[] weights = calcWeightsWithBuckets(sources, targets);
+
+        assertTablesEqual(calcWeightsWithDijkstra(sources, targets), weights);
+        assertEquals(3.0, weights[0], 1e-9);
+        assertTrue(Double.isInfinite(weights[targets.length + 1]));
+        assertTrue(Double.isInfinite(weights[2 * targets.length + 1]));
+        assertEquals(1.0, weights[2 * targets.length + 2], 1e-9);
+
+        BucketManyToManyAlgorithm algorithm = new BucketManyToManyAlgorithm(chGraph, prepareWeighting);
+        algorithm.prepare(targets);
+        algorithm.calcPaths(9);
+        assertTrue(algorithm.isFound(0));
+        assertFalse(algorithm.isFound(1));
+        assertFalse(algorithm.isFound(2));
+    }
+}
@@ -0,0 +1,191 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library;
+ *  if not, see <https://www.gnu.org/licenses/>.
+ */
+package org.heigit.ors.routing.algorithms;
+
+import com.graphhopper.routing.ch.PrepareContractionHierarchies;
+import com.graphhopper.routing.util.CarFlagEncoder;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.ShortestWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.CHGraph;
+import com.graphhopper.storage.CHProfile;
+import com.graphhopper.storage.GraphBuilder;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.NodeAccess;
+import org.apache.log4j.Logger;
+import org.heigit.ors.routing.graphhopper.extensions.storages.MultiTreeSPEntry;
+import org.heigit.ors.routing.graphhopper.extensions.storages.MultiTreeSPStorage;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the CH matrix searches of {@link BucketManyToManyAlgorithm} and {@link RPHASTAlgorithm} for matrices of
+ * different shapes on road-like grid graphs of different sizes. The results are the basis of the default of
+ * matrix.bucket_maximum_locations. The benchmark takes a few minutes and is skipped unless it is enabled explicitly:
+ *
+ * <pre>mvn test -Dtest=MatrixAlgorithmBenchmarkTest -Dors.benchmark=true</pre>
+ */
+public class MatrixAlgorithmBenchmarkTest {
+    private static final Logger LOGGER = Logger.getLogger(MatrixAlgorithmBenchmarkTest.class.getName());
+    private static final int WARMUP_RUNS = 20;
+    private static final int RUNS = 21;
+    private static final int[][] SHAPES = {
+            {1, 1}, {5, 5}, {10, 10}, {25, 25}, {50, 50}, {100, 100}, {250, 250},
+            {1, 10}, {1, 25}, {1, 50}, {1, 250}, {5, 50}, {5, 250}, {10, 250}, {25, 250}, {250, 1}
+    };
+
+    private final CarFlagEncoder carEncoder = new CarFlagEncoder();
+    private final EncodingManager encodingManager = EncodingManager.create(carEncoder);
+    private final Weighting weighting = new ShortestWeighting(carEncoder);
+    private final CHProfile chProfile = CHProfile.nodeBased(weighting);
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue(Boolean.getBoolean("ors.benchmark"));
+    }
+
+    private interface MatrixSearch {
+        double[] run(int[] sources, int[] targets);
+    }
+
+    /**
+     * Creates a grid of roads with lengths varying by +-50% and a coarser grid of main roads. 30% of the minor
+     * north-south roads are missing, but every node is connected.
+     */
+    private GraphHopperStorage createGraph(int size, long seed) {
+        Random random = new Random(seed);
+        GraphHopperStorage graph = new GraphBuilder(encodingManager).setCHProfiles(chProfile).create();
+        NodeAccess na = graph.getNodeAccess();
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                int node = row * size + col;
+                na.setNode(node, 49.0 + row * 0.001, 8.0 + col * 0.0015);
+                // every tenth row and column is a main road, which is faster to travel along
+                if (col + 1 < size)
+                    graph.edge(node, node + 1, (row % 10 == 0 ? 0.3 : 1) * (50 + random.nextDouble() * 100), true);
+                if (row + 1 < size && (col % 10 == 0 || random.nextDouble() < 0.7))
+                    graph.edge(node, node + size, (col % 10 == 0 ? 0.3 : 1) * (50 + random.nextDouble() * 100), true);
+            }
+        }
+        graph.freeze();
+        return graph;
+    }
+
+    private static int[] randomNodes(Random random, int count, int nodes) {
+        int[] result = new int[count];
+        for (int i = 0; i < count; i++)
+            result[i] = random.nextInt(nodes);
+        return result;
+    }
+
+    /**
+     * @return the median run time in milliseconds
+     */
+    private static double measure(MatrixSearch search, int[][] sources, int[][] targets) {
+        for (int run = 0; run < WARMUP_RUNS; run++)
+            search.run(sources[run], targets[run]);
+
+        double[] times = new double[RUNS];
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            search.run(sources[WARMUP_RUNS + run], targets[WARMUP_RUNS + run]);
+            times[run] = (System.nanoTime() - start) / 1e6;
+        }
+        Arrays.sort(times);
+        return times[RUNS / 2];
+    }
+
+    private void compare(int size) {
+        GraphHopperStorage graph = createGraph(size, size);
+        PrepareContractionHierarchies prepare = PrepareContractionHierarchies.fromGraphHopperStorage(graph, chProfile);
+        prepare.doWork();
+        Weighting prepareWeighting = prepare.getPrepareWeighting();
+        CHGraph chGraph = graph.getCHGraph(chProfile);
+
+        MatrixSearch buckets = (sources, targets) -> {
+            BucketManyToManyAlgorithm algorithm = new BucketManyToManyAlgorithm(chGraph, prepareWeighting);
+            algorithm.prepare(targets);
+            double[] weights = new double[sources.length * targets.length];
+            for (int i = 0; i < sources.length; i++) {
+                algorithm.calcPaths(sources[i]);
+                for (int j = 0; j < targets.length; j++)
+                    weights[i * targets.length + j] = algorithm.getWeight(j);
+            }
+            return weights;
+        };
+        MatrixSearch rphast = (sources, targets) -> {
+            RPHASTAlgorithm algorithm = new RPHASTAlgorithm(chGraph, prepareWeighting, TraversalMode.NODE_BASED);
+            algorithm.prepare(sources, targets);
+            MultiTreeSPEntry[] entries = algorithm.calcPaths(sources, targets);
+            double[] weights = new double[sources.length * targets.length];
+            for (int i = 0; i < sources.length; i++) {
+                for (int j = 0; j < targets.length; j++)
+                    weights[i * targets.length + j] = entries[j] == null ? Double.POSITIVE_INFINITY : entries[j].getItem(i).getWeight();
+            }
+            return weights;
+        };
+        MatrixSearch rphastFlat = (sources, targets) -> {
+            RPHASTAlgorithm algorithm = new RPHASTAlgorithm(chGraph, prepareWeighting, TraversalMode.NODE_BASED);
+            algorithm.prepare(sources, targets);
+            MultiTreeSPStorage storage = new MultiTreeSPStorage(1);
+            storage.init(sources.length);
+            int[] slots = algorithm.calcPaths(sources, targets, storage);
+            double[] weights = new double[sources.length * targets.length];
+            for (int i = 0; i < sources.length; i++) {
+                for (int j = 0; j < targets.length; j++)
+                    weights[i * targets.length + j] = slots[j] == MultiTreeSPStorage.NO_SLOT ? Double.POSITIVE_INFINITY : storage.getWeight(slots[j], i);
+            }
+            return weights;
+        };
+
+        Random random = new Random(size);
+        for (int[] shape : SHAPES) {
+            int[][] sources = new int[WARMUP_RUNS + RUNS][];
+            int[][] targets = new int[WARMUP_RUNS + RUNS][];
+            for (int run = 0; run < sources.length; run++) {
+                sources[run] = randomNodes(random, shape[0], graph.getNodes());
+                targets[run] = randomNodes(random, shape[1], graph.getNodes());
+            }
+
+            double[] expected = rphast.run(sources[0], targets[0]);
+            double[] actual = buckets.run(sources[0], targets[0]);
+            for (int i = 0; i < expected.length; i++)
+                assertEquals(expected[i], actual[i], 1e-6);
+
+            double bucketTime = measure(buckets, sources, targets);
+            double rphastTime = measure(rphast, sources, targets);
+            double rphastFlatTime = measure(rphastFlat, sources, targets);
+            LOGGER.info(String.format("%d nodes, %d x %d: buckets %.2f ms, RPHAST %.2f ms (%.1fx), flat RPHAST %.2f ms (%.1fx)",
+                    graph.getNodes(), shape[0], shape[1], bucketTime, rphastTime, rphastTime / bucketTime,
+                    rphastFlatTime, rphastFlatTime / bucketTime));
+        }
+    }
+
+    @Test
+    public void benchmarkSmallGraph() {
+        compare(100);
+    }
+
+    @Test
+    public void benchmarkLargeGraph() {
+        compare(300);
+    }
+}
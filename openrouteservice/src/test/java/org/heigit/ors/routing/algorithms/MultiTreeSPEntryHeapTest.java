@@ -0,0 +1,88 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library;
+ *  if not, see <https://www.gnu.org/licenses/>.
+ */
+package org.heigit.ors.routing.algorithms;
+
+import java.util.Random;
+
+import org.heigit.ors.routing.graphhopper.extensions.storages.MultiTreeSPEntry;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MultiTreeSPEntryHeapTest {
+
+	private MultiTreeSPEntry createEntry(int node, double weight) {
+		MultiTreeSPEntry entry = new MultiTreeSPEntry(node, -1, weight, true, null, 1);
+		entry.getItem(0).setWeight(weight);
+		entry.updateWeights();
+		return entry;
+	}
+
+	@Test
+	public void testPollReturnsEntriesInWeightOrder() {
+		MultiTreeSPEntryHeap heap = new MultiTreeSPEntryHeap(4);
+		Random rnd = new Random(42);
+		for (int i = 0; i < 1000; i++)
+			heap.update(createEntry(i, rnd.nextDouble() * 1000));
+
+		assertEquals(1000, heap.size());
+
+		double last = Double.NEGATIVE_INFINITY;
+		while (!heap.isEmpty()) {
+			MultiTreeSPEntry entry = heap.poll();
+			assertTrue(entry.getTotalWeight() >= last);
+			assertFalse(heap.contains(entry.getAdjNode()));
+			last = entry.getTotalWeight();
+		}
+		assertNull(heap.poll());
+	}
+
+	@Test
+	public void testUpdateMovesExistingEntry() {
+		MultiTreeSPEntryHeap heap = new MultiTreeSPEntryHeap(16);
+		MultiTreeSPEntry a = createEntry(1, 10);
+		MultiTreeSPEntry b = createEntry(2, 20);
+		MultiTreeSPEntry c = createEntry(3, 30);
+		heap.update(a);
+		heap.update(b);
+		heap.update(c);
+
+		c.getItem(0).setWeight(5);
+		c.updateWeights();
+		heap.update(c);
+		assertEquals(3, heap.size());
+		assertSame(c, heap.peek());
+
+		a.getItem(0).setWeight(40);
+		a.updateWeights();
+		heap.update(a);
+
+		assertSame(c, heap.poll());
+		assertSame(b, heap.poll());
+		assertSame(a, heap.poll());
+		assertTrue(heap.isEmpty());
+	}
+
+	@Test
+	public void testClear() {
+		MultiTreeSPEntryHeap heap = new MultiTreeSPEntryHeap(16);
+		heap.update(createEntry(1, 1));
+		heap.update(createEntry(2, 2));
+		heap.clear();
+		assertTrue(heap.isEmpty());
+		assertFalse(heap.contains(1));
+		heap.update(createEntry(2, 3));
+		assertEquals(2, heap.poll().getAdjNode());
+	}
+}
@@ -0,0 +1,156 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library;
+ *  if not, see <https://www.gnu.org/licenses/>.
+ */
+package org.heigit.ors.routing.algorithms;
+
+import com.graphhopper.routing.ch.PrepareContractionHierarchies;
+import com.graphhopper.routing.util.CarFlagEncoder;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.ShortestWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.CHGraph;
+import com.graphhopper.storage.CHProfile;
+import com.graphhopper.storage.GraphBuilder;
+import com.graphhopper.storage.GraphHopperStorage;
+import org.heigit.ors.routing.graphhopper.extensions.storages.MultiTreeSPEntry;
+import org.heigit.ors.routing.graphhopper.extensions.storages.MultiTreeSPStorage;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+
+public class RPHASTAlgorithmTest {
+    private final CarFlagEncoder carEncoder = new CarFlagEncoder();
+    private final EncodingManager encodingManager = EncodingManager.create(carEncoder);
+    private final Weighting weighting = new ShortestWeighting(carEncoder);
+    private final CHProfile chProfile = CHProfile.nodeBased(weighting);
+    private CHGraph chGraph;
+    private Weighting prepareWeighting;
+
+    @Before
+    public void setUp() {
+        //    3---4--5
+        //   /\   |  |
+        //  2--0  6--7
+        //  | / \   /
+        //  |/   \ /
+        //  1-----8
+        GraphHopperStorage g = new GraphBuilder(encodingManager).setCHProfiles(chProfile).create();
+        g.edge(0, 1, 1, true);
+        g.edge(0, 2, 1, true);
+        g.edge(0, 3, 5, true);
+        g.edge(0, 8, 1, true);
+        g.edge(1, 2, 1, true);
+        g.edge(1, 8, 2, true);
+        g.edge(2, 3, 2, true);
+        g.edge(3, 4, 2, true);
+        g.edge(4, 5, 1, true);
+        g.edge(4, 6, 1, true);
+        g.edge(5, 7, 1, true);
+        g.edge(6, 7, 2, true);
+        g.edge(7, 8, 3, true);
+        g.freeze();
+
+        PrepareContractionHierarchies prepare = PrepareContractionHierarchies.fromGraphHopperStorage(g, chProfile);
+        prepare.doWork();
+        prepareWeighting = prepare.getPrepareWeighting();
+        chGraph = g.getCHGraph(chProfile);
+    }
+
+    private double[] calcWeightsWithObjects(int[] sources, int[] targets) {
+        RPHASTAlgorithm algorithm = new RPHASTAlgorithm(chGraph, prepareWeighting, TraversalMode.NODE_BASED);
+        algorithm.prepare(sources, targets);
+        MultiTreeSPEntry[] entries = algorithm.calcPaths(sources, targets);
+
+        double[] weights = new double[sources.length * targets.length];
+        for (int i = 0; i < sources.length; i++) {
+            for (int j = 0; j < targets.length; j++)
+                weights[i * targets.length + j] = entries[j] == null ? Double.POSITIVE_INFINITY : entries[j].getItem(i).getWeight();
+        }
+        return weights;
+    }
+
+    private double[] calcWeightsWithStorage(int[] sources, int[] targets) {
+        RPHASTAlgorithm algorithm = new RPHASTAlgorithm(chGraph, prepareWeighting, TraversalMode.NODE_BASED);
+        algorithm.prepare(sources, targets);
+        MultiTreeSPStorage storage = new MultiTreeSPStorage(1);
+        storage.init(sources.length);
+        int[] slots = algorithm.calcPaths(sources, targets, storage);
+
+        double[] weights = new double[sources.length * targets.length];
+        for (int i = 0; i < sources.length; i++) {
+            for (int j = 0; j < targets.length; j++)
+                weights[i * targets.length + j] = slots[j] == MultiTreeSPStorage.NO_SLOT ? Double.POSITIVE_INFINITY : storage.getWeight(slots[j], i);
+        }
+        return weights;
+    }
+
+    @Test
+    public void testFlatStorageMatchesObjects() {
+        int[] sources = {0, 2, 5, 5, 8};
+        int[] targets = {1, 3, 5, 7, 0, 6};
+
+        double[] expected = calcWeightsWithObjects(sources, targets);
+        double[] actual = calcWeightsWithStorage(sources, targets);
+
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++)
+            assertEquals(expected[i], actual[i], 1e-9);
+
+        // 0 -> 8 -> 7 is shorter than the way over 3
+        assertEquals(4.0, actual[3], 1e-9);
+        assertEquals(0.0, actual[2 * targets.length + 2], 1e-9);
+    }
+
+    /**
+     * Searches batches of sources concurrently on the shared graph, each with its own algorithm and target graph,
+     * as the parallel matrix computation does.
+     */
+    @Test
+    public void testParallelBatchesMatchSingleSearch() throws Exception {
+        int[] sources = {0, 1, 2, 3, 4, 5, 6, 7, 8};
+        int[] targets = {8, 4, 1, 6};
+        int batchSize = 2;
+
+        double[] expected = calcWeightsWithObjects(sources, targets);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<double[]>> batches = new ArrayList<>();
+            for (int round = 0; round < 20; round++) {
+                for (int offset = 0; offset < sources.length; offset += batchSize) {
+                    final int[] batch = Arrays.copyOfRange(sources, offset, Math.min(offset + batchSize, sources.length));
+                    batches.add(executor.submit(() -> calcWeightsWithStorage(batch, targets)));
+                }
+            }
+
+            int offset = 0;
+            for (Future<double[]> batch : batches) {
+                double[] actual = batch.get();
+                for (int i = 0; i < actual.length; i++)
+                    assertEquals(expected[offset * targets.length + i], actual[i], 1e-9);
+                offset = (offset + actual.length / targets.length) % sources.length;
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
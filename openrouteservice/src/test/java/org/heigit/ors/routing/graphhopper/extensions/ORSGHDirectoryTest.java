@@ -0,0 +1,44 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library;
+ *  if not, see <https://www.gnu.org/licenses/>.
+ */
+package org.heigit.ors.routing.graphhopper.extensions;
+
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.DataAccess;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class ORSGHDirectoryTest {
+
+    @Test
+    public void testPrefixedFilesUseTheirType() {
+        ORSGHDirectory dir = new ORSGHDirectory("", DAType.RAM_STORE)
+                .putPrefix("nodes_ch_core_", DAType.MMAP)
+                .putPrefix("landmarks_core_", DAType.MMAP);
+
+        assertEquals(DAType.MMAP, dir.find("nodes_ch_core_fastest_car", DAType.RAM_STORE).getType());
+        assertEquals(DAType.MMAP, dir.find("landmarks_core_fastest_car_allow_all").getType());
+        assertEquals(DAType.RAM_STORE, dir.find("nodes").getType());
+        assertEquals(DAType.RAM_INT_STORE, dir.find("nodes_ch_fastest_car", DAType.RAM_INT_STORE).getType());
+    }
+
+    @Test
+    public void testPrefixedFileIsFoundAgain() {
+        ORSGHDirectory dir = new ORSGHDirectory("", DAType.RAM_STORE).putPrefix("landmarks_core_", DAType.MMAP);
+
+        DataAccess da = dir.find("landmarks_core_ids_fastest_car");
+        assertSame(da, dir.find("landmarks_core_ids_fastest_car", DAType.RAM_STORE));
+    }
+}
@@ -4,6 +4,8 @@ import com.graphhopper.GHRequest;
 
 import com.graphhopper.GHResponse;
 import com.graphhopper.PathWrapper;
+import com.graphhopper.storage.DAType;
+import com.graphhopper.util.CmdArgs;
 import com.graphhopper.util.Instruction;
 import com.graphhopper.util.InstructionList;
 import com.graphhopper.util.PointList;
@@ -45,6 +47,22 @@ public class ORSGraphHopperTest {
 
     }
 
+    @Test
+    public void coreDataAccessTypeTest() {
+        CmdArgs args = new CmdArgs();
+        args.put("graph.flag_encoders", "car");
+        args.put("graph.location", "./target/tmp-core-dataaccess");
+
+        ORSGraphHopper gh = new ORSGraphHopper();
+        gh.init(args);
+        Assert.assertNull(gh.getCoreDataAccessType());
+
+        args.put("graph.core.dataaccess", "MMAP");
+        gh = new ORSGraphHopper();
+        gh.init(args);
+        Assert.assertEquals(DAType.MMAP, gh.getCoreDataAccessType());
+    }
+
     private void checkInstructions(InstructionList instructions) {
         for (Instruction instruction : instructions) {
             PointList points = instruction.getPoints();
@@ -0,0 +1,91 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library;
+ *  if not, see <https://www.gnu.org/licenses/>.
+ */
+package org.heigit.ors.routing.graphhopper.extensions;
+
+import com.graphhopper.routing.util.CarFlagEncoder;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.util.HintsMap;
+import com.graphhopper.routing.weighting.TurnWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.GraphExtension;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.storage.TurnCostExtension;
+import com.graphhopper.util.Helper;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ORSWeightingFactoryTest {
+    private static final String LOCATION = "./target/tmp-weighting-factory";
+
+    private final FlagEncoder encoder = new CarFlagEncoder(5, 5, 3);
+    private final EncodingManager encodingManager = EncodingManager.create(encoder);
+
+    @After
+    public void tearDown() {
+        Helper.removeDir(new File(LOCATION));
+    }
+
+    private GraphHopperStorage createGraph(GraphExtension extension) {
+        Helper.removeDir(new File(LOCATION));
+        GraphHopperStorage graph = new GraphHopperStorage(new RAMDirectory(LOCATION, true), encodingManager, false, extension).create(100);
+        graph.edge(0, 1, 10, true);
+        graph.edge(1, 2, 10, true);
+        graph.flush();
+        return graph;
+    }
+
+    private HintsMap createHints() {
+        HintsMap hints = new HintsMap();
+        hints.setWeighting("fastest");
+        return hints;
+    }
+
+    @Test
+    public void testTurnCostExtensionIsLoadedOnce() {
+        GraphHopperStorage graph = createGraph(new TurnCostExtension());
+        ORSWeightingFactory factory = new ORSWeightingFactory();
+
+        TurnCostExtension turnCostExt = factory.getTurnCostExtension(graph);
+        assertNotNull(turnCostExt);
+
+        Weighting first = factory.createWeighting(createHints(), encoder, graph);
+        Weighting second = factory.createWeighting(createHints(), encoder, graph);
+        assertTrue(first instanceof TurnWeighting);
+        assertTrue(second instanceof TurnWeighting);
+        assertSame(turnCostExt, factory.getTurnCostExtension(graph));
+
+        graph.close();
+    }
+
+    @Test
+    public void testGraphWithoutTurnCosts() {
+        GraphHopperStorage graph = createGraph(new GraphExtension.NoOpExtension());
+        ORSWeightingFactory factory = new ORSWeightingFactory();
+
+        assertNull(factory.getTurnCostExtension(graph));
+        assertFalse(factory.createWeighting(createHints(), encoder, graph) instanceof TurnWeighting);
+
+        graph.close();
+    }
+}
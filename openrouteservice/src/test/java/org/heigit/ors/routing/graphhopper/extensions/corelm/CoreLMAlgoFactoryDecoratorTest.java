@@ -17,15 +17,22 @@ import com.graphhopper.routing.lm.LMAlgoFactoryDecorator;
 import com.graphhopper.routing.util.CarFlagEncoder;
 import com.graphhopper.routing.util.EncodingManager;
 import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.weighting.AbstractWeighting;
 import com.graphhopper.routing.weighting.ShortestWeighting;
 import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.CHGraph;
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.GHDirectory;
 import com.graphhopper.storage.GraphBuilder;
 import com.graphhopper.storage.GraphHopperStorage;
 import com.graphhopper.util.CmdArgs;
+import com.graphhopper.util.Helper;
 import com.graphhopper.util.Parameters;
 import org.heigit.ors.routing.graphhopper.extensions.core.CoreLMAlgoFactoryDecorator;
+import org.heigit.ors.routing.graphhopper.extensions.core.CoreNodeIdMap;
 import org.junit.Test;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -74,4 +81,65 @@ public class CoreLMAlgoFactoryDecoratorTest {
         dec.init(args);
         assertFalse(dec.isEnabled());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testCoreNodeIdMapIsStoredAndLoaded() {
+        String location = "./target/tmp-core-ids";
+        Helper.removeDir(new File(location));
+
+        FlagEncoder car = new CarFlagEncoder();
+        EncodingManager em = EncodingManager.create(car);
+        Weighting weighting = new ShortestWeighting(car);
+
+        GraphHopperStorage graph = new GraphBuilder(em).setLocation(location).setStore(true)
+                .setCHProfiles(new ArrayList<>()).setCoreGraph(weighting).create();
+        graph.edge(0, 1, 1, true);
+        graph.edge(1, 2, 1, true);
+        graph.edge(2, 3, 1, true);
+        graph.freeze();
+        CHGraph core = graph.getCoreGraph(weighting);
+        int coreLevel = graph.getNodes() + 1;
+        core.setLevel(1, coreLevel);
+        core.setLevel(3, coreLevel);
+        graph.flush();
+
+        CoreLMAlgoFactoryDecorator dec = new CoreLMAlgoFactoryDecorator();
+        CoreNodeIdMap coreNodeIdMap = dec.createCoreNodeIdMap(graph, weighting);
+        assertEquals(2, coreNodeIdMap.getCoreNodes());
+        dec.close();
+        assertTrue(coreNodeIdMap.isClosed());
+        graph.close();
+
+        File[] files = new File(location).listFiles((dir, name) -> name.startsWith("landmarks_core_ids_"));
+        assertNotNull(files);
+        assertEquals(1, files.length);
+
+        graph = new GraphBuilder(em).setLocation(location).setStore(true)
+                .setCHProfiles(new ArrayList<>()).setCoreGraph(weighting).build();
+        assertTrue(graph.loadExisting());
+
+        dec = new CoreLMAlgoFactoryDecorator();
+        coreNodeIdMap = dec.createCoreNodeIdMap(graph, weighting);
+        assertEquals(4, coreNodeIdMap.getNodes());
+        assertEquals(2, coreNodeIdMap.getCoreNodes());
+        assertEquals(CoreNodeIdMap.NO_CORE_NODE, coreNodeIdMap.get(0));
+        assertEquals(0, coreNodeIdMap.get(1));
+        assertEquals(CoreNodeIdMap.NO_CORE_NODE, coreNodeIdMap.get(2));
+        assertEquals(1, coreNodeIdMap.get(3));
+        dec.close();
+        graph.close();
+
+        // a mapping stored for a different graph is not used
+        CoreNodeIdMap staleNodeIdMap = new CoreNodeIdMap(new GHDirectory(location, DAType.RAM_STORE), AbstractWeighting.weightingToFileName(weighting));
+        try {
+            staleNodeIdMap.loadExisting(5);
+            fail("a mapping of another graph has been loaded");
+        } catch (IllegalStateException ex) {
+            assertTrue(ex.getMessage().contains("created for 4 nodes"));
+        } finally {
+            staleNodeIdMap.close();
+        }
+
+        Helper.removeDir(new File(location));
+    }
+}
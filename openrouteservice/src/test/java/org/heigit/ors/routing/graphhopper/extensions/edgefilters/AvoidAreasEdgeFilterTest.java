@@ -5,6 +5,7 @@ import com.graphhopper.storage.DAType;
 import com.graphhopper.storage.GHDirectory;
 import com.graphhopper.storage.GraphExtension;
 import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.NodeAccess;
 import com.graphhopper.util.EdgeIteratorState;
 import com.graphhopper.util.Helper;
 import com.vividsolutions.jts.geom.Coordinate;
@@ -51,4 +52,39 @@ public class AvoidAreasEdgeFilterTest {
         assertFalse(filter.accept(iter1));
         assertTrue(filter.accept(iter2));
     }
+
+    @Test
+    public void TestAvoidSquare() {
+        NodeAccess na = _graphStorage.getNodeAccess();
+        na.setNode(0, 2.5, 2.5);
+        na.setNode(1, 3.5, 3.5);
+        na.setNode(2, 1, 3);
+        na.setNode(3, 5, 3);
+        na.setNode(4, 2, 2);
+        na.setNode(5, 4, 2);
+        na.setNode(6, 1, 1);
+        na.setNode(7, 1, 5);
+
+        EdgeIteratorState inside = _graphStorage.edge(0, 1, 100, true);
+        EdgeIteratorState crossing = _graphStorage.edge(2, 3, 100, true);
+        EdgeIteratorState onBoundary = _graphStorage.edge(4, 5, 100, true);
+        EdgeIteratorState outside = _graphStorage.edge(6, 7, 100, true);
+
+        GeometryFactory gf = new GeometryFactory();
+        Polygon poly = gf.createPolygon(new Coordinate[]{ new Coordinate(2,2),
+                new Coordinate(4,2),
+                new Coordinate(4,4),
+                new Coordinate(2,4),
+                new Coordinate(2,2)});
+
+        AvoidAreasEdgeFilter filter = new AvoidAreasEdgeFilter(new Polygon[] {poly});
+        assertFalse(filter.accept(inside));
+        assertFalse(filter.accept(crossing));
+        assertTrue(filter.accept(onBoundary));
+        assertTrue(filter.accept(outside));
+
+        // verdicts are remembered for the edges
+        assertFalse(filter.accept(inside));
+        assertTrue(filter.accept(outside));
+    }
 }
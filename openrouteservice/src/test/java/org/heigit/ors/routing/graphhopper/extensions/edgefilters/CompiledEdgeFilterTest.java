@@ -0,0 +1,186 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the 
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1 
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library; 
+ *  if not, see <https://www.gnu.org/licenses/>.  
+ */
+package org.heigit.ors.routing.graphhopper.extensions.edgefilters;
+
+import com.graphhopper.routing.VirtualEdgeIteratorState;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.GHDirectory;
+import com.graphhopper.storage.IntsRef;
+import com.graphhopper.util.Helper;
+import org.heigit.ors.routing.AvoidFeatureFlags;
+import org.heigit.ors.routing.RouteSearchParameters;
+import org.heigit.ors.routing.RoutingProfileType;
+import org.heigit.ors.routing.graphhopper.extensions.ORSDefaultFlagEncoderFactory;
+import org.heigit.ors.routing.graphhopper.extensions.TollwayType;
+import org.heigit.ors.routing.graphhopper.extensions.flagencoders.FlagEncoderNames;
+import org.heigit.ors.routing.graphhopper.extensions.storages.BordersGraphStorage;
+import org.heigit.ors.routing.graphhopper.extensions.storages.EdgeAttributesColumn;
+import org.heigit.ors.routing.graphhopper.extensions.storages.TollwaysGraphStorage;
+import org.heigit.ors.routing.graphhopper.extensions.storages.WayCategoryGraphStorage;
+import org.heigit.ors.routing.pathprocessors.BordersExtractor;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CompiledEdgeFilterTest {
+    private static final int COLUMN_EDGES = 6;
+    // an edge which is stored in the graph extensions but not in the column, e.g. added after it has been created
+    private static final int EDGE_OUTSIDE_COLUMN = 10;
+
+    private final EncodingManager encodingManager = EncodingManager.create(new ORSDefaultFlagEncoderFactory(), FlagEncoderNames.CAR_ORS, 4);
+    private final WayCategoryGraphStorage wayCategories = new WayCategoryGraphStorage();
+    private final TollwaysGraphStorage tollways = new TollwaysGraphStorage();
+    private final BordersGraphStorage borders = new BordersGraphStorage();
+    private final EdgeAttributesColumn column;
+
+    public CompiledEdgeFilterTest() {
+        wayCategories.init(null, new GHDirectory("", DAType.RAM_STORE));
+        wayCategories.create(EDGE_OUTSIDE_COLUMN + 1);
+        tollways.init(null, new GHDirectory("", DAType.RAM_STORE));
+        tollways.create(EDGE_OUTSIDE_COLUMN + 1);
+        borders.init(null, new GHDirectory("", DAType.RAM_STORE));
+        borders.create(EDGE_OUTSIDE_COLUMN + 1);
+
+        wayCategories.setEdgeValue(1, AvoidFeatureFlags.HIGHWAYS);
+        wayCategories.setEdgeValue(2, AvoidFeatureFlags.TOLLWAYS);
+        tollways.setEdgeValue(2, TollwayType.MOTORCAR);
+        wayCategories.setEdgeValue(3, AvoidFeatureFlags.TOLLWAYS);
+        tollways.setEdgeValue(3, TollwayType.HGV);
+        wayCategories.setEdgeValue(4, AvoidFeatureFlags.FERRIES);
+        wayCategories.setEdgeValue(5, AvoidFeatureFlags.HIGHWAYS | AvoidFeatureFlags.TOLLWAYS);
+        tollways.setEdgeValue(5, TollwayType.GENERAL);
+        wayCategories.setEdgeValue(EDGE_OUTSIDE_COLUMN, AvoidFeatureFlags.HIGHWAYS);
+
+        borders.setEdgeValue(1, BordersGraphStorage.CONTROLLED_BORDER, (short) 1, (short) 2);
+        borders.setEdgeValue(4, BordersGraphStorage.OPEN_BORDER, (short) 2, (short) 3);
+        borders.setEdgeValue(5, BordersGraphStorage.NO_BORDER, (short) 3, (short) 3);
+
+        column = new EdgeAttributesColumn(COLUMN_EDGES, wayCategories, tollways, borders, null);
+    }
+
+    private VirtualEdgeIteratorState generateEdge(int id) {
+        IntsRef intsRef = encodingManager.createEdgeFlags();
+        return new VirtualEdgeIteratorState(0, id, id, 1, 2, 10,
+                intsRef, "test", Helper.createPointList(51,0,51,1),false);
+    }
+
+    private RouteSearchParameters createSearchParams(int profileType, int avoidFeatures, BordersExtractor.Avoid avoidBorders) throws Exception {
+        RouteSearchParameters searchParams = new RouteSearchParameters();
+        searchParams.setProfileType(profileType);
+        searchParams.setAvoidFeatureTypes(avoidFeatures);
+        searchParams.setAvoidBorders(avoidBorders);
+        searchParams.setAvoidCountries(new int[] {});
+        return searchParams;
+    }
+
+    private void assertSameDecisions(EdgeFilter expected, EdgeFilter actual) {
+        for (int edge = 0; edge < COLUMN_EDGES; edge++)
+            assertEquals("edge " + edge, expected.accept(generateEdge(edge)), actual.accept(generateEdge(edge)));
+        assertEquals(expected.accept(generateEdge(EDGE_OUTSIDE_COLUMN)), actual.accept(generateEdge(EDGE_OUTSIDE_COLUMN)));
+    }
+
+    @Test
+    public void TestColumnValues() {
+        assertEquals(COLUMN_EDGES, column.getEdges());
+        assertEquals(AvoidFeatureFlags.HIGHWAYS, EdgeAttributesColumn.getWayCategory(column.getValue(1)));
+        assertEquals(BordersGraphStorage.CONTROLLED_BORDER, EdgeAttributesColumn.getBorderType(column.getValue(1)));
+        assertEquals(TollwayType.HGV, EdgeAttributesColumn.getTollwayType(column.getValue(3)));
+        assertEquals(TollwayType.GENERAL, EdgeAttributesColumn.getTollwayType(column.getValue(5)));
+        assertEquals(0, column.getValue(0));
+        assertFalse(column.hasHeavyVehicleAttributes());
+    }
+
+    @Test
+    public void TestAvoidFeatures() throws Exception {
+        int[] avoidFeatures = {AvoidFeatureFlags.HIGHWAYS, AvoidFeatureFlags.TOLLWAYS, AvoidFeatureFlags.FERRIES,
+                AvoidFeatureFlags.HIGHWAYS | AvoidFeatureFlags.TOLLWAYS};
+        int[] profileTypes = {RoutingProfileType.DRIVING_CAR, RoutingProfileType.DRIVING_HGV};
+
+        for (int profileType : profileTypes) {
+            for (int avoid : avoidFeatures) {
+                RouteSearchParameters searchParams = createSearchParams(profileType, avoid, BordersExtractor.Avoid.NONE);
+                AvoidFeaturesEdgeFilter filter = new AvoidFeaturesEdgeFilter(profileType, searchParams, wayCategories, tollways);
+
+                CompiledEdgeFilter compiled = new CompiledEdgeFilter(column);
+                assertTrue(compiled.canCompile(filter));
+                compiled.add(filter);
+
+                assertSameDecisions(filter, compiled);
+            }
+        }
+    }
+
+    @Test
+    public void TestAvoidTollwaysDependsOnVehicle() throws Exception {
+        RouteSearchParameters carParams = createSearchParams(RoutingProfileType.DRIVING_CAR, AvoidFeatureFlags.TOLLWAYS, BordersExtractor.Avoid.NONE);
+        CompiledEdgeFilter car = new CompiledEdgeFilter(column);
+        car.add(new AvoidFeaturesEdgeFilter(RoutingProfileType.DRIVING_CAR, carParams, wayCategories, tollways));
+
+        RouteSearchParameters hgvParams = createSearchParams(RoutingProfileType.DRIVING_HGV, AvoidFeatureFlags.TOLLWAYS, BordersExtractor.Avoid.NONE);
+        CompiledEdgeFilter hgv = new CompiledEdgeFilter(column);
+        hgv.add(new AvoidFeaturesEdgeFilter(RoutingProfileType.DRIVING_HGV, hgvParams, wayCategories, tollways));
+
+        assertFalse(car.accept(generateEdge(2)));
+        assertTrue(car.accept(generateEdge(3)));
+        assertTrue(hgv.accept(generateEdge(2)));
+        assertFalse(hgv.accept(generateEdge(3)));
+        assertFalse(car.accept(generateEdge(5)));
+        assertFalse(hgv.accept(generateEdge(5)));
+    }
+
+    @Test
+    public void TestAvoidBorders() throws Exception {
+        for (BordersExtractor.Avoid avoid : BordersExtractor.Avoid.values()) {
+            RouteSearchParameters searchParams = createSearchParams(RoutingProfileType.DRIVING_CAR, 0, avoid);
+            AvoidBordersEdgeFilter filter = new AvoidBordersEdgeFilter(searchParams, borders);
+
+            CompiledEdgeFilter compiled = new CompiledEdgeFilter(column);
+            assertTrue(compiled.canCompile(filter));
+            compiled.add(filter);
+
+            assertSameDecisions(filter, compiled);
+        }
+    }
+
+    @Test
+    public void TestAvoidCountriesIsNotCompiled() throws Exception {
+        RouteSearchParameters searchParams = createSearchParams(RoutingProfileType.DRIVING_CAR, 0, BordersExtractor.Avoid.NONE);
+        searchParams.setAvoidCountries(new int[] {3});
+
+        CompiledEdgeFilter compiled = new CompiledEdgeFilter(column);
+        assertFalse(compiled.canCompile(new AvoidBordersEdgeFilter(searchParams, borders)));
+        assertTrue(compiled.isEmpty());
+    }
+
+    @Test
+    public void TestCombinedRestrictions() throws Exception {
+        RouteSearchParameters searchParams = createSearchParams(RoutingProfileType.DRIVING_CAR, AvoidFeatureFlags.FERRIES | AvoidFeatureFlags.TOLLWAYS, BordersExtractor.Avoid.CONTROLLED);
+        AvoidFeaturesEdgeFilter avoidFeatures = new AvoidFeaturesEdgeFilter(RoutingProfileType.DRIVING_CAR, searchParams, wayCategories, tollways);
+        AvoidBordersEdgeFilter avoidBorders = new AvoidBordersEdgeFilter(searchParams, borders);
+
+        EdgeFilterSequence expected = new EdgeFilterSequence();
+        expected.add(avoidFeatures);
+        expected.add(avoidBorders);
+
+        CompiledEdgeFilter compiled = new CompiledEdgeFilter(column);
+        compiled.add(avoidFeatures);
+        compiled.add(avoidBorders);
+
+        assertSameDecisions(expected, compiled);
+    }
+}
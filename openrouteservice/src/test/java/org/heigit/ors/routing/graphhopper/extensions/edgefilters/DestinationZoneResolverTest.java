@@ -0,0 +1,122 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the 
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1 
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library; 
+ *  if not, see <https://www.gnu.org/licenses/>.  
+ */
+package org.heigit.ors.routing.graphhopper.extensions.edgefilters;
+
+import com.carrotsearch.hppc.IntHashSet;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.RAMDirectory;
+import org.heigit.ors.routing.graphhopper.extensions.HeavyVehicleAttributes;
+import org.heigit.ors.routing.graphhopper.extensions.ORSDefaultFlagEncoderFactory;
+import org.heigit.ors.routing.graphhopper.extensions.VehicleDimensionRestrictions;
+import org.heigit.ors.routing.graphhopper.extensions.flagencoders.FlagEncoderNames;
+import org.heigit.ors.routing.graphhopper.extensions.storages.HeavyVehicleAttributesGraphStorage;
+import org.heigit.ors.routing.parameters.VehicleParameters;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DestinationZoneResolverTest {
+    private final EncodingManager encodingManager = EncodingManager.create(new ORSDefaultFlagEncoderFactory(), FlagEncoderNames.HEAVYVEHICLE, 4);
+    private final FlagEncoder encoder = encodingManager.getEncoder(FlagEncoderNames.HEAVYVEHICLE);
+    private final HeavyVehicleAttributesGraphStorage hvStorage = new HeavyVehicleAttributesGraphStorage(true);
+    private final GraphHopperStorage graph;
+
+    public DestinationZoneResolverTest() {
+        graph = new GraphHopperStorage(new RAMDirectory(), encodingManager, false, hvStorage).create(100);
+
+        // 0 - 1 = 2 = 3 - 4 - 7 = 8 - 9 - 10, 2 = 5 with destination restricted edges marked as =
+        addEdge(0, 1, false); // 0
+        addEdge(1, 2, true);  // 1
+        addEdge(2, 3, true);  // 2
+        addEdge(3, 4, false); // 3
+        addEdge(2, 5, true);  // 4
+        addEdge(4, 7, false); // 5
+        addEdge(7, 8, true);  // 6
+        addEdge(8, 9, false); // 7
+        addEdge(9, 10, false); // 8
+    }
+
+    private void addEdge(int from, int to, boolean destination) {
+        int edge = graph.edge(from, to, 10, true).getEdge();
+        int flag = destination ? HeavyVehicleAttributes.HGV : HeavyVehicleAttributes.UNKNOWN;
+        hvStorage.setEdgeValue(edge, flag, flag, new double[VehicleDimensionRestrictions.COUNT]);
+    }
+
+    private boolean accept(HeavyVehicleEdgeFilter filter, int edge) {
+        return filter.accept(graph.getEdgeIteratorState(edge, Integer.MIN_VALUE));
+    }
+
+    @Test
+    public void testZoneOfDestinationEdge() {
+        IntHashSet zone = DestinationZoneResolver.getInstance(hvStorage).getZone(graph, encoder, 2, HeavyVehicleAttributes.HGV);
+
+        assertEquals(3, zone.size());
+        assertTrue(zone.contains(1));
+        assertTrue(zone.contains(2));
+        assertTrue(zone.contains(4));
+    }
+
+    @Test
+    public void testZoneOfEdgeNextToZone() {
+        IntHashSet zone = DestinationZoneResolver.getInstance(hvStorage).getZone(graph, encoder, 7, HeavyVehicleAttributes.HGV);
+
+        assertEquals(1, zone.size());
+        assertTrue(zone.contains(6));
+    }
+
+    @Test
+    public void testZoneOfOtherVehicleType() {
+        IntHashSet zone = DestinationZoneResolver.getInstance(hvStorage).getZone(graph, encoder, 2, HeavyVehicleAttributes.BUS);
+
+        assertTrue(zone.isEmpty());
+    }
+
+    @Test
+    public void testZonesAreCachedUntilInvalidated() {
+        DestinationZoneResolver resolver = DestinationZoneResolver.getInstance(hvStorage);
+        IntHashSet zone = resolver.getZone(graph, encoder, 1, HeavyVehicleAttributes.HGV);
+
+        assertSame(resolver, DestinationZoneResolver.getInstance(hvStorage));
+        assertSame(zone, resolver.getZone(graph, encoder, 1, HeavyVehicleAttributes.HGV));
+        assertEquals(3, resolver.getCachedEdges());
+
+        DestinationZoneResolver.invalidate(hvStorage);
+        assertNotSame(resolver, DestinationZoneResolver.getInstance(hvStorage));
+    }
+
+    @Test
+    public void testFilterAcceptsZoneOfEveryLeg() {
+        HeavyVehicleEdgeFilter filter = new HeavyVehicleEdgeFilter(HeavyVehicleAttributes.HGV, new VehicleParameters(), graph);
+
+        filter.setDestinationEdge(graph.getEdgeIteratorState(2, Integer.MIN_VALUE), graph, encoder, TraversalMode.NODE_BASED);
+        assertTrue(accept(filter, 0));
+        assertTrue(accept(filter, 1));
+        assertTrue(accept(filter, 4));
+        assertFalse(accept(filter, 6));
+
+        filter.setDestinationEdge(graph.getEdgeIteratorState(7, Integer.MIN_VALUE), graph, encoder, TraversalMode.NODE_BASED);
+        assertTrue(accept(filter, 0));
+        assertFalse(accept(filter, 1));
+        assertFalse(accept(filter, 4));
+        assertTrue(accept(filter, 6));
+
+        filter.setDestinationEdge(graph.getEdgeIteratorState(8, Integer.MIN_VALUE), graph, encoder, TraversalMode.NODE_BASED);
+        assertTrue(accept(filter, 3));
+        assertFalse(accept(filter, 1));
+        assertFalse(accept(filter, 6));
+    }
+}
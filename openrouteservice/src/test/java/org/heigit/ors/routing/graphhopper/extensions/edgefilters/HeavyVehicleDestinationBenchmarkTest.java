@@ -0,0 +1,250 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the 
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1 
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library; 
+ *  if not, see <https://www.gnu.org/licenses/>.  
+ */
+package org.heigit.ors.routing.graphhopper.extensions.edgefilters;
+
+import com.carrotsearch.hppc.IntObjectMap;
+import com.carrotsearch.hppc.cursors.IntObjectCursor;
+import com.graphhopper.routing.Dijkstra;
+import com.graphhopper.routing.DijkstraBidirectionRef;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.FastestWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.storage.SPTEntry;
+import com.graphhopper.util.EdgeIteratorState;
+import org.apache.log4j.Logger;
+import org.heigit.ors.routing.graphhopper.extensions.HeavyVehicleAttributes;
+import org.heigit.ors.routing.graphhopper.extensions.ORSDefaultFlagEncoderFactory;
+import org.heigit.ors.routing.graphhopper.extensions.VehicleDimensionRestrictions;
+import org.heigit.ors.routing.graphhopper.extensions.flagencoders.FlagEncoderNames;
+import org.heigit.ors.routing.graphhopper.extensions.storages.HeavyVehicleAttributesGraphStorage;
+import org.heigit.ors.routing.parameters.VehicleParameters;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the destination handling of {@link HeavyVehicleEdgeFilter} with the previous implementation, which
+ * searched the destination zone with a Dijkstra for every request and kept it in a list, for HGV routes into
+ * delivery zones (hgv=destination) of different sizes on a grid graph. The benchmark is skipped unless it is enabled
+ * explicitly:
+ *
+ * <pre>mvn test -Dtest=HeavyVehicleDestinationBenchmarkTest -Dors.benchmark=true</pre>
+ */
+public class HeavyVehicleDestinationBenchmarkTest {
+    private static final Logger LOGGER = Logger.getLogger(HeavyVehicleDestinationBenchmarkTest.class.getName());
+    private static final int GRID_SIZE = 200;
+    private static final int ZONE_OFFSET = 80;
+    private static final int DESTINATIONS = 10;
+    private static final int WARMUP_RUNS = 20;
+    private static final int RUNS = 41;
+
+    private final EncodingManager encodingManager = EncodingManager.create(new ORSDefaultFlagEncoderFactory(), FlagEncoderNames.HEAVYVEHICLE, 4);
+    private final FlagEncoder encoder = encodingManager.getEncoder(FlagEncoderNames.HEAVYVEHICLE);
+    private final Weighting weighting = new FastestWeighting(encoder);
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue(Boolean.getBoolean("ors.benchmark"));
+    }
+
+    private interface DestinationRoute {
+        double run(int source, int destinationEdge);
+    }
+
+    private static class CustomDijkstra extends Dijkstra {
+        CustomDijkstra(Graph graph, Weighting weighting) {
+            super(graph, weighting, TraversalMode.NODE_BASED);
+            initCollections(1000);
+        }
+
+        IntObjectMap<SPTEntry> getMap() {
+            return fromMap;
+        }
+    }
+
+    /**
+     * The destination handling of {@link HeavyVehicleEdgeFilter} before the zones were resolved by the
+     * {@link DestinationZoneResolver}.
+     */
+    private static class ListDestinationFilter implements EdgeFilter {
+        private final HeavyVehicleAttributesGraphStorage storage;
+        private final byte[] buffer = new byte[2];
+        private boolean searchZone;
+        private List<Integer> destinationEdges;
+
+        ListDestinationFilter(HeavyVehicleAttributesGraphStorage storage) {
+            this.storage = storage;
+        }
+
+        void setDestinationEdge(EdgeIteratorState edge, Graph graph, Weighting weighting) {
+            searchZone = true;
+            CustomDijkstra dijkstra = new CustomDijkstra(graph, weighting);
+            dijkstra.setEdgeFilter(this);
+            dijkstra.calcPath(edge.getBaseNode(), Integer.MIN_VALUE);
+
+            destinationEdges = new ArrayList<>();
+            for (IntObjectCursor<SPTEntry> ee : dijkstra.getMap()) {
+                if (!destinationEdges.contains(ee.value.edge))
+                    destinationEdges.add(ee.value.edge);
+            }
+            if (!destinationEdges.contains(edge.getEdge()) && accept(edge))
+                destinationEdges.add(edge.getEdge());
+            searchZone = false;
+        }
+
+        @Override
+        public boolean accept(EdgeIteratorState iter) {
+            int vt = storage.getEdgeVehicleType(iter.getEdge(), buffer);
+            boolean restricted = (vt & HeavyVehicleAttributes.HGV) == HeavyVehicleAttributes.HGV;
+            if (searchZone)
+                return vt != HeavyVehicleAttributes.UNKNOWN && buffer[1] != 0 && restricted;
+            if (vt == HeavyVehicleAttributes.UNKNOWN)
+                return true;
+            if (buffer[1] != 0)
+                return restricted && destinationEdges.contains(iter.getEdge());
+            return !restricted;
+        }
+    }
+
+    /**
+     * Creates a grid of roads with lengths varying by +-50% and a square delivery zone of the given number of nodes
+     * per side, in which all roads are restricted to destination traffic for heavy goods vehicles.
+     */
+    private GraphHopperStorage createGraph(HeavyVehicleAttributesGraphStorage hvStorage, int zoneSize, List<Integer> zoneEdges) {
+        Random random = new Random(zoneSize);
+        GraphHopperStorage graph = new GraphHopperStorage(new RAMDirectory(), encodingManager, false, hvStorage).create(GRID_SIZE * GRID_SIZE);
+        double[] noRestrictions = new double[VehicleDimensionRestrictions.COUNT];
+        for (int row = 0; row < GRID_SIZE; row++) {
+            for (int col = 0; col < GRID_SIZE; col++) {
+                int node = row * GRID_SIZE + col;
+                graph.getNodeAccess().setNode(node, 49.0 + row * 0.001, 8.0 + col * 0.0015);
+                if (col + 1 < GRID_SIZE)
+                    addEdge(graph, hvStorage, node, node + 1, inZone(row, col, zoneSize) && inZone(row, col + 1, zoneSize), random, zoneEdges, noRestrictions);
+                if (row + 1 < GRID_SIZE)
+                    addEdge(graph, hvStorage, node, node + GRID_SIZE, inZone(row, col, zoneSize) && inZone(row + 1, col, zoneSize), random, zoneEdges, noRestrictions);
+            }
+        }
+        graph.freeze();
+        return graph;
+    }
+
+    private static boolean inZone(int row, int col, int zoneSize) {
+        return row >= ZONE_OFFSET && row < ZONE_OFFSET + zoneSize && col >= ZONE_OFFSET && col < ZONE_OFFSET + zoneSize;
+    }
+
+    private static void addEdge(GraphHopperStorage graph, HeavyVehicleAttributesGraphStorage hvStorage, int from, int to,
+                                boolean destination, Random random, List<Integer> zoneEdges, double[] noRestrictions) {
+        int edge = graph.edge(from, to, 50 + random.nextDouble() * 100, true).getEdge();
+        int flag = destination ? HeavyVehicleAttributes.HGV : HeavyVehicleAttributes.UNKNOWN;
+        hvStorage.setEdgeValue(edge, flag, flag, noRestrictions);
+        if (destination)
+            zoneEdges.add(edge);
+    }
+
+    private double route(GraphHopperStorage graph, EdgeFilter filter, int source, int destinationEdge) {
+        DijkstraBidirectionRef algorithm = new DijkstraBidirectionRef(graph, weighting, TraversalMode.NODE_BASED);
+        algorithm.setEdgeFilter(filter);
+        Path path = algorithm.calcPath(source, graph.getEdgeIteratorState(destinationEdge, Integer.MIN_VALUE).getAdjNode());
+        return path.isFound() ? path.getWeight() : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * @return the median run time in milliseconds
+     */
+    private static double measure(DestinationRoute route, int[] sources, int[] destinationEdges) {
+        for (int run = 0; run < WARMUP_RUNS; run++)
+            assertTrue(route.run(sources[run], destinationEdges[run]) < Double.POSITIVE_INFINITY);
+
+        double[] times = new double[RUNS];
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            route.run(sources[WARMUP_RUNS + run], destinationEdges[WARMUP_RUNS + run]);
+            times[run] = (System.nanoTime() - start) / 1e6;
+        }
+        Arrays.sort(times);
+        return times[RUNS / 2];
+    }
+
+    private void compare(int zoneSize) {
+        HeavyVehicleAttributesGraphStorage hvStorage = new HeavyVehicleAttributesGraphStorage(true);
+        List<Integer> zoneEdges = new ArrayList<>();
+        GraphHopperStorage graph = createGraph(hvStorage, zoneSize, zoneEdges);
+
+        // the routes start outside of the zone and lead to one of a few destinations within it, e.g. depots
+        Random random = new Random(GRID_SIZE);
+        int[] destinations = new int[DESTINATIONS];
+        for (int i = 0; i < DESTINATIONS; i++)
+            destinations[i] = zoneEdges.get(random.nextInt(zoneEdges.size()));
+        int[] sources = new int[WARMUP_RUNS + RUNS];
+        int[] destinationEdges = new int[WARMUP_RUNS + RUNS];
+        for (int run = 0; run < sources.length; run++) {
+            sources[run] = random.nextInt(ZONE_OFFSET * GRID_SIZE);
+            destinationEdges[run] = destinations[run % DESTINATIONS];
+        }
+
+        ListDestinationFilter listFilter = new ListDestinationFilter(hvStorage);
+        HeavyVehicleEdgeFilter hgvFilter = new HeavyVehicleEdgeFilter(HeavyVehicleAttributes.HGV, new VehicleParameters(), graph);
+
+        DestinationRoute listRoute = (source, destinationEdge) -> {
+            listFilter.setDestinationEdge(graph.getEdgeIteratorState(destinationEdge, Integer.MIN_VALUE), graph, weighting);
+            return route(graph, listFilter, source, destinationEdge);
+        };
+        DestinationRoute uncachedRoute = (source, destinationEdge) -> {
+            DestinationZoneResolver.invalidate(hvStorage);
+            hgvFilter.setDestinationEdge(graph.getEdgeIteratorState(destinationEdge, Integer.MIN_VALUE), graph, encoder, TraversalMode.NODE_BASED);
+            return route(graph, hgvFilter, source, destinationEdge);
+        };
+        DestinationRoute cachedRoute = (source, destinationEdge) -> {
+            hgvFilter.setDestinationEdge(graph.getEdgeIteratorState(destinationEdge, Integer.MIN_VALUE), graph, encoder, TraversalMode.NODE_BASED);
+            return route(graph, hgvFilter, source, destinationEdge);
+        };
+
+        double listTime = measure(listRoute, sources, destinationEdges);
+        double uncachedTime = measure(uncachedRoute, sources, destinationEdges);
+        double cachedTime = measure(cachedRoute, sources, destinationEdges);
+        LOGGER.info(String.format("%d nodes, zone of %d edges: list %.2f ms, int set %.2f ms (%.1fx), cached int set %.2f ms (%.1fx)",
+                graph.getNodes(), zoneEdges.size(), listTime, uncachedTime, listTime / uncachedTime,
+                cachedTime, listTime / cachedTime));
+        DestinationZoneResolver.invalidate(hvStorage);
+    }
+
+    @Test
+    public void benchmarkSmallZone() {
+        compare(10);
+    }
+
+    @Test
+    public void benchmarkMediumZone() {
+        compare(30);
+    }
+
+    @Test
+    public void benchmarkLargeZone() {
+        compare(60);
+    }
+}
@@ -0,0 +1,152 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library;
+ *  if not, see <https://www.gnu.org/licenses/>.
+ */
+package org.heigit.ors.routing.graphhopper.extensions.graphbuilders;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.Polygon;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class OpenSpaceVisibilityGraphTest {
+    private final GeometryFactory geometryFactory = new GeometryFactory();
+
+    @Test
+    public void testConvexOpenSpace() {
+        OpenSpaceVisibilityGraph graph = new OpenSpaceVisibilityGraph(createPolygon(0, 0, 4, 0, 4, 4, 0, 4));
+        int[][] adjacency = graph.getAdjacency();
+        for (int i = 0; i < 4; i++)
+            assertEquals(3, adjacency[i].length);
+    }
+
+    @Test
+    public void testReflexVertexBlocksView() {
+        // the vertex at (2, 1) is pushed into the open space and hides (0, 0) from (4, 4)
+        Polygon polygon = createPolygon(0, 0, 4, 0, 4, 4, 2, 1, 0, 4);
+        int[][] adjacency = new OpenSpaceVisibilityGraph(polygon).getAdjacency();
+
+        assertFalse(contains(adjacency[0], 2));
+        assertFalse(contains(adjacency[1], 4));
+        assertTrue(contains(adjacency[0], 3));
+        assertTrue(contains(adjacency[1], 3));
+    }
+
+    @Test
+    public void testCollinearBoundaryVertices() {
+        // (2, 0) lies on the straight boundary between (0, 0) and (4, 0), a line along the boundary is not within
+        Polygon polygon = createPolygon(0, 0, 2, 0, 4, 0, 4, 4, 0, 4);
+        int[][] adjacency = new OpenSpaceVisibilityGraph(polygon).getAdjacency();
+
+        assertFalse(contains(adjacency[0], 2));
+        assertTrue(contains(adjacency[1], 3));
+        assertTrue(contains(adjacency[1], 4));
+    }
+
+    @Test
+    public void testOrientationDoesNotMatter() {
+        Polygon ccw = createPolygon(0, 0, 4, 0, 4, 4, 2, 1, 0, 4);
+        Polygon cw = createPolygon(0, 4, 2, 1, 4, 4, 4, 0, 0, 0);
+        assertEquals(edges(ccw, new OpenSpaceVisibilityGraph(ccw).getAdjacency()), edges(cw, new OpenSpaceVisibilityGraph(cw).getAdjacency()));
+    }
+
+    @Test
+    public void testSameAsWithinPredicate() {
+        Random random = new Random(42);
+        for (int run = 0; run < 200; run++) {
+            Polygon polygon = createRandomStarPolygon(random, 5 + random.nextInt(30), run % 2 == 0 ? 6 : 1000);
+            if (!polygon.isValid())
+                continue;
+            Coordinate[] ring = polygon.getExteriorRing().getCoordinates();
+            int n = ring.length - 1;
+            int[][] adjacency = new OpenSpaceVisibilityGraph(polygon).getAdjacency();
+
+            for (int i = 0; i < n; i++) {
+                for (int j = i + 1; j < n; j++) {
+                    boolean neighbours = j == i + 1 || (i == 0 && j == n - 1);
+                    LineString line = geometryFactory.createLineString(new Coordinate[] {ring[i], ring[j]});
+                    boolean expected = neighbours || line.within(polygon);
+                    assertEquals("Pair " + i + "-" + j + " of " + polygon, expected, contains(adjacency[i], j));
+                    assertEquals(contains(adjacency[i], j), contains(adjacency[j], i));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testPathEdgesAvoidObstacle() {
+        // U shaped open space, the tower nodes at the tips of the U have to be connected around the inner corners
+        Polygon polygon = createPolygon(0, 0, 6, 0, 6, 6, 4, 6, 4, 2, 2, 2, 2, 6, 0, 6);
+        OpenSpaceVisibilityGraph graph = new OpenSpaceVisibilityGraph(polygon);
+        IntArrayList edges = graph.computePathEdges(new int[] {3, 6});
+
+        Set<String> pathEdges = new HashSet<>();
+        for (int k = 0; k < edges.size(); k += 2)
+            pathEdges.add(Math.min(edges.get(k), edges.get(k + 1)) + "-" + Math.max(edges.get(k), edges.get(k + 1)));
+        assertEquals(new HashSet<>(Arrays.asList("3-4", "4-5", "5-6")), pathEdges);
+    }
+
+    @Test
+    public void testUnreachableTerminalsAreSkipped() {
+        OpenSpaceVisibilityGraph graph = new OpenSpaceVisibilityGraph(createPolygon(0, 0, 4, 0, 4, 4, 0, 4));
+        assertEquals(0, graph.computePathEdges(new int[] {2}).size());
+        assertEquals(2, graph.computePathEdges(new int[] {0, 2}).size());
+    }
+
+    private Polygon createPolygon(double... xy) {
+        Coordinate[] coordinates = new Coordinate[xy.length / 2 + 1];
+        for (int i = 0; i < xy.length / 2; i++)
+            coordinates[i] = new Coordinate(xy[2 * i], xy[2 * i + 1]);
+        coordinates[coordinates.length - 1] = coordinates[0];
+        return geometryFactory.createPolygon(geometryFactory.createLinearRing(coordinates), null);
+    }
+
+    private Polygon createRandomStarPolygon(Random random, int size, int gridSize) {
+        Set<Coordinate> unique = new HashSet<>();
+        while (unique.size() < size)
+            unique.add(new Coordinate(random.nextInt(gridSize), random.nextInt(gridSize)));
+        Coordinate[] points = unique.toArray(new Coordinate[0]);
+        final double cx = gridSize / 2.0 + 0.123;
+        final double cy = gridSize / 2.0 + 0.057;
+        Arrays.sort(points, (a, b) -> Double.compare(Math.atan2(a.y - cy, a.x - cx), Math.atan2(b.y - cy, b.x - cx)));
+        Coordinate[] ring = Arrays.copyOf(points, size + 1);
+        ring[size] = ring[0];
+        return geometryFactory.createPolygon(geometryFactory.createLinearRing(ring), null);
+    }
+
+    private static Set<String> edges(Polygon polygon, int[][] adjacency) {
+        Coordinate[] ring = polygon.getExteriorRing().getCoordinates();
+        Set<String> edges = new HashSet<>();
+        for (int i = 0; i < adjacency.length; i++) {
+            for (int j : adjacency[i])
+                edges.add(ring[i] + "-" + ring[j]);
+        }
+        return edges;
+    }
+
+    private static boolean contains(int[] values, int value) {
+        for (int v : values) {
+            if (v == value)
+                return true;
+        }
+        return false;
+    }
+}
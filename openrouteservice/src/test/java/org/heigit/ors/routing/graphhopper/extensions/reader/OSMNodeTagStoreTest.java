@@ -0,0 +1,64 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library;
+ *  if not, see <https://www.gnu.org/licenses/>.
+ */
+package org.heigit.ors.routing.graphhopper.extensions.reader;
+
+import com.graphhopper.storage.RAMDirectory;
+import org.junit.Test;
+
+import java.util.HashMap;
+
+import static org.junit.Assert.*;
+
+public class OSMNodeTagStoreTest {
+    @Test
+    public void testSortedNodes() {
+        OSMNodeTagStore store = new OSMNodeTagStore(new RAMDirectory());
+        store.addTag(5, "kerb", "lowered");
+        store.addTag(5, "access", "no");
+        store.addTag(7, "kerb", "raised");
+        store.addTag(5000000000L, "access", "no");
+
+        assertEquals(3, store.getSize());
+
+        HashMap<String, String> tags = store.get(5);
+        assertEquals(2, tags.size());
+        assertEquals("lowered", tags.get("kerb"));
+        assertEquals("no", tags.get("access"));
+
+        assertEquals("raised", store.get(7).get("kerb"));
+        assertEquals("no", store.get(5000000000L).get("access"));
+        assertNull(store.get(6));
+        assertNull(store.get(1));
+    }
+
+    @Test
+    public void testUnsortedNodes() {
+        OSMNodeTagStore store = new OSMNodeTagStore(new RAMDirectory());
+        long[] ids = {42, 3, 17, 99, 1, 64, 8};
+        for (long id : ids)
+            store.addTag(id, "maxheight", Long.toString(id));
+
+        for (long id : ids)
+            assertEquals(Long.toString(id), store.get(id).get("maxheight"));
+        assertNull(store.get(2));
+    }
+
+    @Test
+    public void testRelease() {
+        OSMNodeTagStore store = new OSMNodeTagStore(new RAMDirectory());
+        store.addTag(1, "kerb", "lowered");
+        store.release();
+        assertTrue(store.isEmpty());
+    }
+}
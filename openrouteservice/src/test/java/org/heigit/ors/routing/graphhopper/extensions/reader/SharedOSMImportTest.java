@@ -0,0 +1,118 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library;
+ *  if not, see <https://www.gnu.org/licenses/>.
+ */
+package org.heigit.ors.routing.graphhopper.extensions.reader;
+
+import com.graphhopper.reader.ReaderElement;
+import com.graphhopper.reader.osm.OSMInput;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class SharedOSMImportTest {
+    private static File osmFile;
+
+    @BeforeClass
+    public static void createFile() throws IOException {
+        osmFile = File.createTempFile("shared_import", ".osm");
+        Files.write(osmFile.toPath(), Arrays.asList(
+                "<?xml version='1.0' encoding='UTF-8'?>",
+                "<osm version='0.6' generator='test'>",
+                " <node id='1' lat='49.41' lon='8.68'/>",
+                " <node id='2' lat='49.42' lon='8.69'><tag k='barrier' v='gate'/></node>",
+                " <node id='3' lat='49.43' lon='8.70'/>",
+                " <way id='10'><nd ref='1'/><nd ref='2'/><nd ref='3'/><tag k='highway' v='residential'/></way>",
+                " <relation id='20'><member type='way' ref='10' role=''/><tag k='type' v='route'/></relation>",
+                "</osm>"), StandardCharsets.UTF_8);
+    }
+
+    @AfterClass
+    public static void deleteFile() {
+        osmFile.delete();
+    }
+
+    /**
+     * Reads two passes like the OSM reader does, tagging every element to check that the copies are separate.
+     */
+    private static List<Long> readPasses(SharedOSMImport.Participant participant, String name) throws Exception {
+        List<Long> ids = new ArrayList<>();
+        for (int pass = 0; pass < 2; pass++) {
+            try (OSMInput in = participant.openPass()) {
+                ReaderElement item;
+                while ((item = in.getNext()) != null) {
+                    if (item.getType() == ReaderElement.FILEHEADER)
+                        continue;
+                    assertFalse(item.hasTag("reader"));
+                    item.setTag("reader", name);
+                    ids.add(item.getId());
+                }
+            }
+        }
+        return ids;
+    }
+
+    @Test
+    public void testAllParticipantsReceiveAllElements() throws Exception {
+        SharedOSMImport sharedImport = new SharedOSMImport(osmFile);
+        List<SharedOSMImport.Participant> participants = new ArrayList<>();
+        for (int i = 0; i < 3; i++)
+            participants.add(sharedImport.addParticipant());
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            List<Future<List<Long>>> results = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                SharedOSMImport.Participant participant = participants.get(i);
+                String name = "reader" + i;
+                results.add(executor.submit(() -> readPasses(participant, name)));
+            }
+
+            List<Long> expected = Arrays.asList(1L, 2L, 3L, 10L, 20L, 1L, 2L, 3L, 10L, 20L);
+            for (Future<List<Long>> result : results)
+                assertEquals(expected, result.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testLeavingParticipantIsNotAwaited() throws Exception {
+        SharedOSMImport sharedImport = new SharedOSMImport(osmFile);
+        SharedOSMImport.Participant reader = sharedImport.addParticipant();
+        SharedOSMImport.Participant loader = sharedImport.addParticipant();
+
+        loader.leave();
+
+        assertEquals(10, readPasses(reader, "reader").size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testNoParticipantsAfterStart() {
+        SharedOSMImport sharedImport = new SharedOSMImport(osmFile);
+        sharedImport.addParticipant().openPass();
+        sharedImport.addParticipant();
+    }
+}
@@ -18,6 +18,10 @@ import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.Point;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -107,6 +111,77 @@ public class CountryBordersReaderTest {
         assertEquals("country3", polys[0].getName());
     }
 
+    /**
+     * Test that coordinates with a missing ordinate are only compared by the other one, as the bounding box checks do
+     */
+    @Test
+    public void TestGetCountryWithNaNCoordinate() {
+        Coordinate c = new Coordinate(Double.NaN, Double.NaN);
+        assertEquals(0, _reader.getCountry(c).length);
+        CountryBordersPolygon[] polys = _reader.getCandidateCountry(c);
+        assertEquals(4, polys.length);
+        assertEquals("country1", polys[0].getName());
+        assertEquals("country4", polys[3].getName());
+
+        c = new Coordinate(0.5, Double.NaN);
+        assertEquals(0, _reader.getCountry(c).length);
+        polys = _reader.getCandidateCountry(c);
+        assertEquals(1, polys.length);
+        assertEquals("country1", polys[0].getName());
+    }
+
+    /**
+     * Test that hierarchies added after the first lookup are found as well
+     */
+    @Test
+    public void TestGetCountryAfterAddingHierarchy() throws Exception {
+        Coordinate c = new Coordinate(10.5, 10.5);
+        assertEquals(0, _reader.getCountry(c).length);
+
+        CountryBordersHierarchy h = new CountryBordersHierarchy();
+        h.add(new CountryBordersPolygon("country5", gf.createPolygon(new Coordinate[] {
+                new Coordinate(10, 10),
+                new Coordinate(11, 10),
+                new Coordinate(11, 11),
+                new Coordinate(10, 11),
+                new Coordinate(10, 10)
+        })));
+        _reader.addHierarchy(3l, h);
+
+        CountryBordersPolygon[] polys = _reader.getCountry(c);
+        assertEquals(1, polys.length);
+        assertEquals("country5", polys[0].getName());
+    }
+
+    /**
+     * Test the indexed lookups against the bounding boxes and areas of the polygons in the bundled borders data
+     */
+    @Test
+    public void TestGetCountryFromBordersFile() throws IOException {
+        CountryBordersReader reader = new CountryBordersReader("src/main/files/borders/borders.geojson",
+                "src/main/files/borders/ids.csv", "src/main/files/borders/openborders.csv");
+
+        CountryBordersPolygon[] polys = reader.getCountry(new Coordinate(8.690, 49.402));
+        assertEquals(1, polys.length);
+        assertEquals("Area 3", polys[0].getName());
+
+        int found = 0;
+        for (double lon = 8.678; lon < 8.698; lon += 0.0005) {
+            for (double lat = 49.399; lat < 49.409; lat += 0.0005) {
+                Coordinate c = new Coordinate(lon, lat);
+                List<CountryBordersPolygon> candidates = Arrays.asList(reader.getCandidateCountry(c));
+                for (CountryBordersPolygon candidate : candidates)
+                    assertTrue(candidate.inBbox(c));
+                for (CountryBordersPolygon country : reader.getCountry(c)) {
+                    assertTrue(country.inArea(c));
+                    assertTrue(candidates.contains(country));
+                    found++;
+                }
+            }
+        }
+        assertTrue(found > 0);
+    }
+
     /**
      * Test that the correct id is returned for a country of the given local name
      */
@@ -0,0 +1,62 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library;
+ *  if not, see <https://www.gnu.org/licenses/>.
+ */
+package org.heigit.ors.routing.graphhopper.extensions.storages;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class MultiTreeSPStoragePoolTest {
+    private final long defaultSize = MultiTreeSPStoragePool.getMaximumSize();
+
+    @After
+    public void tearDown() {
+        MultiTreeSPStoragePool.setMaximumSize(0);
+        MultiTreeSPStoragePool.setMaximumSize(defaultSize);
+    }
+
+    @Test
+    public void testReleasedStorageIsReused() {
+        MultiTreeSPStoragePool.setMaximumSize(0);
+        MultiTreeSPStoragePool.setMaximumSize(1L << 30);
+
+        MultiTreeSPStorage storage = MultiTreeSPStoragePool.acquire(2);
+        MultiTreeSPStoragePool.release(storage);
+        assertEquals(storage.getMemorySize(), MultiTreeSPStoragePool.getPooledSize());
+
+        assertSame(storage, MultiTreeSPStoragePool.acquire(3));
+        assertEquals(3, storage.getNumTrees());
+        assertEquals(0, MultiTreeSPStoragePool.getPooledSize());
+    }
+
+    @Test
+    public void testPoolSizeIsLimited() {
+        MultiTreeSPStoragePool.setMaximumSize(0);
+
+        MultiTreeSPStorage first = MultiTreeSPStoragePool.acquire(1);
+        MultiTreeSPStorage second = MultiTreeSPStoragePool.acquire(1);
+        MultiTreeSPStoragePool.setMaximumSize(first.getMemorySize());
+
+        MultiTreeSPStoragePool.release(first);
+        MultiTreeSPStoragePool.release(second);
+        assertEquals(first.getMemorySize(), MultiTreeSPStoragePool.getPooledSize());
+
+        MultiTreeSPStoragePool.setMaximumSize(0);
+        assertEquals(0, MultiTreeSPStoragePool.getPooledSize());
+        assertNotSame(first, MultiTreeSPStoragePool.acquire(1));
+    }
+}
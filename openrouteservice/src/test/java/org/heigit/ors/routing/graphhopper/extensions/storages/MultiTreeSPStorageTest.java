@@ -0,0 +1,78 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library;
+ *  if not, see <https://www.gnu.org/licenses/>.
+ */
+package org.heigit.ors.routing.graphhopper.extensions.storages;
+
+import com.graphhopper.util.EdgeIterator;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class MultiTreeSPStorageTest {
+
+    @Test
+    public void testSlotCreationMatchesEntry() {
+        MultiTreeSPStorage storage = new MultiTreeSPStorage(1);
+        storage.init(3);
+
+        MultiTreeSPEntry rootEntry = new MultiTreeSPEntry(10, EdgeIterator.NO_EDGE, 0.0, true, null, 3);
+        rootEntry.getItem(1).setWeight(0.0);
+        int root = storage.addSlot(10, EdgeIterator.NO_EDGE, 0.0, true, MultiTreeSPStorage.NO_SLOT);
+        storage.setWeight(root, 1, 0.0);
+
+        MultiTreeSPEntry childEntry = new MultiTreeSPEntry(20, 5, 2.5, true, rootEntry, 3);
+        int child = storage.addSlot(20, 5, 2.5, true, root);
+
+        assertEquals(root, storage.getSlot(10));
+        assertEquals(child, storage.getSlot(20));
+        assertEquals(MultiTreeSPStorage.NO_SLOT, storage.getSlot(30));
+        assertEquals(20, storage.getNode(child));
+        assertEquals(childEntry.getTotalWeight(), storage.getTotalWeight(child), 1e-9);
+
+        for (int i = 0; i < 3; i++) {
+            MultiTreeSPEntryItem item = childEntry.getItem(i);
+            assertEquals(item.getWeight(), storage.getWeight(child, i), 1e-9);
+            assertEquals(item.getEdge(), storage.getEdge(child, i));
+            assertEquals(item.isUpdate(), storage.isUpdate(child, i));
+            assertEquals(item.getParent() == null ? MultiTreeSPStorage.NO_SLOT : root, storage.getParent(child, i));
+        }
+    }
+
+    @Test
+    public void testGrowAndReuse() {
+        MultiTreeSPStorage storage = new MultiTreeSPStorage(1);
+        storage.init(2);
+        int root = storage.addSlot(0, EdgeIterator.NO_EDGE, 0.0, true, MultiTreeSPStorage.NO_SLOT);
+        storage.setWeight(root, 0, 0.0);
+        storage.setWeight(root, 1, 0.0);
+
+        int parent = root;
+        for (int node = 1; node < 100; node++)
+            parent = storage.addSlot(node, node, 1.0, true, parent);
+
+        assertEquals(100, storage.getNumSlots());
+        assertEquals(99.0, storage.getWeight(parent, 0), 1e-9);
+        assertEquals(99.0, storage.getWeight(parent, 1), 1e-9);
+
+        storage.setItem(parent, 1, 50.0, 7, root, false);
+        storage.updateWeights(parent);
+        assertEquals(149.0, storage.getTotalWeight(parent), 1e-9);
+        assertEquals(root, storage.getParent(parent, 1));
+        assertFalse(storage.isUpdate(parent, 1));
+
+        storage.init(4);
+        assertEquals(0, storage.getNumSlots());
+        assertEquals(MultiTreeSPStorage.NO_SLOT, storage.getSlot(5));
+    }
+}
@@ -0,0 +1,69 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library;
+ *  if not, see <https://www.gnu.org/licenses/>.
+ */
+package org.heigit.ors.routing.graphhopper.extensions.weighting;
+
+import com.graphhopper.routing.util.CarFlagEncoder;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.PMap;
+import org.heigit.ors.routing.graphhopper.extensions.storages.GreenIndexGraphStorage;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class GreenWeightingTest {
+    private static final int LEVELS = 64;
+
+    private final FlagEncoder encoder = new CarFlagEncoder();
+    private final GraphHopperStorage graph;
+    private final EdgeIteratorState[] edges = new EdgeIteratorState[LEVELS];
+
+    public GreenWeightingTest() {
+        GreenIndexGraphStorage greenStorage = new GreenIndexGraphStorage();
+        graph = new GraphHopperStorage(new RAMDirectory(), EncodingManager.create(encoder), false, greenStorage).create(100);
+        for (int level = 0; level < LEVELS; level++) {
+            edges[level] = graph.edge(level, level + 1, 10, true);
+            greenStorage.setEdgeValue(edges[level].getEdge(), (byte) level);
+        }
+    }
+
+    private static double expectedWeight(int level, double factor) {
+        return 1.0 - (1.0 - (level + 1) * 2.0 / LEVELS) * factor;
+    }
+
+    private void assertWeights(double factor) {
+        GreenWeighting weighting = new GreenWeighting(encoder, new PMap().put("factor", factor), graph);
+        for (int level = 0; level < LEVELS; level++)
+            assertEquals(expectedWeight(level, factor), weighting.calcWeight(edges[level], false, -1), 1e-9);
+    }
+
+    @Test
+    public void testWeightsOfSharedFactorTables() {
+        // the second weighting of a factor uses the table created for the first one
+        assertWeights(0.5);
+        assertWeights(0.5);
+        assertWeights(1.0);
+        assertWeights(1.0);
+    }
+
+    @Test
+    public void testWeightsBeyondCachedFactors() {
+        for (int i = 0; i < 300; i++)
+            assertWeights(i / 300.0);
+        assertWeights(0.5);
+    }
+}
@@ -0,0 +1,236 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the 
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1 
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library; 
+ *  if not, see <https://www.gnu.org/licenses/>.  
+ */
+package org.heigit.ors.servlet.filters;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CompressionResponseWrapperTest {
+    private static final int MIN_SIZE = 64;
+
+    @Test
+    public void testSmallResponseIsNotCompressed() throws IOException {
+        MockResponse response = new MockResponse();
+        CompressionResponseWrapper wrapper = new CompressionResponseWrapper(response, ContentEncodingType.GZIP, MIN_SIZE);
+        PrintWriter writer = wrapper.getWriter();
+        writer.write("{\"small\":true}");
+        wrapper.finishResponse();
+
+        assertNull(response.getHeader("Content-Encoding"));
+        assertEquals("{\"small\":true}", new String(response.getBody(), StandardCharsets.UTF_8));
+        assertEquals(response.getBody().length, response.getContentLength());
+    }
+
+    @Test
+    public void testMinimumSizeIsThreshold() throws IOException {
+        MockResponse response = new MockResponse();
+        CompressionResponseWrapper wrapper = new CompressionResponseWrapper(response, ContentEncodingType.GZIP, MIN_SIZE);
+        byte[] data = createData(MIN_SIZE);
+        wrapper.getOutputStream().write(data);
+        wrapper.finishResponse();
+
+        assertNull(response.getHeader("Content-Encoding"));
+        assertArrayEquals(data, response.getBody());
+        assertEquals(MIN_SIZE, response.getContentLength());
+
+        response = new MockResponse();
+        wrapper = new CompressionResponseWrapper(response, ContentEncodingType.GZIP, MIN_SIZE);
+        data = createData(MIN_SIZE + 1);
+        wrapper.getOutputStream().write(data);
+        wrapper.finishResponse();
+
+        assertEquals(ContentEncodingType.GZIP, response.getHeader("Content-Encoding"));
+        assertArrayEquals(data, readFully(new GZIPInputStream(new ByteArrayInputStream(response.getBody())), data.length));
+    }
+
+    @Test
+    public void testLargeResponseIsStreamed() throws IOException {
+        MockResponse response = new MockResponse();
+        CompressionResponseWrapper wrapper = new CompressionResponseWrapper(response, ContentEncodingType.GZIP, MIN_SIZE);
+        ServletOutputStream out = wrapper.getOutputStream();
+        byte[] data = createData(10000);
+        out.write(data, 0, 5000);
+        wrapper.flushBuffer();
+
+        // the flushed part can be decoded before the response has been finished
+        assertEquals(ContentEncodingType.GZIP, response.getHeader("Content-Encoding"));
+        assertEquals("Accept-Encoding", response.getHeader("Vary"));
+        byte[] flushed = readFully(new GZIPInputStream(new ByteArrayInputStream(response.getBody())), 5000);
+        for (int i = 0; i < flushed.length; i++)
+            assertEquals(data[i], flushed[i]);
+
+        out.write(data, 5000, 5000);
+        wrapper.finishResponse();
+
+        assertArrayEquals(data, readFully(new GZIPInputStream(new ByteArrayInputStream(response.getBody())), data.length));
+        assertEquals(-1, response.getContentLength());
+    }
+
+    @Test
+    public void testDeflateResponse() throws IOException {
+        MockResponse response = new MockResponse();
+        CompressionResponseWrapper wrapper = new CompressionResponseWrapper(response, ContentEncodingType.DEFLATE, MIN_SIZE);
+        byte[] data = createData(2000);
+        wrapper.getOutputStream().write(data);
+        wrapper.finishResponse();
+
+        assertEquals(ContentEncodingType.DEFLATE, response.getHeader("Content-Encoding"));
+        assertArrayEquals(data, readFully(new InflaterInputStream(new ByteArrayInputStream(response.getBody())), data.length));
+    }
+
+    @Test
+    public void testContentLengthOfServletIsIgnored() throws IOException {
+        MockResponse response = new MockResponse();
+        CompressionResponseWrapper wrapper = new CompressionResponseWrapper(response, ContentEncodingType.GZIP, MIN_SIZE);
+        byte[] data = createData(2000);
+        wrapper.setContentLength(data.length);
+        wrapper.setContentLengthLong(data.length);
+        wrapper.getOutputStream().write(data);
+        wrapper.finishResponse();
+
+        // the length of the compressed data is not known in advance
+        assertEquals(-1, response.getContentLength());
+
+        response = new MockResponse();
+        wrapper = new CompressionResponseWrapper(response, ContentEncodingType.GZIP, MIN_SIZE);
+        wrapper.setContentLength(1000);
+        wrapper.getOutputStream().write(data, 0, 10);
+        wrapper.finishResponse();
+
+        assertEquals(10, response.getContentLength());
+    }
+
+    @Test
+    public void testCommittedResponseIsSentUncompressed() throws IOException {
+        MockResponse response = new MockResponse();
+        CompressionResponseWrapper wrapper = new CompressionResponseWrapper(response, ContentEncodingType.GZIP, MIN_SIZE);
+        byte[] data = createData(2000);
+        ServletOutputStream out = wrapper.getOutputStream();
+        out.write(data, 0, 10);
+        response.setCommitted();
+        out.write(data, 10, data.length - 10);
+        wrapper.finishResponse();
+
+        assertNull(response.getHeader("Content-Encoding"));
+        assertArrayEquals(data, response.getBody());
+    }
+
+    private static byte[] createData(int size) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++)
+            data[i] = (byte) ('a' + (i * 7 + i / 13) % 26);
+        return data;
+    }
+
+    private static byte[] readFully(InputStream in, int size) throws IOException {
+        byte[] data = new byte[size];
+        new DataInputStream(in).readFully(data);
+        return data;
+    }
+
+    /**
+     * Response which records what reaches the client. Like a container it ignores header changes once data has been
+     * written.
+     */
+    private static class MockResponse extends HttpServletResponseWrapper {
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        private final Map<String, String> headers = new HashMap<>();
+        private int contentLength = -1;
+        private boolean committed = false;
+
+        MockResponse() {
+            super((HttpServletResponse) Proxy.newProxyInstance(MockResponse.class.getClassLoader(),
+                    new Class<?>[] { HttpServletResponse.class }, (proxy, method, args) -> {
+                        throw new UnsupportedOperationException(method.getName());
+                    }));
+        }
+
+        byte[] getBody() {
+            return body.toByteArray();
+        }
+
+        int getContentLength() {
+            return contentLength;
+        }
+
+        void setCommitted() {
+            committed = true;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            return new ServletOutputStream() {
+                @Override
+                public void write(int b) {
+                    committed = true;
+                    body.write(b);
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setWriteListener(WriteListener listener) {
+                    // not needed
+                }
+            };
+        }
+
+        @Override
+        public boolean isCommitted() {
+            return committed;
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            if (!committed)
+                headers.put(name, value);
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return headers.get(name);
+        }
+
+        @Override
+        public void setContentLength(int length) {
+            if (!committed)
+                contentLength = length;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the 
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1 
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library; 
+ *  if not, see <https://www.gnu.org/licenses/>.  
+ */
+package org.heigit.ors.servlet.filters;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ContentEncodingTypeTest {
+    @Test
+    public void testSelectPreferredEncoding() {
+        assertEquals(ContentEncodingType.BROTLI, ContentEncodingType.select("gzip, deflate, br", true));
+        assertEquals(ContentEncodingType.GZIP, ContentEncodingType.select("gzip, deflate, br", false));
+        assertEquals(ContentEncodingType.DEFLATE, ContentEncodingType.select("deflate", true));
+    }
+
+    @Test
+    public void testSelectByQuality() {
+        assertEquals(ContentEncodingType.GZIP, ContentEncodingType.select("br;q=0.5, gzip;q=0.8", true));
+        assertEquals(ContentEncodingType.DEFLATE, ContentEncodingType.select("gzip;q=0, deflate", true));
+        assertEquals(ContentEncodingType.BROTLI, ContentEncodingType.select("*", true));
+        assertEquals(ContentEncodingType.DEFLATE, ContentEncodingType.select("*;q=0.1, deflate;q=0.5", false));
+    }
+
+    @Test
+    public void testSelectNoEncoding() {
+        assertNull(ContentEncodingType.select(null, true));
+        assertNull(ContentEncodingType.select("", true));
+        assertNull(ContentEncodingType.select("identity", true));
+        assertNull(ContentEncodingType.select("br", false));
+        assertNull(ContentEncodingType.select("gzip;q=0", true));
+    }
+}
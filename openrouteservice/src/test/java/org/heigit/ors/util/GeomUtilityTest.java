@@ -2,6 +2,10 @@ package org.heigit.ors.util;
 
 import com.graphhopper.util.PointList;
 import com.graphhopper.util.shapes.BBox;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.Polygon;
 import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -72,4 +76,60 @@ public class GeomUtilityTest {
         Assert.assertEquals(5, bbox.minEle, 0);
         Assert.assertEquals(25, bbox.maxEle, 0);
     }
+
+    @Test
+    public void getSphericalAreaMatchesProjectedArea() throws Exception {
+        // isochrone shaped polygon of about 17 square kilometres around Heidelberg
+        Polygon isochrone = createStarPolygon(8.68, 49.41, 0.02, 200);
+        double projected = GeomUtility.getProjectedArea(isochrone);
+
+        Assert.assertEquals(projected, GeomUtility.getSphericalArea(isochrone), projected * 1e-6);
+        Assert.assertEquals(projected, GeomUtility.getArea(isochrone, true), projected * 1e-6);
+
+        Polygon large = createStarPolygon(-70.5, -33.4, 1.5, 500);
+        projected = GeomUtility.getProjectedArea(large);
+        Assert.assertEquals(projected, GeomUtility.getSphericalArea(large), projected * 1e-4);
+    }
+
+    @Test
+    public void getSphericalAreaWithHole() throws Exception {
+        GeometryFactory gf = new GeometryFactory();
+        LinearRing shell = gf.createLinearRing(new Coordinate[] {
+                new Coordinate(8.6, 49.4), new Coordinate(8.7, 49.4), new Coordinate(8.7, 49.5),
+                new Coordinate(8.6, 49.5), new Coordinate(8.6, 49.4)});
+        // holes are oriented opposite to the shell
+        LinearRing hole = gf.createLinearRing(new Coordinate[] {
+                new Coordinate(8.62, 49.42), new Coordinate(8.62, 49.44), new Coordinate(8.64, 49.44),
+                new Coordinate(8.64, 49.42), new Coordinate(8.62, 49.42)});
+        Polygon poly = gf.createPolygon(shell, new LinearRing[] {hole});
+
+        double projected = GeomUtility.getProjectedArea(poly);
+        Assert.assertEquals(projected, GeomUtility.getSphericalArea(poly), projected * 1e-6);
+        Assert.assertEquals(GeomUtility.getSphericalArea(gf.createPolygon(shell)) - GeomUtility.getSphericalArea(gf.createPolygon(hole)),
+                GeomUtility.getSphericalArea(poly), 1e-3);
+    }
+
+    @Test
+    public void getSphericalAreaAcrossAntimeridian() {
+        GeometryFactory gf = new GeometryFactory();
+        Polygon crossing = gf.createPolygon(new Coordinate[] {
+                new Coordinate(179.9, -17.0), new Coordinate(-179.9, -17.0), new Coordinate(-179.9, -16.9),
+                new Coordinate(179.9, -16.9), new Coordinate(179.9, -17.0)});
+        Polygon shifted = gf.createPolygon(new Coordinate[] {
+                new Coordinate(-0.1, -17.0), new Coordinate(0.1, -17.0), new Coordinate(0.1, -16.9),
+                new Coordinate(-0.1, -16.9), new Coordinate(-0.1, -17.0)});
+
+        Assert.assertEquals(GeomUtility.getSphericalArea(shifted), GeomUtility.getSphericalArea(crossing), 1e-3);
+    }
+
+    private static Polygon createStarPolygon(double lon, double lat, double radius, int numPoints) {
+        Coordinate[] coords = new Coordinate[numPoints + 1];
+        for (int i = 0; i < numPoints; i++) {
+            double angle = 2 * Math.PI * i / numPoints;
+            double r = radius * (1 + 0.4 * Math.sin(5 * angle));
+            coords[i] = new Coordinate(lon + r * Math.cos(angle) / Math.cos(Math.toRadians(lat)), lat + r * Math.sin(angle));
+        }
+        coords[numPoints] = coords[0];
+        return new GeometryFactory().createPolygon(coords);
+    }
 }
@@ -0,0 +1,152 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library;
+ *  if not, see <https://www.gnu.org/licenses/>.
+ */
+package org.opensphere.geometry.algorithm;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryCollection;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.triangulate.IncrementalDelaunayTriangulator;
+import com.vividsolutions.jts.triangulate.quadedge.QuadEdgeSubdivision;
+import com.vividsolutions.jts.triangulate.quadedge.Vertex;
+import org.apache.log4j.Logger;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Compares the run time of {@link ConcaveHull} with the one of the former implementation on isochrone point sets of
+ * different sizes, and the run time of the hulls of isochrones with several ranges which are built from scratch or
+ * on one incrementally built triangulation. The benchmark takes a few minutes and is skipped unless it is enabled explicitly:
+ *
+ * <pre>mvn test -Dtest=ConcaveHullBenchmarkTest -Dors.benchmark=true</pre>
+ */
+public class ConcaveHullBenchmarkTest {
+    private static final Logger LOGGER = Logger.getLogger(ConcaveHullBenchmarkTest.class.getName());
+    private static final int WARMUP_RUNS = 3;
+    private static final int RUNS = 7;
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue(Boolean.getBoolean("ors.benchmark"));
+    }
+
+    private interface HullBuilder {
+        Geometry build(GeometryCollection points, double threshold);
+    }
+
+    /**
+     * @return the median run time in milliseconds
+     */
+    private static double measure(HullBuilder builder, GeometryCollection points, double threshold) {
+        for (int run = 0; run < WARMUP_RUNS; run++)
+            builder.build(points, threshold);
+
+        double[] times = new double[RUNS];
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            builder.build(points, threshold);
+            times[run] = (System.nanoTime() - start) / 1e6;
+        }
+        Arrays.sort(times);
+        return times[RUNS / 2];
+    }
+
+    private static void compare(long seed, int nPoints, double threshold) {
+        GeometryCollection points = ConcaveHullTest.createIsochronePoints(seed, nPoints);
+
+        Geometry expected = new ReferenceConcaveHull(points, threshold, false).getConcaveHull();
+        Geometry actual = new ConcaveHull(points, threshold, false).getConcaveHull();
+        Assert.assertTrue("Hulls differ for " + nPoints + " points", expected.equalsExact(actual));
+
+        double reference = measure((p, t) -> new ReferenceConcaveHull(p, t, false).getConcaveHull(), points, threshold);
+        double arrays = measure((p, t) -> new ConcaveHull(p, t, false).getConcaveHull(), points, threshold);
+        LOGGER.info(String.format("%d points, threshold %.4f: reference %.1f ms, arrays %.1f ms (%.1fx)",
+                points.getNumGeometries(), threshold, reference, arrays, reference / arrays));
+    }
+
+    /**
+     * Builds the hulls of the given number of ranges, whose points are the points closest to the centre.
+     *
+     * @return the median run time in milliseconds
+     */
+    private static double measureRanges(Coordinate[] sorted, int nRanges, double threshold, boolean incremental) {
+        GeometryFactory geometryFactory = new GeometryFactory();
+        double[] times = new double[WARMUP_RUNS + RUNS];
+        for (int run = 0; run < times.length; run++) {
+            long start = System.nanoTime();
+            QuadEdgeSubdivision subdivision = new QuadEdgeSubdivision(geometryFactory.createMultiPoint(sorted).getEnvelopeInternal(), 0.0);
+            IncrementalDelaunayTriangulator triangulator = new IncrementalDelaunayTriangulator(subdivision);
+            int inserted = 0;
+            for (int range = 1; range <= nRanges; range++) {
+                int nPoints = (int) ((long) sorted.length * range / nRanges);
+                if (incremental) {
+                    Coordinate[] batch = Arrays.copyOfRange(sorted, inserted, nPoints);
+                    Arrays.sort(batch);
+                    for (Coordinate c : batch)
+                        triangulator.insertSite(new Vertex(c));
+                    inserted = nPoints;
+                    new ConcaveHull(subdivision, geometryFactory, threshold).getConcaveHull();
+                } else {
+                    GeometryCollection points = geometryFactory.createMultiPoint(Arrays.copyOf(sorted, nPoints));
+                    new ConcaveHull(points, threshold, false).getConcaveHull();
+                }
+            }
+            times[run] = (System.nanoTime() - start) / 1e6;
+        }
+        Arrays.sort(times, WARMUP_RUNS, times.length);
+        return times[WARMUP_RUNS + RUNS / 2];
+    }
+
+    private static void compareRanges(long seed, int nPoints, double threshold) {
+        Coordinate[] sorted = ConcaveHullTest.createIsochronePoints(seed, nPoints).getCoordinates();
+        Coordinate centre = new Coordinate(8.68, 49.41);
+        Arrays.sort(sorted, Comparator.comparingDouble(c -> c.distance(centre)));
+
+        double single = measureRanges(sorted, 1, threshold, false);
+        double rebuilt = measureRanges(sorted, 10, threshold, false);
+        double incremental = measureRanges(sorted, 10, threshold, true);
+        LOGGER.info(String.format("%d points: 1 range %.1f ms, 10 ranges rebuilt %.1f ms (%.1fx), 10 ranges incremental %.1f ms (%.1fx)",
+                sorted.length, single, rebuilt, rebuilt / single, incremental, incremental / single));
+    }
+
+    @Test
+    public void benchmarkSmallIsochrones() {
+        compare(3, 1000, 0.006);
+        compare(7, 5000, 0.006);
+    }
+
+    @Test
+    public void benchmarkLargeIsochrones() {
+        compare(42, 20000, 0.006);
+        compare(11, 100000, 0.006);
+    }
+
+    @Test
+    public void benchmarkThresholds() {
+        for (double threshold : new double[] {0.003, 0.006, 0.012})
+            compare(5, 20000, threshold);
+    }
+
+    @Test
+    public void benchmarkRanges() {
+        compareRanges(7, 5000, 0.006);
+        compareRanges(42, 20000, 0.006);
+        compareRanges(11, 100000, 0.006);
+    }
+}
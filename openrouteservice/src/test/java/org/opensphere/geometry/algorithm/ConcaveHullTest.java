@@ -0,0 +1,137 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library;
+ *  if not, see <https://www.gnu.org/licenses/>.
+ */
+package org.opensphere.geometry.algorithm;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryCollection;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.triangulate.IncrementalDelaunayTriangulator;
+import com.vividsolutions.jts.triangulate.quadedge.QuadEdgeSubdivision;
+import com.vividsolutions.jts.triangulate.quadedge.Vertex;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.LinkedHashSet;
+import java.util.Random;
+import java.util.Set;
+
+public class ConcaveHullTest {
+    private static final GeometryFactory geometryFactory = new GeometryFactory();
+
+    /**
+     * Creates points like the ones of which the isochrone builder computes the hull: points on both sides of roads
+     * branching out from a centre.
+     */
+    static GeometryCollection createIsochronePoints(long seed, int nPoints) {
+        Random random = new Random(seed);
+        Set<Coordinate> coordinates = new LinkedHashSet<>();
+        double bufferSize = 0.0018;
+        while (coordinates.size() < nPoints) {
+            double lon = 8.68 + random.nextGaussian() * 0.01;
+            double lat = 49.41 + random.nextGaussian() * 0.01;
+            double direction = random.nextDouble() * 2 * Math.PI;
+            int length = 20 + random.nextInt(200);
+            for (int i = 0; i < length && coordinates.size() < nPoints; i++) {
+                direction += random.nextGaussian() * 0.3;
+                double dx = Math.cos(direction) * 0.001;
+                double dy = Math.sin(direction) * 0.001;
+                double scale = bufferSize / Math.sqrt(dx * dx + dy * dy);
+                coordinates.add(new Coordinate(lon - dy * scale, lat + dx * scale));
+                coordinates.add(new Coordinate(lon + dy * scale, lat - dx * scale));
+                lon += dx;
+                lat += dy;
+            }
+        }
+
+        Geometry[] points = new Geometry[coordinates.size()];
+        int i = 0;
+        for (Coordinate c : coordinates)
+            points[i++] = geometryFactory.createPoint(c);
+        return new GeometryCollection(points, geometryFactory);
+    }
+
+    private void assertSameHull(GeometryCollection points, double threshold) {
+        Geometry expected = new ReferenceConcaveHull(points, threshold, false).getConcaveHull();
+        Geometry actual = new ConcaveHull(points, threshold, false).getConcaveHull();
+
+        Assert.assertTrue(actual instanceof Polygon);
+        Assert.assertTrue("Hulls differ for threshold " + threshold, expected.equalsExact(actual));
+    }
+
+    @Test
+    public void testSameHullAsReference() {
+        for (long seed = 1; seed <= 5; seed++) {
+            GeometryCollection points = createIsochronePoints(seed, 2000);
+            // the thresholds used by the isochrone builder
+            assertSameHull(points, 0.006);
+            assertSameHull(points, 0.012);
+        }
+    }
+
+    @Test
+    public void testSameHullAsReferenceForLargePointSet() {
+        assertSameHull(createIsochronePoints(42, 20000), 0.006);
+    }
+
+    @Test
+    public void testHullContainsAllPoints() {
+        GeometryCollection points = createIsochronePoints(7, 5000);
+        Geometry hull = new ConcaveHull(points, 0.006, false).getConcaveHull();
+
+        Assert.assertTrue(hull.buffer(1e-9).covers(geometryFactory.createMultiPoint(points.getCoordinates())));
+    }
+
+    @Test
+    public void testLargeThresholdGivesConvexHull() {
+        GeometryCollection points = createIsochronePoints(3, 1000);
+        Geometry hull = new ConcaveHull(points, 10, false).getConcaveHull();
+
+        Assert.assertEquals(points.convexHull().getArea(), hull.getArea(), 1e-12);
+    }
+
+    @Test
+    public void testSameHullForIncrementalTriangulation() {
+        GeometryCollection points = createIsochronePoints(11, 4000);
+        QuadEdgeSubdivision subdivision = new QuadEdgeSubdivision(points.getEnvelopeInternal(), 0.0);
+        IncrementalDelaunayTriangulator triangulator = new IncrementalDelaunayTriangulator(subdivision);
+
+        // the hull of a subset is computed before the other points are inserted, like for the ranges of an isochrone
+        for (int i = 0; i < points.getNumGeometries(); i++) {
+            triangulator.insertSite(new Vertex(points.getGeometryN(i).getCoordinate()));
+            if (i == points.getNumGeometries() / 2)
+                new ConcaveHull(subdivision, geometryFactory, 0.006).getConcaveHull();
+        }
+
+        Geometry expected = new ConcaveHull(points, 0.006, false).getConcaveHull();
+        Geometry actual = new ConcaveHull(subdivision, geometryFactory, 0.006).getConcaveHull();
+
+        Assert.assertTrue(actual instanceof Polygon);
+        Assert.assertTrue(expected.norm().equalsExact(actual.norm()));
+    }
+
+    @Test
+    public void testFewPoints() {
+        Assert.assertTrue(new ConcaveHull(new GeometryCollection(new Geometry[0], geometryFactory), 1, false).getConcaveHull().isEmpty());
+
+        Point point = geometryFactory.createPoint(new Coordinate(8.68, 49.41));
+        Assert.assertTrue(new ConcaveHull(point, 1).getConcaveHull() instanceof Point);
+
+        Geometry twoPoints = geometryFactory.createMultiPoint(new Coordinate[]{new Coordinate(8.68, 49.41), new Coordinate(8.69, 49.42)});
+        Assert.assertTrue(new ConcaveHull(twoPoints, 1).getConcaveHull() instanceof LineString);
+    }
+}